@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014-2020 chronicle.software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.map.perf;
+
+import net.openhft.chronicle.core.util.NanoSampler;
+import net.openhft.chronicle.jlbh.JLBH;
+import net.openhft.chronicle.jlbh.JLBHOptions;
+import net.openhft.chronicle.jlbh.JLBHTask;
+import net.openhft.chronicle.jlbh.TeamCityHelper;
+import net.openhft.chronicle.map.ChronicleMap;
+import net.openhft.chronicle.map.ChronicleMapBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures get and put latencies of an in-memory map with a few segments, while background
+ * writers contend for the same segment locks. Compare the tail percentiles of the default locks
+ * and {@code -DprocessPrivate=true}. The number of background writers is set with {@code
+ * -Dwriters=N}, 4 by default.
+ */
+public class ContendedLocksJLBHTest implements JLBHTask {
+    private static final int WARM_UP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int KEYS = 10_000;
+    private static final boolean PROCESS_PRIVATE = Boolean.getBoolean("processPrivate");
+    private static final int WRITERS = Integer.getInteger("writers", 4);
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running = true;
+    private ChronicleMap<Long, Long> map;
+    private NanoSampler getSampler;
+    private NanoSampler putSampler;
+    private JLBH e2eSampler;
+    private long counter = 0;
+
+    public static void main(String[] args) {
+        JLBHOptions options = new JLBHOptions()
+                .warmUpIterations(WARM_UP_ITERATIONS)
+                .iterations(ITERATIONS)
+                .throughput(100_000)
+                .runs(3)
+                .recordOSJitter(false).accountForCoordinatedOmission(false)
+                .jlbhTask(new ContendedLocksJLBHTest());
+        new JLBH(options).start();
+    }
+
+    @Override
+    public void init(JLBH jlbh) {
+        getSampler = jlbh.addProbe("Get");
+        putSampler = jlbh.addProbe("Put");
+        e2eSampler = jlbh;
+        map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(KEYS)
+                .actualSegments(2)
+                .processPrivate(PROCESS_PRIVATE)
+                .create();
+        for (long i = 0; i < KEYS; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < WRITERS; i++) {
+            Thread writer = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running) {
+                    long key = random.nextInt(KEYS);
+                    map.put(key, key);
+                }
+            }, "contending-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    @Override
+    public void run(long startTimeNS) {
+        long key = (counter++ * 0x9E3779B97F4A7C15L >>> 1) % KEYS;
+        long start = System.nanoTime();
+        map.get(key);
+        long endGet = System.nanoTime();
+        getSampler.sampleNanos(endGet - start);
+        map.put(key, startTimeNS);
+        long endPut = System.nanoTime();
+        putSampler.sampleNanos(endPut - endGet);
+        e2eSampler.sampleNanos(endPut - startTimeNS);
+    }
+
+    @Override
+    public void complete() {
+        running = false;
+        for (Thread writer : writers) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        map.close();
+        TeamCityHelper.teamCityStatsLastRun(getClass().getSimpleName() +
+                (PROCESS_PRIVATE ? "-processPrivate" : ""), e2eSampler, ITERATIONS, System.out);
+    }
+}
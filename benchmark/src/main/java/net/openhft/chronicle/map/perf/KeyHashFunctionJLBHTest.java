@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2020 chronicle.software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.map.perf;
+
+import net.openhft.chronicle.core.util.NanoSampler;
+import net.openhft.chronicle.hash.KeyHashFunction;
+import net.openhft.chronicle.jlbh.JLBH;
+import net.openhft.chronicle.jlbh.JLBHOptions;
+import net.openhft.chronicle.jlbh.JLBHTask;
+import net.openhft.chronicle.jlbh.TeamCityHelper;
+import net.openhft.chronicle.map.ChronicleMap;
+import net.openhft.chronicle.map.ChronicleMapBuilder;
+
+/**
+ * Compares get and put latencies of an in-memory {@code Long -> Long} map with different key hash
+ * functions. The function is chosen with {@code -DkeyHashFunction=xxR39|longMixer|seededXxR39},
+ * {@code xxR39} by default.
+ */
+public class KeyHashFunctionJLBHTest implements JLBHTask {
+    private static final int WARM_UP_ITERATIONS = 100_000;
+    private static final int ITERATIONS = 2_000_000;
+    private static final int KEYS = 1_000_000;
+    private static final String FUNCTION = System.getProperty("keyHashFunction", "xxR39");
+    private ChronicleMap<Long, Long> map;
+    private NanoSampler getSampler;
+    private NanoSampler putSampler;
+    private JLBH e2eSampler;
+    private long counter = 0;
+
+    public static void main(String[] args) {
+        JLBHOptions options = new JLBHOptions()
+                .warmUpIterations(WARM_UP_ITERATIONS)
+                .iterations(ITERATIONS)
+                .throughput(200_000)
+                .runs(3)
+                .recordOSJitter(false).accountForCoordinatedOmission(false)
+                .jlbhTask(new KeyHashFunctionJLBHTest());
+        new JLBH(options).start();
+    }
+
+    private static KeyHashFunction keyHashFunction() {
+        switch (FUNCTION) {
+            case "xxR39":
+                return KeyHashFunction.xxR39();
+            case "longMixer":
+                return KeyHashFunction.longMixer();
+            case "seededXxR39":
+                return KeyHashFunction.randomlySeededXxR39();
+            default:
+                throw new IllegalArgumentException("Unknown key hash function: " + FUNCTION);
+        }
+    }
+
+    @Override
+    public void init(JLBH jlbh) {
+        getSampler = jlbh.addProbe("Get");
+        putSampler = jlbh.addProbe("Put");
+        e2eSampler = jlbh;
+        map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .keyHashFunction(keyHashFunction())
+                .entries(KEYS)
+                .create();
+        for (long i = 0; i < KEYS; i++) {
+            map.put(i, i);
+        }
+    }
+
+    @Override
+    public void run(long startTimeNS) {
+        long key = (counter++ * 0x9E3779B97F4A7C15L >>> 1) % KEYS;
+        long start = System.nanoTime();
+        map.get(key);
+        long endGet = System.nanoTime();
+        getSampler.sampleNanos(endGet - start);
+        map.put(key, startTimeNS);
+        long endPut = System.nanoTime();
+        putSampler.sampleNanos(endPut - endGet);
+        e2eSampler.sampleNanos(endPut - startTimeNS);
+    }
+
+    @Override
+    public void complete() {
+        map.close();
+        TeamCityHelper.teamCityStatsLastRun(getClass().getSimpleName() + "-" + FUNCTION,
+                e2eSampler, ITERATIONS, System.out);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2020 chronicle.software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.map.perf;
+
+import net.openhft.chronicle.map.ChronicleMap;
+import net.openhft.chronicle.map.TcpReplicator;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures bytes sent by {@link TcpReplicator} per update, with and without compression, for
+ * {@code Integer -> String} maps with large values differing in a few bytes, e. g. objects with a
+ * changed field. The value size is set with {@code -DvalueSize}, 2000 chars by default, the batch
+ * size with {@code -DbatchSize}, 64 KiB by default.
+ */
+public class TcpReplicationBytesPerUpdate {
+    private static final int ENTRIES = Integer.getInteger("entries", 10_000);
+    private static final int VALUE_SIZE = Integer.getInteger("valueSize", 2000);
+    private static final int BATCH_SIZE = Integer.getInteger("batchSize", 64 << 10);
+
+    public static void main(String[] args) throws Exception {
+        for (int run = 0; run < 3; run++) {
+            double plain = bytesPerUpdate(false);
+            double deflated = bytesPerUpdate(true);
+            System.out.printf("Bytes per update: plain %.1f, deflated %.1f (%.1f%%)%n",
+                    plain, deflated, deflated * 100 / plain);
+        }
+    }
+
+    private static double bytesPerUpdate(boolean compression) throws Exception {
+        char[] chars = new char[VALUE_SIZE];
+        try (ChronicleMap<Integer, String> map1 = createMap(1);
+             ChronicleMap<Integer, String> map2 = createMap(2);
+             TcpReplicator replicator2 = new TcpReplicator(map2,
+                     new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                     Collections.emptyMap(), BATCH_SIZE, compression);
+             TcpReplicator replicator1 = new TcpReplicator(map1, null,
+                     Collections.singletonMap((byte) 2, replicator2.localAddress()),
+                     BATCH_SIZE, compression)) {
+            while (replicator2.bytesReceived() == 0)
+                Thread.sleep(1);
+            long before = replicator1.bytesSent();
+            for (int i = 0; i < ENTRIES; i++) {
+                Arrays.fill(chars, 'x');
+                String digits = Integer.toString(i);
+                digits.getChars(0, digits.length(), chars, chars.length / 2);
+                map1.put(i, new String(chars));
+            }
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+            while (map2.size() < ENTRIES) {
+                if (System.nanoTime() > deadline)
+                    throw new IllegalStateException("replication timed out");
+                Thread.sleep(1);
+            }
+            return (double) (replicator1.bytesSent() - before) / ENTRIES;
+        }
+    }
+
+    private static ChronicleMap<Integer, String> createMap(int identifier) {
+        return ChronicleMap.of(Integer.class, String.class)
+                .entries(ENTRIES)
+                .averageValueSize(VALUE_SIZE)
+                .replication((byte) identifier)
+                .create();
+    }
+}
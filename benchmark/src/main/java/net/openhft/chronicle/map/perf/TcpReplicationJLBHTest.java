@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2020 chronicle.software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.map.perf;
+
+import net.openhft.chronicle.core.util.NanoSampler;
+import net.openhft.chronicle.jlbh.JLBH;
+import net.openhft.chronicle.jlbh.JLBHOptions;
+import net.openhft.chronicle.jlbh.JLBHTask;
+import net.openhft.chronicle.jlbh.TeamCityHelper;
+import net.openhft.chronicle.map.ChronicleMap;
+import net.openhft.chronicle.map.ChronicleMapBuilder;
+import net.openhft.chronicle.map.TcpReplicator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+/**
+ * Measures end-to-end replication latency between two {@code Long -> Long} maps, replicated with
+ * {@link TcpReplicator} over the loopback interface: the time from {@code put()} on the first node
+ * until the value is visible on the second one. Replicated entries per second are printed on
+ * completion. The batch size is set with {@code -DbatchSize}, 64 KiB by default.
+ */
+public class TcpReplicationJLBHTest implements JLBHTask {
+    private static final int WARM_UP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int KEYS = 100_000;
+    private static final int BATCH_SIZE = Integer.getInteger("batchSize", 64 << 10);
+    private ChronicleMap<Long, Long> map1;
+    private ChronicleMap<Long, Long> map2;
+    private TcpReplicator replicator1;
+    private TcpReplicator replicator2;
+    private NanoSampler putSampler;
+    private JLBH e2eSampler;
+    private long counter = 0;
+    private long startNanos;
+
+    public static void main(String[] args) {
+        JLBHOptions options = new JLBHOptions()
+                .warmUpIterations(WARM_UP_ITERATIONS)
+                .iterations(ITERATIONS)
+                .throughput(100_000)
+                .runs(3)
+                .recordOSJitter(false).accountForCoordinatedOmission(true)
+                .jlbhTask(new TcpReplicationJLBHTest());
+        new JLBH(options).start();
+    }
+
+    private static ChronicleMap<Long, Long> createMap(int identifier) {
+        return ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(KEYS)
+                .replication((byte) identifier)
+                .create();
+    }
+
+    @Override
+    public void init(JLBH jlbh) {
+        putSampler = jlbh.addProbe("Put");
+        e2eSampler = jlbh;
+        map1 = createMap(1);
+        map2 = createMap(2);
+        try {
+            replicator2 = new TcpReplicator(map2,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    Collections.emptyMap(), BATCH_SIZE);
+            replicator1 = new TcpReplicator(map1, null,
+                    Collections.singletonMap((byte) 2, replicator2.localAddress()), BATCH_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void run(long startTimeNS) {
+        long key = counter++ % KEYS;
+        long start = System.nanoTime();
+        map1.put(key, startTimeNS);
+        putSampler.sampleNanos(System.nanoTime() - start);
+        Long replicated;
+        do {
+            replicated = map2.get(key);
+        } while (replicated == null || replicated != startTimeNS);
+        e2eSampler.sampleNanos(System.nanoTime() - startTimeNS);
+    }
+
+    @Override
+    public void complete() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("Replicated %,d entries, %,.0f entries/sec%n",
+                replicator2.entriesReceived(), replicator2.entriesReceived() / seconds);
+        replicator1.close();
+        replicator2.close();
+        map1.close();
+        map2.close();
+        TeamCityHelper.teamCityStatsLastRun(getClass().getSimpleName(),
+                e2eSampler, ITERATIONS, System.out);
+    }
+}
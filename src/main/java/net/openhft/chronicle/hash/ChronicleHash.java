@@ -26,7 +26,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -78,6 +80,91 @@ public interface ChronicleHash<K, E extends HashEntry<K>, SC extends HashSegment
      */
     long longSize();
 
+    /**
+     * Returns the number of entries in this store, read in constant time from the striped
+     * off-heap counter, if it is {@linkplain ChronicleHashBuilder#maintainSizeCounter(boolean)
+     * maintained}. Otherwise this method is equivalent to {@link #longSize()}.
+     * <p>
+     * Unlike {@link #longSize()}, which sums the entry counts of every segment under segment
+     * locks, the counter is read without any locking, so the returned value may not reflect
+     * concurrent in-flight updates. Use {@code longSize()} when the exact size is required.
+     * <p>
+     * The default implementation returns {@link #longSize()}.
+     *
+     * @return the approximate number of entries in this store
+     */
+    default long approximateSize() {
+        return longSize();
+    }
+
+    /**
+     * Returns for how long the oldest change, which is not yet msync-ed by the background flusher,
+     * configured with {@link ChronicleHashBuilder#durabilityPolicy(DurabilityPolicy)}, has been
+     * pending, i. e. the age of the data that could be lost on power failure at the moment. The
+     * age is measured from the moment the flusher has detected the change, so it might be
+     * underestimated by the flusher's polling interval.
+     * <p>
+     * The default implementation returns -1.
+     *
+     * @param unit the unit of the returned lag
+     * @return the flush lag, 0 if all detected changes are flushed, or -1 if this store is not
+     * flushed in background
+     */
+    default long flushLag(TimeUnit unit) {
+        return -1;
+    }
+
+    /**
+     * Copies the data store of this persisted {@code ChronicleHash} to the given file, without
+     * stopping concurrent readers and writers. The file is copied segment by segment, holding the
+     * read lock of each segment only while its tiers are copied, so the snapshot is consistent
+     * within each segment, but not across segments. The resulting file could be opened directly
+     * with {@link ChronicleHashBuilder#createPersistedTo(File)} or {@link
+     * ChronicleHashBuilder#recoverPersistedTo(File, boolean)}. The latter also recomputes the
+     * {@linkplain #approximateSize() size counter}, which is copied as is and might not match
+     * the copied segments.
+     * <p>
+     * If {@code incremental} is {@code true} and the given file is a previous snapshot of this
+     * {@code ChronicleHash}, only the segments modified since that snapshot are copied.
+     * Otherwise, the file is overwritten with a full copy.
+     * <p>
+     * This method must not be called from a thread holding a context of this {@code
+     * ChronicleHash}.
+     *
+     * @param snapshotFile the file to copy the data store to
+     * @param incremental  whether to copy only the segments modified since the previous
+     *                     snapshot to the same file
+     * @throws IOException                   if an I/O error occurs while copying
+     * @throws IllegalStateException          if this {@code ChronicleHash} is not persisted
+     * @throws UnsupportedOperationException if not supported by the implementation, that is
+     *                                       always the case for implementations not overriding
+     *                                       this method
+     */
+    default void snapshotTo(@NotNull File snapshotFile, boolean incremental) throws IOException {
+        throw new UnsupportedOperationException(toIdentityString() + ": snapshots are not supported");
+    }
+
+    /**
+     * Moves entries from the extra tiers of each segment to the earlier tiers of the same segment,
+     * where they fit, and returns the emptied tiers to the pool of free tiers, so that they
+     * could be reused by any segment and don't count towards the {@linkplain
+     * ChronicleHashBuilder#maxBloatFactor(double) max bloat factor} anymore. Useful after a
+     * large number of entries is removed from a {@code ChronicleHash}, which went through
+     * several segment tier allocations.
+     * <p>
+     * Each segment is compacted holding its write lock, concurrent operations with other
+     * segments are not blocked. This method must not be called from a thread holding a context of
+     * this {@code ChronicleHash}.
+     *
+     * @return the number of reclaimed segment tiers
+     * @throws UnsupportedOperationException if this {@code ChronicleHash} is replicated, or if not
+     *                                       supported by the implementation, that is always the
+     *                                       case for implementations not overriding this method
+     */
+    default int compact() {
+        throw new UnsupportedOperationException(toIdentityString() + ": compaction is not supported");
+    }
+
     /**
      * Returns the amount of off-heap memory (in bytes), allocated by this {@code ChronicleHash} or shared with with other ChronicleHashes, persisting
      * to the same {@link #file()}.
@@ -176,6 +263,30 @@ public interface ChronicleHash<K, E extends HashEntry<K>, SC extends HashSegment
      */
     boolean forEachEntryWhile(Predicate<? super E> predicate);
 
+    /**
+     * Checks the given predicate on each entry in this {@code ChronicleHash}, like {@link
+     * #forEachEntryWhile(Predicate)}, but releases the lock of each segment after visiting about
+     * {@code batchSize} entries of the segment and acquires it again to continue, so that
+     * iteration over a big {@code ChronicleHash} doesn't block concurrent writers for long. See
+     * {@link HashSegmentContext#forEachSegmentEntryWhile(int, Predicate)} for the consistency
+     * guarantees of such iteration.
+     * <p>
+     * The default implementation ignores {@code batchSize}, other than checking it, and delegates
+     * to {@link #forEachEntryWhile(Predicate)}.
+     *
+     * @param batchSize the number of entries to visit per segment lock hold, should be positive
+     * @param predicate the predicate to be checked for each entry
+     * @return {@code true} if the predicate returned {@code true} for all entries of the {@code
+     * ChronicleHash}, {@code false} if it returned {@code false} for the entry
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    default boolean forEachEntryWhile(int batchSize, Predicate<? super E> predicate) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException(toIdentityString() +
+                    ": batchSize should be positive, " + batchSize + " given");
+        return forEachEntryWhile(predicate);
+    }
+
     /**
      * Performs the given action for each entry in this {@code ChronicleHash} until all entries have been processed or the action throws an {@code
      * Exception}. Exceptions thrown by the action are relayed to the caller.
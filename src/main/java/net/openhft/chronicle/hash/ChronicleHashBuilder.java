@@ -496,6 +496,126 @@ public interface ChronicleHashBuilder<K, H extends ChronicleHash<K, ?, ?, ?>,
      */
     B checksumEntries(boolean checksumEntries);
 
+    /**
+     * Configures whether hash containers, created by this builder, should maintain a striped
+     * off-heap entry counter, allowing {@link ChronicleHash#approximateSize()} to return in
+     * constant time instead of summing the entry counts of all segments and tiers. The counter
+     * is stored in the global mutable state area, so it is shared by all processes that access
+     * the same persisted file.
+     * <p>
+     * By default the counter is not maintained, and {@code approximateSize()} falls back to
+     * {@link ChronicleHash#longSize()}.
+     *
+     * @param maintainSizeCounter if the striped entry counter should be maintained
+     * @return this builder back
+     * @see ChronicleHash#approximateSize()
+     */
+    B maintainSizeCounter(boolean maintainSizeCounter);
+
+    /**
+     * Configures how often changes to {@linkplain #createPersistedTo(File) persisted} hash
+     * containers, created by this builder, should be msync-ed to disk by a background flusher
+     * thread. The flusher syncs only the tiers of the segments modified since the previous flush,
+     * so the data that could be lost on power failure is bounded, while writers never wait for
+     * msync.
+     * <p>
+     * This is a JVM-level configuration, each process accessing the same file may use its own
+     * policy. The policy has no effect on hash containers created in the process memory.
+     * <p>
+     * By default, {@link DurabilityPolicy#none()} is used.
+     *
+     * @param durabilityPolicy the background flushing policy
+     * @return this builder back
+     * @see ChronicleHash#flushLag(java.util.concurrent.TimeUnit)
+     */
+    B durabilityPolicy(@NotNull DurabilityPolicy durabilityPolicy);
+
+    /**
+     * Declares that hash containers, created by this builder, are accessed only from the current
+     * process. Threads waiting for segment locks are then parked in a FIFO queue of the segment
+     * and woken up by unlocks, instead of spinning, yielding and sleeping, as they have to do when
+     * the lock might be released by another process. This saves CPU and cuts the tail latencies of
+     * contended operations.
+     * <p>
+     * This is a JVM-level configuration. If a {@linkplain #createPersistedTo(File) persisted} hash
+     * container is declared process-private, but is accessed concurrently from another process,
+     * or from another instance in the same process, threads of this instance might wait for
+     * locks, released by the other accessors, until they time out.
+     * <p>
+     * By default, hash containers are not process-private.
+     *
+     * @param processPrivate {@code true} if hash containers are not shared between processes
+     * @return this builder back
+     */
+    B processPrivate(boolean processPrivate);
+
+    /**
+     * Configures whether hash containers, created by this builder, should record statistics of
+     * their segment locks: the number of acquisitions, the number of acquisitions which found the
+     * lock held, and the histogram of the time spent waiting for the contended ones. The
+     * statistics are exposed via {@code ChronicleMap.lockStats()} and the {@code
+     * net.openhft.chronicle.map:type=LockStats} MXBean, and help to find hot segments and to tune
+     * {@link #actualSegments(int)}.
+     * <p>
+     * This is a JVM-level configuration, the statistics are recorded only for the lock
+     * acquisitions in the current process. Uncontended acquisitions cost an extra atomic
+     * increment each.
+     * <p>
+     * By default, lock statistics are not recorded.
+     *
+     * @param lockStatistics if lock statistics should be recorded
+     * @return this builder back
+     */
+    B lockStatistics(boolean lockStatistics);
+
+    /**
+     * Configures the pages backing the memory of hash containers, created by this builder. Huge
+     * pages make random lookups in large hash containers cheaper, by reducing TLB misses.
+     * <p>
+     * This is a JVM-level configuration, each process accessing the same {@linkplain
+     * #createPersistedTo(File) persisted} file may map it with or without huge pages. {@link
+     * HugePages#EXPLICIT} huge pages are supported only for in-memory hash containers.
+     * <p>
+     * By default, {@link HugePages#NONE} is used.
+     *
+     * @param hugePages the pages to back the memory of hash containers with
+     * @return this builder back
+     */
+    B hugePages(@NotNull HugePages hugePages);
+
+    /**
+     * Configures the NUMA nodes on which the memory of in-memory hash containers, created by this
+     * builder, is allocated. Has no effect on persisted hash containers, and on systems with a
+     * single NUMA node.
+     * <p>
+     * By default, {@link NumaPolicy#DEFAULT} is used, the memory is allocated on the node of the
+     * thread which touches it first, i. e. mostly on the node of the thread creating the hash
+     * container.
+     *
+     * @param numaPolicy the NUMA memory policy
+     * @return this builder back
+     */
+    B numaPolicy(@NotNull NumaPolicy numaPolicy);
+
+    /**
+     * Configures the function to hash keys of hash containers, created by this builder. The
+     * function is stored in the header of {@linkplain #createPersistedTo(File) persisted} hash
+     * containers, so processes, opening an existing file, use the function it was created with.
+     * If a key hash function is configured explicitly, {@link #createPersistedTo(File)} and {@link
+     * #recoverPersistedTo(File, boolean)} fail with {@link IOException} (or {@link
+     * ChronicleHashRecoveryFailedException} during recovery), if the existing file was created with
+     * another function.
+     * <p>
+     * By default {@link KeyHashFunction#xxR39()} is used. {@link KeyHashFunction#longMixer()} is
+     * faster for fixed 8-byte keys, {@link KeyHashFunction#seededXxR39(long)} protects from
+     * collision flooding of a segment, if keys are supplied by untrusted parties.
+     *
+     * @param keyHashFunction the function to hash keys
+     * @return this builder back
+     * @see KeyHashFunction
+     */
+    B keyHashFunction(@NotNull KeyHashFunction keyHashFunction);
+
     /**
      * Creates a new hash container from this builder, storing it's data in off-heap memory, not
      * mapped to any file. On {@link ChronicleHash#close()} called on the returned container, or
@@ -49,6 +49,10 @@ public interface ChronicleHashBuilderPrivateAPI<K, RO> {
 
     boolean checksumEntries();
 
+    boolean maintainSizeCounter();
+
+    KeyHashFunction keyHashFunction();
+
     void replication(byte identifier);
 
     /**
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.hash;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines how often changes to a persisted {@link ChronicleHash} are msync-ed to disk by a
+ * background flusher thread, which bounds the data that could be lost on power failure or an OS
+ * crash without putting msync on the write path. Configured via {@link
+ * ChronicleHashBuilder#durabilityPolicy(DurabilityPolicy)}.
+ * <p>
+ * The flusher detects modified segments by polling the segment versions, which are incremented
+ * on each segment write lock, so it observes changes made by all processes accessing the same
+ * file, and syncs only the tiers of the modified segments.
+ *
+ * @see ChronicleHash#flushLag(TimeUnit)
+ */
+public final class DurabilityPolicy {
+
+    private static final DurabilityPolicy NONE = new DurabilityPolicy(0L, 0L);
+
+    private final long intervalNanos;
+    private final long writes;
+
+    private DurabilityPolicy(long intervalNanos, long writes) {
+        this.intervalNanos = intervalNanos;
+        this.writes = writes;
+    }
+
+    /**
+     * Returns the policy without a background flusher, changes reach the disk when the OS writes
+     * back dirty pages, or when {@code msync()} is called explicitly. This is the default.
+     *
+     * @return the policy which doesn't flush changes in background
+     */
+    public static DurabilityPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the policy which msyncs modified segments at most {@code interval} after they have
+     * been modified.
+     *
+     * @param interval the maximum time between a change and its flush
+     * @param unit     the unit of the {@code interval}
+     * @return the periodic flushing policy
+     */
+    public static DurabilityPolicy periodic(long interval, TimeUnit unit) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("interval should be positive, " + interval + " given");
+        return new DurabilityPolicy(unit.toNanos(interval), 0L);
+    }
+
+    /**
+     * Returns the policy which msyncs modified segments as soon as about {@code writes} writes
+     * have been performed since the last flush. Writes are counted as segment write lock
+     * acquisitions, sampled every millisecond, so the bound is approximate.
+     *
+     * @param writes the number of writes which triggers a flush
+     * @return the write count based flushing policy
+     */
+    public static DurabilityPolicy afterWrites(long writes) {
+        if (writes <= 0)
+            throw new IllegalArgumentException("writes should be positive, " + writes + " given");
+        return new DurabilityPolicy(0L, writes);
+    }
+
+    public boolean isNone() {
+        return this == NONE;
+    }
+
+    /**
+     * @return the flush interval in nanoseconds, or 0 if this policy is not periodic
+     */
+    public long intervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * @return the number of writes which triggers a flush, or 0 if this policy is not write count
+     * based
+     */
+    public long writes() {
+        return writes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof DurabilityPolicy))
+            return false;
+        DurabilityPolicy that = (DurabilityPolicy) o;
+        return intervalNanos == that.intervalNanos && writes == that.writes;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(intervalNanos) + Long.hashCode(writes);
+    }
+
+    @Override
+    public String toString() {
+        if (isNone())
+            return "DurabilityPolicy{none}";
+        if (intervalNanos > 0)
+            return "DurabilityPolicy{periodic=" + intervalNanos + "ns}";
+        return "DurabilityPolicy{afterWrites=" + writes + "}";
+    }
+}
@@ -50,6 +50,29 @@ public interface HashSegmentContext<K, E extends HashEntry<K>> extends HashConte
      */
     boolean forEachSegmentEntryWhile(Predicate<? super E> predicate);
 
+    /**
+     * Checks the given predicate on each <i>present</i> entry in this segment, like {@link
+     * #forEachSegmentEntryWhile(Predicate)}, but releases the segment lock after visiting about
+     * {@code batchSize} entries and acquires it again to continue, so that a long iteration
+     * doesn't block concurrent writers to this segment for the whole time.
+     * <p>
+     * The iteration is <i>weakly consistent</i>, like iteration over {@link
+     * java.util.concurrent.ConcurrentHashMap}: entries inserted or removed concurrently might be
+     * visited or not. Entries, moved concurrently to another tier of the segment (when their
+     * values grow, or by {@link ChronicleHash#compact()}), might be visited twice or not visited.
+     * Other entries are visited exactly once.
+     * <p>
+     * If the current thread already holds the lock of this segment in an outer context, the lock
+     * is not released between the batches.
+     *
+     * @param batchSize the number of entries to visit per segment lock hold, should be positive
+     * @param predicate the predicate to be checked for each entry in this segment
+     * @return {@code true} if the predicate returned {@code true} for all checked entries, {@code
+     * false} if it returned {@code false} for some entry
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    boolean forEachSegmentEntryWhile(int batchSize, Predicate<? super E> predicate);
+
     /**
      * Returns the number of <i>present</i> entries in this segment.
      */
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.hash;
+
+import java.io.File;
+
+/**
+ * Determines the pages backing the memory of a {@link ChronicleHash}, configured via {@link
+ * ChronicleHashBuilder#hugePages(HugePages)}. Random lookups across a large hash container touch
+ * many pages, so with regular 4 KiB pages they miss the TLB most of the time, huge pages cut the
+ * number of TLB entries needed to cover the container by a factor of 512.
+ */
+public enum HugePages {
+    /**
+     * Regular pages, the memory of in-memory hash containers is allocated with {@code malloc()}.
+     * This is the default.
+     */
+    NONE,
+
+    /**
+     * Transparent huge pages. Memory of in-memory hash containers, and mappings of {@linkplain
+     * ChronicleHashBuilder#createPersistedTo(File) persisted} ones, are aligned to the huge page
+     * size and advised to be backed by huge pages with {@code madvise(MADV_HUGEPAGE)}. Huge pages
+     * are used if transparent huge pages are enabled in {@code madvise} or {@code always} mode,
+     * for persisted containers the file should be on a DAX, or a {@code tmpfs} with huge pages
+     * enabled, file system.
+     */
+    TRANSPARENT,
+
+    /**
+     * Explicitly reserved huge pages, see {@code vm.nr_hugepages}. Only in-memory hash containers
+     * could be backed by explicit huge pages, creation fails with {@link OutOfMemoryError} if not
+     * enough huge pages are reserved.
+     */
+    EXPLICIT
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.hash;
+
+import net.openhft.chronicle.algo.bytes.ReadAccess;
+import net.openhft.chronicle.algo.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.serialization.impl.EnumMarshallable;
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+
+/**
+ * The function Chronicle Hash containers use to hash keys, choosing the segment and the position
+ * in the segment's hash lookup for each key. Configured via {@link
+ * ChronicleHashBuilder#keyHashFunction(KeyHashFunction)} and persisted in the header of the
+ * Chronicle Hash file, so that all processes accessing the file hash keys the same way.
+ * <p>
+ * The function must produce the same hash for a key, regardless of whether it is computed from a
+ * key object via {@link Data#hash(LongHashFunction)}, or from the serialized key bytes stored in
+ * the hash. All functions provided by this interface satisfy this requirement.
+ */
+public interface KeyHashFunction extends Marshallable {
+
+    /**
+     * Returns the default key hash function: xxHash r39 with zero seed, used by Chronicle Map
+     * since its first version.
+     *
+     * @return the default key hash function
+     */
+    static KeyHashFunction xxR39() {
+        return XxR39.INSTANCE;
+    }
+
+    /**
+     * Returns xxHash r39 with the given seed. Hashes of keys are hard to predict without knowing
+     * the seed, that protects a Chronicle Hash, keyed by untrusted input (e. g. strings received
+     * from network), from collision flooding of a single segment.
+     *
+     * @param seed the seed of the hash function
+     * @return seeded xxHash r39 key hash function
+     */
+    static KeyHashFunction seededXxR39(long seed) {
+        return new SeededXxR39(seed);
+    }
+
+    /**
+     * Returns xxHash r39 with a random seed, generated by {@link SecureRandom}. See {@link
+     * #seededXxR39(long)}. The seed is persisted in the Chronicle Hash header, so it remains the
+     * same for all processes accessing the Chronicle Hash file.
+     *
+     * @return xxHash r39 key hash function with a random seed
+     */
+    static KeyHashFunction randomlySeededXxR39() {
+        return seededXxR39(new SecureRandom().nextLong());
+    }
+
+    /**
+     * Returns a hash function that applies a single multiply-xorshift step to 8-byte keys, which
+     * is considerably cheaper than xxHash, but provides weaker mixing. Keys of any other size are
+     * hashed with {@link #xxR39()}. The function is intended for {@code Long}, {@code Double} and
+     * other fixed 8-byte keys, which are unlikely to be chosen adversarially.
+     *
+     * @return the multiply-xorshift key hash function
+     */
+    static KeyHashFunction longMixer() {
+        return LongMixer.INSTANCE;
+    }
+
+    /**
+     * Returns the {@code LongHashFunction}, applied to key {@link Data} and serialized key bytes.
+     *
+     * @return the hash function to apply to keys
+     */
+    LongHashFunction hashFunction();
+
+    final class XxR39 implements KeyHashFunction, EnumMarshallable<XxR39> {
+        public static final XxR39 INSTANCE = new XxR39();
+
+        private XxR39() {
+        }
+
+        @Override
+        public LongHashFunction hashFunction() {
+            return LongHashFunction.xx_r39();
+        }
+
+        @NotNull
+        @Override
+        public XxR39 readResolve() {
+            return INSTANCE;
+        }
+
+        @Override
+        public String toString() {
+            return "xxR39";
+        }
+    }
+
+    final class SeededXxR39 implements KeyHashFunction {
+
+        private long seed;
+        private transient LongHashFunction hashFunction;
+
+        SeededXxR39(long seed) {
+            this.seed = seed;
+            hashFunction = LongHashFunction.xx_r39(seed);
+        }
+
+        @Override
+        public LongHashFunction hashFunction() {
+            return hashFunction;
+        }
+
+        @Override
+        public void readMarshallable(@NotNull WireIn wire) {
+            seed = wire.read(() -> "seed").int64();
+            hashFunction = LongHashFunction.xx_r39(seed);
+        }
+
+        @Override
+        public void writeMarshallable(@NotNull WireOut wire) {
+            wire.write(() -> "seed").int64(seed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SeededXxR39 && ((SeededXxR39) o).seed == seed;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(seed);
+        }
+
+        @Override
+        public String toString() {
+            // don't reveal the seed in logs
+            return "seededXxR39";
+        }
+    }
+
+    final class LongMixer implements KeyHashFunction, EnumMarshallable<LongMixer> {
+        public static final LongMixer INSTANCE = new LongMixer();
+
+        private LongMixer() {
+        }
+
+        @Override
+        public LongHashFunction hashFunction() {
+            return LongMixerHashFunction.INSTANCE;
+        }
+
+        @NotNull
+        @Override
+        public LongMixer readResolve() {
+            return INSTANCE;
+        }
+
+        @Override
+        public String toString() {
+            return "longMixer";
+        }
+    }
+
+    /**
+     * Hashes 8-byte inputs with a multiply-xorshift step, delegates all other sizes to xxHash r39.
+     * {@link #hashLong(long)} and {@link #hash(Object, ReadAccess, long, long)} of the same value,
+     * written in the native byte order, must agree, because the former is used for {@code Long}
+     * key objects and the latter for serialized keys.
+     */
+    final class LongMixerHashFunction extends LongHashFunction {
+        static final LongMixerHashFunction INSTANCE = new LongMixerHashFunction();
+        private static final long serialVersionUID = 0L;
+        private static final LongHashFunction FALLBACK = LongHashFunction.xx_r39();
+        private static final long K = 0x9E3779B97F4A7C15L;
+
+        private LongMixerHashFunction() {
+        }
+
+        private static long mix(long x) {
+            long h = x * K;
+            // fold the well-mixed high bits to the low bits, which are used to choose the segment
+            return h ^ (h >>> 32);
+        }
+
+        @Override
+        public long hashLong(long input) {
+            return mix(input);
+        }
+
+        @Override
+        public long hashInt(int input) {
+            return FALLBACK.hashInt(input);
+        }
+
+        @Override
+        public long hashShort(short input) {
+            return FALLBACK.hashShort(input);
+        }
+
+        @Override
+        public long hashChar(char input) {
+            return FALLBACK.hashChar(input);
+        }
+
+        @Override
+        public long hashByte(byte input) {
+            return FALLBACK.hashByte(input);
+        }
+
+        @Override
+        public long hashVoid() {
+            return FALLBACK.hashVoid();
+        }
+
+        @Override
+        public <T> long hash(T input, ReadAccess<T> access, long off, long len) {
+            if (len == 8) {
+                long value = access.readLong(input, off);
+                if (access.byteOrder(input) != ByteOrder.nativeOrder())
+                    value = Long.reverseBytes(value);
+                return mix(value);
+            }
+            return FALLBACK.hash(input, access, off, len);
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+}
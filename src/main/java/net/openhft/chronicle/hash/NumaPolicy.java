@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.hash;
+
+/**
+ * Determines on which NUMA nodes the memory of an in-memory {@link ChronicleHash} is allocated,
+ * configured via {@link ChronicleHashBuilder#numaPolicy(NumaPolicy)}. NUMA policies have no effect
+ * on persisted hash containers, and on systems with a single NUMA node.
+ */
+public enum NumaPolicy {
+    /**
+     * The memory is allocated on the node of the thread, which touches it first. This is the
+     * default.
+     */
+    DEFAULT,
+
+    /**
+     * The memory is interleaved across all NUMA nodes page by page, so that no node becomes the
+     * bottleneck, when threads on all nodes access the hash container uniformly.
+     */
+    INTERLEAVE,
+
+    /**
+     * The first tier of each segment is allocated on a single node, segments are distributed
+     * across nodes round-robin: the segment {@code i} is allocated on the node {@code i % nodes}.
+     * This is useful, when threads, pinned to a node, access mostly the keys of the segments
+     * of that node. The headers and extra tiers of segments are interleaved across all nodes.
+     */
+    SEGMENT_LOCAL
+}
@@ -38,6 +38,11 @@ public final class BigSegmentHeader implements SegmentHeader {
     static final long LOWEST_POSSIBLY_FREE_CHUNK_OFFSET = ENTRIES_OFFSET + 4L;
     static final long NEXT_TIER_INDEX_OFFSET = LOWEST_POSSIBLY_FREE_CHUNK_OFFSET + 4L;
     static final long DELETED_OFFSET = NEXT_TIER_INDEX_OFFSET + 8L;
+    /**
+     * Seqlock-style version of the segment, odd while the segment is write-locked. Occupies the
+     * upper half of the 8 bytes reserved for the deleted entries count, which is 32-bit.
+     */
+    static final long VERSION_OFFSET = DELETED_OFFSET + 4L; // 32-bit
     private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
     /**
      * Make the LOCK constant and {@link #A} of final class types (instead of interfaces) as this
@@ -67,7 +72,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     private BigSegmentHeader() {
     }
 
-    private static InterProcessDeadLockException deadLock() {
+    static InterProcessDeadLockException deadLock() {
         return new InterProcessDeadLockException(
                 "Failed to acquire the lock in " + LOCK_TIMEOUT_SECONDS + " seconds.\n" +
                         "Possible reasons:\n" +
@@ -448,6 +453,38 @@ public final class BigSegmentHeader implements SegmentHeader {
         OS.memory().writeLong(address + NEXT_TIER_INDEX_OFFSET, nextTierIndex);
     }
 
+    private static void beginWrite(final long address) {
+        final long versionAddress = address + VERSION_OFFSET;
+        OS.memory().writeInt(versionAddress, OS.memory().readInt(versionAddress) + 1);
+        // the odd version should be visible before any of the segment data is changed
+        OS.memory().storeFence();
+    }
+
+    private static void endWrite(final long address) {
+        final long versionAddress = address + VERSION_OFFSET;
+        OS.memory().writeOrderedInt(versionAddress, OS.memory().readInt(versionAddress) + 1);
+    }
+
+    private static boolean beginWriteIfLocked(final long address, final boolean locked) {
+        if (locked)
+            beginWrite(address);
+        return locked;
+    }
+
+    @Override
+    public int version(final long address) {
+        assert SKIP_ASSERTIONS || assertAddress(address);
+        return OS.memory().readVolatileInt(address + VERSION_OFFSET);
+    }
+
+    @Override
+    public boolean validateVersion(final long address, final int version) {
+        assert SKIP_ASSERTIONS || assertAddress(address);
+        // reads of the segment data shouldn't be reordered with the version check
+        OS.memory().loadFence();
+        return OS.memory().readVolatileInt(address + VERSION_OFFSET) == version;
+    }
+
     @Override
     public void readLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
@@ -490,7 +527,8 @@ public final class BigSegmentHeader implements SegmentHeader {
     @Override
     public boolean tryUpgradeReadToWriteLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
-        return LOCK.tryUpgradeReadToWriteLock(A, null, address + LOCK_OFFSET);
+        return beginWriteIfLocked(address,
+                LOCK.tryUpgradeReadToWriteLock(A, null, address + LOCK_OFFSET));
     }
 
     @Override
@@ -532,6 +570,7 @@ public final class BigSegmentHeader implements SegmentHeader {
         try {
             if (!innerTryWriteLock(address, LOCK_TIMEOUT_SECONDS, SECONDS, false))
                 throw deadLock();
+            beginWrite(address);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new AssertionError(e);
@@ -541,15 +580,16 @@ public final class BigSegmentHeader implements SegmentHeader {
     @Override
     public void writeLockInterruptibly(final long address) throws InterruptedException {
         assert SKIP_ASSERTIONS || assertAddress(address);
-        if (!tryWriteLock(address, LOCK_TIMEOUT_SECONDS, SECONDS))
+        if (!innerTryWriteLock(address, LOCK_TIMEOUT_SECONDS, SECONDS, true))
             throw deadLock();
+        beginWrite(address);
     }
 
     @Override
     public boolean tryWriteLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
         assert address % 4 == 0;
-        return LOCK.tryWriteLock(A, null, address + LOCK_OFFSET);
+        return beginWriteIfLocked(address, LOCK.tryWriteLock(A, null, address + LOCK_OFFSET));
     }
 
     @Override
@@ -557,7 +597,7 @@ public final class BigSegmentHeader implements SegmentHeader {
                                 final long time,
                                 final TimeUnit unit) throws InterruptedException {
         assert SKIP_ASSERTIONS || assertAddress(address);
-        return innerTryWriteLock(address, time, unit, true);
+        return beginWriteIfLocked(address, innerTryWriteLock(address, time, unit, true));
     }
 
     @Override
@@ -566,6 +606,7 @@ public final class BigSegmentHeader implements SegmentHeader {
         try {
             if (!innerTryUpgradeUpdateToWriteLock(address, LOCK_TIMEOUT_SECONDS, SECONDS, false))
                 throw deadLock();
+            beginWrite(address);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new AssertionError(e);
@@ -575,14 +616,16 @@ public final class BigSegmentHeader implements SegmentHeader {
     @Override
     public void upgradeUpdateToWriteLockInterruptibly(final long address) throws InterruptedException {
         assert SKIP_ASSERTIONS || assertAddress(address);
-        if (!tryUpgradeUpdateToWriteLock(address, LOCK_TIMEOUT_SECONDS, SECONDS))
+        if (!innerTryUpgradeUpdateToWriteLock(address, LOCK_TIMEOUT_SECONDS, SECONDS, true))
             throw deadLock();
+        beginWrite(address);
     }
 
     @Override
     public boolean tryUpgradeUpdateToWriteLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
-        return LOCK.tryUpgradeUpdateToWriteLock(A, null, address + LOCK_OFFSET);
+        return beginWriteIfLocked(address,
+                LOCK.tryUpgradeUpdateToWriteLock(A, null, address + LOCK_OFFSET));
     }
 
     @Override
@@ -590,7 +633,8 @@ public final class BigSegmentHeader implements SegmentHeader {
                                                final long time,
                                                final TimeUnit unit) throws InterruptedException {
         assert SKIP_ASSERTIONS || assertAddress(address);
-        return innerTryUpgradeUpdateToWriteLock(address, time, unit, true);
+        return beginWriteIfLocked(address,
+                innerTryUpgradeUpdateToWriteLock(address, time, unit, true));
     }
 
     @Override
@@ -614,24 +658,30 @@ public final class BigSegmentHeader implements SegmentHeader {
     @Override
     public void writeUnlock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
+        endWrite(address);
         LOCK.writeUnlock(A, null, address + LOCK_OFFSET);
     }
 
     @Override
     public void downgradeWriteToUpdateLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
+        endWrite(address);
         LOCK.downgradeWriteToUpdateLock(A, null, address + LOCK_OFFSET);
     }
 
     @Override
     public void downgradeWriteToReadLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
+        endWrite(address);
         LOCK.downgradeWriteToReadLock(A, null, address + LOCK_OFFSET);
     }
 
     @Override
     public void resetLock(final long address) {
         assert SKIP_ASSERTIONS || assertAddress(address);
+        // the previous holder of the write lock might have died without ending the write
+        if ((OS.memory().readInt(address + VERSION_OFFSET) & 1) != 0)
+            endWrite(address);
         LOCK.reset(A, null, address + LOCK_OFFSET);
     }
 
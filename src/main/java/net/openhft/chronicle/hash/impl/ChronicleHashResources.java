@@ -108,6 +108,18 @@ public abstract class ChronicleHashResources implements Runnable {
         }
     }
 
+    final void addMappedMemoryResource(final long address,
+                                       final long size) {
+        assert SKIP_ASSERTIONS || assertAddress(address);
+        assert SKIP_ASSERTIONS || assertPosition(size);
+        checkOpen();
+
+        synchronized (this) {
+            checkOpen();
+            memoryResources.add(new MemoryResource(address, size, true));
+        }
+    }
+
     final void addCloseable(Closeable closeable) {
         checkOpen();
 
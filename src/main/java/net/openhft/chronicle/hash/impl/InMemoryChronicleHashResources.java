@@ -17,6 +17,7 @@
 package net.openhft.chronicle.hash.impl;
 
 import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMemory;
 
 import static net.openhft.chronicle.assertions.AssertUtil.SKIP_ASSERTIONS;
 import static net.openhft.chronicle.map.internal.InternalAssertUtil.assertAddress;
@@ -27,6 +28,10 @@ public final class InMemoryChronicleHashResources extends ChronicleHashResources
     void releaseMemoryResource(final MemoryResource allocation) {
         assert SKIP_ASSERTIONS || assertAddress(allocation.address);
         assert SKIP_ASSERTIONS || assertPosition(allocation.size);
-        OS.memory().freeMemory(allocation.address, allocation.size);
+        if (allocation.mapped) {
+            PosixMemory.unmap(allocation.address, allocation.size);
+        } else {
+            OS.memory().freeMemory(allocation.address, allocation.size);
+        }
     }
 }
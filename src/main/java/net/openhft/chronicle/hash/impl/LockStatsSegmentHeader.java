@@ -0,0 +1,400 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static net.openhft.chronicle.assertions.AssertUtil.SKIP_ASSERTIONS;
+import static net.openhft.chronicle.map.internal.InternalAssertUtil.assertAddress;
+
+/**
+ * {@link SegmentHeader}, which counts lock acquisitions of each segment, and measures the time
+ * spent waiting for the contended ones. Only the acquisitions, which didn't succeed on the first
+ * attempt, are timed, so the uncontended path costs a single atomic increment.
+ * <p>
+ * Wait times are recorded to a histogram with power-of-two nanosecond buckets: the bucket {@code
+ * i} counts waits shorter than 2<sup>i</sup> ns, but not shorter than 2<sup>i - 1</sup> ns, the
+ * last bucket counts all longer waits.
+ * <p>
+ * The statistics are process-local and kept on heap, segments are spaced apart in the array of
+ * counters, so the counters of different segments don't share cache lines.
+ */
+public final class LockStatsSegmentHeader implements SegmentHeader {
+    public static final int WAIT_HISTOGRAM_BUCKETS = 41;
+
+    private static final int ACQUISITIONS = 0;
+    private static final int CONTENDED_ACQUISITIONS = 1;
+    private static final int TOTAL_WAIT_NANOS = 2;
+    private static final int MAX_WAIT_NANOS = 3;
+    private static final int WAIT_HISTOGRAM = 4;
+    /**
+     * A multiple of 8 longs, i. e. of 64-byte cache lines
+     */
+    private static final int SEGMENT_STRIDE = 48;
+
+    private final SegmentHeader delegate;
+    /**
+     * Non-null if the delegate is a {@link ParkingSegmentHeader}, which first attempts must not
+     * let threads in ahead of queued ones
+     */
+    private final ParkingSegmentHeader parking;
+    private final long firstSegmentHeaderAddress;
+    private final int segmentHeaderSize;
+    private final int segments;
+    private final AtomicLongArray stats;
+
+    public LockStatsSegmentHeader(final SegmentHeader delegate,
+                                  final long firstSegmentHeaderAddress,
+                                  final int segmentHeaderSize,
+                                  final int segments) {
+        this.delegate = delegate;
+        parking = delegate instanceof ParkingSegmentHeader ? (ParkingSegmentHeader) delegate : null;
+        this.firstSegmentHeaderAddress = firstSegmentHeaderAddress;
+        this.segmentHeaderSize = segmentHeaderSize;
+        this.segments = segments;
+        stats = new AtomicLongArray(segments * SEGMENT_STRIDE);
+    }
+
+    static int waitHistogramBucket(final long waitNanos) {
+        return Math.min(64 - Long.numberOfLeadingZeros(waitNanos), WAIT_HISTOGRAM_BUCKETS - 1);
+    }
+
+    private int statsOffset(final long address) {
+        assert SKIP_ASSERTIONS || assertAddress(address);
+        return (int) ((address - firstSegmentHeaderAddress) / segmentHeaderSize) * SEGMENT_STRIDE;
+    }
+
+    private boolean acquired(final long address, final boolean acquired) {
+        final int offset = statsOffset(address);
+        stats.getAndIncrement(offset + (acquired ? ACQUISITIONS : CONTENDED_ACQUISITIONS));
+        return acquired;
+    }
+
+    private boolean acquiredAfterWait(final long address,
+                                      final long waitStart,
+                                      final boolean acquired) {
+        if (acquired) {
+            final long waitNanos = Math.max(System.nanoTime() - waitStart, 0L);
+            final int offset = statsOffset(address);
+            stats.getAndIncrement(offset + ACQUISITIONS);
+            stats.getAndAdd(offset + TOTAL_WAIT_NANOS, waitNanos);
+            stats.getAndIncrement(offset + WAIT_HISTOGRAM + waitHistogramBucket(waitNanos));
+            long maxWaitNanos;
+            while (waitNanos > (maxWaitNanos = stats.get(offset + MAX_WAIT_NANOS)) &&
+                    !stats.compareAndSet(offset + MAX_WAIT_NANOS, maxWaitNanos, waitNanos)) {
+                // retry
+            }
+        }
+        return acquired;
+    }
+
+    private boolean tryReadLockFirst(final long address) {
+        return parking != null ? parking.tryReadLockIfNotQueued(address) :
+                delegate.tryReadLock(address);
+    }
+
+    private boolean tryUpdateLockFirst(final long address) {
+        return parking != null ? parking.tryUpdateLockIfNotQueued(address) :
+                delegate.tryUpdateLock(address);
+    }
+
+    private boolean tryWriteLockFirst(final long address) {
+        return parking != null ? parking.tryWriteLockIfNotQueued(address) :
+                delegate.tryWriteLock(address);
+    }
+
+    public int segments() {
+        return segments;
+    }
+
+    public long acquisitions(final int segmentIndex) {
+        return stats.get(segmentIndex * SEGMENT_STRIDE + ACQUISITIONS);
+    }
+
+    /**
+     * Returns the number of lock acquisitions and attempts, which failed the first attempt, i. e.
+     * the number of times the lock of the segment was found held by another thread or process.
+     */
+    public long contendedAcquisitions(final int segmentIndex) {
+        return stats.get(segmentIndex * SEGMENT_STRIDE + CONTENDED_ACQUISITIONS);
+    }
+
+    public long totalWaitNanos(final int segmentIndex) {
+        return stats.get(segmentIndex * SEGMENT_STRIDE + TOTAL_WAIT_NANOS);
+    }
+
+    public long maxWaitNanos(final int segmentIndex) {
+        return stats.get(segmentIndex * SEGMENT_STRIDE + MAX_WAIT_NANOS);
+    }
+
+    public long[] waitHistogram(final int segmentIndex) {
+        final long[] histogram = new long[WAIT_HISTOGRAM_BUCKETS];
+        final int offset = segmentIndex * SEGMENT_STRIDE + WAIT_HISTOGRAM;
+        for (int i = 0; i < WAIT_HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = stats.get(offset + i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Zeroes out the statistics of all segments. Acquisitions concurrent with this call might be
+     * recorded partially.
+     */
+    public void resetStats() {
+        for (int i = 0; i < stats.length(); i++) {
+            stats.set(i, 0L);
+        }
+    }
+
+    @Override
+    public long entries(final long address) {
+        return delegate.entries(address);
+    }
+
+    @Override
+    public void entries(final long address, final long size) {
+        delegate.entries(address, size);
+    }
+
+    @Override
+    public long deleted(final long address) {
+        return delegate.deleted(address);
+    }
+
+    @Override
+    public void deleted(final long address, final long deleted) {
+        delegate.deleted(address, deleted);
+    }
+
+    @Override
+    public long lowestPossiblyFreeChunk(final long address) {
+        return delegate.lowestPossiblyFreeChunk(address);
+    }
+
+    @Override
+    public void lowestPossiblyFreeChunk(final long address, final long lowestPossiblyFreeChunk) {
+        delegate.lowestPossiblyFreeChunk(address, lowestPossiblyFreeChunk);
+    }
+
+    @Override
+    public long nextTierIndex(final long address) {
+        return delegate.nextTierIndex(address);
+    }
+
+    @Override
+    public void nextTierIndex(final long address, final long nextTierIndex) {
+        delegate.nextTierIndex(address, nextTierIndex);
+    }
+
+    @Override
+    public int version(final long address) {
+        return delegate.version(address);
+    }
+
+    @Override
+    public boolean validateVersion(final long address, final int version) {
+        return delegate.validateVersion(address, version);
+    }
+
+    @Override
+    public void readLock(final long address) {
+        if (acquired(address, tryReadLockFirst(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.readLock(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public void readLockInterruptibly(final long address) throws InterruptedException {
+        if (acquired(address, tryReadLockFirst(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.readLockInterruptibly(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public boolean tryReadLock(final long address) {
+        return acquired(address, delegate.tryReadLock(address));
+    }
+
+    @Override
+    public boolean tryReadLock(final long address, final long time, final TimeUnit unit)
+            throws InterruptedException {
+        return acquired(address, tryReadLockFirst(address)) ||
+                acquiredAfterWait(address, System.nanoTime(),
+                        delegate.tryReadLock(address, time, unit));
+    }
+
+    @Override
+    public void updateLock(final long address) {
+        if (acquired(address, tryUpdateLockFirst(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.updateLock(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public void updateLockInterruptibly(final long address) throws InterruptedException {
+        if (acquired(address, tryUpdateLockFirst(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.updateLockInterruptibly(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public boolean tryUpdateLock(final long address) {
+        return acquired(address, delegate.tryUpdateLock(address));
+    }
+
+    @Override
+    public boolean tryUpdateLock(final long address, final long time, final TimeUnit unit)
+            throws InterruptedException {
+        return acquired(address, tryUpdateLockFirst(address)) ||
+                acquiredAfterWait(address, System.nanoTime(),
+                        delegate.tryUpdateLock(address, time, unit));
+    }
+
+    @Override
+    public void writeLock(final long address) {
+        if (acquired(address, tryWriteLockFirst(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.writeLock(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public void writeLockInterruptibly(final long address) throws InterruptedException {
+        if (acquired(address, tryWriteLockFirst(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.writeLockInterruptibly(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public boolean tryWriteLock(final long address) {
+        return acquired(address, delegate.tryWriteLock(address));
+    }
+
+    @Override
+    public boolean tryWriteLock(final long address, final long time, final TimeUnit unit)
+            throws InterruptedException {
+        return acquired(address, tryWriteLockFirst(address)) ||
+                acquiredAfterWait(address, System.nanoTime(),
+                        delegate.tryWriteLock(address, time, unit));
+    }
+
+    @Override
+    public boolean tryUpgradeReadToUpdateLock(final long address) {
+        return acquired(address, delegate.tryUpgradeReadToUpdateLock(address));
+    }
+
+    @Override
+    public boolean tryUpgradeReadToWriteLock(final long address) {
+        return acquired(address, delegate.tryUpgradeReadToWriteLock(address));
+    }
+
+    @Override
+    public void upgradeUpdateToWriteLock(final long address) {
+        if (acquired(address, delegate.tryUpgradeUpdateToWriteLock(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.upgradeUpdateToWriteLock(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public void upgradeUpdateToWriteLockInterruptibly(final long address)
+            throws InterruptedException {
+        if (acquired(address, delegate.tryUpgradeUpdateToWriteLock(address)))
+            return;
+        final long waitStart = System.nanoTime();
+        delegate.upgradeUpdateToWriteLockInterruptibly(address);
+        acquiredAfterWait(address, waitStart, true);
+    }
+
+    @Override
+    public boolean tryUpgradeUpdateToWriteLock(final long address) {
+        return acquired(address, delegate.tryUpgradeUpdateToWriteLock(address));
+    }
+
+    @Override
+    public boolean tryUpgradeUpdateToWriteLock(final long address,
+                                               final long time,
+                                               final TimeUnit unit)
+            throws InterruptedException {
+        return acquired(address, delegate.tryUpgradeUpdateToWriteLock(address)) ||
+                acquiredAfterWait(address, System.nanoTime(),
+                        delegate.tryUpgradeUpdateToWriteLock(address, time, unit));
+    }
+
+    @Override
+    public void readUnlock(final long address) {
+        delegate.readUnlock(address);
+    }
+
+    @Override
+    public void updateUnlock(final long address) {
+        delegate.updateUnlock(address);
+    }
+
+    @Override
+    public void downgradeUpdateToReadLock(final long address) {
+        delegate.downgradeUpdateToReadLock(address);
+    }
+
+    @Override
+    public void writeUnlock(final long address) {
+        delegate.writeUnlock(address);
+    }
+
+    @Override
+    public void downgradeWriteToUpdateLock(final long address) {
+        delegate.downgradeWriteToUpdateLock(address);
+    }
+
+    @Override
+    public void downgradeWriteToReadLock(final long address) {
+        delegate.downgradeWriteToReadLock(address);
+    }
+
+    @Override
+    public void resetLock(final long address) {
+        delegate.resetLock(address);
+    }
+
+    @Override
+    public long resetLockState() {
+        return delegate.resetLockState();
+    }
+
+    @Override
+    public long getLockState(final long address) {
+        return delegate.getLockState(address);
+    }
+
+    @Override
+    public String lockStateToString(final long lockState) {
+        return delegate.lockStateToString(lockState);
+    }
+}
@@ -23,11 +23,21 @@ import static net.openhft.chronicle.map.internal.InternalAssertUtil.assertPositi
 final class MemoryResource {
     final long address;
     final long size;
+    /**
+     * If the memory of an in-memory store is an anonymous mapping, rather than allocated with
+     * {@code malloc()}
+     */
+    final boolean mapped;
 
     MemoryResource(final long address, final long size) {
+        this(address, size, false);
+    }
+
+    MemoryResource(final long address, final long size, final boolean mapped) {
         assert SKIP_ASSERTIONS || assertAddress(address);
         assert SKIP_ASSERTIONS || assertPosition(size);
         this.address = address;
         this.size = size;
+        this.mapped = mapped;
     }
 }
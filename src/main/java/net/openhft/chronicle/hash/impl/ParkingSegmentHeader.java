@@ -0,0 +1,442 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.openhft.chronicle.assertions.AssertUtil.SKIP_ASSERTIONS;
+import static net.openhft.chronicle.map.internal.InternalAssertUtil.assertAddress;
+
+/**
+ * {@link SegmentHeader} of the stores, which are not shared between processes. The lock word in
+ * the segment header is still the source of truth, so the lock state, segment versions and
+ * recovery work the same way as with {@link BigSegmentHeader}, but a thread which fails to acquire
+ * a lock is parked in the FIFO queue of the segment, until it is woken up by an unlock, instead of
+ * spinning, yielding and sleeping. Threads are served in the arrival order, a lock is not granted
+ * to a newly arrived thread while other threads are queued for the segment.
+ * <p>
+ * Unlocks update the lock word with CAS, that orders them with the subsequent check of the queue,
+ * so a thread parked after a failed attempt to acquire a lock is always woken up.
+ */
+public final class ParkingSegmentHeader implements SegmentHeader {
+    private static final BigSegmentHeader H = BigSegmentHeader.INSTANCE;
+    private static final int READ = 0;
+    private static final int UPDATE = 1;
+    private static final int WRITE = 2;
+
+    private final long firstSegmentHeaderAddress;
+    private final int segmentHeaderSize;
+    private final SegmentQueue[] queues;
+
+    public ParkingSegmentHeader(final long firstSegmentHeaderAddress,
+                                final int segmentHeaderSize,
+                                final int segments) {
+        this.firstSegmentHeaderAddress = firstSegmentHeaderAddress;
+        this.segmentHeaderSize = segmentHeaderSize;
+        queues = new SegmentQueue[segments];
+        for (int i = 0; i < segments; i++) {
+            queues[i] = new SegmentQueue(firstSegmentHeaderAddress + ((long) i) * segmentHeaderSize);
+        }
+    }
+
+    private SegmentQueue queue(final long address) {
+        assert SKIP_ASSERTIONS || assertAddress(address);
+        return queues[(int) ((address - firstSegmentHeaderAddress) / segmentHeaderSize)];
+    }
+
+    private static boolean tryAcquire(final SegmentQueue queue, final int mode, final long nanos)
+            throws InterruptedException {
+        if (mode == READ) {
+            return queue.tryAcquireSharedNanos(READ, nanos);
+        } else {
+            return queue.tryAcquireNanos(mode, nanos);
+        }
+    }
+
+    private static boolean tryAcquire(final SegmentQueue queue,
+                                      final int mode,
+                                      final long time,
+                                      final TimeUnit unit,
+                                      final boolean interruptible) throws InterruptedException {
+        if (queue.tryAcquireIfNotQueued(mode))
+            return true;
+        if (interruptible)
+            return tryAcquire(queue, mode, unit.toNanos(time));
+        final long deadline = System.nanoTime() + unit.toNanos(time);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return tryAcquire(queue, mode, deadline - System.nanoTime());
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void acquire(final SegmentQueue queue, final int mode) {
+        try {
+            if (!tryAcquire(queue, mode, BigSegmentHeader.LOCK_TIMEOUT_SECONDS, SECONDS, false))
+                throw BigSegmentHeader.deadLock();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void acquireInterruptibly(final SegmentQueue queue, final int mode)
+            throws InterruptedException {
+        if (!tryAcquire(queue, mode, BigSegmentHeader.LOCK_TIMEOUT_SECONDS, SECONDS, true))
+            throw BigSegmentHeader.deadLock();
+    }
+
+    /**
+     * The update lock holder doesn't queue for the upgrade, because the threads queued before it
+     * might wait for the update lock, it waits only for the read lock holders to leave. New
+     * readers are not let in meanwhile.
+     */
+    private static boolean tryUpgradeUpdateToWriteLock(final SegmentQueue queue,
+                                                       final long time,
+                                                       final TimeUnit unit,
+                                                       final boolean interruptible)
+            throws InterruptedException {
+        if (H.tryUpgradeUpdateToWriteLock(queue.address))
+            return true;
+        final long deadline = System.nanoTime() + unit.toNanos(time);
+        boolean upgraded = false;
+        boolean interrupted = false;
+        queue.upgrader = Thread.currentThread();
+        try {
+            while (!(upgraded = H.tryUpgradeUpdateToWriteLock(queue.address))) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                LockSupport.parkNanos(queue, remaining);
+                if (Thread.interrupted()) {
+                    if (interruptible)
+                        throw new InterruptedException();
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            queue.upgrader = null;
+            // let in the readers, held back while the upgrade was pending
+            if (!upgraded)
+                queue.release(0);
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tries to acquire the read lock the same way as the first attempt of {@link #readLock(long)},
+     * i. e. doesn't let the calling thread in if other threads are queued for the segment.
+     */
+    boolean tryReadLockIfNotQueued(final long address) {
+        return queue(address).tryAcquireIfNotQueued(READ);
+    }
+
+    /**
+     * The update lock counterpart of {@link #tryReadLockIfNotQueued(long)}
+     */
+    boolean tryUpdateLockIfNotQueued(final long address) {
+        return queue(address).tryAcquireIfNotQueued(UPDATE);
+    }
+
+    /**
+     * The write lock counterpart of {@link #tryReadLockIfNotQueued(long)}
+     */
+    boolean tryWriteLockIfNotQueued(final long address) {
+        return queue(address).tryAcquireIfNotQueued(WRITE);
+    }
+
+    @Override
+    public long entries(final long address) {
+        return H.entries(address);
+    }
+
+    @Override
+    public void entries(final long address, final long size) {
+        H.entries(address, size);
+    }
+
+    @Override
+    public long deleted(final long address) {
+        return H.deleted(address);
+    }
+
+    @Override
+    public void deleted(final long address, final long deleted) {
+        H.deleted(address, deleted);
+    }
+
+    @Override
+    public long lowestPossiblyFreeChunk(final long address) {
+        return H.lowestPossiblyFreeChunk(address);
+    }
+
+    @Override
+    public void lowestPossiblyFreeChunk(final long address, final long lowestPossiblyFreeChunk) {
+        H.lowestPossiblyFreeChunk(address, lowestPossiblyFreeChunk);
+    }
+
+    @Override
+    public long nextTierIndex(final long address) {
+        return H.nextTierIndex(address);
+    }
+
+    @Override
+    public void nextTierIndex(final long address, final long nextTierIndex) {
+        H.nextTierIndex(address, nextTierIndex);
+    }
+
+    @Override
+    public int version(final long address) {
+        return H.version(address);
+    }
+
+    @Override
+    public boolean validateVersion(final long address, final int version) {
+        return H.validateVersion(address, version);
+    }
+
+    @Override
+    public void readLock(final long address) {
+        acquire(queue(address), READ);
+    }
+
+    @Override
+    public void readLockInterruptibly(final long address) throws InterruptedException {
+        acquireInterruptibly(queue(address), READ);
+    }
+
+    @Override
+    public boolean tryReadLock(final long address) {
+        return H.tryReadLock(address);
+    }
+
+    @Override
+    public boolean tryReadLock(final long address, final long time, final TimeUnit unit)
+            throws InterruptedException {
+        return tryAcquire(queue(address), READ, time, unit, true);
+    }
+
+    @Override
+    public void updateLock(final long address) {
+        acquire(queue(address), UPDATE);
+    }
+
+    @Override
+    public void updateLockInterruptibly(final long address) throws InterruptedException {
+        acquireInterruptibly(queue(address), UPDATE);
+    }
+
+    @Override
+    public boolean tryUpdateLock(final long address) {
+        return H.tryUpdateLock(address);
+    }
+
+    @Override
+    public boolean tryUpdateLock(final long address, final long time, final TimeUnit unit)
+            throws InterruptedException {
+        return tryAcquire(queue(address), UPDATE, time, unit, true);
+    }
+
+    @Override
+    public void writeLock(final long address) {
+        acquire(queue(address), WRITE);
+    }
+
+    @Override
+    public void writeLockInterruptibly(final long address) throws InterruptedException {
+        acquireInterruptibly(queue(address), WRITE);
+    }
+
+    @Override
+    public boolean tryWriteLock(final long address) {
+        return H.tryWriteLock(address);
+    }
+
+    @Override
+    public boolean tryWriteLock(final long address, final long time, final TimeUnit unit)
+            throws InterruptedException {
+        return tryAcquire(queue(address), WRITE, time, unit, true);
+    }
+
+    @Override
+    public boolean tryUpgradeReadToUpdateLock(final long address) {
+        return H.tryUpgradeReadToUpdateLock(address);
+    }
+
+    @Override
+    public boolean tryUpgradeReadToWriteLock(final long address) {
+        return H.tryUpgradeReadToWriteLock(address);
+    }
+
+    @Override
+    public void upgradeUpdateToWriteLock(final long address) {
+        try {
+            if (!tryUpgradeUpdateToWriteLock(queue(address),
+                    BigSegmentHeader.LOCK_TIMEOUT_SECONDS, SECONDS, false))
+                throw BigSegmentHeader.deadLock();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public void upgradeUpdateToWriteLockInterruptibly(final long address)
+            throws InterruptedException {
+        if (!tryUpgradeUpdateToWriteLock(queue(address),
+                BigSegmentHeader.LOCK_TIMEOUT_SECONDS, SECONDS, true))
+            throw BigSegmentHeader.deadLock();
+    }
+
+    @Override
+    public boolean tryUpgradeUpdateToWriteLock(final long address) {
+        return H.tryUpgradeUpdateToWriteLock(address);
+    }
+
+    @Override
+    public boolean tryUpgradeUpdateToWriteLock(final long address,
+                                               final long time,
+                                               final TimeUnit unit)
+            throws InterruptedException {
+        return tryUpgradeUpdateToWriteLock(queue(address), time, unit, true);
+    }
+
+    @Override
+    public void readUnlock(final long address) {
+        H.readUnlock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public void updateUnlock(final long address) {
+        H.updateUnlock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public void downgradeUpdateToReadLock(final long address) {
+        H.downgradeUpdateToReadLock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public void writeUnlock(final long address) {
+        H.writeUnlock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public void downgradeWriteToUpdateLock(final long address) {
+        H.downgradeWriteToUpdateLock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public void downgradeWriteToReadLock(final long address) {
+        H.downgradeWriteToReadLock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public void resetLock(final long address) {
+        H.resetLock(address);
+        queue(address).wakeUp();
+    }
+
+    @Override
+    public long resetLockState() {
+        return H.resetLockState();
+    }
+
+    @Override
+    public long getLockState(final long address) {
+        return H.getLockState(address);
+    }
+
+    @Override
+    public String lockStateToString(final long lockState) {
+        return H.lockStateToString(lockState);
+    }
+
+    /**
+     * The queue of the threads waiting for the segment lock. The synchronizer state is not used,
+     * acquire attempts go to the lock word, and releases only wake up the first queued thread.
+     */
+    private static final class SegmentQueue extends AbstractQueuedSynchronizer {
+        private static final long serialVersionUID = 0L;
+
+        final long address;
+        /**
+         * The update lock holder, waiting for the read lock holders to upgrade to the write lock
+         */
+        volatile Thread upgrader;
+
+        SegmentQueue(final long address) {
+            this.address = address;
+        }
+
+        boolean tryAcquireIfNotQueued(final int mode) {
+            return !hasQueuedThreads() && tryLock(mode);
+        }
+
+        private boolean tryLock(final int mode) {
+            switch (mode) {
+                case READ:
+                    // new readers could starve the pending upgrade
+                    return upgrader == null && H.tryReadLock(address);
+                case UPDATE:
+                    return H.tryUpdateLock(address);
+                default:
+                    return H.tryWriteLock(address);
+            }
+        }
+
+        @Override
+        protected boolean tryAcquire(final int mode) {
+            return !hasQueuedPredecessors() && tryLock(mode);
+        }
+
+        @Override
+        protected int tryAcquireShared(final int mode) {
+            // a positive result wakes up the next queued thread, to let subsequent readers in
+            return !hasQueuedPredecessors() && tryLock(mode) ? 1 : -1;
+        }
+
+        @Override
+        protected boolean tryRelease(final int ignored) {
+            return true;
+        }
+
+        void wakeUp() {
+            release(0);
+            final Thread upgrader = this.upgrader;
+            if (upgrader != null)
+                LockSupport.unpark(upgrader);
+        }
+    }
+}
@@ -35,6 +35,20 @@ public interface SegmentHeader {
 
     void nextTierIndex(long address, long nextTierIndex);
 
+    /**
+     * Returns the version of the segment, which is incremented when the segment is write-locked
+     * and when the write lock is released or downgraded, i. e. odd while the segment is being
+     * modified.
+     */
+    int version(long address);
+
+    /**
+     * Checks that the segment hasn't been write-locked since {@link #version(long)} returned the
+     * given {@code version}, and no reads performed before this call could observe a concurrent
+     * modification.
+     */
+    boolean validateVersion(long address, int version);
+
     void readLock(long address);
 
     void readLockInterruptibly(long address) throws InterruptedException;
@@ -16,6 +16,7 @@
 
 package net.openhft.chronicle.hash.impl;
 
+import net.openhft.chronicle.algo.hashing.LongHashFunction;
 import net.openhft.chronicle.algo.locks.*;
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesStore;
@@ -30,6 +31,7 @@ import net.openhft.chronicle.hash.impl.util.BuildVersion;
 import net.openhft.chronicle.hash.impl.util.Cleaner;
 import net.openhft.chronicle.hash.impl.util.CleanerUtils;
 import net.openhft.chronicle.hash.impl.util.jna.PosixFallocate;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMemory;
 import net.openhft.chronicle.hash.locks.InterProcessReadWriteUpdateLock;
 import net.openhft.chronicle.hash.serialization.DataAccess;
 import net.openhft.chronicle.hash.serialization.SizeMarshaller;
@@ -51,16 +53,20 @@ import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -98,6 +104,14 @@ public abstract class VanillaChronicleHash<K,
             AcquisitionStrategies.spinLoopOrFail(2, TimeUnit.SECONDS);
     private static final long GLOBAL_MUTABLE_STATE_LOCK_OFFSET = 0L;
     private static final long GLOBAL_MUTABLE_STATE_VALUE_OFFSET = 8L;
+    /**
+     * Size counter stripes occupy the tail of the reserved global mutable state area, one cache
+     * line each, so that updates from segments mapped to different stripes don't false-share.
+     */
+    static final int SIZE_COUNTER_STRIPES = 8;
+    private static final long SIZE_COUNTER_STRIPE_SIZE = 64L;
+    private static final long SIZE_COUNTERS_OFFSET =
+            RESERVED_GLOBAL_MUTABLE_STATE_BYTES - SIZE_COUNTER_STRIPES * SIZE_COUNTER_STRIPE_SIZE;
     private final Runnable preShutdownAction;
     private boolean skipCloseOnExitHook;
     /////////////////////////////////////////////////
@@ -109,8 +123,21 @@ public abstract class VanillaChronicleHash<K,
     public SizeMarshaller keySizeMarshaller;
     public SizedReader<K> keyReader;
     public DataAccess<K> keyDataAccess;
+    public KeyHashFunction keyHashFunction;
+    /**
+     * {@link KeyHashFunction#hashFunction()} of {@link #keyHashFunction}, cached for query
+     * contexts
+     */
+    public transient LongHashFunction keyHash;
+    /**
+     * Held by tier compaction and by {@link #snapshotTo}, so that a tier is never unlinked from a
+     * segment and returned to the free list while a snapshot copies tier chains and the free
+     * list. Guards only operations in the current process.
+     */
+    public transient ReentrantLock compactionLock;
     /////////////////////////////////////////////////
     public boolean checksumEntries;
+    public boolean maintainSizeCounter;
     /////////////////////////////////////////////////
     // Concurrency (number of segments), memory management and dependent fields
     public int actualSegments;
@@ -156,6 +183,33 @@ public abstract class VanillaChronicleHash<K,
     // Resources
     private transient File file;
     private transient RandomAccessFile raf;
+    /////////////////////////////////////////////////
+    // Background flushing, maintained by the flusher thread, if a durability policy is configured
+    public transient volatile boolean backgroundFlushing;
+    /**
+     * {@link System#nanoTime()} when the oldest change, not yet msync-ed, was detected, or 0 if
+     * all detected changes are msync-ed
+     */
+    public transient volatile long unflushedChangesSince;
+    /////////////////////////////////////////////////
+    // Segment locks
+    /**
+     * If the store is not shared between processes, threads waiting for segment locks are parked
+     * instead of spinning, see {@link ParkingSegmentHeader}
+     */
+    public transient boolean processPrivate;
+    /**
+     * If lock acquisitions and waits are recorded, see {@link LockStatsSegmentHeader}
+     */
+    public transient boolean lockStatistics;
+    private transient SegmentHeader segmentHeader;
+    /////////////////////////////////////////////////
+    // Memory placement
+    public transient HugePages hugePages;
+    /**
+     * Applied only to in-memory stores
+     */
+    public transient NumaPolicy numaPolicy;
 
     // --- End of instance fields ---
     private transient ChronicleHashResources resources;
@@ -183,6 +237,7 @@ public abstract class VanillaChronicleHash<K,
         keySizeMarshaller = keyBuilder.sizeMarshaller();
         keyReader = keyBuilder.reader();
         keyDataAccess = keyBuilder.dataAccess();
+        keyHashFunction = privateAPI.keyHashFunction();
 
         actualSegments = privateAPI.actualSegments();
         hashSplitting = HashSplitting.forSegments(actualSegments);
@@ -223,6 +278,7 @@ public abstract class VanillaChronicleHash<K,
         tierBulkSizeInBytes = computeTierBulkBytesSize(tiersInBulk);
 
         checksumEntries = privateAPI.checksumEntries();
+        maintainSizeCounter = privateAPI.maintainSizeCounter();
 
         preShutdownAction = privateAPI.getPreShutdownAction();
         skipCloseOnExitHook = privateAPI.skipCloseOnExitHook();
@@ -266,8 +322,15 @@ public abstract class VanillaChronicleHash<K,
         keySizeMarshaller = wireIn.read(() -> "keySizeMarshaller").object(SizeMarshaller.class);
         keyReader = (SizedReader<K>) wireIn.read("keyReader").object(SizedReader.class);
         keyDataAccess = (DataAccess<K>) wireIn.read("keyDataAccess").object(DataAccess.class);
+        keyHashFunction = wireIn.read("keyHashFunction").object(KeyHashFunction.class);
+        if (keyHashFunction == null) {
+            // files created by previous versions always hash keys with xxHash r39
+            keyHashFunction = KeyHashFunction.xxR39();
+        }
 
         checksumEntries = wireIn.read("checksumEntries").bool();
+        // absent in files created by previous versions, reads as false
+        maintainSizeCounter = wireIn.read("maintainSizeCounter").bool();
 
         actualSegments = wireIn.read("actualSegments").int32();
         hashSplitting = wireIn.read("hashSplitting").typedMarshallable();
@@ -312,8 +375,10 @@ public abstract class VanillaChronicleHash<K,
         wireOut.write("keySizeMarshaller").object(keySizeMarshaller);
         wireOut.write("keyReader").object(keyReader);
         wireOut.write("keyDataAccess").object(keyDataAccess);
+        wireOut.write("keyHashFunction").object(keyHashFunction);
 
         wireOut.write("checksumEntries").bool(checksumEntries);
+        wireOut.write("maintainSizeCounter").bool(maintainSizeCounter);
 
         wireOut.write("actualSegments").int32(actualSegments);
         wireOut.write("hashSplitting").object(hashSplitting);
@@ -404,7 +469,10 @@ public abstract class VanillaChronicleHash<K,
 
     private void initOwnTransients() {
         globalMutableState = createGlobalMutableState();
+        keyHash = keyHashFunction.hashFunction();
+        assert globalMutableStateTotalUsedSize() <= SIZE_COUNTERS_OFFSET;
         tierBulkOffsets = new ArrayList<>();
+        compactionLock = new ReentrantLock();
         switch (tierHashLookupSlotSize) {
             case 4:
                 hashLookup = new IntCompactOffHeapLinearHashTable(this);
@@ -446,6 +514,10 @@ public abstract class VanillaChronicleHash<K,
 
     public final void createInMemoryStoreAndSegments(@NotNull final ChronicleHashResources resources) {
         this.resources = resources;
+        if (memoryPlacementConfigured() && !OS.isLinux()) {
+            Jvm.warn().on(getClass(), toIdentityString() + ": hugePages=" + hugePages +
+                    " and numaPolicy=" + numaPolicy + " are supported only on Linux, ignored");
+        }
         final BytesStore<?, ?> bytesStore = nativeBytesStoreWithFixedCapacity(sizeInBytesWithoutTiers());
         createStoreAndSegments(bytesStore);
     }
@@ -460,6 +532,10 @@ public abstract class VanillaChronicleHash<K,
 
         final long segmentHeadersSize = (long) actualSegments * (long) segmentHeaderSize;
         segmentsOffset = segmentHeadersOffset + segmentHeadersSize;
+        if (!persisted() && numaPolicy == NumaPolicy.SEGMENT_LOCAL) {
+            // before the first segment tiers are touched
+            allocateSegmentsOnNumaNodes();
+        }
 
         if (createdOrInMemory) {
             zeroOutNewlyMappedChronicleMapBytes();
@@ -469,6 +545,29 @@ public abstract class VanillaChronicleHash<K,
         } else {
             initBulks();
         }
+        final SegmentHeader segmentHeader = processPrivate ?
+                new ParkingSegmentHeader(segmentHeaderAddress(0), segmentHeaderSize, actualSegments) :
+                BigSegmentHeader.INSTANCE;
+        this.segmentHeader = lockStatistics ?
+                new LockStatsSegmentHeader(segmentHeader, segmentHeaderAddress(0),
+                        segmentHeaderSize, actualSegments) :
+                segmentHeader;
+    }
+
+    private void allocateSegmentsOnNumaNodes() {
+        final int[] nodes = PosixMemory.numaNodes();
+        if (nodes.length <= 1)
+            return;
+        final long pageSize = OS.pageSize();
+        for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+            // pages shared with the neighbouring segments keep the interleaving policy
+            final long segmentStart = OS.pageAlign(segmentBaseAddr(segmentIndex));
+            final long segmentEnd = (segmentBaseAddr(segmentIndex) + tierSize) & -pageSize;
+            if (segmentEnd > segmentStart) {
+                PosixMemory.prefer(segmentStart, segmentEnd - segmentStart,
+                        nodes[segmentIndex % nodes.length]);
+            }
+        }
     }
 
     private void initBulks() {
@@ -611,6 +710,10 @@ public abstract class VanillaChronicleHash<K,
 
     private void zeroOutGlobalMutableState() {
         bs.zeroOut(headerSize, headerSize + globalMutableStateTotalUsedSize());
+        if (maintainSizeCounter) {
+            bs.zeroOut(headerSize + SIZE_COUNTERS_OFFSET,
+                    headerSize + RESERVED_GLOBAL_MUTABLE_STATE_BYTES);
+        }
     }
 
     protected long globalMutableStateTotalUsedSize() {
@@ -769,6 +872,10 @@ public abstract class VanillaChronicleHash<K,
         return bsAddress() + segmentHeadersOffset + ((long) segmentIndex) * segmentHeaderSize;
     }
 
+    public final SegmentHeader segmentHeader() {
+        return segmentHeader;
+    }
+
     public long bsAddress() {
         throwExceptionIfClosed();
 
@@ -812,6 +919,46 @@ public abstract class VanillaChronicleHash<K,
         return bsAddress() + headerSize;
     }
 
+    private long sizeCounterStripeAddress(final int stripe) {
+        return globalMutableStateAddress() + SIZE_COUNTERS_OFFSET + stripe * SIZE_COUNTER_STRIPE_SIZE;
+    }
+
+    /**
+     * Atomically adds the given delta to the size counter stripe of the given segment, if the
+     * size counter is {@linkplain #maintainSizeCounter maintained}. Called by segment contexts
+     * holding the update or write lock of the segment, whenever its entries or deleted counters
+     * change.
+     */
+    public final void addToSizeCounter(final int segmentIndex, final long delta) {
+        if (maintainSizeCounter && delta != 0) {
+            OS.memory().addLong(sizeCounterStripeAddress(segmentIndex & (SIZE_COUNTER_STRIPES - 1)),
+                    delta);
+        }
+    }
+
+    /**
+     * Sums the size counter stripes. Each stripe is read atomically, but the sum is not a
+     * snapshot, if the hash is concurrently modified.
+     */
+    protected final long sizeCounterSum() {
+        long sum = 0L;
+        for (int stripe = 0; stripe < SIZE_COUNTER_STRIPES; stripe++) {
+            sum += OS.memory().readVolatileLong(sizeCounterStripeAddress(stripe));
+        }
+        return sum;
+    }
+
+    /**
+     * Overwrites the size counter stripes with the given exact size, e. g. after recovery when
+     * the stored stripes could be corrupted or updates could be lost.
+     */
+    protected final void resetSizeCounter(final long size) {
+        OS.memory().writeVolatileLong(sizeCounterStripeAddress(0), size);
+        for (int stripe = 1; stripe < SIZE_COUNTER_STRIPES; stripe++) {
+            OS.memory().writeVolatileLong(sizeCounterStripeAddress(stripe), 0L);
+        }
+    }
+
     public void globalMutableStateLock() {
         throwExceptionIfClosed();
 
@@ -905,6 +1052,30 @@ public abstract class VanillaChronicleHash<K,
         }
     }
 
+    /**
+     * Returns the tier with the given index, already unlinked from the tier chain of its segment,
+     * to the head of the free tier list, so that it could be reused by {@link #allocateTier()}.
+     * The caller should hold the {@link #compactionLock}.
+     */
+    public void freeTier(final long tierIndex) {
+        throwExceptionIfClosed();
+
+        globalMutableStateLock();
+        try {
+            final BytesStore<?, ?> tierBytesStore = tierBytesStore(tierIndex);
+            final long tierOffset = tierBytesOffset(tierIndex);
+            zeroOutNewlyMappedTier(tierBytesStore, tierOffset);
+            final long tierCountersAreaAddr =
+                    tierBytesStore.addressForRead(0) + tierOffset + tierHashLookupOuterSize;
+            TierCountersArea.nextTierIndex(tierCountersAreaAddr,
+                    globalMutableState.getFirstFreeTierIndex());
+            globalMutableState.setFirstFreeTierIndex(tierIndex);
+            globalMutableState.setExtraTiersInUse(globalMutableState.getExtraTiersInUse() - 1);
+        } finally {
+            globalMutableStateUnlock();
+        }
+    }
+
     private void allocateTierBulk() {
         final int allocatedExtraTierBulks = globalMutableState.getAllocatedExtraTierBulks();
 
@@ -943,6 +1114,230 @@ public abstract class VanillaChronicleHash<K,
         }
     }
 
+    /**
+     * Msyncs the headers and all mapped tiers of the given segments, and the global mutable
+     * state, rather than the whole mapping like {@link #msync()}. Ranges are page-aligned and
+     * coalesced, so that adjacent segments are synced with a single call.
+     * <p>
+     * The space between the global mutable state and the segment headers, and the space of tier
+     * bulks before the tiers, is synced as well: modification iterators of replicated maps keep
+     * their bit sets there, and a change shouldn't be durable without its bit.
+     * <p>
+     * Tier chains are read without segment locks, a tier linked concurrently might be missed,
+     * but the segment is then modified again and should be synced once more anyway.
+     *
+     * @param segments indexes of the segments to msync
+     */
+    public void msyncSegments(@NotNull final BitSet segments) {
+        throwExceptionIfClosed();
+
+        if (!persisted() || segments.isEmpty())
+            return;
+        final List<long[]> ranges = new ArrayList<>();
+        final long globalMutableStateAddress = globalMutableStateAddress();
+        ranges.add(new long[]{globalMutableStateAddress, max(RESERVED_GLOBAL_MUTABLE_STATE_BYTES,
+                segmentHeaderAddress(0) - globalMutableStateAddress)});
+        // tierBulkOffsets are appended under the global mutable state lock
+        globalMutableStateLock();
+        try {
+            final long mappedTiers = actualSegments + tierBulkOffsets.size() * tiersInBulk;
+            for (int segmentIndex = segments.nextSetBit(0); segmentIndex >= 0;
+                 segmentIndex = segments.nextSetBit(segmentIndex + 1)) {
+                final long segmentHeaderAddress = segmentHeaderAddress(segmentIndex);
+                ranges.add(new long[]{segmentHeaderAddress, segmentHeaderSize});
+                long tierBaseAddr = segmentBaseAddr(segmentIndex);
+                ranges.add(new long[]{tierBaseAddr, tierSize});
+                long nextTierIndex = BigSegmentHeader.INSTANCE.nextTierIndex(segmentHeaderAddress);
+                // the bound protects from cycles in a chain which is concurrently changed
+                for (long tiers = 1; nextTierIndex > actualSegments &&
+                        nextTierIndex <= mappedTiers && tiers < mappedTiers; tiers++) {
+                    final TierBulkData tierBulkData = tierBulkOffsets.get(
+                            (int) ((nextTierIndex - 1 - actualSegments) >> log2TiersInBulk));
+                    if (tierBulkInnerOffsetToTiers > 0) {
+                        ranges.add(new long[]{tierBulkData.bytesStore.addressForRead(0) +
+                                tierBulkData.offset, tierBulkInnerOffsetToTiers});
+                    }
+                    tierBaseAddr = tierIndexToBaseAddr(nextTierIndex);
+                    ranges.add(new long[]{tierBaseAddr, tierSize});
+                    nextTierIndex = TierCountersArea.nextTierIndex(tierBaseAddr + tierHashLookupOuterSize);
+                }
+            }
+        } finally {
+            globalMutableStateUnlock();
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        final long pageSize = OS.pageSize();
+        long start = -1L;
+        long end = -1L;
+        for (long[] range : ranges) {
+            final long rangeStart = pageAlign(range[0]) > range[0] ?
+                    pageAlign(range[0]) - pageSize : range[0];
+            final long rangeEnd = pageAlign(range[0] + range[1]);
+            if (start >= 0 && rangeStart <= end) {
+                end = max(end, rangeEnd);
+            } else {
+                if (start >= 0)
+                    msync(start, end - start);
+                start = rangeStart;
+                end = rangeEnd;
+            }
+        }
+        msync(start, end - start);
+    }
+
+    @Override
+    public long flushLag(@NotNull final TimeUnit unit) {
+        if (!backgroundFlushing)
+            return -1L;
+        final long since = unflushedChangesSince;
+        return since == 0L ? 0L : unit.convert(System.nanoTime() - since, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void snapshotTo(@NotNull final File snapshotFile, final boolean incremental)
+            throws IOException {
+        throwExceptionIfClosed();
+
+        if (!persisted())
+            throw new IllegalStateException(toIdentityString() + " is not persisted");
+        if (snapshotFile.getCanonicalFile().equals(file.getCanonicalFile()))
+            throw new IllegalArgumentException("Cannot snapshot " + toIdentityString() +
+                    " to its own file");
+        final FileChannel source = raf.getChannel();
+        compactionLock.lock();
+        try (RandomAccessFile snapshotRaf = new RandomAccessFile(snapshotFile, "rw")) {
+            final FileChannel snapshot = snapshotRaf.getChannel();
+            final boolean copyAll = !incremental || !snapshotHeaderMatches(snapshot);
+            if (copyAll)
+                snapshot.truncate(0L);
+            final ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+            for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+                final long segmentHeaderAddress = segmentHeaderAddress(segmentIndex);
+                final long segmentHeaderFileOffset =
+                        segmentHeadersOffset + ((long) segmentIndex) * segmentHeaderSize;
+                segmentHeader.readLock(segmentHeaderAddress);
+                try {
+                    if (!copyAll && BigSegmentHeader.INSTANCE.version(segmentHeaderAddress) ==
+                            readSnapshotInt(snapshot, buffer,
+                                    segmentHeaderFileOffset + BigSegmentHeader.VERSION_OFFSET)) {
+                        continue;
+                    }
+                    transfer(source, snapshot, segmentHeaderFileOffset, segmentHeaderSize);
+                    // the copied lock word holds our read lock
+                    writeSnapshotLong(snapshot, buffer,
+                            segmentHeaderFileOffset + BigSegmentHeader.LOCK_OFFSET, 0L);
+                    transfer(source, snapshot, segmentOffset(segmentIndex), tierSize);
+                    long nextTierIndex = BigSegmentHeader.INSTANCE.nextTierIndex(segmentHeaderAddress);
+                    final long allocatedTiers = allocatedTiers();
+                    for (long tiers = 1; nextTierIndex > 0 && nextTierIndex <= allocatedTiers &&
+                            tiers < allocatedTiers; tiers++) {
+                        transfer(source, snapshot, tierFileOffset(nextTierIndex), tierSize);
+                        nextTierIndex = TierCountersArea.nextTierIndex(
+                                tierIndexToBaseAddr(nextTierIndex) + tierHashLookupOuterSize);
+                    }
+                } finally {
+                    segmentHeader.readUnlock(segmentHeaderAddress);
+                }
+            }
+            // The global mutable state is copied last, so tiers allocated during the snapshot
+            // are at worst leaked in the snapshot. Tiers are not freed meanwhile, because the
+            // compactionLock is held
+            globalMutableStateLock();
+            try {
+                transfer(source, snapshot, 0L, segmentHeadersOffset);
+                writeSnapshotLong(snapshot, buffer,
+                        headerSize + GLOBAL_MUTABLE_STATE_LOCK_OFFSET, 0L);
+                // the space of tier bulks before the tiers, i. e. modification iterator bit sets
+                // of replicated maps
+                if (tierBulkInnerOffsetToTiers > 0) {
+                    final int bulks = globalMutableState().getAllocatedExtraTierBulks();
+                    for (int bulkIndex = 0; bulkIndex < bulks; bulkIndex++) {
+                        transfer(source, snapshot, bulkOffset(bulkIndex), tierBulkInnerOffsetToTiers);
+                    }
+                }
+                long freeTierIndex = globalMutableState().getFirstFreeTierIndex();
+                final long allocatedTiers = allocatedTiers();
+                for (long tiers = 0; freeTierIndex > 0 && freeTierIndex <= allocatedTiers &&
+                        tiers < allocatedTiers; tiers++) {
+                    transfer(source, snapshot, tierFileOffset(freeTierIndex), tierSize);
+                    freeTierIndex = TierCountersArea.nextTierIndex(
+                            tierIndexToBaseAddr(freeTierIndex) + tierHashLookupOuterSize);
+                }
+                if (snapshot.size() < source.size())
+                    snapshotRaf.setLength(source.size());
+            } finally {
+                globalMutableStateUnlock();
+            }
+            snapshot.force(true);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private boolean snapshotHeaderMatches(final FileChannel snapshot) throws IOException {
+        if (snapshot.size() < segmentsOffset)
+            return false;
+        final ByteBuffer header = ByteBuffer.allocate((int) headerSize);
+        while (header.remaining() > 0) {
+            if (snapshot.read(header, header.position()) == -1)
+                return false;
+        }
+        for (int i = 0; i < headerSize; i++) {
+            if (header.get(i) != bs.readByte(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int readSnapshotInt(final FileChannel snapshot, final ByteBuffer buffer,
+                                       final long position) throws IOException {
+        buffer.clear().limit(4);
+        while (buffer.remaining() > 0) {
+            if (snapshot.read(buffer, position + buffer.position()) == -1)
+                return -1;
+        }
+        return buffer.getInt(0);
+    }
+
+    private static void writeSnapshotLong(final FileChannel snapshot, final ByteBuffer buffer,
+                                          final long position, final long value)
+            throws IOException {
+        buffer.clear();
+        buffer.putLong(0, value);
+        while (buffer.remaining() > 0) {
+            snapshot.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void transfer(final FileChannel source, final FileChannel snapshot,
+                                 long position, long count) throws IOException {
+        snapshot.position(position);
+        while (count > 0) {
+            final long transferred = source.transferTo(position, count, snapshot);
+            if (transferred <= 0)
+                throw new IOException("Unexpected end of file at " + position);
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private long allocatedTiers() {
+        return actualSegments + globalMutableState().getAllocatedExtraTierBulks() * tiersInBulk;
+    }
+
+    /**
+     * Returns the offset of the tier in the data store file, unlike {@link #tierBytesOffset}
+     * which returns the offset within the tier's {@link #tierBytesStore}.
+     */
+    private long tierFileOffset(final long tierIndex) {
+        final long tierIndexMinusOne = tierIndex - 1;
+        if (tierIndexMinusOne < actualSegments)
+            return segmentOffset(tierIndexMinusOne);
+        final long extraTierIndex = tierIndexMinusOne - actualSegments;
+        return bulkOffset((int) (extraTierIndex >> log2TiersInBulk)) + tierBulkInnerOffsetToTiers +
+                (extraTierIndex & (tiersInBulk - 1)) * tierSize;
+    }
+
     private void msync(long address, long length) {
         // address should be a multiple of page size
         if (OS.pageAlign(address) != address) {
@@ -1050,14 +1445,14 @@ public abstract class VanillaChronicleHash<K,
         long mapSize = bulksToMap * tierBulkSizeInBytes;
         final long mappingOffsetInFile, firstBulkToMapOffsetWithinMapping;
         final long firstBulkToMapOffset = bulkOffset(firstBulkToMapIndex);
-        if (OS.mapAlign(firstBulkToMapOffset) == firstBulkToMapOffset) {
+        if (mapAlign(firstBulkToMapOffset) == firstBulkToMapOffset) {
             mappingOffsetInFile = firstBulkToMapOffset;
             firstBulkToMapOffsetWithinMapping = 0;
         } else {
             // If the bulk was allocated on OS with 4K mapping granularity (linux) and we
             // are mapping it in OS with 64K mapping granularity (windows), we might need to
             // start the mapping earlier than the first tier to map actually starts
-            mappingOffsetInFile = OS.mapAlign(firstBulkToMapOffset) - OS.mapAlignment();
+            mappingOffsetInFile = mapAlign(firstBulkToMapOffset) - mapAlignment();
             firstBulkToMapOffsetWithinMapping = firstBulkToMapOffset - mappingOffsetInFile;
             // Now might need to have bigger mapSize
             mapSize += firstBulkToMapOffsetWithinMapping;
@@ -1073,7 +1468,7 @@ public abstract class VanillaChronicleHash<K,
      * @see net.openhft.chronicle.bytes.MappedFile#acquireByteStore(ReferenceOwner, long, BytesStore, MappedBytesStoreFactory)
      */
     private BytesStore<?, ?> map(long mapSize, final long mappingOffsetInFile) throws IOException {
-        int pageSize = (int) OS.mapAlignment();
+        int pageSize = (int) mapAlignment();
         mapSize = pageAlign(mapSize, pageSize);
         final long minFileSize = mappingOffsetInFile + mapSize;
         final FileChannel fileChannel = raf.getChannel();
@@ -1097,9 +1492,25 @@ public abstract class VanillaChronicleHash<K,
         }
         final long address = OS.map(fileChannel, READ_WRITE, mappingOffsetInFile, mapSize, pageSize);
         resources.addMemoryResource(address, mapSize);
+        if (hugePages == HugePages.TRANSPARENT)
+            PosixMemory.adviseHugePages(address, mapSize);
         return BytesStore.wrap(address, mapSize);
     }
 
+    /**
+     * With transparent huge pages, files are mapped at huge page aligned offsets, which DAX and
+     * {@code tmpfs} file systems require to back mappings with huge pages.
+     */
+    private long mapAlignment() {
+        return hugePages == HugePages.TRANSPARENT ?
+                Math.max(OS.mapAlignment(), PosixMemory.hugePageSize()) : OS.mapAlignment();
+    }
+
+    private long mapAlign(final long offset) {
+        final long mapAlignment = mapAlignment();
+        return (offset + mapAlignment - 1) / mapAlignment * mapAlignment;
+    }
+
     private void fallocate(long mappingOffsetInFile, long length) throws IOException {
         FileSystem fileSystem = file.toPath().getFileSystem();
         FileStore fileStore = Files.getFileStore(file.toPath());
@@ -1125,12 +1536,48 @@ public abstract class VanillaChronicleHash<K,
         appendBulkData(firstBulkToAllocateIndex, upToBulkIndex, extraStore, 0);
     }
 
+    private boolean memoryPlacementConfigured() {
+        return (hugePages != null && hugePages != HugePages.NONE) ||
+                (numaPolicy != null && numaPolicy != NumaPolicy.DEFAULT);
+    }
+
     private BytesStore<?, ?> nativeBytesStoreWithFixedCapacity(final long capacity) {
+        // anonymous mappings with memory policies are Linux-specific
+        if (memoryPlacementConfigured() && OS.isLinux())
+            return mappedBytesStoreWithFixedCapacity(capacity);
         final long address = OS.memory().allocate(capacity);
         resources.addMemoryResource(address, capacity);
         return BytesStore.wrap(address, capacity);
     }
 
+    /**
+     * Unlike {@code malloc()}-ed memory, anonymous mappings could be aligned to huge pages, and
+     * are not touched until the store is zeroed out, after memory policies are set.
+     */
+    private BytesStore<?, ?> mappedBytesStoreWithFixedCapacity(final long capacity) {
+        final boolean hugeTlb = hugePages == HugePages.EXPLICIT;
+        final boolean transparentHugePages = hugePages == HugePages.TRANSPARENT;
+        final int alignment = (int) (hugeTlb || transparentHugePages ?
+                PosixMemory.hugePageSize() : OS.pageSize());
+        final long size = pageAlign(capacity, alignment);
+        final long address;
+        if (transparentHugePages) {
+            // map with slack and unmap the unaligned ends
+            final long mappingAddress = PosixMemory.mapAnonymous(size + alignment, false);
+            address = pageAlign(mappingAddress, alignment);
+            PosixMemory.unmap(mappingAddress, address - mappingAddress);
+            PosixMemory.unmap(address + size, mappingAddress + alignment - address);
+        } else {
+            address = PosixMemory.mapAnonymous(size, hugeTlb);
+        }
+        resources.addMappedMemoryResource(address, size);
+        if (transparentHugePages)
+            PosixMemory.adviseHugePages(address, size);
+        if (numaPolicy == NumaPolicy.INTERLEAVE || numaPolicy == NumaPolicy.SEGMENT_LOCAL)
+            PosixMemory.interleave(address, size);
+        return BytesStore.wrap(address, capacity);
+    }
+
     private void appendBulkData(final int firstBulkToMapIndex,
                                 final int upToBulkIndex,
                                 final BytesStore<?, ?> extraStore,
@@ -126,7 +126,7 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
 
     private void initSegmentHeader() {
         segmentHeaderAddress = hh.h().segmentHeaderAddress(segmentIndex);
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = hh.h().segmentHeader();
     }
 
     public long tierEntries() {
@@ -138,6 +138,7 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
     }
 
     public void tierEntries(long tierEntries) {
+        hh.h().addToSizeCounter(segmentIndex, tierEntries - tierEntries());
         if (tier == 0) {
             segmentHeader.entries(segmentHeaderAddress, tierEntries);
         } else {
@@ -171,6 +172,7 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
     }
 
     public void tierDeleted(long tierDeleted) {
+        hh.h().addToSizeCounter(segmentIndex, tierDeleted() - tierDeleted);
         if (tier == 0) {
             segmentHeader.deleted(segmentHeaderAddress, tierDeleted);
         } else {
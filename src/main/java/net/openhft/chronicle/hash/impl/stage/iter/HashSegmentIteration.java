@@ -19,6 +19,7 @@ package net.openhft.chronicle.hash.impl.stage.iter;
 import net.openhft.chronicle.hash.HashEntry;
 import net.openhft.chronicle.hash.HashSegmentContext;
 import net.openhft.chronicle.hash.impl.CompactOffHeapLinearHashTable;
+import net.openhft.chronicle.hash.impl.TierCountersArea;
 import net.openhft.chronicle.hash.impl.VanillaChronicleHashHolder;
 import net.openhft.chronicle.hash.impl.stage.entry.HashEntryStages;
 import net.openhft.chronicle.hash.impl.stage.entry.HashLookupPos;
@@ -86,20 +87,54 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
         return innerForEachSegmentEntryWhile(predicate);
     }
 
+    @Override
+    public boolean forEachSegmentEntryWhile(int batchSize, Predicate<? super E> predicate) {
+        throwExceptionIfClosed();
+
+        checkBatchSize(batchSize);
+        checkOnEachPublicOperation.checkOnEachPublicOperation();
+        s.innerUpdateLock.lock();
+        return innerForEachSegmentEntryWhile(predicate, batchSize);
+    }
+
+    public void checkBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(hh.h().toIdentityString() +
+                    ": batchSize should be positive, " + batchSize + " given");
+        }
+    }
+
     public <T> boolean innerForEachSegmentEntryWhile(Predicate<? super T> predicate) {
+        return innerForEachSegmentEntryWhile(predicate, 0);
+    }
+
+    /**
+     * @param batchSize the number of entries to visit per segment lock hold, or 0 to visit all
+     *                  entries of the segment under a single lock hold
+     */
+    public <T> boolean innerForEachSegmentEntryWhile(Predicate<? super T> predicate, int batchSize) {
         try {
             s.goToLastTier();
             while (true) {
                 int currentTier = s.tier;
                 long currentTierBaseAddr = s.tierBaseAddr;
                 long currentTierIndex = s.tierIndex;
-                boolean interrupted = forEachTierEntryWhile(
-                        predicate, currentTier, currentTierBaseAddr, currentTierIndex);
+                boolean interrupted = forEachTierEntryWhile(predicate,
+                        currentTier, currentTierBaseAddr, currentTierIndex, batchSize);
                 if (interrupted)
                     return false;
                 if (currentTier == 0)
                     return true;
-                s.prevTier();
+                if (batchSize > 0 && tierReclaimed(currentTier)) {
+                    // The tier was compacted while the lock was released, its entries are moved to
+                    // the earlier tiers. Continue from the tier preceding it in the current chain
+                    s.initSegmentTier();
+                    while (s.tier < currentTier - 1 && s.hasNextTier()) {
+                        s.nextTier();
+                    }
+                } else {
+                    s.prevTier();
+                }
             }
         } finally {
             closeHashLookupEntry();
@@ -108,11 +143,26 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
         }
     }
 
+    /**
+     * Checks if the current extra tier doesn't belong to the segment at the given place in its
+     * tier chain anymore. Must be called holding the segment lock.
+     */
+    public boolean tierReclaimed(int tier) {
+        if (tier == 0)
+            return false;
+        long tierCountersAreaAddr = s.tierCountersAreaAddr();
+        return TierCountersArea.segmentIndex(tierCountersAreaAddr) != s.segmentIndex ||
+                TierCountersArea.tier(tierCountersAreaAddr) != tier;
+    }
+
     public <T> boolean forEachTierEntryWhile(
             Predicate<? super T> predicate,
-            int currentTier, long currentTierBaseAddr, long tierIndex) {
+            int currentTier, long currentTierBaseAddr, long tierIndex, int batchSize) {
         long leftEntries = tierEntriesForIteration();
         boolean interrupted = false;
+        // once the lock was released, the tier counters don't match the visited entries
+        boolean resumed = false;
+        int entriesInBatch = 0;
         long startPos = 0L;
         CompactOffHeapLinearHashTable hashLookup = hh.h().hashLookup;
         // volatile read not needed because iteration is performed at least under update lock
@@ -134,6 +184,7 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
             long entry = hashLookup.readEntry(currentTierBaseAddr, currentHashLookupPos);
             initHashLookupEntry(entry);
             if (!hashLookup.empty(entry)) {
+                entriesInBatch++;
                 e.readExistingEntry(hashLookup.value(entry));
                 if (shouldTestEntry()) {
                     initEntryRemovedOnThisIteration(false);
@@ -142,7 +193,7 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
                             interrupted = true;
                             break;
                         } else {
-                            if (--leftEntries == 0)
+                            if (--leftEntries == 0 && !resumed)
                                 break;
                         }
                     } finally {
@@ -166,12 +217,26 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
                     }
                 }
             }
+            // Pause only at an empty slot: shift deletions never move entries over an empty slot,
+            // so entries present after it stay after it while the lock is released
+            if (batchSize > 0 && entriesInBatch >= batchSize && currentHashLookupPos != startPos &&
+                    hashLookup.empty(hashLookup.readEntry(currentTierBaseAddr, hlp.hashLookupPos))) {
+                long pausedHashLookupPos = hlp.hashLookupPos;
+                closeHashLookupEntry();
+                s.innerReadLock.unlock();
+                s.innerUpdateLock.lock();
+                hlp.initHashLookupPos(pausedHashLookupPos);
+                entriesInBatch = 0;
+                resumed = true;
+                if (tierReclaimed(currentTier))
+                    return false;
+            }
             // the `steps == 0` condition and this variable updates in the loop fix the bug, when
             // shift deletion occurs on the first entry of the tier, and the currentHashLookupPos
             // becomes equal to start pos without making the whole loop, but only visiting a single
             // entry
         } while (currentHashLookupPos != startPos || steps == 0);
-        if (!interrupted && leftEntries > 0) {
+        if (!interrupted && leftEntries > 0 && !resumed) {
             throw new IllegalStateException(hh.h().toIdentityString() +
                     ": We went through a tier without interruption, " +
                     "but according to tier counters there should be " + leftEntries +
@@ -180,6 +245,71 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
         return interrupted;
     }
 
+    /**
+     * Reads the next present entry of the segment into this context, continuing the cursor
+     * iteration, the state of which is kept in the given position. The segment read lock should be
+     * held. After visiting about {@code batchSize} entries the lock is released and acquired
+     * again, at a position, from which the iteration could be safely resumed, see
+     * forEachTierEntryWhile().
+     *
+     * @return {@code true} if the next entry is read, {@code false} if there are no more entries
+     * in the segment
+     */
+    public boolean cursorNextEntry(SegmentCursorPosition p, int batchSize) {
+        CompactOffHeapLinearHashTable hashLookup = hh.h().hashLookup;
+        if (p.tier < 0) {
+            s.goToLastTier();
+            p.startTier(s.tier, s.tierIndex, s.tierBaseAddr, tierStartPos(s.tierBaseAddr));
+        } else if (s.tierIndex != p.tierIndex) {
+            s.initSegmentTier_WithBaseAddr(p.tier, p.tierBaseAddr, p.tierIndex);
+        }
+        while (true) {
+            if (p.tierDone()) {
+                if (p.tier == 0)
+                    return false;
+                if (tierReclaimed(p.tier)) {
+                    s.initSegmentTier();
+                    while (s.tier < p.tier - 1 && s.hasNextTier()) {
+                        s.nextTier();
+                    }
+                } else {
+                    s.prevTier();
+                }
+                p.startTier(s.tier, s.tierIndex, s.tierBaseAddr, tierStartPos(s.tierBaseAddr));
+                continue;
+            }
+            p.hashLookupPos = hashLookup.step(p.hashLookupPos);
+            p.steps++;
+            // volatile read not needed because iteration is performed at least under read lock
+            long entry = hashLookup.readEntry(p.tierBaseAddr, p.hashLookupPos);
+            if (hashLookup.empty(entry)) {
+                if (p.entriesInBatch >= batchSize && !p.tierDone()) {
+                    p.entriesInBatch = 0;
+                    s.innerReadLock.unlock();
+                    s.innerReadLock.lock();
+                    if (tierReclaimed(p.tier)) {
+                        // skip the rest of the tier
+                        p.hashLookupPos = p.startPos;
+                    }
+                }
+                continue;
+            }
+            p.entriesInBatch++;
+            e.readExistingEntry(hashLookup.value(entry));
+            if (shouldTestEntry())
+                return true;
+        }
+    }
+
+    private long tierStartPos(long tierBaseAddr) {
+        CompactOffHeapLinearHashTable hashLookup = hh.h().hashLookup;
+        long startPos = 0L;
+        while (!hashLookup.empty(hashLookup.readEntry(tierBaseAddr, startPos))) {
+            startPos = hashLookup.step(startPos);
+        }
+        return startPos;
+    }
+
     public void hookAfterEachIteration() {
         throwExceptionIfClosed();
 
@@ -16,7 +16,6 @@
 
 package net.openhft.chronicle.hash.impl.stage.iter;
 
-import net.openhft.chronicle.algo.hashing.LongHashFunction;
 import net.openhft.chronicle.hash.impl.VanillaChronicleHashHolder;
 import net.openhft.chronicle.hash.impl.stage.entry.HashEntryStages;
 import net.openhft.chronicle.hash.impl.stage.entry.KeyHashCode;
@@ -39,7 +38,7 @@ public class IterationKeyHashCode implements KeyHashCode {
     void initKeyHash() {
         long addr = s.tierBaseAddr + e.keyOffset;
         long len = e.keySize;
-        keyHash = LongHashFunction.xx_r39().hashMemory(addr, len);
+        keyHash = hh.h().keyHash.hashMemory(addr, len);
     }
 
     @Override
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.impl.stage.iter;
+
+/**
+ * The state of a cursor iteration over a segment, kept outside of the iteration context between
+ * {@link HashSegmentIteration#cursorNextEntry(SegmentCursorPosition, int)} calls.
+ */
+public final class SegmentCursorPosition {
+
+    /**
+     * The tier, which is iterated, or -1 if the iteration over the segment is not started yet
+     */
+    public int tier = -1;
+    public long tierIndex;
+    public long tierBaseAddr;
+    /**
+     * The empty hash lookup slot, the iteration over the tier started and ends at
+     */
+    public long startPos;
+    public long hashLookupPos;
+    public int steps;
+    public int entriesInBatch;
+
+    public void reset() {
+        tier = -1;
+        entriesInBatch = 0;
+    }
+
+    public void startTier(int tier, long tierIndex, long tierBaseAddr, long startPos) {
+        this.tier = tier;
+        this.tierIndex = tierIndex;
+        this.tierBaseAddr = tierBaseAddr;
+        this.startPos = startPos;
+        hashLookupPos = startPos;
+        steps = 0;
+    }
+
+    public boolean tierDone() {
+        return hashLookupPos == startPos && steps > 0;
+    }
+}
@@ -58,11 +58,13 @@ public abstract class SegmentsRecovery implements IterationContext {
         VanillaGlobalMutableState globalMutableState = h.globalMutableState();
         long storedExtraTiersInUse = globalMutableState.getExtraTiersInUse();
         long allocatedExtraTiers = globalMutableState.getAllocatedExtraTierBulks() * h.tiersInBulk;
-        long expectedExtraTiersInUse =
-                Math.max(0, Math.min(storedExtraTiersInUse, allocatedExtraTiers));
         long actualExtraTiersInUse = 0;
-        long firstFreeExtraTierIndex = -1;
-        for (long extraTierIndex = 0; extraTierIndex < expectedExtraTiersInUse; extraTierIndex++) {
+        long firstFreeTierIndex = 0;
+        long lastFreeTierIndex = 0;
+        // Tiers reclaimed by compaction are returned to the free list out of order, so in-use and
+        // free extra tiers might interleave: check every allocated tier, not only the first
+        // getExtraTiersInUse() ones
+        for (long extraTierIndex = 0; extraTierIndex < allocatedExtraTiers; extraTierIndex++) {
             long tierIndex = h.extraTierIndexToTierIndex(extraTierIndex);
             // `tier` is unused in recoverTier(), 0 should be a safe value
             s.initSegmentTier(0, tierIndex);
@@ -86,10 +88,16 @@ public abstract class SegmentsRecovery implements IterationContext {
 
                 TierCountersArea.prevTierIndex(tierCountersAreaAddr, s.tierIndex);
                 TierCountersArea.tier(tierCountersAreaAddr, s.tier + 1);
-                actualExtraTiersInUse = extraTierIndex + 1;
+                actualExtraTiersInUse++;
             } else {
-                firstFreeExtraTierIndex = extraTierIndex;
-                break;
+                h.linkAndZeroOutFreeTiers(tierIndex, tierIndex);
+                if (lastFreeTierIndex == 0) {
+                    firstFreeTierIndex = tierIndex;
+                } else {
+                    s.initSegmentTier(0, lastFreeTierIndex);
+                    TierCountersArea.nextTierIndex(s.tierCountersAreaAddr(), tierIndex);
+                }
+                lastFreeTierIndex = tierIndex;
             }
         }
 
@@ -102,25 +110,12 @@ public abstract class SegmentsRecovery implements IterationContext {
             globalMutableState.setExtraTiersInUse(actualExtraTiersInUse);
         }
 
-        long firstFreeTierIndex;
-        if (firstFreeExtraTierIndex == -1) {
-            if (allocatedExtraTiers > expectedExtraTiersInUse) {
-                firstFreeTierIndex = h.extraTierIndexToTierIndex(expectedExtraTiersInUse);
-            } else {
-                firstFreeTierIndex = 0;
-            }
-        } else {
-            firstFreeTierIndex = h.extraTierIndexToTierIndex(firstFreeExtraTierIndex);
-        }
-        if (firstFreeTierIndex > 0) {
-            long lastTierIndex = h.extraTierIndexToTierIndex(allocatedExtraTiers - 1);
-            h.linkAndZeroOutFreeTiers(firstFreeTierIndex, lastTierIndex);
-        }
         long storedFirstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
         if (storedFirstFreeTierIndex != firstFreeTierIndex) {
+            long finalFirstFreeTierIndex = firstFreeTierIndex;
             report(corruptionListener, corruption, -1, () ->
                     format("wrong first free tier index in global mutable state, stored: {}, " +
-                            "should be: " + storedFirstFreeTierIndex, firstFreeTierIndex)
+                            "should be: " + storedFirstFreeTierIndex, finalFirstFreeTierIndex)
             );
             globalMutableState.setFirstFreeTierIndex(firstFreeTierIndex);
         }
@@ -0,0 +1,222 @@
+package net.openhft.chronicle.hash.impl.util.jna;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anonymous memory mappings with huge pages and NUMA memory policies, on Linux. Other platforms
+ * fall back to regular pages and ignore NUMA policies.
+ */
+public final class PosixMemory {
+
+    private static final long DEFAULT_HUGE_PAGE_SIZE = 2L << 20;
+
+    private static final int PROT_READ = 0x1;
+    private static final int PROT_WRITE = 0x2;
+    private static final int MAP_PRIVATE = 0x02;
+    private static final int MAP_ANONYMOUS = 0x20;
+    private static final int MAP_HUGETLB = 0x40000;
+    private static final int MADV_HUGEPAGE = 14;
+    private static final int MPOL_PREFERRED = 1;
+    private static final int MPOL_INTERLEAVE = 3;
+
+    private static volatile long hugePageSize;
+    private static volatile int[] numaNodes;
+
+    private PosixMemory() {
+    }
+
+    /**
+     * @return the default size of huge pages, as reported in {@code /proc/meminfo}, or 2 MiB
+     */
+    public static long hugePageSize() {
+        long size = hugePageSize;
+        if (size == 0) {
+            size = DEFAULT_HUGE_PAGE_SIZE;
+            if (OS.isLinux()) {
+                try {
+                    for (String line : Files.readAllLines(Paths.get("/proc/meminfo"),
+                            StandardCharsets.US_ASCII)) {
+                        if (line.startsWith("Hugepagesize:")) {
+                            String kiB = line.substring("Hugepagesize:".length())
+                                    .replace("kB", "").trim();
+                            size = Long.parseLong(kiB) << 10;
+                            break;
+                        }
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    // use the default
+                }
+            }
+            hugePageSize = size;
+        }
+        return size;
+    }
+
+    /**
+     * @return the online NUMA nodes, as reported in {@code /sys/devices/system/node/online}, or a
+     * single node 0, if the system is not NUMA
+     */
+    public static int[] numaNodes() {
+        int[] nodes = numaNodes;
+        if (nodes == null) {
+            nodes = new int[]{0};
+            Path online = Paths.get("/sys/devices/system/node/online");
+            if (OS.isLinux() && Files.exists(online)) {
+                try {
+                    nodes = parseNodeList(new String(Files.readAllBytes(online),
+                            StandardCharsets.US_ASCII).trim());
+                } catch (IOException | RuntimeException e) {
+                    // not NUMA
+                }
+            }
+            numaNodes = nodes;
+        }
+        return nodes.clone();
+    }
+
+    static int[] parseNodeList(String nodeList) {
+        List<Integer> nodes = new ArrayList<>();
+        for (String range : nodeList.split(",")) {
+            int dash = range.indexOf('-');
+            int first = Integer.parseInt((dash < 0 ? range : range.substring(0, dash)).trim());
+            int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1).trim());
+            for (int node = first; node <= last; node++) {
+                nodes.add(node);
+            }
+        }
+        return nodes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Maps anonymous private memory of the given size, zeroed out and not yet backed by physical
+     * pages, so that memory policies set before the first touch take effect.
+     *
+     * @param size    the size of the mapping, should be a multiple of the page size
+     * @param hugeTlb if the mapping should be backed by explicitly reserved huge pages, see {@code
+     *                vm.nr_hugepages}, {@code size} should be a multiple of {@link #hugePageSize()}
+     *                then
+     * @return the address of the mapping
+     * @throws OutOfMemoryError if the mapping fails
+     */
+    public static long mapAnonymous(long size, boolean hugeTlb) {
+        if (!OS.isLinux())
+            throw new UnsupportedOperationException("anonymous mappings are supported on Linux");
+        int flags = MAP_PRIVATE | MAP_ANONYMOUS | (hugeTlb ? MAP_HUGETLB : 0);
+        try {
+            return LibC.mmap(0L, size, PROT_READ | PROT_WRITE, flags, -1, 0L);
+        } catch (LastErrorException e) {
+            OutOfMemoryError error = new OutOfMemoryError("Failed to map " + (size >> 20) +
+                    " MiB" + (hugeTlb ? " of huge pages, check vm.nr_hugepages" : "") +
+                    ", errno " + e.getErrorCode());
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    public static void unmap(long address, long size) {
+        if (size == 0)
+            return;
+        try {
+            LibC.munmap(address, size);
+        } catch (LastErrorException e) {
+            throw new IllegalStateException("Failed to unmap " + size + " bytes at " +
+                    Long.toHexString(address) + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    /**
+     * Advises the kernel to back the given range with transparent huge pages. Failures are not
+     * fatal, e. g. transparent huge pages might be disabled.
+     */
+    public static void adviseHugePages(long address, long size) {
+        if (!OS.isLinux())
+            return;
+        try {
+            LibC.madvise(address, size, MADV_HUGEPAGE);
+        } catch (LastErrorException e) {
+            Jvm.warn().on(PosixMemory.class, "madvise(MADV_HUGEPAGE) failed, errno " +
+                    e.getErrorCode() + ", transparent huge pages might be disabled");
+        }
+    }
+
+    /**
+     * Interleaves pages of the given range across all NUMA nodes.
+     */
+    public static void interleave(long address, long size) {
+        int[] nodes = numaNodes();
+        if (nodes.length > 1)
+            mbind(address, size, MPOL_INTERLEAVE, nodes);
+    }
+
+    /**
+     * Makes pages of the given range to be allocated on the given NUMA node, falling back to other
+     * nodes if the node is out of memory.
+     */
+    public static void prefer(long address, long size, int node) {
+        if (numaNodes().length > 1)
+            mbind(address, size, MPOL_PREFERRED, new int[]{node});
+    }
+
+    private static void mbind(long address, long size, int mode, int[] nodes) {
+        long mbindSyscall = mbindSyscall();
+        if (mbindSyscall < 0)
+            return;
+        int maxNode = 0;
+        for (int node : nodes) {
+            maxNode = Math.max(maxNode, node);
+        }
+        long[] nodeMask = new long[maxNode / 64 + 1];
+        for (int node : nodes) {
+            nodeMask[node / 64] |= 1L << (node % 64);
+        }
+        try {
+            LibC.syscall(mbindSyscall, address, size, mode, nodeMask, nodeMask.length * 64L + 1, 0L);
+        } catch (LastErrorException e) {
+            Jvm.warn().on(PosixMemory.class, "mbind() failed, errno " + e.getErrorCode() +
+                    ", NUMA memory policy is not applied");
+        }
+    }
+
+    private static long mbindSyscall() {
+        if (!OS.isLinux())
+            return -1;
+        switch (System.getProperty("os.arch")) {
+            case "amd64":
+            case "x86_64":
+                return 237;
+            case "aarch64":
+                return 235;
+            default:
+                return -1;
+        }
+    }
+
+    private static final class LibC {
+        static {
+            Native.register(Platform.C_LIBRARY_NAME);
+        }
+
+        static native long mmap(long address, long length, int prot, int flags, int fd,
+                                long offset) throws LastErrorException;
+
+        static native int munmap(long address, long length) throws LastErrorException;
+
+        static native int madvise(long address, long length, int advice) throws LastErrorException;
+
+        static native long syscall(long number, long address, long length, long mode,
+                                   long[] nodeMask, long maxNode, long flags)
+                throws LastErrorException;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.replication;
+
+import net.openhft.chronicle.hash.replication.DefaultEventualConsistencyStrategy.AcceptanceDecision;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of the decisions, made by {@link DefaultEventualConsistencyStrategy} about remote
+ * modifications of a replicated {@link net.openhft.chronicle.hash.ChronicleHash}, in the current
+ * process. The decisions are counted for the Chronicle Hashes implementing {@link Source}.
+ * <p>
+ * Remote modifications of keys, which were never present in the local Chronicle Hash, are applied
+ * without a decision, hence not counted.
+ */
+public final class AcceptanceDecisionStats {
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    /**
+     * @return the number of remote modifications, applied to the local state
+     */
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return the number of remote modifications, discarded because the local state is newer
+     */
+    public long discarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * @return the number of remote modifications with the same timestamp as the local state, but
+     * originating from another node, hence accepted or discarded by the identifiers of the nodes;
+     * a growing number signals concurrent writes of the same keys on several nodes
+     */
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    void record(AcceptanceDecision decision, boolean conflict) {
+        if (decision == AcceptanceDecision.ACCEPT) {
+            accepted.increment();
+        } else {
+            discarded.increment();
+        }
+        if (conflict)
+            conflicts.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "AcceptanceDecisionStats{accepted=" + accepted() + ", discarded=" + discarded() +
+                ", conflicts=" + conflicts() + "}";
+    }
+
+    /**
+     * A Chronicle Hash, acceptance decisions about remote modifications of which are counted.
+     */
+    public interface Source {
+
+        AcceptanceDecisionStats acceptanceDecisionStats();
+    }
+}
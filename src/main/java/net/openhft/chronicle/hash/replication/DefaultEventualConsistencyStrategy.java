@@ -48,9 +48,23 @@ public final class DefaultEventualConsistencyStrategy {
      * @param entry   the entry to be modified
      * @param context the remote operation context
      * @return if the remote operation should be accepted or discarded
+     * @see AcceptanceDecisionStats
      */
     public static AcceptanceDecision decideOnRemoteModification(
             ReplicableEntry entry, RemoteOperationContext<?> context) {
+        AcceptanceDecision decision = decide(entry, context);
+        ChronicleHash<?, ?, ?, ?> hash = context.hash();
+        if (hash instanceof AcceptanceDecisionStats.Source) {
+            boolean conflict = context.remoteTimestamp() == entry.originTimestamp() &&
+                    context.remoteIdentifier() != entry.originIdentifier();
+            ((AcceptanceDecisionStats.Source) hash).acceptanceDecisionStats()
+                    .record(decision, conflict);
+        }
+        return decision;
+    }
+
+    private static AcceptanceDecision decide(
+            ReplicableEntry entry, RemoteOperationContext<?> context) {
         long remoteTimestamp = context.remoteTimestamp();
         long originTimestamp = entry.originTimestamp();
         // Last write wins
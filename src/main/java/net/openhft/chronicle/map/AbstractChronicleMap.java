@@ -83,7 +83,7 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V> {
 
     @Override
     default void putAll(Map<? extends K, ? extends V> m) {
-        m.forEach(this::put);
+        putAll(m.entrySet());
     }
 
     @NotNull
@@ -138,6 +138,11 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V> {
             public void forEach(java.util.function.Consumer<? super V> action) {
                 AbstractChronicleMap.this.forEachEntry(c -> action.accept(c.value().get()));
             }
+
+            @Override
+            public Spliterator<V> spliterator() {
+                return new ChronicleMapSpliterator.OfValues<>(AbstractChronicleMap.this);
+            }
         };
     }
 
@@ -173,6 +178,11 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V> {
             public void forEach(java.util.function.Consumer<? super K> action) {
                 AbstractChronicleMap.this.forEachEntry(c -> action.accept(c.key().get()));
             }
+
+            @Override
+            public Spliterator<K> spliterator() {
+                return new ChronicleMapSpliterator.OfKeys<>(AbstractChronicleMap.this);
+            }
         };
     }
 
@@ -252,4 +262,19 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V> {
         }
         return !interrupt;
     }
+
+    @Override
+    default boolean forEachEntryWhile(final int batchSize,
+                                      final Predicate<? super MapEntry<K, V>> action) {
+        boolean interrupt = false;
+        for (int i = segments() - 1; i >= 0; i--) {
+            try (MapSegmentContext<K, V, ?> c = segmentContext(i)) {
+                if (!c.forEachSegmentEntryWhile(batchSize, action)) {
+                    interrupt = true;
+                    break;
+                }
+            }
+        }
+        return !interrupt;
+    }
 }
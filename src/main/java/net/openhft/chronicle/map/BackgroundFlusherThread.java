@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.DurabilityPolicy;
+import net.openhft.chronicle.hash.impl.BigSegmentHeader;
+
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Msyncs modified segments of a persisted map in background, according to the {@link
+ * DurabilityPolicy}. Modified segments are detected by polling the segment versions, so this
+ * thread adds nothing to the write path itself. The versions are not free though: {@link
+ * BigSegmentHeader} increments the version of a segment and issues a store fence on each
+ * acquisition of the write lock and upgrade to it, and increments the version with an ordered
+ * write on each downgrade and release of the write lock. That is paid by writes to every map,
+ * whether or not it is flushed in background or {@linkplain
+ * ChronicleMapBuilder#optimisticReads(boolean) read optimistically}.
+ */
+class BackgroundFlusherThread extends Thread implements MapClosable {
+
+    static final long WRITES_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final long MAX_PERIODIC_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Don't store a strong ref to a map in order to avoid it's leaking, the same as in {@link
+     * OldDeletedEntriesCleanupThread}.
+     */
+    private final WeakReference<VanillaChronicleMap<?, ?, ?>> mapRef;
+    private final long intervalNanos;
+    private final long writes;
+    private final long pollIntervalNanos;
+    private final int segments;
+
+    /**
+     * Segment versions as of the last msync, and as of the last poll
+     */
+    private final int[] flushedVersions;
+    private final int[] polledVersions;
+    private final BitSet dirtySegments = new BitSet();
+    private long versionIncrementsSinceFlush;
+
+    /**
+     * This object is used to determine that this thread is parked from {@link #sleepNanos(long)},
+     * to unpark it selectively in {@link #close()}.
+     */
+    private final Object flusherSleepingHandle = new Object();
+
+    private volatile boolean shutdown;
+
+    BackgroundFlusherThread(VanillaChronicleMap<?, ?, ?> map, DurabilityPolicy policy) {
+        super("Flusher Thread for " + map.toIdentityString());
+        setDaemon(true);
+        this.mapRef = new WeakReference<>(map);
+        intervalNanos = policy.intervalNanos();
+        writes = policy.writes();
+        pollIntervalNanos = intervalNanos > 0 ?
+                Math.min(intervalNanos, MAX_PERIODIC_POLL_INTERVAL_NANOS) :
+                WRITES_POLL_INTERVAL_NANOS;
+        segments = map.segments();
+        flushedVersions = new int[segments];
+        for (int i = 0; i < segments; i++) {
+            flushedVersions[i] = BigSegmentHeader.INSTANCE.version(map.segmentHeaderAddress(i));
+        }
+        polledVersions = flushedVersions.clone();
+        map.backgroundFlushing = true;
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            sleepNanos(pollIntervalNanos);
+            if (shutdown)
+                break;
+            try {
+                if (!pollAndFlush())
+                    return;
+            } catch (ChronicleHashClosedException e) {
+                return;
+            } catch (RuntimeException e) {
+                if (shutdown)
+                    break;
+                Jvm.warn().on(getClass(), "Background flush failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the map is already collected and this thread should stop
+     */
+    private boolean pollAndFlush() {
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null)
+            return false;
+        long now = System.nanoTime();
+        for (int i = 0; i < segments; i++) {
+            int version = BigSegmentHeader.INSTANCE.version(map.segmentHeaderAddress(i));
+            versionIncrementsSinceFlush += version - polledVersions[i];
+            polledVersions[i] = version;
+            if (version != flushedVersions[i])
+                dirtySegments.set(i);
+        }
+        if (dirtySegments.isEmpty())
+            return true;
+        long unflushedChangesSince = map.unflushedChangesSince;
+        if (unflushedChangesSince == 0L) {
+            unflushedChangesSince = now;
+            map.unflushedChangesSince = now;
+        }
+        boolean flush;
+        if (intervalNanos > 0) {
+            // flush before the next poll would exceed the interval
+            flush = now - unflushedChangesSince + pollIntervalNanos >= intervalNanos;
+        } else {
+            // each write lock increments the version twice
+            flush = versionIncrementsSinceFlush / 2 >= writes;
+        }
+        if (flush) {
+            map.msyncSegments(dirtySegments);
+            for (int i = dirtySegments.nextSetBit(0); i >= 0; i = dirtySegments.nextSetBit(i + 1)) {
+                flushedVersions[i] = polledVersions[i];
+            }
+            dirtySegments.clear();
+            versionIncrementsSinceFlush = 0L;
+            // changes made during the msync are detected on the next poll
+            map.unflushedChangesSince = 0L;
+        }
+        return true;
+    }
+
+    private void sleepNanos(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !shutdown)
+            LockSupport.parkNanos(flusherSleepingHandle, remaining);
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+        LockSupport.unpark(this);
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map != null)
+            map.backgroundFlushing = false;
+        // the memory is released after closeables are closed, wait until the segment versions
+        // are not polled anymore
+        if (Thread.currentThread() != this) {
+            try {
+                join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (isAlive()) {
+                Jvm.warn().on(getClass(), getName() + " is still running after " +
+                        CLOSE_TIMEOUT_MILLIS + " ms, e. g. blocked in msync");
+            }
+        }
+    }
+}
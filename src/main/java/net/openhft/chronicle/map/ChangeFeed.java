@@ -0,0 +1,260 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.OS;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded off-heap ring of (tierIndex, pos) records of entries, changed since they were last
+ * replicated to a remote node. Records are appended by the threads updating the map (many
+ * producers, each holding the update lock of some segment), and consumed by the single thread
+ * replicating to the remote node, see {@link ReplicatedChronicleMap.ModificationIterator}.
+ * <p>
+ * The ring doesn't replace the modification bit sets, which remain the source of truth: a record
+ * only tells the consumer which bit to check. If the ring is full, the record is dropped and the
+ * ring is marked {@linkplain #overflowed() overflowed}, then the consumer falls back to scanning
+ * the bit sets.
+ * <p>
+ * The ring is process-local, changes made to a persisted map by other processes are only observed
+ * by scanning the bit sets.
+ * <p>
+ * The ring follows D. Vyukov's bounded queue design: each slot is prefixed by a sequence number,
+ * equal to the slot's index when the slot is free for a producer, and to the index + 1 when the
+ * record in the slot is published for the consumer. Before parking, the consumer sets the {@link
+ * #WAITING} flag in the sequence of the slot it waits for, so that only the producer publishing
+ * to that slot wakes the consumer up, and other producers touch nothing but the tail and their
+ * slots.
+ * <p>
+ * Producers offer records only within query contexts of the map, and the ring is closed with the
+ * map, after the contexts are closed, so producers never access a closed ring. The consumer
+ * accesses the ring only after it is counted in {@link #consumerAccesses} and has checked the ring
+ * is not closed, {@link #close()} marks the ring closed first, and releases the memory only when
+ * the consumer doesn't access it.
+ */
+final class ChangeFeed implements Closeable {
+
+    private static final long SEQUENCE_OFFSET = 0L;
+    private static final long TIER_INDEX_OFFSET = 8L;
+    private static final long POS_OFFSET = 16L;
+    private static final long SLOT_SIZE = 24L;
+    private static final long WAITING = Long.MIN_VALUE;
+
+    private final BytesStore<?, Void> store;
+    private final long address;
+    private final long capacity;
+    private final long mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean overflowed = false;
+    private volatile Thread waiter;
+    private volatile boolean closed = false;
+    /**
+     * Written by the consumer only, read by {@link #close()}
+     */
+    private final AtomicInteger consumerAccesses = new AtomicInteger();
+
+    // consumer state, accessed only from the consumer thread
+    private long head = 0L;
+    private long polledTierIndex;
+    private long polledPos;
+
+    ChangeFeed(final int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("change feed capacity should be positive, " +
+                    capacity + " given");
+        this.capacity = Maths.nextPower2(capacity, 16);
+        mask = this.capacity - 1;
+        store = BytesStore.nativeStoreWithFixedCapacity(this.capacity * SLOT_SIZE);
+        address = store.addressForWrite(0);
+        for (long i = 0; i < this.capacity; i++) {
+            OS.memory().writeLong(address + i * SLOT_SIZE + SEQUENCE_OFFSET, i);
+        }
+        OS.memory().storeFence();
+    }
+
+    /**
+     * Appends a record, or marks the ring overflowed if it is full. Wakes up the consumer thread,
+     * if it is {@linkplain #await(long) waiting} for this record. Should be called within a query
+     * context of the map.
+     */
+    void offer(final long tierIndex, final long pos) {
+        long t = tail.get();
+        while (true) {
+            final long slot = address + (t & mask) * SLOT_SIZE;
+            final long diff = (OS.memory().readVolatileLong(slot + SEQUENCE_OFFSET) & ~WAITING) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    OS.memory().writeLong(slot + TIER_INDEX_OFFSET, tierIndex);
+                    OS.memory().writeLong(slot + POS_OFFSET, pos);
+                    publish(slot, t + 1);
+                    return;
+                }
+                t = tail.get();
+            } else if (diff < 0) {
+                // the ring is full, the consumer will find the change in the bit set
+                overflowed = true;
+                return;
+            } else {
+                t = tail.get();
+            }
+        }
+    }
+
+    /**
+     * The consumer could set the waiting flag concurrently, hence the sequence is swapped.
+     */
+    private void publish(final long slot, final long sequence) {
+        while (true) {
+            final long current = OS.memory().readVolatileLong(slot + SEQUENCE_OFFSET);
+            if (OS.memory().compareAndSwapLong(slot + SEQUENCE_OFFSET, current, sequence)) {
+                if ((current & WAITING) != 0)
+                    LockSupport.unpark(waiter);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the next record, making it available via {@link #polledTierIndex()} and {@link
+     * #polledPos()}. Consumer-only.
+     *
+     * @return {@code false} if there are no published records, or the ring is closed
+     */
+    boolean poll() {
+        if (!enter())
+            return false;
+        try {
+            final long slot = headSlot();
+            if (OS.memory().readVolatileLong(slot + SEQUENCE_OFFSET) != head + 1)
+                return false;
+            polledTierIndex = OS.memory().readLong(slot + TIER_INDEX_OFFSET);
+            polledPos = OS.memory().readLong(slot + POS_OFFSET);
+            OS.memory().writeOrderedLong(slot + SEQUENCE_OFFSET, head + capacity);
+            head++;
+            return true;
+        } finally {
+            exit();
+        }
+    }
+
+    long polledTierIndex() {
+        return polledTierIndex;
+    }
+
+    long polledPos() {
+        return polledPos;
+    }
+
+    /**
+     * Consumer-only.
+     *
+     * @return {@code true} if there are no published records, or the ring is closed
+     */
+    boolean isEmpty() {
+        if (!enter())
+            return true;
+        try {
+            return OS.memory().readVolatileLong(headSlot() + SEQUENCE_OFFSET) != head + 1;
+        } finally {
+            exit();
+        }
+    }
+
+    boolean overflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Resets the overflow mark. Should be called by the consumer <i>before</i> the bit set scan
+     * the overflow triggers, so that overflows during the scan are not lost.
+     */
+    void clearOverflow() {
+        overflowed = false;
+    }
+
+    /**
+     * Parks the consumer thread until a record is offered, or the timeout elapses, or the thread
+     * is interrupted. Spurious returns are possible, the caller should re-check the ring.
+     * Consumer-only.
+     */
+    void await(final long timeoutNanos) {
+        if (!enter())
+            return;
+        try {
+            waiter = Thread.currentThread();
+            final long slot = headSlot() + SEQUENCE_OFFSET;
+            // fails if the record is already published
+            if (!closed && !overflowed &&
+                    OS.memory().compareAndSwapLong(slot, head, head | WAITING)) {
+                // close() reads the waiter after closed is set, so it either unparks this thread,
+                // or this thread sees the ring is closed
+                if (!closed)
+                    LockSupport.parkNanos(this, timeoutNanos);
+                // fails if the producer has published the record meanwhile
+                OS.memory().compareAndSwapLong(slot, head | WAITING, head);
+            }
+        } finally {
+            waiter = null;
+            exit();
+        }
+    }
+
+    private long headSlot() {
+        return address + (head & mask) * SLOT_SIZE;
+    }
+
+    /**
+     * @return {@code false} if the ring is closed, then the memory shouldn't be accessed
+     */
+    private boolean enter() {
+        consumerAccesses.incrementAndGet();
+        if (closed) {
+            consumerAccesses.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void exit() {
+        consumerAccesses.decrementAndGet();
+    }
+
+    /**
+     * Marks the ring closed, wakes up the consumer, if it is waiting, and waits until the consumer
+     * leaves the ring, before releasing its memory. Called when the map is closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        while (consumerAccesses.get() != 0) {
+            final Thread w = waiter;
+            if (w != null)
+                LockSupport.unpark(w);
+            Thread.yield();
+        }
+        store.releaseLast();
+    }
+}
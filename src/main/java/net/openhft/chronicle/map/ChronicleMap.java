@@ -29,8 +29,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /**
  * {@code ChronicleMap} provides concurrent access to a <i>Chronicle Map key-value store</i> from a
@@ -202,6 +210,208 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>,
      */
     <R> R getMapped(K key, @NotNull SerializableFunction<? super V, R> function);
 
+    /**
+     * Looks up all the given keys and passes each key with the value it is mapped to, or {@code
+     * null} if this map contains no mapping for the key, to the given action.
+     * <p>
+     * Unlike a loop over {@link #get(Object) get()}, implementations are free to group the keys by
+     * segment and to look up all keys of a segment under a single acquisition of the segment's
+     * read lock, visiting segments in ascending order. Therefore the action is not necessarily
+     * called in the iteration order of the given collection. The action is called when the
+     * segment lock is already released, so it could access this map freely. The view of the map
+     * is consistent only within the keys of a single segment.
+     *
+     * @param keys   the keys whose associated values are to be returned
+     * @param action the action to be called for each key with the value mapped to it
+     * @throws NullPointerException if any of the keys is {@code null}
+     * @see #getAllUsing(List, List)
+     */
+    default void getAll(@NotNull Collection<? extends K> keys,
+                        @NotNull BiConsumer<? super K, ? super V> action) {
+        for (K key : keys) {
+            action.accept(key, get(key));
+        }
+    }
+
+    /**
+     * Garbage-free version of {@link #getAll(Collection, BiConsumer)}: looks up all the given keys,
+     * reading the value of the key at some index in {@code keys} to the object at the same index
+     * in {@code usingValues}, if possible, as in {@link #getUsing(Object, Object)}. The value
+     * returned by {@code getUsing()} (i. e. the given object, another object if the given one
+     * couldn't be reused, or {@code null} if there is no mapping for the key) is then {@linkplain
+     * List#set(int, Object) set} at that index in {@code usingValues}.
+     *
+     * @param keys        the keys whose associated values are to be returned
+     * @param usingValues the objects to read values in, if possible, and to store the results of
+     *                    the lookups to, must have the same size as {@code keys}
+     * @throws IllegalArgumentException if {@code keys} and {@code usingValues} are of different
+     *                                  sizes
+     * @throws NullPointerException     if any of the keys is {@code null}
+     * @see #getAll(Collection, BiConsumer)
+     * @see #getUsing(Object, Object)
+     */
+    default void getAllUsing(@NotNull List<? extends K> keys, @NotNull List<V> usingValues) {
+        if (keys.size() != usingValues.size()) {
+            throw new IllegalArgumentException("keys and usingValues should be of the same size, " +
+                    keys.size() + " and " + usingValues.size() + " given");
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            usingValues.set(i, getUsing(keys.get(i), usingValues.get(i)));
+        }
+    }
+
+    /**
+     * Asynchronously returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key, as in {@link #get(Object)}.
+     * <p>
+     * Asynchronous operations are executed by the worker threads of this map, the number of which
+     * is configured via {@link ChronicleMapBuilder#asyncThreads(int)}. Operations with equal keys
+     * are executed in the order of submission. The returned future is completed exceptionally with
+     * the exception thrown by the operation, or with {@link
+     * net.openhft.chronicle.hash.ChronicleHashClosedException}, if this map is closed before the
+     * operation is executed.
+     * <p>
+     * The default implementation executes the operation in the caller thread.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the future of the value to which the specified key is mapped
+     */
+    default CompletableFuture<V> getAsync(@NotNull K key) {
+        Objects.requireNonNull(key);
+        return MapAsyncExecutor.runInCaller(() -> get(key));
+    }
+
+    /**
+     * Asynchronously associates the specified value with the specified key, as in {@link
+     * #put(Object, Object)}. See {@link #getAsync(Object)} for the execution guarantees.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the future of the previous value associated with {@code key}, or {@code null}
+     */
+    default CompletableFuture<V> putAsync(@NotNull K key, @NotNull V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return MapAsyncExecutor.runInCaller(() -> put(key, value));
+    }
+
+    /**
+     * Asynchronously removes the mapping for the specified key, as in {@link #remove(Object)}.
+     * See {@link #getAsync(Object)} for the execution guarantees.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the future of the previous value associated with {@code key}, or {@code null}
+     */
+    default CompletableFuture<V> removeAsync(@NotNull K key) {
+        Objects.requireNonNull(key);
+        return MapAsyncExecutor.runInCaller(() -> remove(key));
+    }
+
+    /**
+     * Asynchronously computes a mapping for the specified key, as in {@link #compute(Object,
+     * BiFunction)}. See {@link #getAsync(Object)} for the execution guarantees. The function is
+     * called in a worker thread, under the update lock of the key's segment, so it must not block.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the future of the new value associated with the specified key, or {@code null}
+     */
+    default CompletableFuture<V> computeAsync(
+            @NotNull K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        return MapAsyncExecutor.runInCaller(() -> compute(key, remappingFunction));
+    }
+
+    /**
+     * Asynchronously merges the given value with the value associated with the specified key, as
+     * in {@link #merge(Object, Object, BiFunction)}. See {@link #computeAsync(Object, BiFunction)}
+     * for the constraints on the function.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to be merged with the existing value
+     * @param remappingFunction the function to recompute a value if present
+     * @return the future of the new value associated with the specified key, or {@code null}
+     */
+    default CompletableFuture<V> mergeAsync(
+            @NotNull K key, @NotNull V value,
+            @NotNull BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return MapAsyncExecutor.runInCaller(() -> merge(key, value, remappingFunction));
+    }
+
+    /**
+     * Performs the given action for each entry in this map, traversing different segments in
+     * parallel in the given pool, until all entries have been processed or the action throws an
+     * {@code Exception}. Exceptions thrown by the action are relayed to the caller.
+     * <p>
+     * Each segment is traversed by a single worker thread, under the segment's update lock, just
+     * as in {@link #forEachEntry(Consumer)}, so the action could update or {@linkplain
+     * MapEntry#context() remove} the given entry, but it must be thread-safe, because it is called
+     * concurrently for the entries of different segments.
+     *
+     * @param pool   the pool to traverse the segments in
+     * @param action the action to be performed for each entry
+     * @see #forEachEntry(Consumer)
+     */
+    default void forEachEntryParallel(@NotNull ForkJoinPool pool,
+                                      @NotNull Consumer<? super MapEntry<K, V>> action) {
+        Objects.requireNonNull(action);
+        pool.invoke(new ParallelSegmentsTraversal<>(this, 0, segments(), action));
+    }
+
+    /**
+     * Returns a cursor over the entries of this map, releasing the lock of the iterated segment
+     * after every 256 entries. Equivalent to {@code cursor(256)}.
+     *
+     * @return a new cursor over the entries of this map
+     * @see #cursor(int)
+     */
+    default MapCursor<K, V> cursor() {
+        return cursor(256);
+    }
+
+    /**
+     * Returns a cursor over the entries of this map. Unlike iterators of {@link #keySet()} and
+     * {@link #entrySet()}, the cursor doesn't copy segments to the heap and doesn't allocate
+     * key and value objects, if instances to reuse are passed to {@link MapCursor#key(Object)}
+     * and {@link MapCursor#value(Object)}.
+     * <p>
+     * The cursor holds the read lock of the segment of the current entry, releasing it and
+     * acquiring again after visiting about {@code batchSize} entries, to let concurrent writers to
+     * the segment proceed.
+     *
+     * @param batchSize the number of entries to visit per segment lock hold, should be positive
+     * @return a new cursor over the entries of this map
+     * @throws IllegalArgumentException      if {@code batchSize} is not positive
+     * @throws UnsupportedOperationException if not supported by the implementation, that is
+     *                                       always the case for implementations not overriding
+     *                                       this method
+     */
+    default MapCursor<K, V> cursor(int batchSize) {
+        throw new UnsupportedOperationException(toIdentityString() + ": cursors are not supported");
+    }
+
+    /**
+     * Returns a writer, applying writes to this map on the given number of owner threads, each
+     * owning a subset of segments, see {@link PartitionedMapWriter}. The writer should be used
+     * only by the calling thread, and must be closed, to stop the owner threads.
+     *
+     * @param ownerThreads the number of owner threads, if greater than the number of segments,
+     *                     a thread is started per segment
+     * @return a new partitioned writer to this map
+     * @throws IllegalArgumentException      if {@code ownerThreads} is not positive
+     * @throws UnsupportedOperationException if not supported by the implementation, that is
+     *                                       always the case for implementations not overriding
+     *                                       this method
+     */
+    default PartitionedMapWriter<K, V> partitionedWriter(int ownerThreads) {
+        throw new UnsupportedOperationException(toIdentityString() +
+                ": partitioned writers are not supported");
+    }
+
     /**
      * Exports all the entries to a {@link File} storing them in JSON format, an attempt is
      * made where possible to use standard java serialisation and keep the data human readable, data
@@ -234,6 +444,27 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>,
      */
     void putAll(File fromFile) throws IOException;
 
+    /**
+     * Puts all the given entries into this map, as if {@link #put(Object, Object) put(key, value)}
+     * was called for each of them in the iteration order.
+     * <p>
+     * Unlike a loop over {@code put()}, implementations are free to reorder the insertions of
+     * entries with keys falling into different segments, so that the keys of each segment are
+     * inserted under a single acquisition of that segment's lock. The order of insertions of the
+     * entries of the same segment is preserved, i. e. if the same key appears several times, the
+     * last value wins. Atomicity is provided only for each individual entry, not for the whole
+     * batch.
+     *
+     * @param entries the entries to put into this map
+     * @throws NullPointerException if any of the keys or values is {@code null}
+     * @see #putAll(Map)
+     */
+    default void putAll(@NotNull Iterable<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        for (Map.Entry<? extends K, ? extends V> e : entries) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
     /**
      * @return the class of {@code <V>}
      */
@@ -282,6 +513,96 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>,
         }
     }
 
+    /**
+     * Returns statistics of the segment locks of this map, recorded in the current process since
+     * the map was created, if {@link ChronicleMapBuilder#lockStatistics(boolean)} is configured.
+     * The statistics are not a consistent snapshot, locks acquired concurrently with this call
+     * might be recorded partially.
+     *
+     * @return an array of lock statistics of each segment, indexed by segment index
+     * @throws IllegalStateException if lock statistics are not recorded for this map, that is
+     *                               always the case for implementations not overriding this method
+     */
+    default LockStats[] lockStats() {
+        throw new IllegalStateException(toIdentityString() + ": lock statistics are not recorded");
+    }
+
+    class LockStats extends SelfDescribingMarshallable {
+        long acquisitions;
+        long contendedAcquisitions;
+        long totalWaitNanos;
+        long maxWaitNanos;
+        long[] waitHistogram;
+
+        /**
+         * @return the number of times the lock of the segment was acquired, including upgrades
+         * from the update lock to the write lock
+         */
+        public long acquisitions() {
+            return acquisitions;
+        }
+
+        /**
+         * @return the number of lock acquisitions and attempts, which found the lock of the
+         * segment held, i. e. failed the first attempt
+         */
+        public long contendedAcquisitions() {
+            return contendedAcquisitions;
+        }
+
+        /**
+         * @return the total time spent waiting for contended lock acquisitions, in nanoseconds
+         */
+        public long totalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        /**
+         * @return the longest time spent waiting for a single contended lock acquisition, in
+         * nanoseconds
+         */
+        public long maxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        /**
+         * Returns the histogram of wait times of contended lock acquisitions. The element {@code
+         * i} is the number of waits shorter than 2<sup>i</sup> ns, but not shorter than
+         * 2<sup>i - 1</sup> ns, the last element is the number of all longer waits.
+         *
+         * @return the wait time histogram with power-of-two nanosecond buckets
+         */
+        public long[] waitHistogram() {
+            return waitHistogram;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of wait times of contended lock
+         * acquisitions, with power-of-two precision, or 0 if no waits were recorded.
+         *
+         * @param percentile the percentile, from 0.0 to 100.0
+         * @return the upper bound of the wait time percentile, in nanoseconds
+         */
+        public long waitNanosPercentile(double percentile) {
+            if (percentile < 0.0 || percentile > 100.0)
+                throw new IllegalArgumentException("percentile should be within [0, 100], " +
+                        percentile + " given");
+            long waits = 0;
+            for (long count : waitHistogram) {
+                waits += count;
+            }
+            if (waits == 0)
+                return 0L;
+            long rank = Math.max((long) Math.ceil(waits * percentile / 100.0), 1L);
+            for (int i = 0; i < waitHistogram.length - 1; i++) {
+                rank -= waitHistogram[i];
+                if (rank <= 0)
+                    return 1L << i;
+            }
+            return maxWaitNanos;
+        }
+    }
+
     /**
      * @return the number of times in the future the map can expand its capacity of each segment ( by expending its capacity we mean expending the maximum number of possible entries that
      * can be stored into the map), the map will expand automatically. However, there is an upper limit to the number of times the map can expand.
@@ -27,6 +27,10 @@ import net.openhft.chronicle.core.annotation.UsedViaReflection;
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashCorruption;
 import net.openhft.chronicle.hash.ChronicleHashRecoveryFailedException;
+import net.openhft.chronicle.hash.DurabilityPolicy;
+import net.openhft.chronicle.hash.HugePages;
+import net.openhft.chronicle.hash.KeyHashFunction;
+import net.openhft.chronicle.hash.NumaPolicy;
 import net.openhft.chronicle.hash.VanillaGlobalMutableState;
 import net.openhft.chronicle.hash.impl.*;
 import net.openhft.chronicle.hash.impl.stage.entry.ChecksumStrategy;
@@ -58,6 +62,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -127,6 +132,13 @@ import static net.openhft.chronicle.map.VanillaChronicleMap.alignAddr;
  * <li>{@link #name(String)}</li>
  * <li>{@link #putReturnsNull(boolean)}</li>
  * <li>{@link #removeReturnsNull(boolean)}</li>
+ * <li>{@link #optimisticReads(boolean)}</li>
+ * <li>{@link #asyncThreads(int)}</li>
+ * <li>{@link #processPrivate(boolean)}</li>
+ * <li>{@link #lockStatistics(boolean)}</li>
+ * <li>{@link #replicationStatistics(boolean)}</li>
+ * <li>{@link #hugePages(HugePages)}</li>
+ * <li>{@link #numaPolicy(NumaPolicy)}</li>
  * <li>{@link #entryOperations(MapEntryOperations)}</li>
  * <li>{@link #mapMethods(MapMethods)}</li>
  * <li>{@link #defaultValueProvider(DefaultValueProvider)}</li>
@@ -212,9 +224,24 @@ public final class ChronicleMapBuilder<K, V> implements
     private double nonTieredSegmentsPercentile = 0.99999;
     private boolean aligned64BitMemoryOperationsAtomic = OS.is64Bit();
     private ChecksumEntries checksumEntries = ChecksumEntries.IF_PERSISTED;
+    private boolean maintainSizeCounter = false;
+    private DurabilityPolicy durabilityPolicy = DurabilityPolicy.none();
+    private boolean processPrivate = false;
+    private boolean lockStatistics = false;
+    private boolean replicationStatistics = false;
+    private HugePages hugePages = HugePages.NONE;
+    private NumaPolicy numaPolicy = NumaPolicy.DEFAULT;
+    /**
+     * {@code null} if not configured explicitly, existing files are then opened with whatever
+     * function they were created with
+     */
+    private KeyHashFunction keyHashFunction = null;
     private boolean putReturnsNull = false;
     private boolean putIfAbsentUsingValue = false;
     private boolean removeReturnsNull = false;
+    private boolean optimisticReads = false;
+    private int asyncThreads = 0;
+    private long entryTimeToLiveMillis = 0;
     private boolean replicated;
     private boolean persisted;
     private String replicatedMapClassName = ReplicatedChronicleMap.class.getName();
@@ -764,6 +791,8 @@ public final class ChronicleMapBuilder<K, V> implements
         size += keySize;
         if (replicated)
             size += ReplicatedChronicleMap.ADDITIONAL_ENTRY_BYTES;
+        if (entryTimeToLiveMillis > 0)
+            size += VanillaChronicleMap.EXPIRY_BYTES;
         if (checksumEntries())
             size += ChecksumStrategy.CHECKSUM_STORED_BYTES;
         double valueSize = averageValueSize();
@@ -1325,6 +1354,74 @@ public final class ChronicleMapBuilder<K, V> implements
         return removeReturnsNull;
     }
 
+    /**
+     * Configures if the maps created by this {@code ChronicleMapBuilder} should look up values in
+     * {@link ChronicleMap#get(Object) get()} and {@link ChronicleMap#getUsing(Object, Object)
+     * getUsing()} without acquiring the segment read lock. The value is read optimistically and
+     * validated against the segment version, which writers increment when they acquire and
+     * release the segment write lock. If a concurrent write is detected, the lookup is retried and
+     * eventually falls back to the read lock.
+     * <p>
+     * Optimistic reads avoid the contention on the segment lock word, when many threads read a few
+     * hot segments, but they might waste work under heavy concurrent writes. Values are
+     * deserialized speculatively, so custom {@link SizedReader}s should tolerate garbage input
+     * (any exception thrown while a concurrent write is in progress is discarded). Don't enable
+     * optimistic reads if the map is persisted and shared with processes running an older
+     * version of Chronicle Map, which doesn't maintain segment versions.
+     * <p>
+     * Optimistic reads are not used when the map is configured with custom {@link
+     * MapEntryOperations} or {@link MapMethods}, or when {@code get()} is called within a
+     * context, which already holds a lock on the same segment.
+     * <p>
+     * This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * By default, {@code get()} acquires the segment read lock.
+     *
+     * @param optimisticReads {@code true} if lookups should be performed without the read lock
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> optimisticReads(final boolean optimisticReads) {
+        this.optimisticReads = optimisticReads;
+        return this;
+    }
+
+    boolean optimisticReads() {
+        return optimisticReads;
+    }
+
+    /**
+     * Configures the number of worker threads, executing asynchronous operations of the
+     * {@code ChronicleMap}, such as {@link ChronicleMap#getAsync(Object)} and {@link
+     * ChronicleMap#computeAsync(Object, java.util.function.BiFunction)}. Operations are
+     * distributed between the workers by the key hash code, operations with equal keys are
+     * executed by the same worker in the order of submission.
+     * <p>
+     * Workers are started lazily, on the first asynchronous operation, and stopped after a minute
+     * of inactivity, or when the map is closed. Only the workers acquire segment locks and hold
+     * query contexts on behalf of asynchronous callers, so any number of caller threads (e. g.
+     * virtual threads) could submit operations without pinning per-thread contexts.
+     * <p>
+     * This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * By default, or if {@code 0} is configured, the number of workers is the minimum of the
+     * number of segments and the number of available processors.
+     *
+     * @param asyncThreads the number of worker threads, or {@code 0} for the default
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code asyncThreads} is negative
+     */
+    public ChronicleMapBuilder<K, V> asyncThreads(final int asyncThreads) {
+        if (asyncThreads < 0)
+            throw new IllegalArgumentException("asyncThreads should be non-negative, " +
+                    asyncThreads + " given");
+        this.asyncThreads = asyncThreads;
+        return this;
+    }
+
+    int asyncThreads() {
+        return asyncThreads;
+    }
+
     @Override
     public ChronicleMapBuilder<K, V> maxBloatFactor(final double maxBloatFactor) {
         if (isNaN(maxBloatFactor) || maxBloatFactor < 1.0 || maxBloatFactor > 1_000.0) {
@@ -1339,6 +1436,47 @@ public final class ChronicleMapBuilder<K, V> implements
         return maxBloatFactor;
     }
 
+    /**
+     * Configures the time, after which entries of the {@code ChronicleMap} expire. The expiry time
+     * of an entry is stored along with the entry (8 bytes, in addition to the key and the value),
+     * and is reset every time the value is written via the map's methods or contexts, i. e. the
+     * time to live is counted since the last write to the entry. Writes directly to the off-heap
+     * memory of the value, e. g. via a value interface instance returned from {@link
+     * ChronicleMap#acquireUsing(Object, Object)}, don't reset the expiry time.
+     * <p>
+     * Expired entries are treated as absent by {@code get()}, {@code containsKey()}, {@code put()}
+     * and other methods, and query contexts, and are removed by these methods, if they hold the
+     * update lock anyway. The remaining expired entries are removed by a background thread, which
+     * visits segments one by one, in a random order, completing a pass over all segments about
+     * once per the time to live. Iteration over the map, {@link ChronicleMap#size()} and {@link
+     * ChronicleMap#forEachEntry} might include expired entries, which are not removed yet.
+     * <p>
+     * Time to live is a property of the Chronicle Map data store, it is persisted and couldn't be
+     * changed for an existing file. Replicated maps don't support expiry.
+     * <p>
+     * By default, entries don't expire.
+     *
+     * @param timeToLive the time to live of entries, or {@code 0}, if entries shouldn't expire
+     * @param unit       the unit of {@code timeToLive}
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code timeToLive} is negative, or positive, but less
+     *                                  than a millisecond
+     */
+    public ChronicleMapBuilder<K, V> entryTimeToLive(final long timeToLive,
+                                                     @NotNull final TimeUnit unit) {
+        final long millis = unit.toMillis(timeToLive);
+        if (timeToLive < 0 || (timeToLive > 0 && millis < 1)) {
+            throw new IllegalArgumentException("entryTimeToLive should be 0 or at least 1 " +
+                    "millisecond, " + timeToLive + " " + unit + " given");
+        }
+        this.entryTimeToLiveMillis = millis;
+        return this;
+    }
+
+    long entryTimeToLiveMillis() {
+        return entryTimeToLiveMillis;
+    }
+
     @Override
     public ChronicleMapBuilder<K, V> allowSegmentTiering(final boolean allowSegmentTiering) {
         this.allowSegmentTiering = allowSegmentTiering;
@@ -1383,7 +1521,18 @@ public final class ChronicleMapBuilder<K, V> implements
                 ", entries=" + entries() +
                 ", putReturnsNull=" + putReturnsNull() +
                 ", removeReturnsNull=" + removeReturnsNull() +
+                ", optimisticReads=" + optimisticReads() +
+                ", asyncThreads=" + asyncThreads() +
+                ", entryTimeToLiveMillis=" + entryTimeToLiveMillis() +
                 ", sparseFile=" + sparseFile() +
+                ", maintainSizeCounter=" + maintainSizeCounter() +
+                ", keyHashFunction=" + keyHashFunction() +
+                ", durabilityPolicy=" + durabilityPolicy() +
+                ", processPrivate=" + processPrivate() +
+                ", lockStatistics=" + lockStatistics() +
+                ", replicationStatistics=" + replicationStatistics() +
+                ", hugePages=" + hugePages() +
+                ", numaPolicy=" + numaPolicy() +
                 ", keyBuilder=" + keyBuilder +
                 ", valueBuilder=" + valueBuilder +
                 '}';
@@ -1480,6 +1629,103 @@ public final class ChronicleMapBuilder<K, V> implements
         }
     }
 
+    @Override
+    public ChronicleMapBuilder<K, V> maintainSizeCounter(final boolean maintainSizeCounter) {
+        this.maintainSizeCounter = maintainSizeCounter;
+        return this;
+    }
+
+    boolean maintainSizeCounter() {
+        return maintainSizeCounter;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> keyHashFunction(@NotNull final KeyHashFunction keyHashFunction) {
+        this.keyHashFunction = Objects.requireNonNull(keyHashFunction);
+        return this;
+    }
+
+    KeyHashFunction keyHashFunction() {
+        return keyHashFunction != null ? keyHashFunction : KeyHashFunction.xxR39();
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> durabilityPolicy(@NotNull final DurabilityPolicy durabilityPolicy) {
+        this.durabilityPolicy = Objects.requireNonNull(durabilityPolicy);
+        return this;
+    }
+
+    DurabilityPolicy durabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> processPrivate(final boolean processPrivate) {
+        this.processPrivate = processPrivate;
+        return this;
+    }
+
+    boolean processPrivate() {
+        return processPrivate;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> lockStatistics(final boolean lockStatistics) {
+        this.lockStatistics = lockStatistics;
+        return this;
+    }
+
+    boolean lockStatistics() {
+        return lockStatistics;
+    }
+
+    /**
+     * Configures whether {@linkplain #replication(byte) replicated} maps, created by this builder,
+     * should register the {@link ReplicationStatsMXBean} under the {@code
+     * net.openhft.chronicle.map:type=ReplicationStats} domain: for each remote node, the number
+     * of changed entries pending to be sent, an upper bound of the age of the oldest pending
+     * change, and the number of entries sent; and the numbers of remote modifications accepted,
+     * discarded and conflicting. The statistics themselves are always maintained, and available
+     * via {@link ReplicatedChronicleMap.ModificationIterator#pendingEntries()} and {@link
+     * ReplicatedChronicleMap#acceptanceDecisionStats()}.
+     * <p>
+     * This is a <a href="#jvm-configurations">JVM-level configuration</a>. Ignored for not
+     * replicated maps.
+     * <p>
+     * By default, the MXBean is not registered.
+     *
+     * @param replicationStatistics if the replication statistics MXBean should be registered
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> replicationStatistics(final boolean replicationStatistics) {
+        this.replicationStatistics = replicationStatistics;
+        return this;
+    }
+
+    boolean replicationStatistics() {
+        return replicationStatistics;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> hugePages(@NotNull final HugePages hugePages) {
+        this.hugePages = Objects.requireNonNull(hugePages);
+        return this;
+    }
+
+    HugePages hugePages() {
+        return hugePages;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> numaPolicy(@NotNull final NumaPolicy numaPolicy) {
+        this.numaPolicy = Objects.requireNonNull(numaPolicy);
+        return this;
+    }
+
+    NumaPolicy numaPolicy() {
+        return numaPolicy;
+    }
+
     boolean aligned64BitMemoryOperationsAtomic() {
         return aligned64BitMemoryOperationsAtomic;
     }
@@ -1698,6 +1944,11 @@ public final class ChronicleMapBuilder<K, V> implements
             throw new AssertionError("recover -> overrideBuilderConfig");
         replicated = replicationIdentifier != -1;
         persisted = true;
+        if (hugePages == HugePages.EXPLICIT) {
+            throw new IllegalStateException("Explicit huge pages are supported only for in-memory " +
+                    "Chronicle Maps, use HugePages.TRANSPARENT for a file on a DAX or tmpfs " +
+                    "file system");
+        }
 
         // This line pre-initializes CachedCompiler - the first call may take time as Javac needs to scan the whole classpath
         Values.nativeClassFor(VanillaGlobalMutableState.class);
@@ -1778,6 +2029,9 @@ public final class ChronicleMapBuilder<K, V> implements
 
     private void prepareMapPublication(@NotNull final VanillaChronicleMap<K, V, ?> map) throws IOException {
         establishReplication(map);
+        establishDurability(map);
+        establishLockStatsMXBean(map);
+        establishExpiredEntriesReaper(map);
         map.setResourcesName();
         map.registerCleaner();
         // Ensure safe publication of the ChronicleMap
@@ -1911,6 +2165,7 @@ public final class ChronicleMapBuilder<K, V> implements
             }
 
             final VanillaChronicleMap<K, V, ?> map = wire.getValueIn().typedMarshallable();
+            checkKeyHashFunction(file, map, recover);
             map.initBeforeMapping(file, raf, headerBuffer.limit(), recover);
 
             final long dataStoreSize = map.globalMutableState().getDataStoreSize();
@@ -1954,6 +2209,18 @@ public final class ChronicleMapBuilder<K, V> implements
         }
     }
 
+    private void checkKeyHashFunction(@NotNull final File file,
+                                      @NotNull final VanillaChronicleMap<K, V, ?> map,
+                                      final boolean recover) throws IOException {
+        // hashing keys with another function would fail to find the existing entries, and
+        // insert duplicates of them
+        if (keyHashFunction != null && !keyHashFunction.equals(map.keyHashFunction)) {
+            throw throwRecoveryOrReturnIOException(file, "the map is created with key hash " +
+                    "function " + map.keyHashFunction + ", but " + keyHashFunction +
+                    " is configured", recover);
+        }
+    }
+
     private ChronicleMap<K, V> createWithoutFile() {
         replicated = replicationIdentifier != -1;
         persisted = false;
@@ -2031,6 +2298,14 @@ public final class ChronicleMapBuilder<K, V> implements
     private void stateChecks() {
         checkActualChunksPerSegmentTierIsConfiguredOnlyIfOtherLowLevelConfigsAreManual();
         checkActualChunksPerSegmentGreaterOrEqualToEntries();
+        checkEntryTimeToLiveIsNotConfiguredForReplicatedMap();
+    }
+
+    private void checkEntryTimeToLiveIsNotConfiguredForReplicatedMap() {
+        if (replicated && entryTimeToLiveMillis > 0) {
+            throw new IllegalStateException(
+                    "entryTimeToLive() is not supported by replicated maps");
+        }
     }
 
     private boolean allLowLevelConfigurationsAreManual() {
@@ -2044,6 +2319,41 @@ public final class ChronicleMapBuilder<K, V> implements
             final ReplicatedChronicleMap result = (ReplicatedChronicleMap) map;
             if (cleanupRemovedEntries)
                 establishCleanupThread(result);
+            if (replicationStatistics)
+                establishReplicationStatsMXBean(result);
+        }
+    }
+
+    private void establishReplicationStatsMXBean(@NotNull final ReplicatedChronicleMap<?, ?, ?> map) {
+        final ReplicationStatsMXBeanRegistration registration =
+                new ReplicationStatsMXBeanRegistration(map);
+        if (registration.register())
+            map.addCloseable(registration);
+    }
+
+    private void establishDurability(@NotNull final VanillaChronicleMap<K, V, ?> map) {
+        if (persisted && !durabilityPolicy.isNone()) {
+            final BackgroundFlusherThread flusherThread =
+                    new BackgroundFlusherThread(map, durabilityPolicy);
+            map.addCloseable(flusherThread);
+            flusherThread.start();
+        }
+    }
+
+    private void establishLockStatsMXBean(@NotNull final VanillaChronicleMap<K, V, ?> map) {
+        if (lockStatistics) {
+            final LockStatsMXBeanRegistration registration = new LockStatsMXBeanRegistration(map);
+            if (registration.register())
+                map.addCloseable(registration);
+        }
+    }
+
+    private void establishExpiredEntriesReaper(@NotNull final VanillaChronicleMap<K, V, ?> map) {
+        // the time to live is read from the map, because it is persisted
+        if (map.timeToLiveMillis > 0) {
+            final ExpiredEntriesReaperThread reaperThread = new ExpiredEntriesReaperThread(map);
+            map.addCloseable(reaperThread);
+            reaperThread.start();
         }
     }
 
@@ -17,6 +17,7 @@
 package net.openhft.chronicle.map;
 
 import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
+import net.openhft.chronicle.hash.KeyHashFunction;
 import net.openhft.chronicle.hash.serialization.impl.SerializationBuilder;
 import net.openhft.chronicle.map.replication.MapRemoteOperations;
 
@@ -96,6 +97,16 @@ class ChronicleMapBuilderPrivateAPI<K, V>
         return b.checksumEntries();
     }
 
+    @Override
+    public boolean maintainSizeCounter() {
+        return b.maintainSizeCounter();
+    }
+
+    @Override
+    public KeyHashFunction keyHashFunction() {
+        return b.keyHashFunction();
+    }
+
     @Override
     public void replication(byte identifier) {
         b.replication(identifier);
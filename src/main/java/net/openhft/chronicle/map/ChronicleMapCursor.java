@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.impl.stage.iter.SegmentCursorPosition;
+import net.openhft.chronicle.map.impl.IterationContext;
+
+/**
+ * Traverses segments in the same order as {@link ChronicleMapIterator}, but keeps the segment
+ * locked while positioned on an entry, instead of buffering the whole segment.
+ */
+final class ChronicleMapCursor<K, V> implements MapCursor<K, V> {
+
+    private final VanillaChronicleMap<K, V, ?> map;
+    private final int batchSize;
+    private final Thread ownerThread = Thread.currentThread();
+    private final SegmentCursorPosition position = new SegmentCursorPosition();
+    private IterationContext<K, V, ?> context;
+    private int segmentIndex;
+    private boolean segmentLocked = false;
+    private boolean onEntry = false;
+
+    ChronicleMapCursor(VanillaChronicleMap<K, V, ?> map, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(map.toIdentityString() +
+                    ": batchSize should be positive, " + batchSize + " given");
+        }
+        this.map = map;
+        this.batchSize = batchSize;
+        segmentIndex = map.segments() - 1;
+    }
+
+    private void checkSingleThreaded() {
+        if (ownerThread != Thread.currentThread()) {
+            throw new IllegalStateException(map.toIdentityString() +
+                    ": Cursor should be accessed only from a single thread");
+        }
+    }
+
+    private void checkOnEntry() {
+        checkSingleThreaded();
+        if (!onEntry) {
+            throw new IllegalStateException(map.toIdentityString() +
+                    ": Cursor is not positioned on an entry");
+        }
+    }
+
+    @Override
+    public boolean next() {
+        checkSingleThreaded();
+        onEntry = false;
+        while (segmentIndex >= 0) {
+            if (!segmentLocked) {
+                if (context == null)
+                    context = map.iterationContext();
+                context.initSegmentIndex(segmentIndex);
+                position.reset();
+                context.readLock().lock();
+                segmentLocked = true;
+            }
+            if (context.cursorNextEntry(position, batchSize))
+                return onEntry = true;
+            context.readLock().unlock();
+            segmentLocked = false;
+            segmentIndex--;
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public Data<K> key() {
+        checkOnEntry();
+        return context.key();
+    }
+
+    @Override
+    public Data<V> value() {
+        checkOnEntry();
+        return context.value();
+    }
+
+    @Override
+    public void close() {
+        checkSingleThreaded();
+        onEntry = false;
+        segmentIndex = -1;
+        if (context == null)
+            return;
+        try {
+            if (segmentLocked)
+                context.readLock().unlock();
+        } finally {
+            segmentLocked = false;
+            context.close();
+            context = null;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.AbstractSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Spliterator;
 
 class ChronicleMapEntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
 
@@ -35,6 +36,11 @@ class ChronicleMapEntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
         return new ChronicleMapIterator.OfEntries<>(map);
     }
 
+    @Override
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+        return new ChronicleMapSpliterator.OfEntries<>(map);
+    }
+
     public final boolean contains(Object o) {
         if (!(o instanceof Map.Entry))
             return false;
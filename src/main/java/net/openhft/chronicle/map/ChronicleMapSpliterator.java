@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.util.ArrayDeque;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of segments. Splits by halving the range, so parallel streams over
+ * the map's collection views traverse disjoint segments in different threads, each with its own
+ * segment context. Like {@link ChronicleMapIterator}, entries of a segment are read to a buffer
+ * under the segment lock, and passed to the action after the lock is released.
+ */
+abstract class ChronicleMapSpliterator<K, V, E> implements Spliterator<E>, Consumer<MapEntry<K, V>> {
+
+    final AbstractChronicleMap<K, V> map;
+    private final Queue<E> entryBuffer = new ArrayDeque<>();
+    private int segmentIndex;
+    private int fence;
+    private long estimatedSize;
+
+    ChronicleMapSpliterator(AbstractChronicleMap<K, V> map) {
+        this(map, 0, map.segments(), -1L);
+    }
+
+    ChronicleMapSpliterator(AbstractChronicleMap<K, V> map, int fromSegment, int toSegment,
+                            long estimatedSize) {
+        this.map = map;
+        this.segmentIndex = fromSegment;
+        this.fence = toSegment;
+        this.estimatedSize = estimatedSize;
+    }
+
+    private void fillEntryBuffer() {
+        while (entryBuffer.isEmpty() && segmentIndex < fence) {
+            try (MapSegmentContext<K, V, ?> c = map.segmentContext(segmentIndex)) {
+                segmentIndex++;
+                if (c.size() == 0)
+                    continue;
+                c.forEachSegmentEntry(this);
+            }
+        }
+    }
+
+    @Override
+    public void accept(MapEntry<K, V> e) {
+        entryBuffer.add(read(e));
+    }
+
+    abstract E read(MapEntry<K, V> entry);
+
+    abstract ChronicleMapSpliterator<K, V, E> newSpliterator(
+            int fromSegment, int toSegment, long estimatedSize);
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        fillEntryBuffer();
+        E e = entryBuffer.poll();
+        if (e == null)
+            return false;
+        action.accept(e);
+        return true;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        int mid = (segmentIndex + fence) >>> 1;
+        if (mid <= segmentIndex)
+            return null;
+        long size = estimateSize();
+        long prefixSize = size / (fence - segmentIndex) * (mid - segmentIndex);
+        Spliterator<E> prefix = newSpliterator(segmentIndex, mid, prefixSize);
+        segmentIndex = mid;
+        estimatedSize = size - prefixSize;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (estimatedSize < 0)
+            estimatedSize = map.longSize();
+        return estimatedSize + entryBuffer.size();
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL | CONCURRENT;
+    }
+
+    static class OfEntries<K, V> extends ChronicleMapSpliterator<K, V, Entry<K, V>> {
+
+        OfEntries(AbstractChronicleMap<K, V> map) {
+            super(map);
+        }
+
+        OfEntries(AbstractChronicleMap<K, V> map, int fromSegment, int toSegment,
+                  long estimatedSize) {
+            super(map, fromSegment, toSegment, estimatedSize);
+        }
+
+        @Override
+        Entry<K, V> read(MapEntry<K, V> entry) {
+            K key = entry.key().getUsing(null);
+            V value = entry.value().getUsing(null);
+            return new WriteThroughEntry<>(map, key, value);
+        }
+
+        @Override
+        ChronicleMapSpliterator<K, V, Entry<K, V>> newSpliterator(
+                int fromSegment, int toSegment, long estimatedSize) {
+            return new OfEntries<>(map, fromSegment, toSegment, estimatedSize);
+        }
+    }
+
+    static class OfKeys<K, V> extends ChronicleMapSpliterator<K, V, K> {
+
+        OfKeys(AbstractChronicleMap<K, V> map) {
+            super(map);
+        }
+
+        OfKeys(AbstractChronicleMap<K, V> map, int fromSegment, int toSegment,
+               long estimatedSize) {
+            super(map, fromSegment, toSegment, estimatedSize);
+        }
+
+        @Override
+        K read(MapEntry<K, V> entry) {
+            return entry.key().getUsing(null);
+        }
+
+        @Override
+        ChronicleMapSpliterator<K, V, K> newSpliterator(
+                int fromSegment, int toSegment, long estimatedSize) {
+            return new OfKeys<>(map, fromSegment, toSegment, estimatedSize);
+        }
+    }
+
+    static class OfValues<K, V> extends ChronicleMapSpliterator<K, V, V> {
+
+        OfValues(AbstractChronicleMap<K, V> map) {
+            super(map);
+        }
+
+        OfValues(AbstractChronicleMap<K, V> map, int fromSegment, int toSegment,
+                 long estimatedSize) {
+            super(map, fromSegment, toSegment, estimatedSize);
+        }
+
+        @Override
+        V read(MapEntry<K, V> entry) {
+            return entry.value().getUsing(null);
+        }
+
+        @Override
+        ChronicleMapSpliterator<K, V, V> newSpliterator(
+                int fromSegment, int toSegment, long estimatedSize) {
+            return new OfValues<>(map, fromSegment, toSegment, estimatedSize);
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL | CONCURRENT;
+        }
+    }
+}
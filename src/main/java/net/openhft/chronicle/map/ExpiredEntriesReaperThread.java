@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.map.impl.IterationContext;
+
+import java.lang.ref.WeakReference;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Removes expired entries of a map with {@link ChronicleMapBuilder#entryTimeToLive(long,
+ * TimeUnit) time to live}, visiting one segment at a time, in a random order, like {@link
+ * OldDeletedEntriesCleanupThread}, so that a pass over all segments takes about the time to live.
+ */
+class ExpiredEntriesReaperThread extends Thread
+        implements MapClosable, Predicate<MapEntry<?, ?>> {
+
+    static final long MIN_SEGMENT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Don't store a strong ref to a map in order to avoid it's leaking, if the user forgets to
+     * close() map, see {@link OldDeletedEntriesCleanupThread}.
+     */
+    private final WeakReference<VanillaChronicleMap<?, ?, ?>> mapRef;
+    private final long segmentIntervalNanos;
+    private final int[] segmentsPermutation;
+
+    /**
+     * This object is used to determine that this thread is parked from {@link #sleepNanos(long)},
+     * not somewhere inside ChronicleMap logic, to interrupt() selectively in {@link #close()}.
+     */
+    private final Object reaperSleepingHandle = new Object();
+
+    private volatile boolean shutdown;
+
+    private int permutationIndex = 0;
+    private long reaped;
+
+    ExpiredEntriesReaperThread(VanillaChronicleMap<?, ?, ?> map) {
+        super("Expired Entries Reaper for " + map.toIdentityString());
+        setDaemon(true);
+        this.mapRef = new WeakReference<>(map);
+        int segments = map.segments();
+        // with a short time to live, a pass over all segments takes longer, rather than the
+        // thread spinning
+        segmentIntervalNanos = Math.max(MIN_SEGMENT_INTERVAL_NANOS,
+                TimeUnit.MILLISECONDS.toNanos(map.timeToLiveMillis) / segments);
+        segmentsPermutation = randomPermutation(segments);
+    }
+
+    private static int[] randomPermutation(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        // Implementing Fisher–Yates shuffle
+        SecureRandom rnd = new SecureRandom();
+        for (int i = a.length - 1; i > 0; i--) {
+            int index = rnd.nextInt(i + 1);
+            int e = a[index];
+            a[index] = a[i];
+            a[i] = e;
+        }
+        return a;
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            try {
+                if (!reapSegment())
+                    return;
+            } catch (Exception e) {
+                if (shutdown)
+                    break;
+                throw e;
+            }
+            sleepNanos(segmentIntervalNanos);
+        }
+    }
+
+    /**
+     * @return {@code false} if the reaper thread should be shut down
+     */
+    private boolean reapSegment() {
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null || map.isClosed())
+            return false;
+        int segmentIndex = segmentsPermutation[permutationIndex];
+        permutationIndex = (permutationIndex + 1) % segmentsPermutation.length;
+        try (MapSegmentContext<?, ?, ?> context = map.segmentContext(segmentIndex)) {
+            reaped = 0;
+            if (!context.forEachSegmentEntryWhile(this)) {
+                // forEachWhile returned false => shutdown = true
+                return false;
+            }
+            if (reaped > 0) {
+                Jvm.debug().on(getClass(),
+                        "Removed " + reaped + " expired entries in the segment " + segmentIndex);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean test(MapEntry<?, ?> e) {
+        if (shutdown)
+            return false;
+        if (((IterationContext<?, ?, ?>) e).entryExpired()) {
+            e.doRemove();
+            reaped++;
+        }
+        return true;
+    }
+
+    private void sleepNanos(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !shutdown)
+            LockSupport.parkNanos(reaperSleepingHandle, remaining);
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+        // this means blocked in sleepNanos()
+        if (LockSupport.getBlocker(this) == reaperSleepingHandle)
+            this.interrupt(); // unblock
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.map;
+
+/**
+ * JMX view of the segment lock statistics of a {@link ChronicleMap}, registered in the platform
+ * MBean server under the {@code net.openhft.chronicle.map:type=LockStats} domain, if {@link
+ * ChronicleMapBuilder#lockStatistics(boolean)} is configured. The bean is unregistered when the map
+ * is closed.
+ *
+ * @see ChronicleMap#lockStats()
+ */
+public interface LockStatsMXBean {
+
+    String getMapIdentity();
+
+    int getSegments();
+
+    long getAcquisitions();
+
+    long getContendedAcquisitions();
+
+    long getTotalWaitNanos();
+
+    long getMaxWaitNanos();
+
+    /**
+     * @return the index of the segment with the longest total wait time, or -1 if no lock
+     * acquisition was contended
+     */
+    int getHottestSegment();
+
+    long[] getAcquisitionsPerSegment();
+
+    long[] getContendedAcquisitionsPerSegment();
+
+    long[] getTotalWaitNanosPerSegment();
+
+    /**
+     * @return the histogram of wait times of contended lock acquisitions of all segments
+     * @see ChronicleMap.LockStats#waitHistogram()
+     */
+    long[] getWaitHistogram();
+
+    /**
+     * Zeroes out the statistics of all segments.
+     */
+    void reset();
+}
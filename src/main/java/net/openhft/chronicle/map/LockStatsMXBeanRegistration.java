@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.impl.LockStatsSegmentHeader;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers {@link LockStatsMXBean} of a map on creation, and unregisters it when the map is
+ * closed. Refers only to the statistics of the map, not the map itself, so the bean doesn't
+ * prevent the map from being collected.
+ */
+final class LockStatsMXBeanRegistration implements LockStatsMXBean, MapClosable {
+
+    private final String mapIdentity;
+    private final LockStatsSegmentHeader segmentHeader;
+    private final ObjectName objectName;
+    private volatile boolean closed = false;
+
+    LockStatsMXBeanRegistration(VanillaChronicleMap<?, ?, ?> map) {
+        mapIdentity = map.toIdentityString();
+        segmentHeader = map.lockStatsSegmentHeader();
+        objectName = objectName(map);
+    }
+
+    private static ObjectName objectName(VanillaChronicleMap<?, ?, ?> map) {
+        String name = map.name() != null ? map.name() : "unnamed";
+        try {
+            // several maps might have the same name
+            return new ObjectName("net.openhft.chronicle.map:type=LockStats,name=" +
+                    ObjectName.quote(name) + ",id=" + Integer.toHexString(System.identityHashCode(map)));
+        } catch (JMException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    ObjectName objectName() {
+        return objectName;
+    }
+
+    /**
+     * @return {@code true} if the bean is registered, a failure to register is not fatal for the
+     * map
+     */
+    boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return true;
+        } catch (JMException | RuntimeException e) {
+            Jvm.warn().on(getClass(), "Failed to register " + objectName, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            Jvm.warn().on(getClass(), "Failed to unregister " + objectName, e);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public String getMapIdentity() {
+        return mapIdentity;
+    }
+
+    @Override
+    public int getSegments() {
+        return segmentHeader.segments();
+    }
+
+    @Override
+    public long getAcquisitions() {
+        long acquisitions = 0;
+        for (int i = 0; i < segmentHeader.segments(); i++) {
+            acquisitions += segmentHeader.acquisitions(i);
+        }
+        return acquisitions;
+    }
+
+    @Override
+    public long getContendedAcquisitions() {
+        long contendedAcquisitions = 0;
+        for (int i = 0; i < segmentHeader.segments(); i++) {
+            contendedAcquisitions += segmentHeader.contendedAcquisitions(i);
+        }
+        return contendedAcquisitions;
+    }
+
+    @Override
+    public long getTotalWaitNanos() {
+        long totalWaitNanos = 0;
+        for (int i = 0; i < segmentHeader.segments(); i++) {
+            totalWaitNanos += segmentHeader.totalWaitNanos(i);
+        }
+        return totalWaitNanos;
+    }
+
+    @Override
+    public long getMaxWaitNanos() {
+        long maxWaitNanos = 0;
+        for (int i = 0; i < segmentHeader.segments(); i++) {
+            maxWaitNanos = Math.max(maxWaitNanos, segmentHeader.maxWaitNanos(i));
+        }
+        return maxWaitNanos;
+    }
+
+    @Override
+    public int getHottestSegment() {
+        int hottestSegment = -1;
+        long maxTotalWaitNanos = 0;
+        for (int i = 0; i < segmentHeader.segments(); i++) {
+            long totalWaitNanos = segmentHeader.totalWaitNanos(i);
+            if (totalWaitNanos > maxTotalWaitNanos) {
+                maxTotalWaitNanos = totalWaitNanos;
+                hottestSegment = i;
+            }
+        }
+        return hottestSegment;
+    }
+
+    @Override
+    public long[] getAcquisitionsPerSegment() {
+        long[] acquisitions = new long[segmentHeader.segments()];
+        for (int i = 0; i < acquisitions.length; i++) {
+            acquisitions[i] = segmentHeader.acquisitions(i);
+        }
+        return acquisitions;
+    }
+
+    @Override
+    public long[] getContendedAcquisitionsPerSegment() {
+        long[] contendedAcquisitions = new long[segmentHeader.segments()];
+        for (int i = 0; i < contendedAcquisitions.length; i++) {
+            contendedAcquisitions[i] = segmentHeader.contendedAcquisitions(i);
+        }
+        return contendedAcquisitions;
+    }
+
+    @Override
+    public long[] getTotalWaitNanosPerSegment() {
+        long[] totalWaitNanos = new long[segmentHeader.segments()];
+        for (int i = 0; i < totalWaitNanos.length; i++) {
+            totalWaitNanos[i] = segmentHeader.totalWaitNanos(i);
+        }
+        return totalWaitNanos;
+    }
+
+    @Override
+    public long[] getWaitHistogram() {
+        long[] waitHistogram = new long[LockStatsSegmentHeader.WAIT_HISTOGRAM_BUCKETS];
+        for (int i = 0; i < segmentHeader.segments(); i++) {
+            long[] segmentWaitHistogram = segmentHeader.waitHistogram(i);
+            for (int b = 0; b < waitHistogram.length; b++) {
+                waitHistogram[b] += segmentWaitHistogram[b];
+            }
+        }
+        return waitHistogram;
+    }
+
+    @Override
+    public void reset() {
+        segmentHeader.resetStats();
+    }
+}
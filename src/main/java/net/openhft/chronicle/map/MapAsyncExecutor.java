@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Executes asynchronous operations of a map on a fixed number of worker threads, see {@link
+ * ChronicleMap#getAsync(Object)}. Operations are striped by the segment of the key, computed by
+ * the caller from the serialized key, like in query contexts, but with a pooled key data access
+ * rather than a query context, so only workers hold the thread-local query contexts of the map.
+ * Each stripe is served by a single
+ * thread, so the operations with equal keys are executed in the submission order (even if the
+ * keys are equal only in the serialized form), and operations of different stripes don't contend
+ * for segment locks.
+ * <p>
+ * Idle workers are terminated after {@link #KEEP_ALIVE_SECONDS}, so that they don't keep the map
+ * reachable, if it is not closed.
+ */
+final class MapAsyncExecutor implements MapClosable {
+
+    static final long KEEP_ALIVE_SECONDS = 60;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final String mapIdentity;
+    private final ThreadPoolExecutor[] stripes;
+    private volatile boolean closed = false;
+
+    MapAsyncExecutor(String mapIdentity, int threads) {
+        this.mapIdentity = mapIdentity;
+        stripes = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            final String name = "Async Worker " + i + " for " + mapIdentity;
+            final int stripeIndex = i;
+            ThreadPoolExecutor stripe = new ThreadPoolExecutor(1, 1,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Worker(this, stripeIndex, r, name));
+            stripe.allowCoreThreadTimeOut(true);
+            stripes[i] = stripe;
+        }
+    }
+
+    /**
+     * @param segmentIndex the segment of the key of the operation
+     */
+    <T> CompletableFuture<T> submit(int segmentIndex, Supplier<T> operation) {
+        final Task<T> task = new Task<>(operation);
+        try {
+            stripes[segmentIndex % stripes.length].execute(task);
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(new ChronicleHashClosedException(mapIdentity));
+        }
+        return task.future;
+    }
+
+    /**
+     * Executes the given operation in the caller thread, for the default implementations of the
+     * asynchronous methods of {@link ChronicleMap}.
+     */
+    static <T> CompletableFuture<T> runInCaller(Supplier<T> operation) {
+        Task<T> task = new Task<>(operation);
+        task.run();
+        return task.future;
+    }
+
+    /**
+     * Fails the queued operations, and waits until the running ones complete, because contexts
+     * and memory of the map are released after the executor is closed. If the map is closed by
+     * one of its own asynchronous operations, waits for the operations of the other stripes.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        List<Runnable> queued = new ArrayList<>();
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+            stripe.getQueue().drainTo(queued);
+        }
+        for (Runnable task : queued) {
+            ((Task<?>) task).future.completeExceptionally(
+                    new ChronicleHashClosedException(mapIdentity));
+        }
+        final Thread current = Thread.currentThread();
+        // the stripe of the current thread can't terminate until this operation returns
+        final int ownStripe = current instanceof Worker && ((Worker) current).executor == this ?
+                ((Worker) current).stripeIndex : -1;
+        boolean interrupted = false;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == ownStripe)
+                continue;
+            try {
+                if (!stripes[i].awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    Jvm.warn().on(getClass(), "Asynchronous operations of " + mapIdentity +
+                            " are still running after " + CLOSE_TIMEOUT_SECONDS + " seconds");
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            current.interrupt();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private static final class Worker extends Thread {
+        final MapAsyncExecutor executor;
+        final int stripeIndex;
+
+        Worker(MapAsyncExecutor executor, int stripeIndex, Runnable r, String name) {
+            super(r, name);
+            this.executor = executor;
+            this.stripeIndex = stripeIndex;
+            setDaemon(true);
+        }
+    }
+
+    private static final class Task<T> implements Runnable {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        private final Supplier<T> operation;
+
+        Task(Supplier<T> operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone())
+                return;
+            try {
+                future.complete(operation.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.Data;
+
+/**
+ * Cursor over the entries of a {@link ChronicleMap}, reading them directly from the map's memory,
+ * without copying entries to the heap. Unlike iterators of the map's collection views, a cursor
+ * doesn't deserialize entries, that are not asked for, and allows to reuse key and value
+ * instances: <pre>{@code
+ * try (MapCursor<K, V> cursor = map.cursor()) {
+ *     while (cursor.next()) {
+ *         key = cursor.key(key);
+ *         value = cursor.value(value);
+ *         // ... process the entry
+ *     }
+ * }}</pre>
+ * <p>
+ * While positioned on an entry, the cursor holds the read lock of the entry's segment, so it
+ * must be {@linkplain #close() closed}, if not iterated to the end. The lock is released and
+ * acquired again after every batch of entries, see {@link ChronicleMap#cursor(int)}. The
+ * iteration is weakly consistent, see {@link
+ * net.openhft.chronicle.hash.HashSegmentContext#forEachSegmentEntryWhile(int,
+ * java.util.function.Predicate)}.
+ * <p>
+ * A cursor should be accessed only from the thread, which created it.
+ *
+ * @param <K> the map key type
+ * @param <V> the map value type
+ * @see ChronicleMap#cursor()
+ */
+public interface MapCursor<K, V> extends MapClosable {
+
+    /**
+     * Moves the cursor to the next entry.
+     *
+     * @return {@code true} if the cursor is positioned on the next entry, {@code false} if there
+     * are no more entries, the cursor is closed then
+     */
+    boolean next();
+
+    /**
+     * Returns the key of the current entry, valid until the cursor is moved or closed.
+     *
+     * @throws IllegalStateException if the cursor is not positioned on an entry
+     */
+    Data<K> key();
+
+    /**
+     * Returns the value of the current entry, valid until the cursor is moved or closed.
+     *
+     * @throws IllegalStateException if the cursor is not positioned on an entry
+     */
+    Data<V> value();
+
+    /**
+     * Reads the key of the current entry, reusing the given instance if possible.
+     *
+     * @param usingKey the key instance to reuse, might be {@code null}
+     * @return the key of the current entry
+     * @throws IllegalStateException if the cursor is not positioned on an entry
+     * @see Data#getUsing(Object)
+     */
+    default K key(K usingKey) {
+        return key().getUsing(usingKey);
+    }
+
+    /**
+     * Reads the value of the current entry, reusing the given instance if possible.
+     *
+     * @param usingValue the value instance to reuse, might be {@code null}
+     * @return the value of the current entry
+     * @throws IllegalStateException if the cursor is not positioned on an entry
+     * @see Data#getUsing(Object)
+     */
+    default V value(V usingValue) {
+        return value().getUsing(usingValue);
+    }
+
+    /**
+     * Releases the segment lock held by the cursor, if any. Further {@link #next()} calls
+     * return {@code false}.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Fork-join task, applying an action to each entry of a range of segments. The range is split
+ * in halves until a single segment is left, so each segment is traversed by a single worker
+ * thread, in the worker's own segment context, under the segment update lock.
+ *
+ * @see ChronicleMap#forEachEntryParallel(java.util.concurrent.ForkJoinPool, Consumer)
+ */
+final class ParallelSegmentsTraversal<K, V> extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    private final transient ChronicleMap<K, V> map;
+    private final transient Consumer<? super MapEntry<K, V>> action;
+    private final int fromSegment;
+    private final int toSegment;
+
+    ParallelSegmentsTraversal(ChronicleMap<K, V> map, int fromSegment, int toSegment,
+                              Consumer<? super MapEntry<K, V>> action) {
+        this.map = map;
+        this.fromSegment = fromSegment;
+        this.toSegment = toSegment;
+        this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+        if (toSegment - fromSegment > 1) {
+            int mid = (fromSegment + toSegment) >>> 1;
+            invokeAll(new ParallelSegmentsTraversal<>(map, fromSegment, mid, action),
+                    new ParallelSegmentsTraversal<>(map, mid, toSegment, action));
+        } else if (toSegment > fromSegment) {
+            try (MapSegmentContext<K, V, ?> c = map.segmentContext(fromSegment)) {
+                c.forEachSegmentEntry(action);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * Applies writes to a {@link ChronicleMap} asynchronously, on owner threads, each of which is the
+ * only writer of this {@code PartitionedMapWriter} to the segments it owns: <pre>{@code
+ * try (PartitionedMapWriter<K, V> writer = map.partitionedWriter(4)) {
+ *     for (Record r : records)
+ *         writer.put(r.key(), r.value());
+ * } // close() waits until all writes are applied}</pre>
+ * <p>
+ * Writes are routed to owners by the segment of the key, through bounded single-producer,
+ * single-consumer queues. An owner drains its queue in batches, and applies the writes of a batch
+ * to each segment under a single acquisition of the segment's write lock, so the segment locking
+ * cost is paid once per batch, rather than once per write. Concurrent readers still take the
+ * read lock or {@linkplain ChronicleMapBuilder#optimisticReads(boolean) read optimistically},
+ * and other threads and processes could still write to the map, as usual.
+ * <p>
+ * The writes with equal keys are applied in the order of submission. Writes are visible to
+ * readers when applied, that is some time after {@link #put(Object, Object)} or {@link
+ * #remove(Object)} returns, and after {@link #flush()} returns at the latest. Keys and values are
+ * serialized before {@code put()} and {@code remove()} return, so the caller could modify or reuse
+ * the objects right away.
+ * <p>
+ * A {@code PartitionedMapWriter} should be accessed only from the thread, which created it.
+ *
+ * @param <K> the map key type
+ * @param <V> the map value type
+ * @see ChronicleMap#partitionedWriter(int)
+ */
+public interface PartitionedMapWriter<K, V> extends MapClosable {
+
+    /**
+     * Submits a write, associating the given value with the given key. If the queue of the owner
+     * of the key's segment is full, waits until there is space in it.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @throws IllegalStateException if this writer is closed
+     * @throws RuntimeException      if a previously submitted write failed, the exception thrown
+     *                               by that write, or wrapping it
+     */
+    void put(K key, V value);
+
+    /**
+     * Submits a write, removing the mapping for the given key, if it is present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @throws IllegalStateException if this writer is closed
+     * @throws RuntimeException      if a previously submitted write failed, the exception thrown
+     *                               by that write, or wrapping it
+     */
+    void remove(K key);
+
+    /**
+     * Waits until all previously submitted writes are applied to the map.
+     *
+     * @throws RuntimeException if a submitted write failed, the exception thrown by that write, or
+     *                          wrapping it
+     */
+    void flush();
+
+    /**
+     * Waits until all submitted writes are applied, see {@link #flush()}, and stops the owner
+     * threads. If the map is already closed, the writes, which are not applied yet, are
+     * discarded.
+     */
+    @Override
+    void close();
+}
@@ -21,6 +21,7 @@ import net.openhft.chronicle.core.threads.EventLoop;
 import net.openhft.chronicle.hash.Data;
 import net.openhft.chronicle.hash.replication.ReplicableEntry;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.util.ArrayList;
@@ -192,9 +193,21 @@ public interface Replica extends Closeable {
          *                    operation and add zeroBytes, if the identifier in the entry did not
          *                    match the maps local
          * @param chronicleId is the channel id used to identify the canonical map or queue
-         * @param keys        list of keys corresponding to given ReplicableEntry (added to during the call)
+         * @param keys        if not {@code null}, the string form of the key of the given entry
+         *                    is added to this list, that requires deserialization of the key
          */
-        void writeExternalEntry(ReplicableEntry entry, Bytes payload, @NotNull Bytes destination, int chronicleId, ArrayList<String> keys);
+        void writeExternalEntry(ReplicableEntry entry, Bytes payload, @NotNull Bytes destination, int chronicleId, @Nullable ArrayList<String> keys);
+
+        /**
+         * Saves the given entry, or payload, without capturing the key, copying the key and value
+         * bytes directly to the destination. Doesn't allocate, if the destination doesn't need to
+         * grow.
+         *
+         * @see #writeExternalEntry(ReplicableEntry, Bytes, Bytes, int, ArrayList)
+         */
+        default void writeExternalEntry(ReplicableEntry entry, Bytes payload, @NotNull Bytes destination, int chronicleId) {
+            writeExternalEntry(entry, payload, destination, chronicleId, null);
+        }
 
         /**
          * The map implements this method to restore its contents. This method must read the values
@@ -208,5 +221,28 @@ public interface Replica extends Closeable {
          *                             (NOT origin id of the entry)
          */
         void readExternalEntry(@NotNull Bytes source, byte remoteNodeIdentifier);
+
+        /**
+         * Reads and applies all entries, remaining in the given source, each written by {@code
+         * writeExternalEntry()} and prefixed with its length as a 4-byte int. Implementations
+         * may apply the entries in a different order, e. g. grouped by segment, but must preserve
+         * the order of entries of the same key.
+         *
+         * @param source               bytes to read entries from
+         * @param remoteNodeIdentifier the identifier of the remove node, from which these events
+         *                             came (NOT origin id of the entries)
+         * @throws IllegalStateException if an entry length is not positive, or an entry exceeds
+         *                               the source
+         * @see #readExternalEntry(Bytes, byte)
+         */
+        default void readExternalEntries(@NotNull Bytes source, byte remoteNodeIdentifier) {
+            while (source.readRemaining() > 0) {
+                long entryEnd = ReplicatedChronicleMap.externalEntryEnd(
+                        source, source.readPosition(), source.readLimit());
+                source.readSkip(4);
+                readExternalEntry(source, remoteNodeIdentifier);
+                source.readPosition(entryEnd);
+            }
+        }
     }
 }
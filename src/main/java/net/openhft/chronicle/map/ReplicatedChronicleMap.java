@@ -29,6 +29,7 @@ import net.openhft.chronicle.hash.Data;
 import net.openhft.chronicle.hash.VanillaGlobalMutableState;
 import net.openhft.chronicle.hash.impl.TierCountersArea;
 import net.openhft.chronicle.hash.impl.stage.hash.ChainingInterface;
+import net.openhft.chronicle.hash.replication.AcceptanceDecisionStats;
 import net.openhft.chronicle.hash.replication.ReplicableEntry;
 import net.openhft.chronicle.map.impl.CompiledReplicatedMapIterationContext;
 import net.openhft.chronicle.map.impl.CompiledReplicatedMapQueryContext;
@@ -38,15 +39,19 @@ import net.openhft.chronicle.values.Values;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.IntPredicate;
 import java.util.stream.Stream;
 
@@ -102,11 +107,16 @@ import static net.openhft.chronicle.hash.replication.TimeProvider.currentTime;
  */
 @SuppressWarnings({"rawtypes", "unchecked", "this-escape"})
 public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R>
-        implements Replica, Replica.EntryExternalizable {
+        implements Replica, Replica.EntryExternalizable, AcceptanceDecisionStats.Source {
 
     public static final int ADDITIONAL_ENTRY_BYTES = 10;
     static final byte ENTRY_HUNK = 1;
     static final byte BOOTSTRAP_TIME_HUNK = 2;
+    /**
+     * The maximum number of entries a {@link ModificationIterator#changeFeedHandler change feed
+     * handler} passes to the callback per event loop action, not to starve other handlers
+     */
+    static final int CHANGE_FEED_HANDLER_BATCH = 256;
 
     public transient boolean cleanupRemovedEntries;
     public transient long cleanupTimeout;
@@ -133,6 +143,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
     private transient AtomicReferenceArray<ModificationIterator> modificationIterators;
     private transient long startOfModificationIterators;
     private transient long[] remoteNodeCouldBootstrapFrom;
+    private transient AcceptanceDecisionStats acceptanceDecisionStats;
 
     public ReplicatedChronicleMap(@NotNull final ChronicleMapBuilder<K, V> builder) throws IOException {
         super(builder);
@@ -219,6 +230,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         modificationIterators = new AtomicReferenceArray<>(128);
         tierModIterFrame = new SingleThreadedFlatBitSetFrame(computeTierModIterBitSetSizeInBits());
         remoteNodeCouldBootstrapFrom = new long[128];
+        acceptanceDecisionStats = new AcceptanceDecisionStats();
     }
 
     @Override
@@ -386,6 +398,16 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         }
     }
 
+    /**
+     * Returns the counts of remote modifications of this map, accepted and discarded by the {@link
+     * net.openhft.chronicle.hash.replication.DefaultEventualConsistencyStrategy}, in the current
+     * process.
+     */
+    @Override
+    public AcceptanceDecisionStats acceptanceDecisionStats() {
+        return acceptanceDecisionStats;
+    }
+
     public long changeCount() {
         throwExceptionIfClosed();
 
@@ -419,7 +441,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
             final long offsetToTierBitSet = segmentIndex * tierModIterBitSetOuterSize;
             for (ModificationIterator it : assignedModificationIterators) {
                 if (it.remoteIdentifier != remoteIdentifier)
-                    it.raiseChangeInSegment(offsetToTierBitSet, pos);
+                    it.raiseChangeInSegment(tierIndex, offsetToTierBitSet, pos);
             }
         } else {
             final long extraTierIndex = tierIndex - 1 - actualSegments;
@@ -428,7 +450,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                     (extraTierIndex & (tiersInBulk - 1)) * tierModIterBitSetOuterSize;
             for (ModificationIterator it : assignedModificationIterators) {
                 if (it.remoteIdentifier != remoteIdentifier)
-                    it.raiseChangeInTierBulk(bulkIndex, offsetToTierBitSet, pos);
+                    it.raiseChangeInTierBulk(tierIndex, bulkIndex, offsetToTierBitSet, pos);
             }
         }
     }
@@ -477,7 +499,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                 final long newOffsetToTierBitSet = newSegmentIndex * tierModIterBitSetOuterSize;
                 for (ModificationIterator modificationIterator : assignedModificationIterators) {
                     if (modificationIterator.dropChangeInSegment(oldOffsetToTierBitSet, oldPos))
-                        modificationIterator.raiseChangeInSegment(newOffsetToTierBitSet, newPos);
+                        modificationIterator.raiseChangeInSegment(newTierIndex, newOffsetToTierBitSet, newPos);
                 }
             } else {
                 final long newExtraTierIndex = newTierIndex - 1 - actualSegments;
@@ -487,7 +509,8 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                 for (ModificationIterator modificationIterator : assignedModificationIterators) {
                     if (modificationIterator.dropChangeInSegment(oldOffsetToTierBitSet, oldPos)) {
                         modificationIterator
-                                .raiseChangeInTierBulk(newBulkIndex, newOffsetToTierBitSet, newPos);
+                                .raiseChangeInTierBulk(newTierIndex, newBulkIndex,
+                                        newOffsetToTierBitSet, newPos);
                     }
                 }
             }
@@ -502,7 +525,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                 for (ModificationIterator modificationIterator : assignedModificationIterators) {
                     if (modificationIterator
                             .dropChangeInTierBulk(oldBulkIndex, oldOffsetToTierBitSet, oldPos)) {
-                        modificationIterator.raiseChangeInSegment(newOffsetToTierBitSet, newPos);
+                        modificationIterator.raiseChangeInSegment(newTierIndex, newOffsetToTierBitSet, newPos);
                     }
                 }
             } else {
@@ -514,7 +537,8 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                     if (modificationIterator
                             .dropChangeInTierBulk(oldBulkIndex, oldOffsetToTierBitSet, oldPos)) {
                         modificationIterator
-                                .raiseChangeInTierBulk(newBulkIndex, newOffsetToTierBitSet, newPos);
+                                .raiseChangeInTierBulk(newTierIndex, newBulkIndex,
+                                        newOffsetToTierBitSet, newPos);
                     }
                 }
             }
@@ -557,7 +581,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                                    final Bytes payload,
                                    @NotNull final Bytes destination,
                                    final int chronicleId,
-                                   final ArrayList<String> keys) {
+                                   @Nullable final ArrayList<String> keys) {
         throwExceptionIfClosed();
 
         if (payload != null)
@@ -574,10 +598,13 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
     /**
      * This method does not set a segment lock, A segment lock should be obtained before calling
      * this method, especially when being used in a multi threaded context.
+     * <p>
+     * Key and value bytes are copied from the segment directly, the key is deserialized only if
+     * {@code keys} are captured, or debug logging is enabled.
      */
     private void writeExternalEntry0(final ReplicableEntry entry,
                                      final Bytes destination,
-                                     final ArrayList<String> keys) {
+                                     @Nullable final ArrayList<String> keys) {
         destination.writeByte(ENTRY_HUNK);
 
         destination.writeStopBit(entry.originTimestamp());
@@ -595,10 +622,12 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
             key = ((MapAbsentEntry) entry).absentKey();
         }
 
-        try {
-            keys.add(key.get().toString());
-        } catch (Exception e) {
-            keys.add("<Binary Data>");
+        if (keys != null) {
+            try {
+                keys.add(key.get().toString());
+            } catch (Exception e) {
+                keys.add("<Binary Data>");
+            }
         }
 
         destination.writeBoolean(isDeleted);
@@ -667,6 +696,107 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         }
     }
 
+    /**
+     * Groups the entries by segment, in the first pass over the source, and applies each group
+     * holding the segment write lock for the whole group, see {@link #writeAllInSegment}. Within
+     * a group, entries are applied in the order of the source, bootstrap times are applied after
+     * all entries.
+     */
+    @Override
+    public void readExternalEntries(@NotNull final Bytes source, final byte remoteNodeIdentifier) {
+        throwExceptionIfClosed();
+
+        final long sourceStart = source.readPosition();
+        final long sourceEnd = source.readLimit();
+        int entries = 0;
+        // validates the lengths, so that the following passes could skip entries unchecked
+        for (long p = sourceStart; p < sourceEnd; p = externalEntryEnd(source, p, sourceEnd)) {
+            if (source.readByte(p + 4) == ENTRY_HUNK)
+                entries++;
+        }
+        final long[] entryOffsets = new long[entries];
+        final long[] keyOffsets = new long[entries];
+        final long[] keySizes = new long[entries];
+        final long[] order = new long[entries];
+        try (CompiledReplicatedMapQueryContext<K, V, R> c = mapContext()) {
+            int i = 0;
+            for (long p = sourceStart; p < sourceEnd; p += 4 + source.readInt(p)) {
+                final long entryOffset = p + 4;
+                if (source.readByte(entryOffset) != ENTRY_HUNK)
+                    continue;
+                source.readPosition(entryOffset + 1);
+                source.readStopBit(); // timestamp
+                source.readByte(); // origin identifier
+                source.readBoolean(); // isDeleted
+                final long keySize = keySizeMarshaller.readSize(source);
+                final long keyOffset = source.readPosition();
+                if (keySize < 0 || keySize > p + 4 + source.readInt(p) - keyOffset)
+                    throw new IllegalStateException("Corrupted external entry at " + p +
+                            ", key size " + keySize + " exceeds the entry");
+                final long keyHash = c.getInputKeyBytesAsData(source.bytesStore(), keyOffset, keySize)
+                        .hash(this.keyHash);
+                entryOffsets[i] = entryOffset;
+                keyOffsets[i] = keyOffset;
+                keySizes[i] = keySize;
+                order[i] = (((long) hashSplitting.segmentIndex(keyHash)) << 32) | i;
+                i++;
+            }
+        }
+        Arrays.sort(order);
+        for (int from = 0, to; from < order.length; from = to) {
+            to = segmentGroupEnd(order, from);
+            readExternalEntriesInSegment(source, remoteNodeIdentifier,
+                    entryOffsets, keyOffsets, keySizes, order, from, to);
+        }
+
+        for (long p = sourceStart; p < sourceEnd; p += 4 + source.readInt(p)) {
+            if (source.readByte(p + 4) == BOOTSTRAP_TIME_HUNK)
+                setRemoteNodeCouldBootstrapFrom(remoteNodeIdentifier, source.readLong(p + 5));
+        }
+        source.readPosition(sourceEnd);
+    }
+
+    /**
+     * @return the end of the external entry, prefixed with its length at the given position
+     * @throws IllegalStateException if the length is not positive, or the entry exceeds the source
+     */
+    static long externalEntryEnd(Bytes source, long p, long sourceEnd) {
+        if (sourceEnd - p < 4)
+            throw new IllegalStateException("Corrupted external entry at " + p +
+                    ", " + (sourceEnd - p) + " bytes remaining");
+        final int entryLength = source.readInt(p);
+        if (entryLength < 1 || entryLength > sourceEnd - p - 4)
+            throw new IllegalStateException("Corrupted external entry at " + p +
+                    ", length " + entryLength + ", " + (sourceEnd - p - 4) + " bytes remaining");
+        return p + 4 + entryLength;
+    }
+
+    private void readExternalEntriesInSegment(
+            final Bytes source, final byte remoteNodeIdentifier, final long[] entryOffsets,
+            final long[] keyOffsets, final long[] keySizes, final long[] order,
+            final int from, final int to) {
+        try (CompiledReplicatedMapQueryContext<K, V, R> root = mapContext()) {
+            source.readPosition(entryOffsets[indexInBatch(order[from])] + 1);
+            root.processReplicatedEvent(remoteNodeIdentifier, source);
+            // the event takes only the update lock, if it's a remove
+            root.writeLock().lock();
+            final Data<K> rootKey = root.inputKey();
+            for (int i = from + 1; i < to; i++) {
+                final int index = indexInBatch(order[i]);
+                source.readPosition(entryOffsets[index] + 1);
+                if (rootKey.size() == keySizes[index] &&
+                        rootKey.equivalent(source, keyOffsets[index])) {
+                    // nested same-thread contexts cannot access the same key
+                    root.processReplicatedEvent(remoteNodeIdentifier, source);
+                    continue;
+                }
+                try (CompiledReplicatedMapQueryContext<K, V, R> c = mapContext()) {
+                    c.processReplicatedEvent(remoteNodeIdentifier, source);
+                }
+            }
+        }
+    }
+
     @Override
     ChainingInterface newIterationContext() {
         return new CompiledReplicatedMapIterationContext<>(this);
@@ -681,6 +811,16 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                 CompiledReplicatedMapIterationContext::new, this);
     }
 
+    /**
+     * Replicated maps track changes by the positions of entries within tiers, and keep removed
+     * entries until they are cleaned up, so tiers are not compacted.
+     */
+    @Override
+    public int compact() {
+        throw new UnsupportedOperationException(toIdentityString() +
+                ": tier compaction is not supported by replicated maps");
+    }
+
     @Override
     public final V get(final Object key) {
         return defaultGet(key);
@@ -691,6 +831,12 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         return defaultGetUsing(key, usingValue);
     }
 
+    @Override
+    boolean pipelinedGetAll() {
+        // entries of replicated maps should be read via contexts, see get()
+        return false;
+    }
+
     /**
      * <p>
      * Once a change occurs to a map, map replication requires that these changes are picked up
@@ -714,28 +860,35 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
 
         private ModificationNotifier modificationNotifier;
 
-        private long bootstrapTimeAfterNextIterationComplete = 0L;
-        private boolean somethingSentOnThisIteration = false;
-
-        // The iteration "cursor" consists of 4 fields:
-        // 1) if segmentIndex >= 0, bulkIndex = -1, tierIndexOffsetWithinBulk = -1:
-        // => we are in "first tiers" aka "segments"
-        // 2) segmentIndex = -1, bulkIndex >= 0, tierIndexOffsetWithinBulk >= 0:
-        // => we are in extra tiers
-        private int segmentIndex;
-        private int bulkIndex;
-        private int tierIndexOffsetWithinBulk;
         /**
-         * Corresponds to {@link net.openhft.chronicle.hash.impl.stage.entry.HashEntryStages#pos}
+         * The number of raised bits, maintained when bits are raised and cleared in this process
          */
-        private long entryPos;
+        private final LongAdder pendingEntries = new LongAdder();
+        private final LongAdder sentEntries = new LongAdder();
+        /**
+         * The start time of the last complete pass over the bit sets, all changes made before
+         * that time are sent. If the iterator is sharded, the earliest of the shards' ones.
+         */
+        private volatile long lastCompletedPassStartTime;
 
+        private volatile ChangeFeed changeFeed;
+        // The following fields are used only if the change feed is enabled
         /**
-         * Cached addr of the changes bit set of the current tier (which "cursor" points to),
-         * to avoid re-computation of this addr in {@link #entryIsStillDirty(long)} and
-         * {@link #clearEntry(long)} methods
+         * {@code true} while the bit sets should be scanned, rather than the change feed polled
          */
-        private long tierBitSetAddr;
+        private boolean scanning = false;
+        private long lastFullScanNanos = 0L;
+        private long fullScanIntervalNanos = Long.MAX_VALUE;
+
+        /**
+         * The cursor over all segments, used unless the iterator is {@linkplain #shards sharded}
+         */
+        private final Cursor cursor;
+        @Nullable
+        private List<Shard> shards;
+        // The following fields are guarded by this iterator, used only if it is sharded
+        private long reportedBootstrapTime = 0L;
+        private boolean somethingSentSinceBootstrapTimeReported = false;
 
         public ModificationIterator(final byte remoteIdentifier, final boolean sharedMemoryInit) {
             this.remoteIdentifier = remoteIdentifier;
@@ -748,16 +901,71 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
             offsetToBitSetsWithinATierBulk =
                     remoteIdentifier * tierBulkModIterBitSetsForIdentifierOuterSize;
 
-            resetCursor();
+            cursor = new Cursor(0, actualSegments);
+            lastCompletedPassStartTime = currentTime();
+            if (sharedMemoryInit)
+                pendingEntries.add(countRaisedBits());
+        }
+
+        private long countRaisedBits() {
+            long count = 0L;
+            for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+                count += tierModIterFrame.cardinality(nativeAccess(), null,
+                        segmentBitSetsAddr + segmentIndex * tierModIterBitSetOuterSize);
+            }
+            final int extraTierBulks = globalMutableState().getAllocatedExtraTierBulks();
+            for (int bulkIndex = 0; bulkIndex < extraTierBulks; bulkIndex++) {
+                final long bitSetsAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
+                for (int tier = 0; tier < tiersInBulk; tier++) {
+                    count += tierModIterFrame.cardinality(nativeAccess(), null,
+                            bitSetsAddr + tier * tierModIterBitSetOuterSize);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return the identifier of the remote node, changes for which this iterator passes
+         */
+        public byte remoteIdentifier() {
+            return remoteIdentifier;
+        }
+
+        /**
+         * Returns the number of entries changed, but not yet passed to the callback. Maintained
+         * incrementally, when changes are raised and sent, hence if the map is shared between
+         * processes, changes raised or sent by other processes are not accounted.
+         *
+         * @return the number of changed entries, pending to be sent to the remote node
+         */
+        public long pendingEntries() {
+            return Math.max(0L, pendingEntries.sum());
         }
 
-        private void resetCursor() {
-            segmentIndex = 0;
-            bulkIndex = -1;
-            tierIndexOffsetWithinBulk = -1;
-            entryPos = -1;
+        /**
+         * @return the number of entries passed to the callback of this iterator (or its shards) in
+         * the current process
+         */
+        public long sentEntries() {
+            return sentEntries.sum();
+        }
 
-            tierBitSetAddr = segmentBitSetsAddr; // + tierModIterBitSetOuterSize * segmentIndex = 0
+        /**
+         * Returns an upper bound of the age of the oldest change, pending to be sent to the remote
+         * node: the time since the start of the last complete pass over the modification bit sets,
+         * if there are {@linkplain #pendingEntries() pending entries}. If the iterator is not
+         * driven (e. g. the remote node is disconnected), the age grows; if the {@linkplain
+         * #enableChangeFeed change feed} is enabled, the bound is looser by up to the full scan
+         * interval.
+         *
+         * @return the age of the oldest pending change in milliseconds, or 0, if no changes are
+         * pending
+         */
+        public long oldestPendingChangeAgeMillis() {
+            if (pendingEntries() == 0L)
+                return 0L;
+            return TimeUnit.NANOSECONDS.toMillis(
+                    Math.max(0L, currentTime() - lastCompletedPassStartTime));
         }
 
         public void setModificationNotifier(@NotNull final ModificationNotifier modificationNotifier) {
@@ -766,27 +974,158 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
             this.modificationNotifier = modificationNotifier;
         }
 
-        void raiseChangeInSegment(final long offsetToTierBitSet, final long pos) {
-            tierModIterFrame.set(nativeAccess(), null,
-                    segmentBitSetsAddr + offsetToTierBitSet, pos);
-            if (modificationNotifier != null)
-                modificationNotifier.onChange();
+        void raiseChangeInSegment(final long tierIndex,
+                                  final long offsetToTierBitSet,
+                                  final long pos) {
+            onChange(tierModIterFrame.setIfClear(nativeAccess(), null,
+                    segmentBitSetsAddr + offsetToTierBitSet, pos), tierIndex, pos);
         }
 
-        void raiseChangeInTierBulk(final int bulkIndex,
+        void raiseChangeInTierBulk(final long tierIndex,
+                                   final int bulkIndex,
                                    final long offsetToTierBitSet,
                                    final long pos) {
             final TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
             final long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
-            tierModIterFrame.set(nativeAccess(), null, bitSetAddr, pos);
+            onChange(tierModIterFrame.setIfClear(nativeAccess(), null, bitSetAddr, pos),
+                    tierIndex, pos);
+        }
+
+        private void onChange(final boolean raised, final long tierIndex, final long pos) {
+            if (raised) {
+                pendingEntries.increment();
+                // if the bit is already set, the change is covered by the record offered when
+                // the bit was raised, or by the overflow. The bit must be set before the record
+                // is published, the consumer checks the bit
+                final ChangeFeed feed = changeFeed;
+                if (feed != null)
+                    feed.offer(tierIndex, pos);
+            }
             if (modificationNotifier != null)
                 modificationNotifier.onChange();
         }
 
+        /**
+         * Enables the change feed of this iterator: an off-heap ring, to which entries changed
+         * in this process are appended when the change is raised. After that, {@link #hasNext()},
+         * {@link #nextEntry(Callback, int)} and {@link #awaitNext(long, TimeUnit)} take changed
+         * entries from the ring, instead of scanning the modification bit sets, that makes them
+         * cheap when there are no changes, and cuts the delay between a change and its
+         * replication.
+         * <p>
+         * The bit sets are still maintained and scanned: once after the feed is enabled, to pick up
+         * changes raised earlier; when the ring overflows; and not less often than every {@code
+         * fullScanInterval}, to pick up changes made to the map by other processes, and to
+         * report {@linkplain Callback#onBootstrapTime bootstrap time}.
+         * <p>
+         * Should be called from the thread consuming changes from this iterator.
+         *
+         * @param capacity         the number of records in the ring, rounded up to a power of 2
+         * @param fullScanInterval the maximum interval between full scans of the bit sets
+         * @param unit             the unit of {@code fullScanInterval}
+         * @throws IllegalStateException if the change feed is already enabled
+         */
+        public void enableChangeFeed(final int capacity,
+                                     final long fullScanInterval,
+                                     @NotNull final TimeUnit unit) {
+            throwExceptionIfClosed();
+
+            if (changeFeed != null)
+                throw new IllegalStateException("Change feed is already enabled");
+            final ChangeFeed feed = new ChangeFeed(capacity);
+            addCloseable(feed);
+            fullScanIntervalNanos = unit.toNanos(fullScanInterval);
+            scanning = true;
+            changeFeed = feed;
+        }
+
+        /**
+         * Updates {@link #scanning} before taking the next change, if the change feed is enabled.
+         */
+        private void checkScanning(final ChangeFeed feed) {
+            if (feed.overflowed()) {
+                feed.clearOverflow();
+                scanning = true;
+            } else if (!scanning &&
+                    System.nanoTime() - lastFullScanNanos >= fullScanIntervalNanos) {
+                scanning = true;
+            }
+        }
+
+        private void fullScanComplete() {
+            scanning = false;
+            lastFullScanNanos = System.nanoTime();
+        }
+
+        /**
+         * Waits until there is an entry to be received via {@link #nextEntry(Callback, int)},
+         * requires the change feed to be {@linkplain #enableChangeFeed enabled}. Like {@link
+         * #hasNext()}, this method could return {@code true} for an entry, that is already sent,
+         * then {@code nextEntry()} returns {@code false}.
+         *
+         * @param timeout the maximum time to wait
+         * @param unit    the unit of {@code timeout}
+         * @return {@code true} if there is a changed entry, {@code false} if the timeout elapsed
+         * @throws InterruptedException  if the current thread is interrupted while waiting
+         * @throws IllegalStateException if the change feed is not enabled
+         */
+        public boolean awaitNext(final long timeout, @NotNull final TimeUnit unit)
+                throws InterruptedException {
+            throwExceptionIfClosed();
+
+            final ChangeFeed feed = changeFeed;
+            if (feed == null)
+                throw new IllegalStateException("Change feed is not enabled");
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (true) {
+                if (hasNext())
+                    return true;
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                // wake up for the next full scan, at the latest
+                feed.await(Math.min(remaining, fullScanIntervalNanos));
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                throwExceptionIfClosed();
+            }
+        }
+
+        /**
+         * Returns a handler, that passes changed entries to the given callback when run in an
+         * {@link EventLoop}. The handler processes up to a bounded number of entries per {@code
+         * action()} call, and reports whether it found any. Requires the change feed to be
+         * {@linkplain #enableChangeFeed enabled}, so that the event loop doesn't scan the bit sets
+         * when it is idle.
+         *
+         * @param callback    the callback to pass changed entries to
+         * @param chronicleId passed to the callback
+         * @return the handler to {@linkplain EventLoop#addHandler(EventHandler) add} to an event
+         * loop
+         * @throws IllegalStateException if the change feed is not enabled
+         */
+        @NotNull
+        public EventHandler changeFeedHandler(@NotNull final Callback callback,
+                                              final int chronicleId) {
+            throwExceptionIfClosed();
+
+            if (changeFeed == null)
+                throw new IllegalStateException("Change feed is not enabled");
+            return () -> {
+                if (isClosing())
+                    throw new InvalidEventHandlerException("map is closed");
+                boolean busy = false;
+                for (int i = 0; i < CHANGE_FEED_HANDLER_BATCH && nextEntry(callback, chronicleId); i++) {
+                    busy = true;
+                }
+                return busy;
+            };
+        }
+
         boolean dropChangeInSegment(final long offsetToTierBitSet,
                                     final long pos) {
-            return tierModIterFrame.clearIfSet(nativeAccess(), null,
-                    segmentBitSetsAddr + offsetToTierBitSet, pos);
+            return cleared(tierModIterFrame.clearIfSet(nativeAccess(), null,
+                    segmentBitSetsAddr + offsetToTierBitSet, pos));
         }
 
         boolean dropChangeInTierBulk(final int bulkIndex,
@@ -794,7 +1133,22 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                                      final long pos) {
             final TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
             final long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
-            return tierModIterFrame.clearIfSet(nativeAccess(), null, bitSetAddr, pos);
+            return cleared(tierModIterFrame.clearIfSet(nativeAccess(), null, bitSetAddr, pos));
+        }
+
+        private boolean cleared(final boolean cleared) {
+            if (cleared)
+                pendingEntries.decrement();
+            return cleared;
+        }
+
+        /**
+         * Clears the bit of an entry, passed to the callback.
+         */
+        private void clearSentEntry(final long bitSetAddr, final long pos) {
+            tierModIterFrame.clear(nativeAccess(), null, bitSetAddr, pos);
+            pendingEntries.decrement();
+            sentEntries.increment();
         }
 
         boolean isChangedSegment(final long offsetToTierBitSet, final long pos) {
@@ -826,79 +1180,16 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         public boolean hasNext() {
             throwExceptionIfClosed();
 
-            return nextEntryPos(null, 0) != NOT_FOUND;
-        }
-
-        private long nextEntryPos(final Callback callback, final int chronicleId) {
-            long nextEntryPos;
-            boolean allBitSetsScannedFromTheStart = false;
-            // at most 2 iterations
-            while (!allBitSetsScannedFromTheStart) {
-                if (segmentIndex >= 0) {
-                    allBitSetsScannedFromTheStart = segmentIndex == 0 && entryPos == -1;
-                    if (allBitSetsScannedFromTheStart) {
-                        bootstrapTimeAfterNextIterationComplete = currentTime();
-                        somethingSentOnThisIteration = false;
-                    }
-
-                    while (segmentIndex < actualSegments) {
-                        // This is needed to ensure, that any entry update with the timestamp,
-                        // smaller than assigned for bootstrapTimeAfterNextIterationComplete, is
-                        // visible during the iteration of the current segment. Bits are raised
-                        // during the update via non-volatile bit set (performance concerns), hence
-                        // to guarantee visibility during the iteration, we build a happens-before
-                        // between bit raise and bit reading:
-                        // bit raised ->
-                        // lock released (end of update operation) ->
-                        // lock acquired (the following acquireAndReleaseUpdateLock() call) ->
-                        // bits are iterated (raised bits should be visible here)
-                        if (entryPos == -1) {
-                            acquireAndReleaseUpdateLock(segmentIndex);
-                        }
-
-                        if ((nextEntryPos = tierModIterFrame.nextSetBit(nativeAccess(),
-                                null, tierBitSetAddr, entryPos + 1)) != NOT_FOUND) {
-                            return nextEntryPos;
-                        } else {
-                            segmentIndex++;
-                            tierBitSetAddr += tierModIterBitSetOuterSize;
-                            entryPos = -1;
-                        }
-                    }
-                    // go to extra bulks
-                    segmentIndex = -1;
-                    bulkIndex = 0;
-                    tierIndexOffsetWithinBulk = 0;
-                    if (bulkIndex < globalMutableState().getAllocatedExtraTierBulks())
-                        tierBitSetAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
-                }
-                // for each allocated tier bulk
-                while (bulkIndex < globalMutableState().getAllocatedExtraTierBulks()) {
-                    while (tierIndexOffsetWithinBulk < tiersInBulk) {
-                        if ((nextEntryPos = tierModIterFrame.nextSetBit(nativeAccess(), null,
-                                tierBitSetAddr, entryPos + 1)) != NOT_FOUND) {
-                            return nextEntryPos;
-                        } else {
-                            tierIndexOffsetWithinBulk++;
-                            tierBitSetAddr += tierModIterBitSetOuterSize;
-                            entryPos = -1;
-                        }
-                    }
-                    // go to the next bulk
-                    bulkIndex++;
-                    tierIndexOffsetWithinBulk = 0;
-                    if (bulkIndex < globalMutableState().getAllocatedExtraTierBulks())
-                        tierBitSetAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
-                }
-
-                resetCursor();
-
-                // we walked through the whole chronicle map instance, "iteration"
-                if (callback != null && somethingSentOnThisIteration) {
-                    callback.onBootstrapTime(bootstrapTimeAfterNextIterationComplete, chronicleId);
-                }
+            final ChangeFeed feed = changeFeed;
+            if (feed == null)
+                return cursor.nextEntryPos(null, 0) != NOT_FOUND;
+            checkScanning(feed);
+            if (scanning) {
+                if (cursor.nextEntryPos(null, 0) != NOT_FOUND)
+                    return true;
+                fullScanComplete();
             }
-            return NOT_FOUND;
+            return !feed.isEmpty();
         }
 
         private void acquireAndReleaseUpdateLock(final int segmentIndex) {
@@ -916,52 +1207,394 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         public boolean nextEntry(@NotNull final Callback callback, final int chronicleId) {
             throwExceptionIfClosed();
 
-            while (true) {
-                try (CompiledReplicatedMapIterationContext<K, V, R> context = iterationContext()) {
-                    final long nextEntryPos = nextEntryPos(callback, chronicleId);
-                    if (nextEntryPos == NOT_FOUND)
-                        return false;
-                    entryPos = nextEntryPos;
+            final ChangeFeed feed = changeFeed;
+            if (feed == null)
+                return cursor.nextEntry(callback, chronicleId);
+            checkScanning(feed);
+            if (scanning) {
+                if (cursor.nextEntry(callback, chronicleId))
+                    return true;
+                fullScanComplete();
+            }
+            while (feed.poll()) {
+                if (nextEntryFromFeed(feed.polledTierIndex(), feed.polledPos(),
+                        callback, chronicleId)) {
+                    return true;
+                }
+                // the change is already sent, e. g. by the full scan, or the entry is relocated
+            }
+            return false;
+        }
+
+        private boolean nextEntryFromFeed(final long tierIndex,
+                                          final long pos,
+                                          @NotNull final Callback callback,
+                                          final int chronicleId) {
+            try (CompiledReplicatedMapIterationContext<K, V, R> context = iterationContext()) {
+                final long bitSetAddr;
+                if (tierIndex <= actualSegments) {
+                    final int segmentIndex = (int) (tierIndex - 1);
+                    context.initSegmentIndex(segmentIndex);
+                    bitSetAddr = segmentBitSetsAddr + segmentIndex * tierModIterBitSetOuterSize;
+                } else {
+                    final long extraTierIndex = tierIndex - 1 - actualSegments;
+                    final int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
+                    final long tierIndexOffsetWithinBulk = extraTierIndex & (tiersInBulk - 1);
+                    final TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+                    final long tierBaseAddr = tierAddr(tierBulkData, tierIndexOffsetWithinBulk);
+                    final long tierCountersAreaAddr = tierBaseAddr + tierHashLookupOuterSize;
+                    context.initSegmentIndex(TierCountersArea.segmentIndex(tierCountersAreaAddr));
+                    context.initSegmentTier(TierCountersArea.tier(tierCountersAreaAddr),
+                            tierIndex, tierBaseAddr);
+                    bitSetAddr = bitSetsAddr(tierBulkData) +
+                            tierIndexOffsetWithinBulk * tierModIterBitSetOuterSize;
+                }
+
+                context.updateLock().lock();
+
+                if (!tierModIterFrame.get(nativeAccess(), null, bitSetAddr, pos))
+                    return false;
+                context.readExistingEntry(pos);
+                final ReplicableEntry entry = (ReplicableEntry) context.entryForIteration();
+                callback.onEntry(entry, chronicleId);
+                clearSentEntry(bitSetAddr, pos);
+                // reported after the next full scan
+                cursor.somethingSentSinceLastPass = true;
+                return true;
+            }
+        }
+
+        /**
+         * Splits this iterator into the given number of shards, each scanning the modification
+         * bit sets of a disjoint range of segments (and of extra tiers of these segments) with its
+         * own cursor, so that changes could be sent to the remote node by several threads. Each
+         * shard should be used by a single thread, shards of the same iterator could be used
+         * concurrently.
+         * <p>
+         * Shards don't use the {@linkplain #enableChangeFeed change feed}. A {@linkplain
+         * Callback#onBootstrapTime bootstrap time} is reported by the shard which completes a pass
+         * over its segments, when all shards have completed a pass, started after the previously
+         * reported bootstrap time. Hence, if shards pass entries to different connections to the
+         * remote node, the bootstrap time is valid only after the entries, passed to all shards'
+         * callbacks before the bootstrap time, are delivered.
+         *
+         * @param count the number of shards, from 1 to the number of segments of the map
+         * @return the shards of this iterator, in the order of their segment ranges
+         * @throws IllegalArgumentException if {@code count} is out of range
+         * @throws IllegalStateException    if this iterator is already sharded, or the change
+         *                                  feed is enabled
+         */
+        @NotNull
+        public synchronized List<Shard> shards(final int count) {
+            throwExceptionIfClosed();
+
+            if (count < 1 || count > actualSegments) {
+                throw new IllegalArgumentException("count should be in range [1, " +
+                        actualSegments + "], " + count + " given");
+            }
+            if (shards != null)
+                throw new IllegalStateException("The iterator is already sharded");
+            if (changeFeed != null)
+                throw new IllegalStateException("Change feed is enabled");
+            final List<Shard> newShards = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                newShards.add(new Shard((int) ((long) actualSegments * i / count),
+                        (int) ((long) actualSegments * (i + 1) / count)));
+            }
+            shards = Collections.unmodifiableList(newShards);
+            return shards;
+        }
+
+        /**
+         * Called by a shard, which has completed a pass over its segments.
+         */
+        private synchronized void shardPassComplete(final Shard shard,
+                                                    @NotNull final Callback callback,
+                                                    final int chronicleId) {
+            shard.completedPassStartTime = shard.passStartTime;
+            somethingSentSinceBootstrapTimeReported |= shard.somethingSentSinceLastPass;
+            long bootstrapTime = Long.MAX_VALUE;
+            for (final Shard s : shards) {
+                bootstrapTime = Math.min(bootstrapTime, s.completedPassStartTime);
+            }
+            if (bootstrapTime > reportedBootstrapTime) {
+                lastCompletedPassStartTime = bootstrapTime;
+                // reported under the lock, so that bootstrap times are reported in order
+                if (somethingSentSinceBootstrapTimeReported)
+                    callback.onBootstrapTime(bootstrapTime, chronicleId);
+                reportedBootstrapTime = bootstrapTime;
+                somethingSentSinceBootstrapTimeReported = false;
+            }
+        }
+
+        /**
+         * The cursor over the modification bit sets of the segments in the range {@code
+         * [fromSegment, toSegment)} and of the extra tiers of these segments.
+         */
+        class Cursor {
+            final int fromSegment;
+            final int toSegment;
+
+            long passStartTime = 0L;
+            /**
+             * Whether entries are sent since the last completed pass, including the entries sent
+             * from the {@linkplain #enableChangeFeed change feed} between the passes, so that
+             * the bootstrap time is reported after a pass, if there is something to report
+             */
+            boolean somethingSentSinceLastPass = false;
+
+            // The iteration "cursor" consists of 4 fields:
+            // 1) if segmentIndex >= 0, bulkIndex = -1, tierIndexOffsetWithinBulk = -1:
+            // => we are in "first tiers" aka "segments"
+            // 2) segmentIndex = -1, bulkIndex >= 0, tierIndexOffsetWithinBulk >= 0:
+            // => we are in extra tiers
+            private int segmentIndex;
+            private int bulkIndex;
+            private int tierIndexOffsetWithinBulk;
+            /**
+             * Corresponds to {@link net.openhft.chronicle.hash.impl.stage.entry.HashEntryStages#pos}
+             */
+            private long entryPos;
+
+            /**
+             * Cached addr of the changes bit set of the current tier (which "cursor" points to),
+             * to avoid re-computation of this addr in {@link #entryIsStillDirty(long)} and
+             * {@link #clearEntry(long)} methods
+             */
+            private long tierBitSetAddr;
+
+            Cursor(final int fromSegment, final int toSegment) {
+                this.fromSegment = fromSegment;
+                this.toSegment = toSegment;
+                resetCursor();
+            }
 
+            private void resetCursor() {
+                segmentIndex = fromSegment;
+                bulkIndex = -1;
+                tierIndexOffsetWithinBulk = -1;
+                entryPos = -1;
+
+                tierBitSetAddr = segmentBitSetsAddr + fromSegment * tierModIterBitSetOuterSize;
+            }
+
+            /**
+             * Called when the cursor has walked through all its bit sets.
+             */
+            void passComplete(@NotNull final Callback callback, final int chronicleId) {
+                lastCompletedPassStartTime = passStartTime;
+                if (somethingSentSinceLastPass)
+                    callback.onBootstrapTime(passStartTime, chronicleId);
+            }
+
+            /**
+             * Extra tiers of all segments are scanned by each cursor, each skips the tiers of
+             * segments out of its range.
+             */
+            private boolean ownsExtraTier() {
+                if (fromSegment == 0 && toSegment == actualSegments)
+                    return true;
+                final long tierBaseAddr =
+                        tierAddr(tierBulkOffsets.get(bulkIndex), tierIndexOffsetWithinBulk);
+                final int tierSegmentIndex =
+                        TierCountersArea.segmentIndex(tierBaseAddr + tierHashLookupOuterSize);
+                return tierSegmentIndex >= fromSegment && tierSegmentIndex < toSegment;
+            }
+
+            long nextEntryPos(final Callback callback, final int chronicleId) {
+                long nextEntryPos;
+                boolean allBitSetsScannedFromTheStart = false;
+                // at most 2 iterations
+                while (!allBitSetsScannedFromTheStart) {
                     if (segmentIndex >= 0) {
-                        // we are in first tiers (aka "segments")
-                        context.initSegmentIndex(segmentIndex);
-                    } else {
-                        // we are in extra tiers
-                        final TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
-                        final long tierBaseAddr = tierAddr(tierBulkData, tierIndexOffsetWithinBulk);
-                        final long tierCountersAreaAddr = tierBaseAddr + tierHashLookupOuterSize;
-                        context.initSegmentIndex(
-                                TierCountersArea.segmentIndex(tierCountersAreaAddr));
-                        final int tier = TierCountersArea.tier(tierCountersAreaAddr);
-                        final long tierIndex = actualSegments +
-                                ((long) bulkIndex << log2TiersInBulk) + tierIndexOffsetWithinBulk + 1;
-                        context.initSegmentTier(tier, tierIndex, tierBaseAddr);
+                        allBitSetsScannedFromTheStart = segmentIndex == fromSegment && entryPos == -1;
+                        if (allBitSetsScannedFromTheStart)
+                            passStartTime = currentTime();
+
+                        while (segmentIndex < toSegment) {
+                            // This is needed to ensure, that any entry update with the timestamp,
+                            // smaller than assigned for passStartTime, is visible during the
+                            // iteration of the current segment. Bits are raised during the update
+                            // via non-volatile bit set (performance concerns), hence to guarantee
+                            // visibility during the iteration, we build a happens-before between
+                            // bit raise and bit reading:
+                            // bit raised ->
+                            // lock released (end of update operation) ->
+                            // lock acquired (the following acquireAndReleaseUpdateLock() call) ->
+                            // bits are iterated (raised bits should be visible here)
+                            if (entryPos == -1) {
+                                acquireAndReleaseUpdateLock(segmentIndex);
+                            }
+
+                            if ((nextEntryPos = tierModIterFrame.nextSetBit(nativeAccess(),
+                                    null, tierBitSetAddr, entryPos + 1)) != NOT_FOUND) {
+                                return nextEntryPos;
+                            } else {
+                                segmentIndex++;
+                                tierBitSetAddr += tierModIterBitSetOuterSize;
+                                entryPos = -1;
+                            }
+                        }
+                        // go to extra bulks
+                        segmentIndex = -1;
+                        bulkIndex = 0;
+                        tierIndexOffsetWithinBulk = 0;
+                        if (bulkIndex < globalMutableState().getAllocatedExtraTierBulks())
+                            tierBitSetAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
+                    }
+                    // for each allocated tier bulk
+                    while (bulkIndex < globalMutableState().getAllocatedExtraTierBulks()) {
+                        while (tierIndexOffsetWithinBulk < tiersInBulk) {
+                            if (ownsExtraTier() &&
+                                    (nextEntryPos = tierModIterFrame.nextSetBit(nativeAccess(), null,
+                                            tierBitSetAddr, entryPos + 1)) != NOT_FOUND) {
+                                return nextEntryPos;
+                            } else {
+                                tierIndexOffsetWithinBulk++;
+                                tierBitSetAddr += tierModIterBitSetOuterSize;
+                                entryPos = -1;
+                            }
+                        }
+                        // go to the next bulk
+                        bulkIndex++;
+                        tierIndexOffsetWithinBulk = 0;
+                        if (bulkIndex < globalMutableState().getAllocatedExtraTierBulks())
+                            tierBitSetAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
                     }
 
-                    context.updateLock().lock();
+                    resetCursor();
 
-                    if (entryIsStillDirty(entryPos)) {
-                        context.readExistingEntry(entryPos);
-                        final ReplicableEntry entry = (ReplicableEntry) context.entryForIteration();
-                        callback.onEntry(entry, chronicleId);
-                        somethingSentOnThisIteration = true;
-                        clearEntry(entryPos);
-                        return true;
+                    // we walked through all bit sets of the cursor, "iteration"
+                    if (callback != null) {
+                        passComplete(callback, chronicleId);
+                        somethingSentSinceLastPass = false;
+                    }
+                }
+                return NOT_FOUND;
+            }
+
+            boolean nextEntry(@NotNull final Callback callback, final int chronicleId) {
+                while (true) {
+                    try (CompiledReplicatedMapIterationContext<K, V, R> context = iterationContext()) {
+                        final long nextEntryPos = nextEntryPos(callback, chronicleId);
+                        if (nextEntryPos == NOT_FOUND)
+                            return false;
+                        entryPos = nextEntryPos;
+
+                        if (segmentIndex >= 0) {
+                            // we are in first tiers (aka "segments")
+                            context.initSegmentIndex(segmentIndex);
+                        } else {
+                            // we are in extra tiers
+                            final TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+                            final long tierBaseAddr = tierAddr(tierBulkData, tierIndexOffsetWithinBulk);
+                            final long tierCountersAreaAddr = tierBaseAddr + tierHashLookupOuterSize;
+                            context.initSegmentIndex(
+                                    TierCountersArea.segmentIndex(tierCountersAreaAddr));
+                            final int tier = TierCountersArea.tier(tierCountersAreaAddr);
+                            final long tierIndex = actualSegments +
+                                    ((long) bulkIndex << log2TiersInBulk) + tierIndexOffsetWithinBulk + 1;
+                            context.initSegmentTier(tier, tierIndex, tierBaseAddr);
+                        }
+
+                        context.updateLock().lock();
+
+                        if (entryIsStillDirty(entryPos)) {
+                            context.readExistingEntry(entryPos);
+                            final ReplicableEntry entry = (ReplicableEntry) context.entryForIteration();
+                            callback.onEntry(entry, chronicleId);
+                            somethingSentSinceLastPass = true;
+                            clearEntry(entryPos);
+                            return true;
+                        }
+                        // if the entryPos was already cleared by another thread
+                        // while we were trying to obtain segment lock (for example, in relocation()),
+                        // go to pick up next (next iteration in the `while (true)` loop)
                     }
-                    // if the entryPos was already cleared by another thread
-                    // while we were trying to obtain segment lock (for example, in relocation()),
-                    // go to pick up next (next iteration in the `while (true)` loop)
                 }
             }
-        }
 
-        private boolean entryIsStillDirty(final long entryPos) {
-            return tierModIterFrame.get(nativeAccess(), null, tierBitSetAddr, entryPos);
+            private boolean entryIsStillDirty(final long entryPos) {
+                return tierModIterFrame.get(nativeAccess(), null, tierBitSetAddr, entryPos);
+            }
+
+            private void clearEntry(final long entryPos) {
+                clearSentEntry(tierBitSetAddr, entryPos);
+            }
         }
 
-        private void clearEntry(final long entryPos) {
-            tierModIterFrame.clear(nativeAccess(), null, tierBitSetAddr, entryPos);
+        /**
+         * A shard of this iterator, see {@link #shards(int)}.
+         */
+        public final class Shard extends Cursor {
+            long completedPassStartTime = 0L;
+
+            Shard(final int fromSegment, final int toSegment) {
+                super(fromSegment, toSegment);
+            }
+
+            /**
+             * @return the first segment, changes of which this shard passes
+             */
+            public int fromSegment() {
+                return fromSegment;
+            }
+
+            /**
+             * @return the segment after the last one, changes of which this shard passes
+             */
+            public int toSegment() {
+                return toSegment;
+            }
+
+            /**
+             * Like {@link ModificationIterator#hasNext()}, for the segments of this shard.
+             */
+            public boolean hasNext() {
+                throwExceptionIfClosed();
+
+                return nextEntryPos(null, 0) != NOT_FOUND;
+            }
+
+            /**
+             * Like {@link ModificationIterator#nextEntry(Callback, int)}, for the segments of this
+             * shard.
+             */
+            @Override
+            public boolean nextEntry(@NotNull final Callback callback, final int chronicleId) {
+                throwExceptionIfClosed();
+
+                return super.nextEntry(callback, chronicleId);
+            }
+
+            /**
+             * Returns a handler, that passes changed entries of this shard to the given callback
+             * when run in an {@link EventLoop}, processing up to a bounded number of entries per
+             * {@code action()} call.
+             *
+             * @param callback    the callback to pass changed entries to
+             * @param chronicleId passed to the callback
+             * @return the handler to {@linkplain EventLoop#addHandler(EventHandler) add} to an
+             * event loop
+             */
+            @NotNull
+            public EventHandler eventHandler(@NotNull final Callback callback,
+                                             final int chronicleId) {
+                return () -> {
+                    if (isClosing())
+                        throw new InvalidEventHandlerException("map is closed");
+                    boolean busy = false;
+                    for (int i = 0; i < CHANGE_FEED_HANDLER_BATCH && nextEntry(callback, chronicleId); i++) {
+                        busy = true;
+                    }
+                    return busy;
+                };
+            }
+
+            @Override
+            void passComplete(@NotNull final Callback callback, final int chronicleId) {
+                shardPassComplete(this, callback, chronicleId);
+            }
         }
 
         /**
@@ -1059,17 +1692,33 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
             }
         }
 
+        /**
+         * Same as {@link #dirtyEntries(long, EventLoop)}, but dirties all segments in the calling
+         * thread, for replicators which drive their own I/O loop instead of an {@link EventLoop}.
+         */
+        void dirtyEntries(long fromTimeStamp) {
+            throwExceptionIfClosed();
+
+            final DirtyEntriesHandler handler = new DirtyEntriesHandler(segment -> true, fromTimeStamp);
+            try {
+                while (true)
+                    handler.action();
+            } catch (InvalidEventHandlerException done) {
+                // all segments are dirtied
+            }
+        }
+
         void raiseChange0(final long tierIndex, final long pos) {
             if (tierIndex <= actualSegments) {
                 final long segmentIndex = tierIndex - 1;
                 final long offsetToTierBitSet = segmentIndex * tierModIterBitSetOuterSize;
-                raiseChangeInSegment(offsetToTierBitSet, pos);
+                raiseChangeInSegment(tierIndex, offsetToTierBitSet, pos);
             } else {
                 final long extraTierIndex = tierIndex - 1 - actualSegments;
                 final int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
                 final long offsetToTierBitSet =
                         (extraTierIndex & (tiersInBulk - 1)) * tierModIterBitSetOuterSize;
-                raiseChangeInTierBulk(bulkIndex, offsetToTierBitSet, pos);
+                raiseChangeInTierBulk(tierIndex, bulkIndex, offsetToTierBitSet, pos);
             }
         }
 
@@ -1095,8 +1744,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
             if (tierIndex <= actualSegments) {
                 final long segmentIndex = tierIndex - 1;
                 final long offsetToTierBitSet = segmentIndex * tierModIterBitSetOuterSize;
-                tierModIterFrame.clearRange(nativeAccess(), null,
-                        segmentBitSetsAddr + offsetToTierBitSet, pos, endPosExclusive);
+                clearRange(segmentBitSetsAddr + offsetToTierBitSet, pos, endPosExclusive);
             } else {
                 final long extraTierIndex = tierIndex - 1 - actualSegments;
                 final int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
@@ -1104,8 +1752,21 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                         (extraTierIndex & (tiersInBulk - 1)) * tierModIterBitSetOuterSize;
                 final TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
                 final long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
-                tierModIterFrame.clearRange(nativeAccess(), null, bitSetAddr, pos, endPosExclusive);
+                clearRange(bitSetAddr, pos, endPosExclusive);
+            }
+        }
+
+        private void clearRange(final long bitSetAddr, final long pos, final long endPosExclusive) {
+            if (pos >= endPosExclusive)
+                return;
+            long cleared = 0L;
+            for (long p = tierModIterFrame.nextSetBit(nativeAccess(), null, bitSetAddr, pos);
+                 p != NOT_FOUND && p < endPosExclusive;
+                 p = tierModIterFrame.nextSetBit(nativeAccess(), null, bitSetAddr, p + 1)) {
+                cleared++;
             }
+            tierModIterFrame.clearRange(nativeAccess(), null, bitSetAddr, pos, endPosExclusive);
+            pendingEntries.add(-cleared);
         }
     }
 }
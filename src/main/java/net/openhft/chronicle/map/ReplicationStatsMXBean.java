@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * JMX view of the replication state of a replicated {@link ChronicleMap}, registered in the
+ * platform MBean server under the {@code net.openhft.chronicle.map:type=ReplicationStats} domain,
+ * if {@link ChronicleMapBuilder#replicationStatistics(boolean)} is configured. The bean is
+ * unregistered when the map is closed.
+ * <p>
+ * Per-remote attributes are arrays, aligned with {@link #getRemoteIdentifiers()}. Counters are
+ * cumulative, rates (e. g. entries sent per second) are derived by the monitoring system.
+ *
+ * @see ReplicatedChronicleMap.ModificationIterator#pendingEntries()
+ * @see ReplicatedChronicleMap#acceptanceDecisionStats()
+ */
+public interface ReplicationStatsMXBean {
+
+    String getMapIdentity();
+
+    byte getLocalIdentifier();
+
+    /**
+     * @return identifiers of the remote nodes, modification iterators for which are acquired
+     */
+    byte[] getRemoteIdentifiers();
+
+    long[] getPendingEntries();
+
+    /**
+     * @see ReplicatedChronicleMap.ModificationIterator#oldestPendingChangeAgeMillis()
+     */
+    long[] getOldestPendingChangeAgeMillis();
+
+    long[] getSentEntries();
+
+    /**
+     * @return the timestamps, from which the remote nodes could be bootstrapped, in the units of
+     * {@link net.openhft.chronicle.hash.replication.TimeProvider}
+     */
+    long[] getRemoteNodeCouldBootstrapFrom();
+
+    long getAcceptedRemoteModifications();
+
+    long getDiscardedRemoteModifications();
+
+    long getConflictingRemoteModifications();
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.replication.AcceptanceDecisionStats;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registers {@link ReplicationStatsMXBean} of a replicated map on creation, and unregisters it
+ * when the map is closed. Refers to the map weakly, so the bean doesn't prevent the map from being
+ * collected.
+ */
+final class ReplicationStatsMXBeanRegistration implements ReplicationStatsMXBean, MapClosable {
+
+    private static final ReplicatedChronicleMap.ModificationIterator[] NO_ITERATORS =
+            new ReplicatedChronicleMap.ModificationIterator[0];
+
+    private final String mapIdentity;
+    private final byte localIdentifier;
+    private final AcceptanceDecisionStats acceptanceDecisionStats;
+    private final WeakReference<ReplicatedChronicleMap<?, ?, ?>> mapRef;
+    private final ObjectName objectName;
+    private volatile boolean closed = false;
+
+    ReplicationStatsMXBeanRegistration(ReplicatedChronicleMap<?, ?, ?> map) {
+        mapIdentity = map.toIdentityString();
+        localIdentifier = map.identifier();
+        acceptanceDecisionStats = map.acceptanceDecisionStats();
+        mapRef = new WeakReference<>(map);
+        objectName = objectName(map);
+    }
+
+    private static ObjectName objectName(ReplicatedChronicleMap<?, ?, ?> map) {
+        String name = map.name() != null ? map.name() : "unnamed";
+        try {
+            // several maps might have the same name
+            return new ObjectName("net.openhft.chronicle.map:type=ReplicationStats,name=" +
+                    ObjectName.quote(name) + ",id=" + Integer.toHexString(System.identityHashCode(map)));
+        } catch (JMException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    ObjectName objectName() {
+        return objectName;
+    }
+
+    /**
+     * @return {@code true} if the bean is registered, a failure to register is not fatal for the
+     * map
+     */
+    boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return true;
+        } catch (JMException | RuntimeException e) {
+            Jvm.warn().on(getClass(), "Failed to register " + objectName, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            Jvm.warn().on(getClass(), "Failed to unregister " + objectName, e);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Nullable
+    private ReplicatedChronicleMap<?, ?, ?> map() {
+        ReplicatedChronicleMap<?, ?, ?> map = mapRef.get();
+        return map != null && !map.isClosing() ? map : null;
+    }
+
+    private ReplicatedChronicleMap.ModificationIterator[] iterators() {
+        ReplicatedChronicleMap<?, ?, ?> map = map();
+        if (map == null)
+            return NO_ITERATORS;
+        try {
+            return map.acquireAllModificationIterators();
+        } catch (ChronicleHashClosedException e) {
+            return NO_ITERATORS;
+        }
+    }
+
+    private long[] perRemote(ToLongFunction<ReplicatedChronicleMap.ModificationIterator> stat) {
+        ReplicatedChronicleMap.ModificationIterator[] iterators = iterators();
+        long[] result = new long[iterators.length];
+        for (int i = 0; i < iterators.length; i++) {
+            result[i] = stat.applyAsLong(iterators[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String getMapIdentity() {
+        return mapIdentity;
+    }
+
+    @Override
+    public byte getLocalIdentifier() {
+        return localIdentifier;
+    }
+
+    @Override
+    public byte[] getRemoteIdentifiers() {
+        ReplicatedChronicleMap.ModificationIterator[] iterators = iterators();
+        byte[] remoteIdentifiers = new byte[iterators.length];
+        for (int i = 0; i < iterators.length; i++) {
+            remoteIdentifiers[i] = iterators[i].remoteIdentifier();
+        }
+        return remoteIdentifiers;
+    }
+
+    @Override
+    public long[] getPendingEntries() {
+        return perRemote(ReplicatedChronicleMap.ModificationIterator::pendingEntries);
+    }
+
+    @Override
+    public long[] getOldestPendingChangeAgeMillis() {
+        return perRemote(ReplicatedChronicleMap.ModificationIterator::oldestPendingChangeAgeMillis);
+    }
+
+    @Override
+    public long[] getSentEntries() {
+        return perRemote(ReplicatedChronicleMap.ModificationIterator::sentEntries);
+    }
+
+    @Override
+    public long[] getRemoteNodeCouldBootstrapFrom() {
+        ReplicatedChronicleMap<?, ?, ?> map = map();
+        ReplicatedChronicleMap.ModificationIterator[] iterators = iterators();
+        long[] bootstrapFrom = new long[iterators.length];
+        if (map == null)
+            return bootstrapFrom;
+        try {
+            for (int i = 0; i < iterators.length; i++) {
+                bootstrapFrom[i] = map.remoteNodeCouldBootstrapFrom(iterators[i].remoteIdentifier());
+            }
+        } catch (ChronicleHashClosedException e) {
+            // the map is closed concurrently, report zeros
+        }
+        return bootstrapFrom;
+    }
+
+    @Override
+    public long getAcceptedRemoteModifications() {
+        return acceptanceDecisionStats.accepted();
+    }
+
+    @Override
+    public long getDiscardedRemoteModifications() {
+        return acceptanceDecisionStats.discarded();
+    }
+
+    @Override
+    public long getConflictingRemoteModifications() {
+        return acceptanceDecisionStats.conflicts();
+    }
+}
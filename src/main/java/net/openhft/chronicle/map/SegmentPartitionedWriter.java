@@ -0,0 +1,325 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.impl.util.Throwables;
+import net.openhft.chronicle.hash.serialization.DataAccess;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Each owner thread owns the segments, whose index modulo the number of owners equals the index
+ * of the owner, and consumes a {@link Queue}, which is produced only by the thread that created
+ * the writer. Keys and values are serialized by the producer into the queue, so owners don't
+ * access the objects of the caller. Owners apply drained batches via {@link
+ * VanillaChronicleMap#writeAllInSegment(Bytes[], long[], long[], long[], int, int)}.
+ */
+final class SegmentPartitionedWriter<K, V> implements PartitionedMapWriter<K, V> {
+
+    static final int QUEUE_CAPACITY = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final VanillaChronicleMap<K, V, ?> map;
+    private final Thread producerThread = Thread.currentThread();
+    private final DataAccess<K> keyDataAccess;
+    private final DataAccess<V> valueDataAccess;
+    private final Owner[] owners;
+    private volatile Throwable failure;
+    private volatile boolean flushing = false;
+    private boolean closed = false;
+
+    SegmentPartitionedWriter(VanillaChronicleMap<K, V, ?> map, int ownerThreads) {
+        if (ownerThreads <= 0) {
+            throw new IllegalArgumentException(map.toIdentityString() +
+                    ": ownerThreads should be positive, " + ownerThreads + " given");
+        }
+        this.map = map;
+        // accessed only by the producer thread, so it doesn't need a query context to serialize
+        keyDataAccess = map.keyDataAccess.copy();
+        valueDataAccess = map.valueDataAccess.copy();
+        owners = new Owner[Math.min(ownerThreads, map.segments())];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = new Owner("Partitioned Writer " + i + " for " + map.toIdentityString());
+        }
+        for (Owner owner : owners) {
+            owner.start();
+        }
+    }
+
+    private void checkOpen() {
+        if (producerThread != Thread.currentThread()) {
+            throw new IllegalStateException(map.toIdentityString() +
+                    ": PartitionedMapWriter should be accessed only from a single thread");
+        }
+        if (closed) {
+            throw new IllegalStateException(map.toIdentityString() +
+                    ": PartitionedMapWriter is closed");
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() {
+        Throwable t = failure;
+        if (t != null)
+            throw Throwables.propagate(t);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        checkOpen();
+        map.checkKey(key);
+        map.checkValue(value);
+        try {
+            submit(keyDataAccess.getData(key), valueDataAccess.getData(value));
+        } finally {
+            keyDataAccess.uninit();
+            valueDataAccess.uninit();
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        Objects.requireNonNull(key);
+        checkOpen();
+        map.checkKey(key);
+        try {
+            submit(keyDataAccess.getData(key), null);
+        } finally {
+            keyDataAccess.uninit();
+        }
+    }
+
+    private void submit(Data<K> key, Data<V> value) {
+        int segmentIndex = map.segmentIndex(key);
+        Owner owner = owners[segmentIndex % owners.length];
+        Queue queue = owner.queue;
+        while (!queue.offer(segmentIndex, key, value)) {
+            // backpressure: the owner is behind by the whole queue
+            throwIfFailed();
+            if (!owner.isAlive())
+                throw new IllegalStateException(owner.getName() + " is terminated");
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        if (owner.idle)
+            LockSupport.unpark(owner);
+    }
+
+    @Override
+    public void flush() {
+        checkOpen();
+        awaitApplied();
+        throwIfFailed();
+    }
+
+    private void awaitApplied() {
+        flushing = true;
+        try {
+            for (Owner owner : owners) {
+                long submitted = owner.queue.tail;
+                while (owner.applied < submitted && owner.isAlive()) {
+                    LockSupport.unpark(owner);
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } finally {
+            flushing = false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        if (!map.isClosed()) {
+            if (producerThread != Thread.currentThread()) {
+                throw new IllegalStateException(map.toIdentityString() +
+                        ": PartitionedMapWriter should be accessed only from a single thread");
+            }
+            awaitApplied();
+        }
+        closed = true;
+        for (Owner owner : owners) {
+            owner.stopped = true;
+            LockSupport.unpark(owner);
+        }
+        for (Owner owner : owners) {
+            try {
+                owner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!map.isClosed())
+            throwIfFailed();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private final class Owner extends Thread {
+        final Queue queue = new Queue(QUEUE_CAPACITY);
+        volatile long applied = 0;
+        volatile boolean idle = false;
+        volatile boolean stopped = false;
+        private final int[] segments = new int[QUEUE_CAPACITY];
+        private final Bytes<?>[] entries = new Bytes<?>[QUEUE_CAPACITY];
+        private final long[] keySizes = new long[QUEUE_CAPACITY];
+        private final long[] valueSizes = new long[QUEUE_CAPACITY];
+        private final long[] order = new long[QUEUE_CAPACITY];
+
+        Owner(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                int n = queue.peek(segments, entries, keySizes, valueSizes);
+                if (n == 0) {
+                    idle = true;
+                    // re-check after publishing idle, to not miss the unpark from the producer
+                    if (queue.isEmpty() && !stopped)
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    idle = false;
+                    continue;
+                }
+                try {
+                    if (failure == null && !map.isClosed())
+                        apply(n);
+                } catch (Throwable t) {
+                    if (failure == null)
+                        failure = t;
+                } finally {
+                    queue.release(n);
+                    applied += n;
+                    if (flushing)
+                        LockSupport.unpark(producerThread);
+                }
+            }
+        }
+
+        private void apply(int n) {
+            for (int i = 0; i < n; i++) {
+                order[i] = (((long) segments[i]) << 32) | i;
+            }
+            // stable within a segment, because the index in the batch is in the low bits
+            Arrays.sort(order, 0, n);
+            for (int from = 0, to; from < n; from = to) {
+                to = VanillaChronicleMap.segmentGroupEnd(order, from, n);
+                map.writeAllInSegment(entries, keySizes, valueSizes, order, from, to);
+            }
+        }
+    }
+
+    /**
+     * Bounded single-producer, single-consumer ring of serialized writes. Each slot owns a buffer,
+     * reused for the writes passing through the slot, which holds the key bytes followed by the
+     * value bytes, a negative value size denotes removal. Because the buffers are reused, the
+     * consumer {@linkplain #peek peeks} writes and {@linkplain #release releases} the slots only
+     * after the writes are applied.
+     */
+    static final class Queue {
+        private final int mask;
+        private final int[] segments;
+        private final Bytes<?>[] entries;
+        private final long[] keySizes;
+        private final long[] valueSizes;
+        /**
+         * Written only by the producer
+         */
+        volatile long tail = 0;
+        /**
+         * Written only by the consumer
+         */
+        volatile long head = 0;
+        private long cachedHead = 0;
+
+        Queue(int capacity) {
+            assert Integer.bitCount(capacity) == 1;
+            mask = capacity - 1;
+            segments = new int[capacity];
+            entries = new Bytes<?>[capacity];
+            keySizes = new long[capacity];
+            valueSizes = new long[capacity];
+        }
+
+        boolean offer(int segmentIndex, Data<?> key, Data<?> value) {
+            long t = tail;
+            if (t - cachedHead > mask) {
+                cachedHead = head;
+                if (t - cachedHead > mask)
+                    return false;
+            }
+            int i = (int) t & mask;
+            Bytes<?> entry = entries[i];
+            if (entry == null)
+                entries[i] = entry = Bytes.allocateElasticOnHeap(64);
+            entry.clear();
+            entry.write(key.bytes(), key.offset(), key.size());
+            keySizes[i] = key.size();
+            if (value != null) {
+                entry.write(value.bytes(), value.offset(), value.size());
+                valueSizes[i] = value.size();
+            } else {
+                valueSizes[i] = -1;
+            }
+            segments[i] = segmentIndex;
+            // the volatile write publishes the slot to the consumer
+            tail = t + 1;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        /**
+         * Copies all available writes to the given arrays, which should be at least as long as the
+         * capacity of this queue. The copied buffers are valid until {@link #release(int)}.
+         *
+         * @return the number of available writes
+         */
+        int peek(int[] segmentsTo, Bytes<?>[] entriesTo, long[] keySizesTo, long[] valueSizesTo) {
+            long h = head;
+            int n = (int) (tail - h);
+            for (int k = 0; k < n; k++) {
+                int i = (int) (h + k) & mask;
+                segmentsTo[k] = segments[i];
+                entriesTo[k] = entries[i];
+                keySizesTo[k] = keySizes[i];
+                valueSizesTo[k] = valueSizes[i];
+            }
+            return n;
+        }
+
+        void release(int n) {
+            // the volatile write frees the slots for the producer
+            head = head + n;
+        }
+    }
+}
@@ -0,0 +1,787 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Replicates a {@link ChronicleMap}, created with {@link ChronicleMapBuilder#replication(byte)},
+ * to remote nodes over plain TCP, using non-blocking NIO and a single selector thread per node.
+ * <p>
+ * Entries, provided by the per-remote modification iterators, are externalized with {@link
+ * ReplicatedChronicleMap#writeExternalEntry} and batched into frames of up to {@code batchSize}
+ * bytes, so a burst of updates costs a handful of {@code write()} calls rather than one per entry.
+ * When a connection is (re-)established both sides exchange their identifiers and the timestamp,
+ * from which they need to be bootstrapped, and each side re-dirties the entries the other one might
+ * have missed while the connection was down.
+ * <p>
+ * Each pair of nodes needs a single connection: configure the remote address on one side of the
+ * pair only (e.g. nodes connect to the nodes with greater identifiers), and give the other side a
+ * {@code listenAddress}. Outgoing connections are re-established after {@link
+ * #RECONNECT_INTERVAL_MILLIS} if they fail or drop.
+ * <p>
+ * Frames of entries could be deflated, if the {@code compression} is enabled on both sides of the
+ * connection: the nodes announce it in the handshake, so nodes with and without compression could
+ * be mixed. A frame is sent deflated only if that makes it smaller. Compression trades replicator
+ * thread CPU for bandwidth, it pays off across slow links, or when values are large and
+ * repetitive.
+ */
+public final class TcpReplicator implements Closeable {
+
+    static final long RECONNECT_INTERVAL_MILLIS = 500L;
+    /**
+     * Modification iterators are polled at least this often even without notifications, to pick up
+     * changes made by other processes sharing the same persisted map
+     */
+    static final long POLL_INTERVAL_MILLIS = 50L;
+    static final int DEFAULT_BATCH_SIZE = 64 << 10;
+
+    private static final int FRAME_HEADER_SIZE = 5;
+    private static final byte HELLO_FRAME = 1;
+    private static final byte ENTRIES_FRAME = 2;
+    /**
+     * The body is {@code [int uncompressed length][deflated body of an entries frame]}
+     */
+    private static final byte DEFLATED_ENTRIES_FRAME = 3;
+    /**
+     * Hello frames of nodes not supporting handshake flags don't have the flags byte
+     */
+    private static final int HELLO_FRAME_BODY_SIZE_WITHOUT_FLAGS = 9;
+    private static final int HELLO_FRAME_BODY_SIZE = 10;
+    private static final byte COMPRESSION_FLAG = 1;
+
+    private final ReplicatedChronicleMap<?, ?, ?> map;
+    private final byte localIdentifier;
+    private final int batchSize;
+    /**
+     * The max length of a frame body, accepted from a remote node. A frame is cut after {@code
+     * batchSize} bytes of entries, so its body is at most the batch plus a single entry
+     */
+    private final int maxFrameLength;
+    private final boolean compression;
+    private final Selector selector;
+    @Nullable
+    private final SelectedSelectionKeySet selectedKeySet;
+    @Nullable
+    private final ServerSocketChannel serverChannel;
+    private final List<Connection> connections = new ArrayList<>();
+    private final AtomicBoolean changesPending = new AtomicBoolean();
+    private final Replica.ModificationNotifier modificationNotifier = this::onModification;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private volatile long entriesSent;
+    private volatile long entriesReceived;
+    private volatile long bytesSent;
+    private volatile long bytesReceived;
+
+    public TcpReplicator(@NotNull ChronicleMap<?, ?> map,
+                         @Nullable InetSocketAddress listenAddress,
+                         @NotNull Map<Byte, InetSocketAddress> remotes) throws IOException {
+        this(map, listenAddress, remotes, DEFAULT_BATCH_SIZE);
+    }
+
+    public TcpReplicator(@NotNull ChronicleMap<?, ?> map,
+                         @Nullable InetSocketAddress listenAddress,
+                         @NotNull Map<Byte, InetSocketAddress> remotes,
+                         int batchSize) throws IOException {
+        this(map, listenAddress, remotes, batchSize, false);
+    }
+
+    /**
+     * @param map           the replicated map
+     * @param listenAddress the address to accept connections from remote nodes on, or {@code null}
+     *                      if this node only connects to other nodes
+     * @param remotes       identifiers and addresses of the remote nodes this node connects to
+     * @param batchSize     the number of bytes of externalized entries, after which a frame is
+     *                      flushed to the socket
+     * @param compression   whether to deflate frames of entries, sent to the remote nodes which
+     *                      enable compression as well
+     */
+    public TcpReplicator(@NotNull ChronicleMap<?, ?> map,
+                         @Nullable InetSocketAddress listenAddress,
+                         @NotNull Map<Byte, InetSocketAddress> remotes,
+                         int batchSize, boolean compression) throws IOException {
+        if (!(map instanceof ReplicatedChronicleMap)) {
+            throw new IllegalArgumentException("Map " + map.toIdentityString() +
+                    " is not replicated, configure replication(identifier) in ChronicleMapBuilder");
+        }
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize should be positive, " + batchSize + " given");
+        this.map = (ReplicatedChronicleMap<?, ?, ?>) map;
+        this.localIdentifier = this.map.identifier();
+        this.batchSize = batchSize;
+        // leave a headroom for remote nodes, configured with a greater batchSize
+        long maxEntrySize = this.map.chunkSize * this.map.maxChunksPerEntry;
+        this.maxFrameLength = (int) Math.min(4L * (batchSize + maxEntrySize),
+                Integer.MAX_VALUE - FRAME_HEADER_SIZE);
+        this.compression = compression;
+
+        this.selector = Selector.open();
+        this.selectedKeySet = installSelectedKeySet(selector);
+
+        ServerSocketChannel server = null;
+        if (listenAddress != null) {
+            server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(listenAddress);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        this.serverChannel = server;
+
+        for (Map.Entry<Byte, InetSocketAddress> remote : remotes.entrySet()) {
+            byte remoteIdentifier = remote.getKey();
+            if (remoteIdentifier == localIdentifier) {
+                throw new IllegalArgumentException("Remote identifier " + remoteIdentifier +
+                        " equals to the local identifier");
+            }
+            connections.add(new Connection(remoteIdentifier, remote.getValue()));
+        }
+
+        thread = new Thread(this::run, "tcp-replicator-" + localIdentifier);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Replaces the selected keys set of the JDK selector with an array-backed one, which doesn't
+     * produce garbage on each {@code select()}. Not possible on JVMs which don't open {@code
+     * sun.nio.ch} for reflection, then the standard selected keys set is used.
+     */
+    @Nullable
+    private static SelectedSelectionKeySet installSelectedKeySet(Selector selector) {
+        try {
+            Class<?> selectorImplClass = Class.forName("sun.nio.ch.SelectorImpl", false,
+                    ClassLoader.getSystemClassLoader());
+            if (!selectorImplClass.isInstance(selector))
+                return null;
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+            Jvm.setAccessible(selectedKeysField);
+            Jvm.setAccessible(publicSelectedKeysField);
+            SelectedSelectionKeySet keySet = new SelectedSelectionKeySet();
+            selectedKeysField.set(selector, keySet);
+            publicSelectedKeysField.set(selector, keySet);
+            return keySet;
+        } catch (Exception | LinkageError e) {
+            Jvm.debug().on(TcpReplicator.class, "Using the default selected keys set: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the address this replicator accepts connections on, useful when the {@code
+     * listenAddress} was given with the port 0
+     */
+    @Nullable
+    public InetSocketAddress localAddress() throws IOException {
+        return serverChannel != null ? (InetSocketAddress) serverChannel.getLocalAddress() : null;
+    }
+
+    /**
+     * @return the number of entries sent to all remote nodes so far
+     */
+    public long entriesSent() {
+        return entriesSent;
+    }
+
+    /**
+     * @return the number of entries received from all remote nodes so far
+     */
+    public long entriesReceived() {
+        return entriesReceived;
+    }
+
+    /**
+     * @return the number of bytes written to the connections to all remote nodes so far,
+     * including handshakes and frame headers
+     */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes read from the connections to all remote nodes so far
+     */
+    public long bytesReceived() {
+        return bytesReceived;
+    }
+
+    private void onModification() {
+        if (!changesPending.get() && changesPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    private void run() {
+        long nextPollTime = 0L;
+        try {
+            while (!closed) {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < connections.size(); i++) {
+                    Connection connection = connections.get(i);
+                    if (connection.shouldConnect(now))
+                        connection.connect();
+                }
+
+                if (hasBacklog()) {
+                    selector.selectNow();
+                } else {
+                    selector.select(POLL_INTERVAL_MILLIS);
+                }
+                processSelectedKeys();
+
+                boolean poll = changesPending.getAndSet(false);
+                now = System.currentTimeMillis();
+                if (now >= nextPollTime) {
+                    poll = true;
+                    nextPollTime = now + POLL_INTERVAL_MILLIS;
+                }
+                for (int i = 0; i < connections.size(); i++) {
+                    connections.get(i).replicate(poll);
+                }
+                connections.removeIf(connection -> connection.discarded);
+            }
+        } catch (ChronicleHashClosedException e) {
+            // the map is closed, nothing to replicate anymore
+        } catch (Throwable t) {
+            if (!closed)
+                Jvm.warn().on(getClass(), "Replicator of " + map.toIdentityString() + " stopped", t);
+        } finally {
+            for (Connection connection : connections) {
+                connection.closeChannel();
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private boolean hasBacklog() {
+        for (int i = 0; i < connections.size(); i++) {
+            Connection connection = connections.get(i);
+            if (connection.handshaken && connection.backlog && connection.out.position() < batchSize)
+                return true;
+        }
+        return false;
+    }
+
+    private void processSelectedKeys() {
+        if (selectedKeySet != null) {
+            SelectionKey[] keys = selectedKeySet.flip();
+            for (int i = 0; ; i++) {
+                SelectionKey key = keys[i];
+                if (key == null)
+                    break;
+                keys[i] = null;
+                processSelectedKey(key);
+            }
+        } else {
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                processSelectedKey(key);
+            }
+        }
+    }
+
+    private void processSelectedKey(SelectionKey key) {
+        if (!key.isValid())
+            return;
+        Connection connection = (Connection) key.attachment();
+        if (connection == null) {
+            accept();
+            return;
+        }
+        try {
+            if (key.isConnectable() && connection.channel.finishConnect())
+                connection.onConnected();
+            if (key.isValid() && key.isReadable())
+                connection.read();
+            if (key.isValid() && key.isWritable())
+                connection.flush();
+        } catch (IOException e) {
+            connection.disconnect(e);
+        } catch (ChronicleHashClosedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // e. g. corrupted entries, don't let a single connection stop the replicator
+            connection.disconnect(e);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                connections.add(new Connection(channel));
+            }
+        } catch (IOException e) {
+            Jvm.warn().on(getClass(), "Failed to accept a connection", e);
+        }
+    }
+
+    @Nullable
+    private Connection connectionTo(Connection except, byte remoteIdentifier) {
+        for (Connection connection : connections) {
+            if (connection != except && connection.handshaken &&
+                    connection.remoteIdentifier == remoteIdentifier)
+                return connection;
+        }
+        return null;
+    }
+
+    private static void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() << 1, minCapacity));
+        buffer.flip();
+        newBuffer.put(buffer);
+        return newBuffer;
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Jvm.debug().on(TcpReplicator.class, e);
+        }
+    }
+
+    /**
+     * Stops the replicator thread and closes all connections. The map itself is not closed.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        selector.wakeup();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A connection to a single remote node. Frames are {@code [int length][byte type][body]}, the
+     * body of an entries frame is a sequence of {@code [int length][externalized entry]}. The body
+     * of a hello frame is {@code [byte identifier][long bootstrap from][byte flags]}.
+     */
+    private final class Connection implements Replica.ModificationIterator.Callback {
+
+        /**
+         * The address to (re-)connect to, {@code null} for accepted connections
+         */
+        @Nullable
+        private final InetSocketAddress remoteAddress;
+        private final Bytes<?> entryOut = Bytes.allocateElasticOnHeap(256);
+        private final Bytes<?> entryIn = Bytes.allocateElasticOnHeap(256);
+        private final Bytes<?> payload = Bytes.allocateElasticOnHeap(8);
+        private byte remoteIdentifier;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ReplicatedChronicleMap<?, ?, ?>.ModificationIterator iterator;
+        private ByteBuffer in = ByteBuffer.allocate(batchSize + FRAME_HEADER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(batchSize << 1);
+        private boolean handshaken;
+        /**
+         * {@code true} if both sides enabled compression, known after the handshake
+         */
+        private boolean deflate;
+        @Nullable
+        private Deflater deflater;
+        @Nullable
+        private Inflater inflater;
+        private byte[] deflated;
+        private byte[] inflated;
+        /**
+         * {@code true} if the last {@link #fill()} stopped because the batch is full rather than
+         * because the modification iterator is drained
+         */
+        private boolean backlog;
+        private boolean discarded;
+        private long reconnectTime;
+
+        Connection(byte remoteIdentifier, @NotNull InetSocketAddress remoteAddress) {
+            this.remoteIdentifier = remoteIdentifier;
+            this.remoteAddress = remoteAddress;
+        }
+
+        Connection(SocketChannel accepted) throws IOException {
+            this.remoteAddress = null;
+            this.channel = accepted;
+            configure(accepted);
+            key = accepted.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        boolean shouldConnect(long now) {
+            return remoteAddress != null && channel == null && now >= reconnectTime;
+        }
+
+        void connect() {
+            try {
+                channel = SocketChannel.open();
+                configure(channel);
+                if (channel.connect(remoteAddress)) {
+                    onConnected();
+                } else {
+                    key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException e) {
+                disconnect(e);
+            }
+        }
+
+        void onConnected() throws IOException {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            sendHello();
+        }
+
+        private void sendHello() {
+            ensureOutCapacity(FRAME_HEADER_SIZE + HELLO_FRAME_BODY_SIZE);
+            out.putInt(HELLO_FRAME_BODY_SIZE)
+                    .put(HELLO_FRAME)
+                    .put(localIdentifier)
+                    .putLong(map.remoteNodeCouldBootstrapFrom(remoteIdentifier))
+                    .put(compression ? COMPRESSION_FLAG : 0);
+        }
+
+        private void onHello(byte identifier, long bootstrapFrom, byte flags) throws IOException {
+            if (remoteAddress == null) {
+                if (identifier <= 0 || identifier == localIdentifier)
+                    throw new IOException("Invalid remote identifier " + identifier);
+                Connection stale = connectionTo(this, identifier);
+                if (stale != null) {
+                    // the remote node has reconnected before this side noticed the old
+                    // connection is dead
+                    stale.disconnect(new IOException("Superseded by a new connection"));
+                }
+                remoteIdentifier = identifier;
+                sendHello();
+            } else if (identifier != remoteIdentifier) {
+                throw new IOException("Expected the node " + remoteIdentifier + " at " +
+                        remoteAddress + ", the node " + identifier + " connected");
+            }
+            iterator = map.acquireModificationIterator(remoteIdentifier);
+            iterator.setModificationNotifier(modificationNotifier);
+            // re-send everything the remote node might have missed while disconnected
+            iterator.dirtyEntries(bootstrapFrom);
+            deflate = compression && (flags & COMPRESSION_FLAG) != 0;
+            handshaken = true;
+            backlog = true;
+        }
+
+        void read() throws IOException {
+            int read = channel.read(in);
+            if (read < 0)
+                throw new IOException("Connection closed by the remote node " + remoteIdentifier);
+            bytesReceived += read;
+            in.flip();
+            while (in.remaining() >= FRAME_HEADER_SIZE) {
+                int frameStart = in.position();
+                int frameLength = in.getInt(frameStart);
+                if (frameLength < 0 || frameLength > maxFrameLength)
+                    throw new IOException("Corrupted frame of length " + frameLength);
+                if (in.remaining() < FRAME_HEADER_SIZE + frameLength)
+                    break;
+                byte frameType = in.get(frameStart + 4);
+                int frameEnd = frameStart + FRAME_HEADER_SIZE + frameLength;
+                in.position(frameStart + FRAME_HEADER_SIZE);
+                onFrame(frameType, frameLength, frameEnd);
+                in.position(frameEnd);
+            }
+            in.compact();
+            if (in.position() >= FRAME_HEADER_SIZE) {
+                int required = FRAME_HEADER_SIZE + in.getInt(0);
+                if (required > in.capacity())
+                    in = grow(in, required);
+            }
+        }
+
+        private void onFrame(byte frameType, int frameLength, int frameEnd) throws IOException {
+            switch (frameType) {
+                case HELLO_FRAME:
+                    if (frameLength != HELLO_FRAME_BODY_SIZE &&
+                            frameLength != HELLO_FRAME_BODY_SIZE_WITHOUT_FLAGS)
+                        throw new IOException("Corrupted hello frame of length " + frameLength);
+                    onHello(in.get(), in.getLong(),
+                            frameLength == HELLO_FRAME_BODY_SIZE ? in.get() : 0);
+                    break;
+                case ENTRIES_FRAME:
+                    if (!handshaken)
+                        throw new IOException("Entries received before the handshake");
+                    readEntries(in, frameEnd);
+                    break;
+                case DEFLATED_ENTRIES_FRAME:
+                    if (!handshaken)
+                        throw new IOException("Entries received before the handshake");
+                    ByteBuffer inflatedFrame = inflate(frameEnd);
+                    readEntries(inflatedFrame, inflatedFrame.limit());
+                    break;
+                default:
+                    throw new IOException("Unknown frame type " + frameType);
+            }
+        }
+
+        /**
+         * Inflates the body of a deflated entries frame, the {@code in} buffer is positioned at.
+         *
+         * @return the buffer with the body of the entries frame, from the position 0
+         */
+        private ByteBuffer inflate(int frameEnd) throws IOException {
+            int length = in.getInt();
+            if (length < 0 || length > maxFrameLength)
+                throw new IOException("Corrupted deflated frame of length " + length);
+            if (inflater == null)
+                inflater = new Inflater();
+            // a spare byte to detect frames inflating to more than the declared length
+            if (inflated == null || inflated.length <= length)
+                inflated = new byte[Math.min(Math.max(length, batchSize << 1), maxFrameLength) + 1];
+            inflater.reset();
+            inflater.setInput(in.array(), in.arrayOffset() + in.position(), frameEnd - in.position());
+            try {
+                int inflatedLength = 0;
+                while (inflatedLength <= length && !inflater.finished()) {
+                    int n = inflater.inflate(inflated, inflatedLength, length + 1 - inflatedLength);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    inflatedLength += n;
+                }
+                if (inflatedLength != length || !inflater.finished())
+                    throw new IOException("Corrupted deflated frame");
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted deflated frame", e);
+            }
+            return ByteBuffer.wrap(inflated, 0, length);
+        }
+
+        /**
+         * Copies the entries of the frame to {@code entryIn}, re-prefixing them with their lengths
+         * in the byte order of {@code Bytes}, and applies them at once, so that entries falling
+         * into the same segment are applied under a single segment lock.
+         */
+        private void readEntries(ByteBuffer source, int frameEnd) throws IOException {
+            long received = 0L;
+            entryIn.clear();
+            while (source.position() < frameEnd) {
+                if (frameEnd - source.position() < 4)
+                    throw new IOException("Corrupted entries frame");
+                int entryLength = source.getInt();
+                int entryStart = source.position();
+                if (entryLength < 1 || entryLength > frameEnd - entryStart)
+                    throw new IOException("Corrupted entry of length " + entryLength);
+                if (source.get(entryStart) == ReplicatedChronicleMap.ENTRY_HUNK)
+                    received++;
+                entryIn.writeInt(entryLength);
+                entryIn.write(source.array(), source.arrayOffset() + entryStart, entryLength);
+                source.position(entryStart + entryLength);
+            }
+            map.readExternalEntries(entryIn, remoteIdentifier);
+            entriesReceived += received;
+        }
+
+        void replicate(boolean poll) {
+            if (channel == null || !channel.isConnected())
+                return;
+            try {
+                if (handshaken && (poll || backlog))
+                    fill();
+                flush();
+            } catch (IOException e) {
+                disconnect(e);
+            }
+        }
+
+        /**
+         * Appends a frame of entries, provided by the modification iterator, to the output buffer.
+         */
+        private void fill() {
+            if (out.position() >= batchSize)
+                return;
+            ensureOutCapacity(FRAME_HEADER_SIZE);
+            int frameStart = out.position();
+            out.position(frameStart + FRAME_HEADER_SIZE);
+            while (out.position() - frameStart < batchSize) {
+                // entries are appended in onEntry()
+                if (!iterator.nextEntry(this, 0))
+                    break;
+            }
+            backlog = out.position() - frameStart >= batchSize;
+            int frameLength = out.position() - frameStart - FRAME_HEADER_SIZE;
+            if (frameLength == 0) {
+                out.position(frameStart);
+            } else if (!deflate || !deflateFrame(frameStart, frameLength)) {
+                out.putInt(frameStart, frameLength);
+                out.put(frameStart + 4, ENTRIES_FRAME);
+            }
+        }
+
+        /**
+         * Replaces the body of the entries frame, just appended to the output buffer, with the
+         * deflated one, unless deflating doesn't make the frame smaller.
+         *
+         * @return {@code true} if the frame is replaced with a deflated one
+         */
+        private boolean deflateFrame(int frameStart, int bodyLength) {
+            if (deflater == null)
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            // the deflated body with its length should be smaller than the plain body
+            int maxDeflatedLength = bodyLength - 4 - 1;
+            if (maxDeflatedLength <= 0)
+                return false;
+            if (deflated == null || deflated.length < maxDeflatedLength)
+                deflated = new byte[Math.max(maxDeflatedLength, batchSize << 1)];
+            int bodyStart = frameStart + FRAME_HEADER_SIZE;
+            deflater.reset();
+            deflater.setInput(out.array(), out.arrayOffset() + bodyStart, bodyLength);
+            deflater.finish();
+            int deflatedLength = 0;
+            while (!deflater.finished() && deflatedLength < maxDeflatedLength) {
+                deflatedLength += deflater.deflate(
+                        deflated, deflatedLength, maxDeflatedLength - deflatedLength);
+            }
+            if (!deflater.finished())
+                return false;
+            out.position(bodyStart);
+            out.putInt(bodyLength);
+            out.put(deflated, 0, deflatedLength);
+            out.putInt(frameStart, 4 + deflatedLength);
+            out.put(frameStart + 4, DEFLATED_ENTRIES_FRAME);
+            return true;
+        }
+
+        @Override
+        public void onEntry(ReplicableEntry entry, int chronicleId) {
+            entryOut.clear();
+            map.writeExternalEntry(entry, null, entryOut, chronicleId);
+            appendEntry();
+            entriesSent++;
+        }
+
+        @Override
+        public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+            payload.clear();
+            payload.writeLong(bootstrapTime);
+            entryOut.clear();
+            map.writeExternalEntry(null, payload, entryOut, chronicleId);
+            appendEntry();
+        }
+
+        private void appendEntry() {
+            int entryLength = (int) entryOut.readRemaining();
+            ensureOutCapacity(4 + entryLength);
+            out.putInt(entryLength);
+            entryOut.read(out.array(), out.arrayOffset() + out.position(), entryLength);
+            out.position(out.position() + entryLength);
+        }
+
+        private void ensureOutCapacity(int size) {
+            if (out.remaining() < size)
+                out = grow(out, out.position() + size);
+        }
+
+        void flush() throws IOException {
+            if (out.position() > 0) {
+                out.flip();
+                bytesSent += channel.write(out);
+                out.compact();
+            }
+            int interestOps = out.position() > 0 ?
+                    SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != interestOps)
+                key.interestOps(interestOps);
+        }
+
+        void disconnect(Exception cause) {
+            if (closed)
+                return;
+            String message = "Replication connection from the node " + localIdentifier +
+                    " to the node " + remoteIdentifier + " lost: " + cause;
+            if (cause instanceof RuntimeException) {
+                Jvm.warn().on(TcpReplicator.class, message, cause);
+            } else if (handshaken) {
+                Jvm.warn().on(TcpReplicator.class, message);
+            } else {
+                // don't flood the log while the remote node is down
+                Jvm.debug().on(TcpReplicator.class, message);
+            }
+            closeChannel();
+            handshaken = false;
+            deflate = false;
+            backlog = false;
+            iterator = null;
+            in.clear();
+            out.clear();
+            if (remoteAddress != null) {
+                reconnectTime = System.currentTimeMillis() + RECONNECT_INTERVAL_MILLIS;
+            } else {
+                discarded = true;
+            }
+        }
+
+        void closeChannel() {
+            if (key != null)
+                key.cancel();
+            key = null;
+            closeQuietly(channel);
+            channel = null;
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+}
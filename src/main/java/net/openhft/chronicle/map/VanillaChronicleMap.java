@@ -17,11 +17,11 @@
 package net.openhft.chronicle.map;
 
 import net.openhft.chronicle.algo.bitset.ReusableBitSet;
-import net.openhft.chronicle.algo.hashing.LongHashFunction;
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.bytes.PointerBytesStore;
 import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
 import net.openhft.chronicle.core.analytics.AnalyticsFacade;
 import net.openhft.chronicle.core.announcer.Announcer;
 import net.openhft.chronicle.core.io.IOTools;
@@ -43,14 +43,21 @@ import net.openhft.chronicle.set.ChronicleSet;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -63,10 +70,28 @@ public class VanillaChronicleMap<K, V, R>
         extends VanillaChronicleHash<K, MapEntry<K, V>, MapSegmentContext<K, V, ?>, ExternalMapQueryContext<K, V, ?>>
         implements AbstractChronicleMap<K, V> {
 
+    /**
+     * Number of optimistic read attempts before {@link #get(Object)} falls back to the segment
+     * read lock, if {@link ChronicleMapBuilder#optimisticReads(boolean)} is configured
+     */
+    static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+    private static final Object OPTIMISTIC_READ_FAILED = new Object();
+    /**
+     * The number of bytes before the value size of each entry, storing the expiry time of the
+     * entry in milliseconds since the epoch, if {@link #timeToLiveMillis} is positive
+     */
+    public static final int EXPIRY_BYTES = 8;
+
     public SizeMarshaller valueSizeMarshaller;
     public SizedReader<V> valueReader;
     public DataAccess<V> valueDataAccess;
     public boolean constantlySizedEntry;
+    /**
+     * {@code 0} if entries don't expire
+     *
+     * @see ChronicleMapBuilder#entryTimeToLive(long, java.util.concurrent.TimeUnit)
+     */
+    public long timeToLiveMillis;
     /////////////////////////////////////////////////
     // Memory management and dependent fields
     public int alignment;
@@ -87,6 +112,8 @@ public class VanillaChronicleMap<K, V, R>
     transient boolean putReturnsNull;
     transient boolean putIfAbsentUsingValue;
     transient boolean removeReturnsNull;
+    transient boolean optimisticReads;
+    transient int asyncThreads;
     transient Set<Entry<K, V>> entrySet;
     transient ThreadLocal<ContextHolder> cxt;
     private double maxBloatFactor;
@@ -98,6 +125,21 @@ public class VanillaChronicleMap<K, V, R>
      */
     private transient String identityString;
     private transient boolean defaultEntryOperationsAndMethods;
+    /**
+     * Written by {@link #pipelinedGetAll}, so that the JIT doesn't eliminate the loads, that
+     * warm up the cache
+     */
+    private transient long prefetchSink;
+    /**
+     * Created lazily on the first asynchronous operation, see {@link #asyncExecutor()}
+     */
+    private transient volatile MapAsyncExecutor asyncExecutor;
+    /**
+     * Copies of the key data access, to compute segments of the keys of asynchronous operations
+     * without thread-local query contexts, see {@link #asyncSegmentIndex(Object)}. Each copy is
+     * guarded by itself. Published by {@link #asyncExecutor}.
+     */
+    private transient DataAccess<K>[] asyncKeyDataAccesses;
 
     public VanillaChronicleMap(@NotNull final ChronicleMapBuilder<K, V> builder) {
         super(builder);
@@ -109,6 +151,7 @@ public class VanillaChronicleMap<K, V, R>
         maxBloatFactor = builder.maxBloatFactor();
 
         constantlySizedEntry = builder.constantlySizedEntries();
+        timeToLiveMillis = builder.entryTimeToLiveMillis();
 
         // Concurrency (number of segments), memory management and dependent fields
         alignment = builder.valueAlignment();
@@ -132,6 +175,10 @@ public class VanillaChronicleMap<K, V, R>
         AnalyticsHolder.instance().sendEvent("started", additionalEventParameters);
     }
 
+    public final int expiryBytes() {
+        return timeToLiveMillis > 0 ? EXPIRY_BYTES : 0;
+    }
+
     public static long alignAddr(final long addr, final long alignment) {
         return (addr + alignment - 1) & ~(alignment - 1L);
     }
@@ -146,6 +193,7 @@ public class VanillaChronicleMap<K, V, R>
         valueDataAccess = wireIn.read(() -> "valueDataAccess").object(DataAccess.class);
 
         constantlySizedEntry = wireIn.read(() -> "constantlySizedEntry").bool();
+        timeToLiveMillis = wireIn.read(() -> "timeToLiveMillis").int64();
 
         alignment = wireIn.read(() -> "alignment").int32();
         worstAlignment = wireIn.read(() -> "worstAlignment").int32();
@@ -163,6 +211,7 @@ public class VanillaChronicleMap<K, V, R>
         wireOut.write(() -> "valueDataAccess").object(valueDataAccess);
 
         wireOut.write(() -> "constantlySizedEntry").bool(constantlySizedEntry);
+        wireOut.write(() -> "timeToLiveMillis").int64(timeToLiveMillis);
 
         wireOut.write(() -> "alignment").int32(alignment);
         wireOut.write(() -> "worstAlignment").int32(worstAlignment);
@@ -174,6 +223,12 @@ public class VanillaChronicleMap<K, V, R>
         putReturnsNull = builder.putReturnsNull();
         putIfAbsentUsingValue = builder.putIfAbsentUsingValue();
         removeReturnsNull = builder.removeReturnsNull();
+        optimisticReads = builder.optimisticReads();
+        asyncThreads = builder.asyncThreads();
+        processPrivate = builder.processPrivate();
+        lockStatistics = builder.lockStatistics();
+        hugePages = builder.hugePages();
+        numaPolicy = builder.numaPolicy();
         entryOperations = (MapEntryOperations<K, V, R>) builder.entryOperations;
         methods = (MapMethods<K, V, R>) builder.methods;
         defaultEntryOperationsAndMethods = entryOperations == DefaultSpi.mapEntryOperations() &&
@@ -198,6 +253,11 @@ public class VanillaChronicleMap<K, V, R>
         try (IterationContext<K, V, ?> iterationContext = iterationContext()) {
             iterationContext.recoverSegments(corruptionListener, corruption);
         }
+        if (maintainSizeCounter) {
+            // stripe updates could be lost, if a process died between updating a segment's
+            // counters and the stripe, the exact scan is the source of truth after recovery
+            resetSizeCounter(longSize());
+        }
     }
 
     private void initOwnTransients() {
@@ -236,6 +296,13 @@ public class VanillaChronicleMap<K, V, R>
         return result;
     }
 
+    @Override
+    public final long approximateSize() {
+        throwExceptionIfClosed();
+
+        return maintainSizeCounter ? sizeCounterSum() : longSize();
+    }
+
     @Override
     public Class<K> keyClass() {
         throwExceptionIfClosed();
@@ -349,6 +416,243 @@ public class VanillaChronicleMap<K, V, R>
         return ret;
     }
 
+    @Override
+    public LockStats[] lockStats() {
+        throwExceptionIfClosed();
+
+        final LockStatsSegmentHeader segmentHeader = lockStatsSegmentHeader();
+        final LockStats[] ret = new LockStats[segments()];
+        for (int segmentIndex = 0; segmentIndex < segments(); segmentIndex++) {
+            final LockStats ls = ret[segmentIndex] = new LockStats();
+            ls.acquisitions = segmentHeader.acquisitions(segmentIndex);
+            ls.contendedAcquisitions = segmentHeader.contendedAcquisitions(segmentIndex);
+            ls.totalWaitNanos = segmentHeader.totalWaitNanos(segmentIndex);
+            ls.maxWaitNanos = segmentHeader.maxWaitNanos(segmentIndex);
+            ls.waitHistogram = segmentHeader.waitHistogram(segmentIndex);
+        }
+        return ret;
+    }
+
+    LockStatsSegmentHeader lockStatsSegmentHeader() {
+        if (!(segmentHeader() instanceof LockStatsSegmentHeader)) {
+            throw new IllegalStateException(toIdentityString() +
+                    ": lock statistics are not recorded, see ChronicleMapBuilder.lockStatistics()");
+        }
+        return (LockStatsSegmentHeader) segmentHeader();
+    }
+
+    @Override
+    public PartitionedMapWriter<K, V> partitionedWriter(final int ownerThreads) {
+        throwExceptionIfClosed();
+
+        final SegmentPartitionedWriter<K, V> writer =
+                new SegmentPartitionedWriter<>(this, ownerThreads);
+        // stops the owner threads, if the writer is not closed before the map
+        addCloseable(writer);
+        return writer;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(@NotNull final K key) {
+        Objects.requireNonNull(key);
+        return asyncExecutor().submit(asyncSegmentIndex(key), () -> get(key));
+    }
+
+    @Override
+    public CompletableFuture<V> putAsync(@NotNull final K key, @NotNull final V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return asyncExecutor().submit(asyncSegmentIndex(key), () -> put(key, value));
+    }
+
+    @Override
+    public CompletableFuture<V> removeAsync(@NotNull final K key) {
+        Objects.requireNonNull(key);
+        return asyncExecutor().submit(asyncSegmentIndex(key), () -> remove(key));
+    }
+
+    @Override
+    public CompletableFuture<V> computeAsync(
+            @NotNull final K key,
+            @NotNull final BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        return asyncExecutor().submit(asyncSegmentIndex(key), () -> compute(key, remappingFunction));
+    }
+
+    @Override
+    public CompletableFuture<V> mergeAsync(
+            @NotNull final K key, @NotNull final V value,
+            @NotNull final BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return asyncExecutor().submit(asyncSegmentIndex(key), () -> merge(key, value, remappingFunction));
+    }
+
+    @Override
+    protected void performClose() {
+        // Fail the queued asynchronous operations and let the running ones complete, before
+        // contexts of the workers are closed
+        MapAsyncExecutor executor = asyncExecutor;
+        if (executor != null)
+            executor.close();
+        super.performClose();
+    }
+
+    MapAsyncExecutor asyncExecutor() {
+        MapAsyncExecutor executor = asyncExecutor;
+        if (executor != null)
+            return executor;
+        synchronized (this) {
+            throwExceptionIfClosed();
+            if ((executor = asyncExecutor) == null) {
+                int threads = asyncThreads > 0 ? asyncThreads :
+                        Math.min(actualSegments, Runtime.getRuntime().availableProcessors());
+                final DataAccess<K>[] accesses = new DataAccess[threads];
+                for (int i = 0; i < threads; i++) {
+                    accesses[i] = keyDataAccess.copy();
+                }
+                asyncKeyDataAccesses = accesses;
+                executor = new MapAsyncExecutor(toIdentityString(), threads);
+                addCloseable(executor);
+                asyncExecutor = executor;
+            }
+            return executor;
+        }
+    }
+
+    @Override
+    public MapCursor<K, V> cursor(final int batchSize) {
+        throwExceptionIfClosed();
+
+        return new ChronicleMapCursor<>(this, batchSize);
+    }
+
+    @Override
+    public int compact() {
+        throwExceptionIfClosed();
+
+        // Entries are moved between tiers byte by byte, that is not possible if the value
+        // alignment padding depends on the entry position
+        if (couldNotDetermineAlignmentBeforeAllocation)
+            return 0;
+        int reclaimedTiers = 0;
+        // excludes snapshotTo(), see compactionLock
+        compactionLock.lock();
+        try (IterationContext<K, V, ?> c = iterationContext()) {
+            if (!(c instanceof CompiledMapIterationContext))
+                return 0;
+            final CompiledMapIterationContext<K, V, ?> c1 = (CompiledMapIterationContext<K, V, ?>) c;
+            for (int segmentIndex = 0; segmentIndex < segments(); segmentIndex++) {
+                c1.initSegmentIndex(segmentIndex);
+                c1.writeLock().lock();
+                try {
+                    reclaimedTiers += compactSegmentTiers(c1);
+                } finally {
+                    c1.readLock().unlock();
+                }
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+        return reclaimedTiers;
+    }
+
+    /**
+     * Empties the last tiers of the segment, the given context is initialized with and holds the
+     * write lock of, while all their entries fit into the earlier tiers.
+     */
+    private int compactSegmentTiers(final CompiledMapIterationContext<K, V, ?> c) {
+        int reclaimedTiers = 0;
+        c.goToLastTier();
+        while (c.tier() > 0 && moveLastTierEntries(c)) {
+            final long emptiedTierIndex = c.tierIndex();
+            c.prevTier();
+            c.nextTierIndex(0);
+            freeTier(emptiedTierIndex);
+            reclaimedTiers++;
+        }
+        return reclaimedTiers;
+    }
+
+    /**
+     * Moves all entries of the last tier of the segment to the earlier tiers, or nothing, if some
+     * of the entries don't fit.
+     *
+     * @return {@code true} if the last tier is empty after this call
+     */
+    private boolean moveLastTierEntries(final CompiledMapIterationContext<K, V, ?> c) {
+        final CompactOffHeapLinearHashTable hl = hashLookup;
+        final int lastTier = c.tier();
+        final long lastTierIndex = c.tierIndex();
+        final long lastTierBaseAddr = c.tierBaseAddr();
+        final int entries = (int) c.tierEntries();
+        final long[] searchKeys = new long[entries];
+        final long[] positions = new long[entries];
+        final int[] entrySizesInChunks = new int[entries];
+        int n = 0;
+        long hlPos = 0;
+        do {
+            final long hlEntry = hl.readEntry(lastTierBaseAddr, hlPos);
+            if (!hl.empty(hlEntry)) {
+                searchKeys[n] = hl.key(hlEntry);
+                positions[n] = hl.value(hlEntry);
+                c.readExistingEntry(positions[n]);
+                entrySizesInChunks[n] = c.entrySizeInChunks();
+                n++;
+            }
+            hlPos = hl.step(hlPos);
+        } while (hlPos != 0);
+
+        // Allocate space for all entries first, to leave the segment untouched if they don't fit
+        final int[] newTiers = new int[n];
+        final long[] newTierIndexes = new long[n];
+        final long[] newPositions = new long[n];
+        for (int i = 0; i < n; i++) {
+            c.goToFirstTier();
+            long newPos;
+            while (true) {
+                newPos = (c.tierBaseAddr() - lastTierBaseAddr) % alignment == 0 ?
+                        c.allocReturnCodeGuarded(entrySizesInChunks[i]) : -1;
+                if (newPos >= 0 || c.tier() + 1 == lastTier)
+                    break;
+                c.nextTier();
+            }
+            if (newPos < 0) {
+                for (int j = 0; j < i; j++) {
+                    c.initSegmentTier(newTiers[j], newTierIndexes[j]);
+                    c.freeGuarded(newPositions[j], entrySizesInChunks[j]);
+                }
+                return false;
+            }
+            newTiers[i] = c.tier();
+            newTierIndexes[i] = c.tierIndex();
+            newPositions[i] = newPos;
+        }
+
+        final BytesStore<?, ?> lastTierBytesStore = tierBytesStore(lastTierIndex);
+        final long lastTierEntrySpaceOffset = tierBytesOffset(lastTierIndex) + c.entrySpaceOffset();
+        for (int i = 0; i < n; i++) {
+            c.initSegmentTier(newTiers[i], newTierIndexes[i]);
+            c.segmentBS().write(c.entrySpaceOffset() + newPositions[i] * chunkSize,
+                    lastTierBytesStore, lastTierEntrySpaceOffset + positions[i] * chunkSize,
+                    entrySizesInChunks[i] * chunkSize);
+            final long newTierBaseAddr = c.tierBaseAddr();
+            long insertPos = hl.hlPos(searchKeys[i]);
+            while (!hl.empty(hl.readEntry(newTierBaseAddr, insertPos))) {
+                insertPos = hl.step(insertPos);
+            }
+            hl.writeEntryVolatile(newTierBaseAddr, insertPos, searchKeys[i], newPositions[i]);
+        }
+
+        // Entries are accounted in the tiers they are moved to, the last tier is going to be
+        // zeroed out along with its counters when returned to the free tier list
+        c.initSegmentTier(lastTier, lastTierIndex);
+        c.tierEntries(0);
+        return true;
+    }
+
     @NotNull
     @Override
     public final MapClosable acquireContext(@NotNull final K key, @NotNull final V usingValue) {
@@ -630,35 +934,21 @@ public class VanillaChronicleMap<K, V, R>
             final Data<K> inputKey = c.inputKeyDataAccess().getData((K) key);
             final long inputKeySize = inputKey.size();
 
-            final long keyHash = inputKey.hash(LongHashFunction.xx_r39());
+            final long keyHash = inputKey.hash(this.keyHash);
             final HashSplitting hs = this.hashSplitting;
             final int segmentIndex = hs.segmentIndex(keyHash);
             segmentHeaderAddress = segmentHeaderAddress(segmentIndex);
             final CompactOffHeapLinearHashTable hl = this.hashLookup;
             final long searchKey = hl.maskUnsetKey(hs.segmentHash(keyHash));
             final long searchStartPos = hl.hlPos(searchKey);
-            boolean needReadLock = true;
-            initLocks:
-            {
-                final int indexOfThisContext = c.indexInContextChain;
-                for (int i = 0, size = c.contextChain.size(); i < size; i++) {
-                    if (i == indexOfThisContext)
-                        continue;
-                    final LocksInterface locks = ((LocksInterface) (c.contextChain.get(i)));
-                    if (locks.segmentHeaderInit() &&
-                            locks.segmentHeaderAddress() == segmentHeaderAddress &&
-                            locks.locksInit()) {
-                        final LocksInterface root = locks.rootContextLockedOnThisSegment();
-                        if (root.totalReadLockCount() > 0 || root.totalUpdateLockCount() > 0 ||
-                                root.totalWriteLockCount() > 0) {
-                            needReadLock = false;
-                            break initLocks;
-                        }
-                    }
+            if (!lockedByOtherContext(c, segmentHeaderAddress)) {
+                if (optimisticReads) {
+                    final Object value = optimisticTieredValue(c, segmentHeaderAddress,
+                            segmentIndex, searchKey, searchStartPos, inputKeySize, inputKey, using);
+                    if (value != OPTIMISTIC_READ_FAILED)
+                        return (V) value;
                 }
-            }
-            if (needReadLock) {
-                BigSegmentHeader.INSTANCE.readLock(segmentHeaderAddress);
+                segmentHeader().readLock(segmentHeaderAddress);
                 needReadUnlock = true;
             }
             return tieredValue(c, segmentHeaderAddress, segmentIndex, searchKey, searchStartPos,
@@ -679,13 +969,37 @@ public class VanillaChronicleMap<K, V, R>
         }
     }
 
+    /**
+     * Checks if the segment is already locked by another context of the current thread, then the
+     * segment lock shouldn't be acquired again.
+     */
+    private static boolean lockedByOtherContext(final CompiledMapQueryContext<?, ?, ?> c,
+                                                final long segmentHeaderAddress) {
+        final int indexOfThisContext = c.indexInContextChain;
+        for (int i = 0, size = c.contextChain.size(); i < size; i++) {
+            if (i == indexOfThisContext)
+                continue;
+            final LocksInterface locks = ((LocksInterface) (c.contextChain.get(i)));
+            if (locks.segmentHeaderInit() &&
+                    locks.segmentHeaderAddress() == segmentHeaderAddress &&
+                    locks.locksInit()) {
+                final LocksInterface root = locks.rootContextLockedOnThisSegment();
+                if (root.totalReadLockCount() > 0 || root.totalUpdateLockCount() > 0 ||
+                        root.totalWriteLockCount() > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private void getClose(@NotNull final CompiledMapQueryContext<K, V, R> c,
                           final long segmentHeaderAddress,
                           final boolean needReadUnlock) {
         Throwable thrown = null;
         try {
             if (needReadUnlock)
-                BigSegmentHeader.INSTANCE.readUnlock(segmentHeaderAddress);
+                segmentHeader().readUnlock(segmentHeaderAddress);
         } catch (Throwable t) {
             thrown = t;
         }
@@ -732,6 +1046,77 @@ public class VanillaChronicleMap<K, V, R>
         }
     }
 
+    /**
+     * Performs the lookup without acquiring the segment read lock, validating the segment {@link
+     * BigSegmentHeader#version(long) version} afterwards. Anything read while a writer is active
+     * might be garbage, so all offsets are bounds-checked and exceptions are swallowed if the
+     * version has changed.
+     *
+     * @return the value, {@code null} if the key is absent, or {@link #OPTIMISTIC_READ_FAILED} if
+     * the read should be retried under the read lock
+     */
+    private Object optimisticTieredValue(final CompiledMapQueryContext<K, V, R> q,
+                                         final long segmentHeaderAddress,
+                                         final int segmentIndex,
+                                         final long searchKey,
+                                         final long searchStartPos,
+                                         final long inputKeySize, Data<K> inputKey,
+                                         final V using) {
+        final BigSegmentHeader segmentHeader = BigSegmentHeader.INSTANCE;
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            final int version = segmentHeader.version(segmentHeaderAddress);
+            if ((version & 1) != 0) {
+                // a writer is active
+                Jvm.nanoPause();
+                continue;
+            }
+            final Object value;
+            try {
+                value = optimisticTieredValue0(q, segmentHeaderAddress, segmentIndex, searchKey,
+                        searchStartPos, inputKeySize, inputKey, using);
+            } catch (RuntimeException e) {
+                if (segmentHeader.validateVersion(segmentHeaderAddress, version))
+                    throw e;
+                continue;
+            }
+            if (segmentHeader.validateVersion(segmentHeaderAddress, version))
+                return value;
+        }
+        return OPTIMISTIC_READ_FAILED;
+    }
+
+    private Object optimisticTieredValue0(final CompiledMapQueryContext<K, V, R> q,
+                                          final long segmentHeaderAddress,
+                                          final int segmentIndex,
+                                          final long searchKey,
+                                          final long searchStartPos,
+                                          final long inputKeySize, Data<K> inputKey,
+                                          final V using) {
+        // only tiers already mapped in this process could be read without the lock,
+        // this is also the bound for the length of the tier chain, that might be torn
+        final long mappedTiers = actualSegments + tierBulkOffsets.size() * tiersInBulk;
+        long tierBaseAddr = segmentBaseAddr(segmentIndex);
+        for (long tier = 0; tier < mappedTiers; tier++) {
+            final V value = searchValue(q, searchKey, searchStartPos, tierBaseAddr,
+                    inputKeySize, inputKey, using);
+            if (value != null)
+                return value;
+            final long nextTierIndex;
+            if (tier == 0) {
+                nextTierIndex = BigSegmentHeader.INSTANCE.nextTierIndex(segmentHeaderAddress);
+            } else {
+                nextTierIndex = TierCountersArea.nextTierIndex(
+                        tierBaseAddr + tierHashLookupOuterSize);
+            }
+            if (nextTierIndex == 0)
+                return null;
+            if (nextTierIndex < 0 || nextTierIndex > mappedTiers)
+                return OPTIMISTIC_READ_FAILED;
+            tierBaseAddr = tierIndexToBaseAddr(nextTierIndex);
+        }
+        return OPTIMISTIC_READ_FAILED;
+    }
+
     private V searchValue(final CompiledMapQueryContext<K, V, R> q,
                           final long searchKey,
                           final long searchStartPos,
@@ -765,6 +1150,8 @@ public class VanillaChronicleMap<K, V, R>
 
                     if ((hl.key(entry)) == searchKey) {
                         entryPos = hl.value(entry);
+                        if (entryPos >= actualChunksPerSegmentTier)
+                            throw corruptedEntry(entryPos);
                         break nextPos;
                     }
                 }
@@ -775,18 +1162,31 @@ public class VanillaChronicleMap<K, V, R>
             bs.readPosition(keySizeOffset);
             final long keySize = keySizeMarshaller.readSize(bs);
             final long keyOffset = bs.readPosition();
+            if (keySize < 0 || keyOffset + keySize + expiryBytes() > tierSize)
+                throw corruptedEntry(entryPos);
             if (!((inputKeySize == keySize) &&
                     (inputKey.equivalent(segmentBytesStore, keyOffset)))) {
                 continue;
             }
-            final long valueSizeOffset = keyOffset + keySize;
+            final long valueSizeOffset = keyOffset + keySize + expiryBytes();
+            if (timeToLiveMillis > 0 && segmentBytesStore.readLong(valueSizeOffset - EXPIRY_BYTES) -
+                    System.currentTimeMillis() < 0) {
+                // expired entries are absent, until reaped
+                return null;
+            }
             bs.readPosition(valueSizeOffset);
             final long valueSize = readValueSize(bs);
+            if (valueSize < 0 || bs.readPosition() + valueSize > tierSize)
+                throw corruptedEntry(entryPos);
             return q.valueReader.read(bs, valueSize, using);
         }
         return null;
     }
 
+    private IllegalStateException corruptedEntry(final long entryPos) {
+        return new IllegalStateException(toIdentityString() + ": corrupted entry at pos " + entryPos);
+    }
+
     @Override
     public V getUsing(final K key, final V usingValue) {
         Objects.requireNonNull(key);
@@ -805,6 +1205,208 @@ public class VanillaChronicleMap<K, V, R>
         }
     }
 
+    @Override
+    public void getAll(@NotNull final Collection<? extends K> keys,
+                       @NotNull final BiConsumer<? super K, ? super V> action) {
+        throwExceptionIfClosed();
+
+        Objects.requireNonNull(action);
+        final Object[] keyArray = keys.toArray();
+        if (keyArray.length == 0)
+            return;
+        final Object[] values = new Object[keyArray.length];
+        if (pipelinedGetAll()) {
+            pipelinedGetAll(keyArray, values, action);
+            return;
+        }
+        final long[] order = segmentOrder(keyArray);
+        for (int from = 0, to; from < order.length; from = to) {
+            to = segmentGroupEnd(order, from);
+            getAllInSegment(keyArray, values, order, from, to);
+            // call the action outside of the segment lock
+            for (int i = from; i < to; i++) {
+                final int index = indexInBatch(order[i]);
+                action.accept((K) keyArray[index], (V) values[index]);
+            }
+        }
+    }
+
+    @Override
+    public void getAllUsing(@NotNull final List<? extends K> keys, @NotNull final List<V> usingValues) {
+        throwExceptionIfClosed();
+
+        if (keys.size() != usingValues.size()) {
+            throw new IllegalArgumentException(toIdentityString() +
+                    ": keys and usingValues should be of the same size, " + keys.size() + " and " +
+                    usingValues.size() + " given");
+        }
+        final Object[] keyArray = keys.toArray();
+        if (keyArray.length == 0)
+            return;
+        final Object[] values = usingValues.toArray();
+        if (pipelinedGetAll()) {
+            pipelinedGetAll(keyArray, values, null);
+        } else {
+            final long[] order = segmentOrder(keyArray);
+            for (int from = 0, to; from < order.length; from = to) {
+                to = segmentGroupEnd(order, from);
+                getAllInSegment(keyArray, values, order, from, to);
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            usingValues.set(i, (V) values[i]);
+        }
+    }
+
+    /**
+     * If {@link #getAll(Collection, BiConsumer)} and {@link #getAllUsing(List, List)} could read
+     * entries directly, like {@link #get(Object)} does, rather than via query contexts.
+     */
+    boolean pipelinedGetAll() {
+        return defaultEntryOperationsAndMethods;
+    }
+
+    /**
+     * Looks up a batch of keys in stages, to overlap the memory accesses of different keys, in the
+     * spirit of group prefetching in hash joins. A single lookup stalls on a cache miss into the
+     * hash lookup, and then on another one into the entry space, because each load depends on
+     * the previous one. Here all keys are hashed first, then the hash lookup slots of all keys of
+     * a segment are loaded, then the entries referenced by the matching slots are touched, and
+     * only then keys are compared and values are read. Loads within a stage are independent, so
+     * the CPU issues their cache misses in parallel, and the final lookups mostly hit the cache.
+     * <p>
+     * The first two stages only warm up the cache for the first tier of each segment, the final
+     * lookups are complete and don't rely on them. Each segment group is looked up under a single
+     * acquisition of the segment read lock, the action is called after the lock is released.
+     */
+    private void pipelinedGetAll(final Object[] keys, final Object[] values,
+                                 @Nullable final BiConsumer<? super K, ? super V> action) {
+        final CompiledMapQueryContext<K, V, R> c = (CompiledMapQueryContext<K, V, R>) mapContext();
+        boolean needReadUnlock = false;
+        Throwable primaryExc = null;
+        long segmentHeaderAddress = 0;
+        try {
+            final DataAccess<K> keyDataAccess = c.inputKeyDataAccess();
+            final HashSplitting hs = this.hashSplitting;
+            final CompactOffHeapLinearHashTable hl = this.hashLookup;
+            final long[] order = new long[keys.length];
+            final long[] searchKeys = new long[keys.length];
+            // keys are serialized once, the data access reuses its Data object for each key
+            final Bytes<?> keyBytes = Bytes.allocateElasticOnHeap(keys.length * 16);
+            final long[] keyOffsets = new long[keys.length];
+            // Stage 1: hash all keys
+            for (int i = 0; i < keys.length; i++) {
+                checkKey(keys[i]);
+                final Data<K> keyData = keyDataAccess.getData((K) keys[i]);
+                final long keyHash = keyData.hash(this.keyHash);
+                order[i] = (((long) hs.segmentIndex(keyHash)) << 32) | i;
+                searchKeys[i] = hl.maskUnsetKey(hs.segmentHash(keyHash));
+                keyOffsets[i] = keyBytes.writePosition();
+                keyBytes.write(keyData.bytes(), keyData.offset(), keyData.size());
+            }
+            keyDataAccess.uninit();
+            Arrays.sort(order);
+            final long[] slots = new long[keys.length];
+            final long entrySpaceOffset = tierHashLookupOuterSize + TIER_COUNTERS_AREA_SIZE +
+                    tierFreeListOuterSize + tierEntrySpaceInnerOffset;
+            for (int from = 0, to; from < order.length; from = to) {
+                to = segmentGroupEnd(order, from);
+                final int segmentIndex = segmentIndexInBatch(order[from]);
+                segmentHeaderAddress = segmentHeaderAddress(segmentIndex);
+                if (!lockedByOtherContext(c, segmentHeaderAddress)) {
+                    segmentHeader().readLock(segmentHeaderAddress);
+                    needReadUnlock = true;
+                }
+                final long tierBaseAddr = segmentBaseAddr(segmentIndex);
+                // Stage 2: load the hash lookup slots of all keys of the segment
+                for (int i = from; i < to; i++) {
+                    slots[i] = hl.readEntry(tierBaseAddr, hl.hlPos(searchKeys[indexInBatch(order[i])]));
+                }
+                // Stage 3: touch the entries, referenced by the slots with matching hashes
+                long touched = 0;
+                for (int i = from; i < to; i++) {
+                    final long slot = slots[i];
+                    if (!hl.empty(slot) && hl.key(slot) == searchKeys[indexInBatch(order[i])]) {
+                        final long entryPos = hl.value(slot);
+                        if (entryPos < actualChunksPerSegmentTier) {
+                            touched += OS.memory().readByte(
+                                    tierBaseAddr + entrySpaceOffset + entryPos * chunkSize);
+                        }
+                    }
+                }
+                // the loads of the previous stage shouldn't be eliminated as dead code
+                prefetchSink = touched;
+                // Stage 4: compare keys and read values
+                for (int i = from; i < to; i++) {
+                    final int index = indexInBatch(order[i]);
+                    final long searchKey = searchKeys[index];
+                    final long keyEnd = index + 1 < keys.length ?
+                            keyOffsets[index + 1] : keyBytes.writePosition();
+                    final Data<K> inputKey = c.getInputKeyBytesAsData(keyBytes.bytesStore(),
+                            keyOffsets[index], keyEnd - keyOffsets[index]);
+                    values[index] = tieredValue(c, segmentHeaderAddress, segmentIndex, searchKey,
+                            hl.hlPos(searchKey), inputKey.size(), inputKey, (V) values[index]);
+                }
+                if (needReadUnlock) {
+                    needReadUnlock = false;
+                    segmentHeader().readUnlock(segmentHeaderAddress);
+                }
+                if (action != null) {
+                    for (int i = from; i < to; i++) {
+                        final int index = indexInBatch(order[i]);
+                        action.accept((K) keys[index], (V) values[index]);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            primaryExc = t;
+            throw t;
+        } finally {
+            if (primaryExc != null) {
+                try {
+                    getClose(c, segmentHeaderAddress, needReadUnlock);
+                } catch (Throwable suppressedExc) {
+                    primaryExc.addSuppressed(suppressedExc);
+                }
+            } else {
+                getClose(c, segmentHeaderAddress, needReadUnlock);
+            }
+        }
+    }
+
+    /**
+     * Reads the values of the keys of a single segment group under the segment read lock,
+     * acquired by the context of the first key of the group once. Each value is read to the object
+     * at the same index in the given {@code values} array, if possible, and the result of the
+     * read is stored back at that index.
+     */
+    private void getAllInSegment(final Object[] keys, final Object[] values, final long[] order,
+                                 final int from, final int to) {
+        final int firstIndex = indexInBatch(order[from]);
+        final Object firstKey = keys[firstIndex];
+        try (QueryContextInterface<K, V, R> root = queryContext(firstKey)) {
+            root.readLock().lock();
+            values[firstIndex] = getInContext(root, (V) values[firstIndex]);
+            final Data<K> rootKey = root.queriedKey();
+            for (int i = from + 1; i < to; i++) {
+                final int index = indexInBatch(order[i]);
+                try (QueryContextInterface<K, V, R> q = queryContext(keys[index])) {
+                    // nested same-thread contexts cannot access the same key, keys are compared
+                    // in the serialized form, like the contexts do
+                    values[index] = getInContext(
+                            Data.bytesEquivalent(rootKey, q.queriedKey()) ? root : q,
+                            (V) values[index]);
+                }
+            }
+        }
+    }
+
+    private V getInContext(final QueryContextInterface<K, V, R> q, final V usingValue) {
+        q.usingReturnValue().initUsingReturnValue(usingValue);
+        methods.get(q, q.usingReturnValue());
+        return q.usingReturnValue().returnValue();
+    }
+
     @Override
     public V acquireUsing(final K key, final V usingValue) {
         Objects.requireNonNull(key);
@@ -921,6 +1523,166 @@ public class VanillaChronicleMap<K, V, R>
         }
     }
 
+    @Override
+    public void putAll(@NotNull final Iterable<? extends Entry<? extends K, ? extends V>> entries) {
+        throwExceptionIfClosed();
+
+        final List<Object> keyList = new ArrayList<>();
+        final List<Object> valueList = new ArrayList<>();
+        for (Entry<? extends K, ? extends V> e : entries) {
+            // copy out keys and values, because some maps reuse Entry objects during iteration
+            final K key = e.getKey();
+            final V value = e.getValue();
+            Objects.requireNonNull(key);
+            checkValue(Objects.requireNonNull(value));
+            keyList.add(key);
+            valueList.add(value);
+        }
+        if (keyList.isEmpty())
+            return;
+        final Object[] keys = keyList.toArray();
+        final Object[] values = valueList.toArray();
+        final long[] order = segmentOrder(keys);
+        for (int from = 0, to; from < order.length; from = to) {
+            to = segmentGroupEnd(order, from);
+            writeAllInSegment(keys, values, order, from, to);
+        }
+    }
+
+    /**
+     * Writes the entries of a single segment group, holding the segment write lock, acquired by
+     * the context of the first key of the group, for the whole group. Contexts of the following
+     * keys are nested in the first one, so they join its lock without touching the segment header.
+     */
+    void writeAllInSegment(final Object[] keys, final Object[] values, final long[] order,
+                           final int from, final int to) {
+        final Object firstKey = keys[indexInBatch(order[from])];
+        try (QueryContextInterface<K, V, R> root = queryContext(firstKey)) {
+            root.writeLock().lock();
+            writeInContext(root, (V) values[indexInBatch(order[from])]);
+            final Data<K> rootKey = root.queriedKey();
+            for (int i = from + 1; i < to; i++) {
+                final int index = indexInBatch(order[i]);
+                try (QueryContextInterface<K, V, R> q = queryContext(keys[index])) {
+                    // nested same-thread contexts cannot access the same key, keys are compared
+                    // in the serialized form, like the contexts do
+                    writeInContext(Data.bytesEquivalent(rootKey, q.queriedKey()) ? root : q,
+                            (V) values[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the serialized entries of a single segment group, like {@link #writeAllInSegment(
+     * Object[], Object[], long[], int, int)}. Each entry consists of the key bytes, followed by the
+     * value bytes, a negative value size removes the key. That is used by {@link
+     * SegmentPartitionedWriter}, which serializes writes on the submitting thread.
+     */
+    void writeAllInSegment(final Bytes<?>[] entries, final long[] keySizes,
+                           final long[] valueSizes, final long[] order,
+                           final int from, final int to) {
+        final int first = indexInBatch(order[from]);
+        try (QueryContextInterface<K, V, R> root = (QueryContextInterface<K, V, R>)
+                queryContext(entries[first].bytesStore(), 0, keySizes[first])) {
+            root.writeLock().lock();
+            writeInContext(root, entries[first], keySizes[first], valueSizes[first]);
+            final Data<K> rootKey = root.queriedKey();
+            for (int i = from + 1; i < to; i++) {
+                final int index = indexInBatch(order[i]);
+                try (QueryContextInterface<K, V, R> q = (QueryContextInterface<K, V, R>)
+                        queryContext(entries[index].bytesStore(), 0, keySizes[index])) {
+                    writeInContext(Data.bytesEquivalent(rootKey, q.queriedKey()) ? root : q,
+                            entries[index], keySizes[index], valueSizes[index]);
+                }
+            }
+        }
+    }
+
+    private void writeInContext(final QueryContextInterface<K, V, R> q, final V value) {
+        methods.put(q, q.inputValueDataAccess().getData(value), NullReturnValue.get());
+    }
+
+    private void writeInContext(final QueryContextInterface<K, V, R> q, final Bytes<?> entry,
+                                final long keySize, final long valueSize) {
+        if (valueSize >= 0) {
+            methods.put(q, q.wrapValueBytesAsData(entry.bytesStore(), keySize, valueSize),
+                    NullReturnValue.get());
+        } else {
+            methods.remove(q, NullReturnValue.get());
+        }
+    }
+
+    /**
+     * Computes the segments of the given keys with the same hash function as used by query
+     * contexts, and returns the indexes of the keys in the given array, each combined with the
+     * segment index in the high 32 bits, sorted in ascending order. Hence the result is grouped
+     * by segment, segments are visited in ascending order (that is required for deadlock-free
+     * locking of multiple segments), and the original order is preserved within a segment.
+     */
+    final long[] segmentOrder(final Object[] keys) {
+        final long[] order = new long[keys.length];
+        final HashSplitting hs = this.hashSplitting;
+        try (QueryContextInterface<K, V, R> c = mapContext()) {
+            final DataAccess<K> keyDataAccess = c.inputKeyDataAccess();
+            for (int i = 0; i < keys.length; i++) {
+                checkKey(keys[i]);
+                final long keyHash = keyDataAccess.getData((K) keys[i]).hash(this.keyHash);
+                order[i] = (((long) hs.segmentIndex(keyHash)) << 32) | i;
+            }
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * Computes the segment of the given serialized key, as in {@link #segmentOrder(Object[])}.
+     */
+    final int segmentIndex(final Data<K> keyData) {
+        return hashSplitting.segmentIndex(keyData.hash(this.keyHash));
+    }
+
+    /**
+     * Computes the segment of the given key, as in {@link #segmentOrder(Object[])}, but without a
+     * query context, that would be created for each thread submitting asynchronous operations.
+     * Should be called after {@link #asyncExecutor()}.
+     */
+    final int asyncSegmentIndex(final Object key) {
+        checkKey(key);
+        final DataAccess<K>[] accesses = asyncKeyDataAccesses;
+        final DataAccess<K> access =
+                accesses[(int) (Thread.currentThread().getId() % accesses.length)];
+        final long keyHash;
+        synchronized (access) {
+            try {
+                keyHash = access.getData((K) key).hash(this.keyHash);
+            } finally {
+                access.uninit();
+            }
+        }
+        return hashSplitting.segmentIndex(keyHash);
+    }
+
+    static int segmentIndexInBatch(final long order) {
+        return (int) (order >>> 32);
+    }
+
+    static int indexInBatch(final long order) {
+        return (int) order;
+    }
+
+    static int segmentGroupEnd(final long[] order, final int from) {
+        return segmentGroupEnd(order, from, order.length);
+    }
+
+    static int segmentGroupEnd(final long[] order, final int from, final int end) {
+        final int segmentIndex = segmentIndexInBatch(order[from]);
+        int to = from + 1;
+        while (to < end && segmentIndexInBatch(order[to]) == segmentIndex)
+            to++;
+        return to;
+    }
+
     @Override
     public V remove(final Object key) {
         throwExceptionIfClosed();
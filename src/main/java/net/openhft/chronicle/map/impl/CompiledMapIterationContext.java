@@ -13,6 +13,7 @@ import net.openhft.chronicle.hash.*;
 import net.openhft.chronicle.hash.impl.*;
 import net.openhft.chronicle.hash.impl.stage.entry.*;
 import net.openhft.chronicle.hash.impl.stage.hash.ChainingInterface;
+import net.openhft.chronicle.hash.impl.stage.iter.SegmentCursorPosition;
 import net.openhft.chronicle.hash.impl.util.Objects;
 import net.openhft.chronicle.hash.locks.InterProcessDeadLockException;
 import net.openhft.chronicle.hash.locks.InterProcessLock;
@@ -2197,7 +2198,7 @@ PRESENT, ABSENT;    }
     }
 
     long countValueSizeOffset() {
-        return keyEnd();
+        return (keyEnd()) + (this.m().expiryBytes());
     }
 
     public void closeMapEntryStagesCountValueSizeOffsetDependants() {
@@ -2296,7 +2297,7 @@ PRESENT, ABSENT;    }
     }
 
     long sizeOfEverythingBeforeValue(long keySize, long valueSize) {
-        return (((this.m().keySizeMarshaller.storingLength(keySize)) + keySize) + (checksumStrategy.extraEntryBytes())) + (this.m().valueSizeMarshaller.storingLength(valueSize));
+        return ((((this.m().keySizeMarshaller.storingLength(keySize)) + keySize) + (this.m().expiryBytes())) + (checksumStrategy.extraEntryBytes())) + (this.m().valueSizeMarshaller.storingLength(valueSize));
     }
 
     public long innerEntrySize(long sizeOfEverythingBeforeValue, long valueSize) {
@@ -2422,7 +2423,7 @@ PRESENT, ABSENT;    }
     private void initSegmentHeader() {
         boolean wasSegmentHeaderInit = this.segmentHeaderInit();
         segmentHeaderAddress = this.h().segmentHeaderAddress(segmentIndex());
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = this.h().segmentHeader();
         if (wasSegmentHeaderInit)
             this.closeSegmentHeaderDependants();
         
@@ -2599,7 +2600,7 @@ PRESENT, ABSENT;    }
         boolean wasKeyHashInit = this.keyHashInit();
         long addr = (this.tierBaseAddr()) + (this.keyOffset());
         long len = this.keySize();
-        keyHash = LongHashFunction.xx_r39().hashMemory(addr, len);
+        keyHash = this.h().keyHash.hashMemory(addr, len);
         if (wasKeyHashInit)
             this.closeKeyHashDependants();
         
@@ -2716,6 +2717,7 @@ PRESENT, ABSENT;    }
     }
 
     public void tierEntries(long tierEntries) {
+        this.h().addToSizeCounter(segmentIndex(), (tierEntries - (tierEntries())));
         if ((tier()) == 0) {
             segmentHeader().entries(segmentHeaderAddress(), tierEntries);
         } else {
@@ -2736,6 +2738,7 @@ PRESENT, ABSENT;    }
     }
 
     public void tierDeleted(long tierDeleted) {
+        this.h().addToSizeCounter(segmentIndex(), ((tierDeleted()) - tierDeleted));
         if ((tier()) == 0) {
             segmentHeader().deleted(segmentHeaderAddress(), tierDeleted);
         } else {
@@ -2922,9 +2925,17 @@ PRESENT, ABSENT;    }
 
     public void writeValue(Data<?> value) {
         initDelayedUpdateChecksum(true);
+        long timeToLiveMillis = this.m().timeToLiveMillis;
+        if (timeToLiveMillis > 0) {
+            this.segmentBS().writeLong(((this.valueSizeOffset()) - (VanillaChronicleMap.EXPIRY_BYTES)), ((System.currentTimeMillis()) + timeToLiveMillis));
+        }
         value.writeTo(this.segmentBS(), valueOffset());
     }
 
+    public boolean entryExpired() {
+        return ((this.m().timeToLiveMillis) > 0) && (((this.segmentBS().readLong(((this.valueSizeOffset()) - (VanillaChronicleMap.EXPIRY_BYTES)))) - (System.currentTimeMillis())) < 0);
+    }
+
     public void initValue(Data<?> value) {
         initValueSize(value.size());
         writeValue(value);
@@ -3428,10 +3439,10 @@ PRESENT, ABSENT;    }
         VanillaGlobalMutableState globalMutableState = h.globalMutableState();
         long storedExtraTiersInUse = globalMutableState.getExtraTiersInUse();
         long allocatedExtraTiers = (globalMutableState.getAllocatedExtraTierBulks()) * (h.tiersInBulk);
-        long expectedExtraTiersInUse = Math.max(0, Math.min(storedExtraTiersInUse, allocatedExtraTiers));
         long actualExtraTiersInUse = 0;
-        long firstFreeExtraTierIndex = -1;
-        for (long extraTierIndex = 0 ; extraTierIndex < expectedExtraTiersInUse ; extraTierIndex++) {
+        long firstFreeTierIndex = 0;
+        long lastFreeTierIndex = 0;
+        for (long extraTierIndex = 0 ; extraTierIndex < allocatedExtraTiers ; extraTierIndex++) {
             long tierIndex = h.extraTierIndexToTierIndex(extraTierIndex);
             this.initSegmentTier(0, tierIndex);
             int segmentIndex = this.recoverTier(-1, corruptionListener, corruption);
@@ -3448,10 +3459,16 @@ PRESENT, ABSENT;    }
                 this.nextTierIndex(tierIndex);
                 TierCountersArea.prevTierIndex(tierCountersAreaAddr, this.tierIndex());
                 TierCountersArea.tier(tierCountersAreaAddr, ((this.tier()) + 1));
-                actualExtraTiersInUse = extraTierIndex + 1;
+                actualExtraTiersInUse++;
             } else {
-                firstFreeExtraTierIndex = extraTierIndex;
-                break;
+                h.linkAndZeroOutFreeTiers(tierIndex, tierIndex);
+                if (lastFreeTierIndex == 0) {
+                    firstFreeTierIndex = tierIndex;
+                } else {
+                    this.initSegmentTier(0, lastFreeTierIndex);
+                    TierCountersArea.nextTierIndex(this.tierCountersAreaAddr(), tierIndex);
+                }
+                lastFreeTierIndex = tierIndex;
             }
         }
         if (storedExtraTiersInUse != actualExtraTiersInUse) {
@@ -3459,23 +3476,10 @@ PRESENT, ABSENT;    }
             ChronicleHashCorruptionImpl.report(corruptionListener, corruption, -1, () -> ChronicleHashCorruptionImpl.format((("wrong number of actual tiers in use in global mutable state, stored: {}, " + "should be: ") + storedExtraTiersInUse), finalActualExtraTiersInUse));
             globalMutableState.setExtraTiersInUse(actualExtraTiersInUse);
         } 
-        long firstFreeTierIndex;
-        if (firstFreeExtraTierIndex == (-1)) {
-            if (allocatedExtraTiers > expectedExtraTiersInUse) {
-                firstFreeTierIndex = h.extraTierIndexToTierIndex(expectedExtraTiersInUse);
-            } else {
-                firstFreeTierIndex = 0;
-            }
-        } else {
-            firstFreeTierIndex = h.extraTierIndexToTierIndex(firstFreeExtraTierIndex);
-        }
-        if (firstFreeTierIndex > 0) {
-            long lastTierIndex = h.extraTierIndexToTierIndex((allocatedExtraTiers - 1));
-            h.linkAndZeroOutFreeTiers(firstFreeTierIndex, lastTierIndex);
-        } 
         long storedFirstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
         if (storedFirstFreeTierIndex != firstFreeTierIndex) {
-            ChronicleHashCorruptionImpl.report(corruptionListener, corruption, -1, () -> ChronicleHashCorruptionImpl.format((("wrong first free tier index in global mutable state, stored: {}, " + "should be: ") + storedFirstFreeTierIndex), firstFreeTierIndex));
+            long finalFirstFreeTierIndex = firstFreeTierIndex;
+            ChronicleHashCorruptionImpl.report(corruptionListener, corruption, -1, () -> ChronicleHashCorruptionImpl.format((("wrong first free tier index in global mutable state, stored: {}, " + "should be: ") + storedFirstFreeTierIndex), finalFirstFreeTierIndex));
             globalMutableState.setFirstFreeTierIndex(firstFreeTierIndex);
         } 
         removeDuplicatesInSegments(corruptionListener, corruption);
@@ -3854,9 +3858,11 @@ PRESENT, ABSENT;    }
         initDelayedUpdateChecksum(true);
     }
 
-    public <T>boolean forEachTierEntryWhile(Predicate<? super T> predicate, int currentTier, long currentTierBaseAddr, long tierIndex) {
+    public <T>boolean forEachTierEntryWhile(Predicate<? super T> predicate, int currentTier, long currentTierBaseAddr, long tierIndex, int batchSize) {
         long leftEntries = tierEntriesForIteration();
         boolean interrupted = false;
+        boolean resumed = false;
+        int entriesInBatch = 0;
         long startPos = 0L;
         CompactOffHeapLinearHashTable hashLookup = this.h().hashLookup;
         while (!(hashLookup.empty(hashLookup.readEntry(currentTierBaseAddr, startPos)))) {
@@ -3872,6 +3878,7 @@ PRESENT, ABSENT;    }
             long entry = hashLookup.readEntry(currentTierBaseAddr, currentHashLookupPos);
             initHashLookupEntry(entry);
             if (!(hashLookup.empty(entry))) {
+                entriesInBatch++;
                 this.readExistingEntry(hashLookup.value(entry));
                 if (shouldTestEntry()) {
                     initEntryRemovedOnThisIteration(false);
@@ -3880,7 +3887,7 @@ PRESENT, ABSENT;    }
                             interrupted = true;
                             break;
                         } else {
-                            if ((--leftEntries) == 0)
+                            if (((--leftEntries) == 0) && (!resumed))
                                 break;
                             
                         }
@@ -3897,28 +3904,51 @@ PRESENT, ABSENT;    }
                     }
                 } 
             } 
+            if ((((batchSize > 0) && (entriesInBatch >= batchSize)) && (currentHashLookupPos != startPos)) && (hashLookup.empty(hashLookup.readEntry(currentTierBaseAddr, this.hashLookupPos())))) {
+                long pausedHashLookupPos = this.hashLookupPos();
+                closeHashLookupEntry();
+                this.innerReadLock.unlock();
+                this.innerUpdateLock.lock();
+                this.initHashLookupPos(pausedHashLookupPos);
+                entriesInBatch = 0;
+                resumed = true;
+                if (tierReclaimed(currentTier))
+                    return false;
+                
+            } 
         } while ((currentHashLookupPos != startPos) || (steps == 0) );
-        if ((!interrupted) && (leftEntries > 0)) {
+        if (((!interrupted) && (leftEntries > 0)) && (!resumed)) {
             throw new IllegalStateException((((((this.h().toIdentityString()) + ": We went through a tier without interruption, ") + "but according to tier counters there should be ") + leftEntries) + " more entries. Size diverged?"));
         } 
         return interrupted;
     }
 
     public <T>boolean innerForEachSegmentEntryWhile(Predicate<? super T> predicate) {
+        return innerForEachSegmentEntryWhile(predicate, 0);
+    }
+
+    public <T>boolean innerForEachSegmentEntryWhile(Predicate<? super T> predicate, int batchSize) {
         try {
             this.goToLastTier();
             while (true) {
                 int currentTier = this.tier();
                 long currentTierBaseAddr = this.tierBaseAddr();
                 long currentTierIndex = this.tierIndex();
-                boolean interrupted = forEachTierEntryWhile(predicate, currentTier, currentTierBaseAddr, currentTierIndex);
+                boolean interrupted = forEachTierEntryWhile(predicate, currentTier, currentTierBaseAddr, currentTierIndex, batchSize);
                 if (interrupted)
                     return false;
                 
                 if (currentTier == 0)
                     return true;
                 
-                this.prevTier();
+                if ((batchSize > 0) && (tierReclaimed(currentTier))) {
+                    this.initSegmentTier();
+                    while (((this.tier()) < (currentTier - 1)) && (this.hasNextTier())) {
+                        this.nextTier();
+                    }
+                } else {
+                    this.prevTier();
+                }
             }
         } finally {
             closeHashLookupEntry();
@@ -3927,6 +3957,76 @@ PRESENT, ABSENT;    }
         }
     }
 
+    @Override
+    public boolean cursorNextEntry(SegmentCursorPosition p, int batchSize) {
+        CompactOffHeapLinearHashTable hashLookup = this.h().hashLookup;
+        if ((p.tier) < 0) {
+            this.goToLastTier();
+            p.startTier(this.tier(), this.tierIndex(), this.tierBaseAddr(), tierStartPos(this.tierBaseAddr()));
+        } else if ((this.tierIndex()) != (p.tierIndex)) {
+            this.initSegmentTier_WithBaseAddr(p.tier, p.tierBaseAddr, p.tierIndex);
+        } 
+        while (true) {
+            if (p.tierDone()) {
+                if ((p.tier) == 0)
+                    return false;
+                
+                if (tierReclaimed(p.tier)) {
+                    this.initSegmentTier();
+                    while (((this.tier()) < ((p.tier) - 1)) && (this.hasNextTier())) {
+                        this.nextTier();
+                    }
+                } else {
+                    this.prevTier();
+                }
+                p.startTier(this.tier(), this.tierIndex(), this.tierBaseAddr(), tierStartPos(this.tierBaseAddr()));
+                continue;
+            } 
+            p.hashLookupPos = hashLookup.step(p.hashLookupPos);
+            p.steps++;
+            long entry = hashLookup.readEntry(p.tierBaseAddr, p.hashLookupPos);
+            if (hashLookup.empty(entry)) {
+                if (((p.entriesInBatch) >= batchSize) && (!(p.tierDone()))) {
+                    p.entriesInBatch = 0;
+                    this.innerReadLock.unlock();
+                    this.innerReadLock.lock();
+                    if (tierReclaimed(p.tier)) {
+                        p.hashLookupPos = p.startPos;
+                    } 
+                } 
+                continue;
+            } 
+            p.entriesInBatch++;
+            this.readExistingEntry(hashLookup.value(entry));
+            if (shouldTestEntry())
+                return true;
+            
+        }
+    }
+
+    private long tierStartPos(long tierBaseAddr) {
+        CompactOffHeapLinearHashTable hashLookup = this.h().hashLookup;
+        long startPos = 0L;
+        while (!(hashLookup.empty(hashLookup.readEntry(tierBaseAddr, startPos)))) {
+            startPos = hashLookup.step(startPos);
+        }
+        return startPos;
+    }
+
+    public boolean tierReclaimed(int tier) {
+        if (tier == 0)
+            return false;
+        
+        long tierCountersAreaAddr = this.tierCountersAreaAddr();
+        return ((TierCountersArea.segmentIndex(tierCountersAreaAddr)) != (this.segmentIndex())) || ((TierCountersArea.tier(tierCountersAreaAddr)) != tier);
+    }
+
+    public void checkBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException((((this.h().toIdentityString()) + ": batchSize should be positive, ") + batchSize) + " given");
+        } 
+    }
+
     @Override
     public boolean forEachSegmentEntryWhile(Predicate<? super MapEntry<K, V>> predicate) {
         throwExceptionIfClosed();
@@ -3935,6 +4035,15 @@ PRESENT, ABSENT;    }
         return innerForEachSegmentEntryWhile(predicate);
     }
 
+    @Override
+    public boolean forEachSegmentEntryWhile(int batchSize, Predicate<? super MapEntry<K, V>> predicate) {
+        throwExceptionIfClosed();
+        checkBatchSize(batchSize);
+        this.checkOnEachPublicOperation();
+        this.innerUpdateLock.lock();
+        return innerForEachSegmentEntryWhile(predicate, batchSize);
+    }
+
     @Override
     public void forEachSegmentEntry(Consumer<? super MapEntry<K, V>> action) {
         throwExceptionIfClosed();
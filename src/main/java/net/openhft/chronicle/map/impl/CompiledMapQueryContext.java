@@ -2511,7 +2511,7 @@ PRESENT, ABSENT;    }
 
     void initKeyHash() {
         boolean wasKeyHashInit = this.keyHashInit();
-        keyHash = this.inputKey().hash(LongHashFunction.xx_r39());
+        keyHash = this.inputKey().hash(this.h().keyHash);
         if (wasKeyHashInit)
             this.closeKeyHashDependants();
         
@@ -2622,7 +2622,7 @@ PRESENT, ABSENT;    }
     }
 
     long countValueSizeOffset() {
-        return keyEnd();
+        return (keyEnd()) + (this.m().expiryBytes());
     }
 
     public void closeMapEntryStagesCountValueSizeOffsetDependants() {
@@ -2721,7 +2721,7 @@ PRESENT, ABSENT;    }
     }
 
     long sizeOfEverythingBeforeValue(long keySize, long valueSize) {
-        return (((this.m().keySizeMarshaller.storingLength(keySize)) + keySize) + (checksumStrategy.extraEntryBytes())) + (this.m().valueSizeMarshaller.storingLength(valueSize));
+        return ((((this.m().keySizeMarshaller.storingLength(keySize)) + keySize) + (this.m().expiryBytes())) + (checksumStrategy.extraEntryBytes())) + (this.m().valueSizeMarshaller.storingLength(valueSize));
     }
 
     public long innerEntrySize(long sizeOfEverythingBeforeValue, long valueSize) {
@@ -2906,7 +2906,7 @@ PRESENT, ABSENT;    }
     private void initSegmentHeader() {
         boolean wasSegmentHeaderInit = this.segmentHeaderInit();
         segmentHeaderAddress = this.h().segmentHeaderAddress(segmentIndex());
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = this.h().segmentHeader();
         if (wasSegmentHeaderInit)
             this.closeSegmentHeaderDependants();
         
@@ -3068,6 +3068,7 @@ PRESENT, ABSENT;    }
     }
 
     public void tierDeleted(long tierDeleted) {
+        this.h().addToSizeCounter(segmentIndex(), ((tierDeleted()) - tierDeleted));
         if ((tier()) == 0) {
             segmentHeader().deleted(segmentHeaderAddress(), tierDeleted);
         } else {
@@ -3160,6 +3161,7 @@ PRESENT, ABSENT;    }
     }
 
     public void tierEntries(long tierEntries) {
+        this.h().addToSizeCounter(segmentIndex(), (tierEntries - (tierEntries())));
         if ((tier()) == 0) {
             segmentHeader().entries(segmentHeaderAddress(), tierEntries);
         } else {
@@ -3309,9 +3311,17 @@ PRESENT, ABSENT;    }
 
     public void writeValue(Data<?> value) {
         initDelayedUpdateChecksum(true);
+        long timeToLiveMillis = this.m().timeToLiveMillis;
+        if (timeToLiveMillis > 0) {
+            this.segmentBS().writeLong(((this.valueSizeOffset()) - (VanillaChronicleMap.EXPIRY_BYTES)), ((System.currentTimeMillis()) + timeToLiveMillis));
+        }
         value.writeTo(this.segmentBS(), valueOffset());
     }
 
+    public boolean entryExpired() {
+        return ((this.m().timeToLiveMillis) > 0) && (((this.segmentBS().readLong(((this.valueSizeOffset()) - (VanillaChronicleMap.EXPIRY_BYTES)))) - (System.currentTimeMillis())) < 0);
+    }
+
     public void initValue(Data<?> value) {
         initValueSize(value.size());
         writeValue(value);
@@ -4086,7 +4096,20 @@ PRESENT, ABSENT;    }
     @Override
     public CompiledMapQueryContext<K, V, R> entry() {
         this.checkOnEachPublicOperation();
-        return entryPresent() ? this : null;
+        return entryPresentAndNotExpired() ? this : null;
+    }
+
+    boolean entryPresentAndNotExpired() {
+        if (!(entryPresent()))
+            return false;
+        
+        if (!(this.entryExpired()))
+            return true;
+        
+        if (this.innerUpdateLock.isHeldByCurrentThread())
+            doRemove();
+        
+        return false;
     }
 
     @NotNull
@@ -4135,6 +4158,9 @@ PRESENT, ABSENT;    }
     @Override
     public Absent<K, V> absentEntry() {
         this.checkOnEachPublicOperation();
+        if (entryPresentAndNotExpired())
+            return null;
+        
         return entryPresent() ? null : this;
     }
 
@@ -370,11 +370,11 @@ public class CompiledReplicatedMapQueryContext<K, V, R> extends ChainingInterfac
     }
 
     private long _MapEntryStages_countValueSizeOffset() {
-        return keyEnd();
+        return (keyEnd()) + (this.m().expiryBytes());
     }
 
     private long _MapEntryStages_sizeOfEverythingBeforeValue(long keySize, long valueSize) {
-        return (((this.m().keySizeMarshaller.storingLength(keySize)) + keySize) + (checksumStrategy.extraEntryBytes())) + (this.m().valueSizeMarshaller.storingLength(valueSize));
+        return ((((this.m().keySizeMarshaller.storingLength(keySize)) + keySize) + (this.m().expiryBytes())) + (checksumStrategy.extraEntryBytes())) + (this.m().valueSizeMarshaller.storingLength(valueSize));
     }
 
     public CompiledReplicatedMapQueryContext(ChainingInterface rootContextInThisThread ,VanillaChronicleMap map) {
@@ -2358,9 +2358,25 @@ PRESENT, ABSENT;    }
     @Nullable
     private Absent<K, V> _MapQuery_absentEntry() {
         this.checkOnEachPublicOperation();
+        if (entryPresentAndNotExpired())
+            return null;
+        
         return entryPresent() ? null : this;
     }
 
+    boolean entryPresentAndNotExpired() {
+        if (!(entryPresent()))
+            return false;
+        
+        if (!(this.entryExpired()))
+            return true;
+        
+        if (this.innerUpdateLock.isHeldByCurrentThread())
+            doRemove();
+        
+        return false;
+    }
+
     final InputKeyBytesData inputKeyBytesData;
 
     public InputKeyBytesData inputKeyBytesData() {
@@ -2758,7 +2774,7 @@ PRESENT, ABSENT;    }
 
     void initKeyHash() {
         boolean wasKeyHashInit = this.keyHashInit();
-        keyHash = this.inputKey().hash(LongHashFunction.xx_r39());
+        keyHash = this.inputKey().hash(this.h().keyHash);
         if (wasKeyHashInit)
             this.closeKeyHashDependants();
         
@@ -2848,7 +2864,7 @@ PRESENT, ABSENT;    }
     private void initSegmentHeader() {
         boolean wasSegmentHeaderInit = this.segmentHeaderInit();
         segmentHeaderAddress = this.h().segmentHeaderAddress(segmentIndex());
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = this.h().segmentHeader();
         if (wasSegmentHeaderInit)
             this.closeSegmentHeaderDependants();
         
@@ -3017,6 +3033,7 @@ PRESENT, ABSENT;    }
     }
 
     public void tierDeleted(long tierDeleted) {
+        this.h().addToSizeCounter(segmentIndex(), ((tierDeleted()) - tierDeleted));
         if ((tier()) == 0) {
             segmentHeader().deleted(segmentHeaderAddress(), tierDeleted);
         } else {
@@ -3109,6 +3126,7 @@ PRESENT, ABSENT;    }
     }
 
     public void tierEntries(long tierEntries) {
+        this.h().addToSizeCounter(segmentIndex(), (tierEntries - (tierEntries())));
         if ((tier()) == 0) {
             segmentHeader().entries(segmentHeaderAddress(), tierEntries);
         } else {
@@ -3669,9 +3687,17 @@ PRESENT, ABSENT;    }
 
     public void writeValue(Data<?> value) {
         initDelayedUpdateChecksum(true);
+        long timeToLiveMillis = this.m().timeToLiveMillis;
+        if (timeToLiveMillis > 0) {
+            this.segmentBS().writeLong(((this.valueSizeOffset()) - (VanillaChronicleMap.EXPIRY_BYTES)), ((System.currentTimeMillis()) + timeToLiveMillis));
+        }
         value.writeTo(this.segmentBS(), valueOffset());
     }
 
+    public boolean entryExpired() {
+        return ((this.m().timeToLiveMillis) > 0) && (((this.segmentBS().readLong(((this.valueSizeOffset()) - (VanillaChronicleMap.EXPIRY_BYTES)))) - (System.currentTimeMillis())) < 0);
+    }
+
     public void initValue(Data<?> value) {
         initValueSize(value.size());
         writeValue(value);
@@ -17,11 +17,14 @@
 package net.openhft.chronicle.map.impl;
 
 import net.openhft.chronicle.hash.ChronicleHashCorruption;
+import net.openhft.chronicle.hash.SegmentLock;
+import net.openhft.chronicle.hash.impl.stage.iter.SegmentCursorPosition;
 import net.openhft.chronicle.map.ChronicleHashCorruptionImpl;
 import net.openhft.chronicle.map.MapEntry;
 import net.openhft.chronicle.map.MapSegmentContext;
 
-public interface IterationContext<K, V, R> extends MapEntry<K, V>, MapSegmentContext<K, V, R> {
+public interface IterationContext<K, V, R>
+        extends MapEntry<K, V>, MapSegmentContext<K, V, R>, SegmentLock {
     long pos();
 
     void initSegmentIndex(int segmentIndex);
@@ -29,4 +32,8 @@ public interface IterationContext<K, V, R> extends MapEntry<K, V>, MapSegmentCon
     void recoverSegments(
             ChronicleHashCorruption.Listener corruptionListener,
             ChronicleHashCorruptionImpl corruption);
+
+    boolean cursorNextEntry(SegmentCursorPosition position, int batchSize);
+
+    boolean entryExpired();
 }
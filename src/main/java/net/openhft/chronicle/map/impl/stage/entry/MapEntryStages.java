@@ -31,6 +31,7 @@ import net.openhft.sg.StageRef;
 import net.openhft.sg.Staged;
 import org.jetbrains.annotations.NotNull;
 
+import static net.openhft.chronicle.map.VanillaChronicleMap.EXPIRY_BYTES;
 import static net.openhft.chronicle.map.VanillaChronicleMap.alignAddr;
 
 @Staged
@@ -53,7 +54,7 @@ public abstract class MapEntryStages<K, V> extends HashEntryStages<K>
     KeySearch<K> ks;
 
     long countValueSizeOffset() {
-        return keyEnd();
+        return keyEnd() + mh.m().expiryBytes();
     }
 
     @SuppressWarnings("unused")
@@ -89,6 +90,11 @@ public abstract class MapEntryStages<K, V> extends HashEntryStages<K>
 
     public void writeValue(Data<?> value) {
         initDelayedUpdateChecksum(true);
+        long timeToLiveMillis = mh.m().timeToLiveMillis;
+        if (timeToLiveMillis > 0) {
+            s.segmentBS.writeLong(valueSizeOffset - EXPIRY_BYTES,
+                    System.currentTimeMillis() + timeToLiveMillis);
+        }
         // In acquireContext(), replaceValue() is called for
         // 1) executing custom replaceValue() logic, if defined, from configured MapEntryOperations
         // 2) Update replication status (bits, timestamp)
@@ -107,6 +113,17 @@ public abstract class MapEntryStages<K, V> extends HashEntryStages<K>
         value.writeTo(s.segmentBS, valueOffset);
     }
 
+    /**
+     * Checks if the entry has expired, see {@link
+     * net.openhft.chronicle.map.ChronicleMapBuilder#entryTimeToLive}. The expiry time is stored
+     * just before the value size, it is updated whenever the value is written.
+     */
+    public boolean entryExpired() {
+        return mh.m().timeToLiveMillis > 0 &&
+                s.segmentBS.readLong(valueSizeOffset - EXPIRY_BYTES) -
+                        System.currentTimeMillis() < 0;
+    }
+
     @Override
     public long entryEnd() {
         return valueOffset + valueSize;
@@ -232,7 +249,7 @@ public abstract class MapEntryStages<K, V> extends HashEntryStages<K>
 
     long sizeOfEverythingBeforeValue(long keySize, long valueSize) {
         return mh.m().keySizeMarshaller.storingLength(keySize) + keySize +
-                checksumStrategy.extraEntryBytes() +
+                mh.m().expiryBytes() + checksumStrategy.extraEntryBytes() +
                 mh.m().valueSizeMarshaller.storingLength(valueSize);
     }
 
@@ -18,6 +18,7 @@ package net.openhft.chronicle.map.impl.stage.iter;
 
 import net.openhft.chronicle.hash.Data;
 import net.openhft.chronicle.hash.ReplicatedHashSegmentContext;
+import net.openhft.chronicle.hash.impl.stage.iter.SegmentCursorPosition;
 import net.openhft.chronicle.hash.replication.ReplicableEntry;
 import net.openhft.chronicle.map.MapEntry;
 import net.openhft.chronicle.map.impl.ReplicatedIterationContext;
@@ -104,6 +105,24 @@ public abstract class ReplicatedMapSegmentIteration<K, V, R> extends MapSegmentI
         return innerForEachSegmentEntryWhile(predicate);
     }
 
+    @Override
+    public boolean forEachSegmentEntryWhile(
+            int batchSize, Predicate<? super MapEntry<K, V>> predicate) {
+        throwExceptionIfClosed();
+
+        checkBatchSize(batchSize);
+        checkOnEachPublicOperation.checkOnEachPublicOperation();
+        initEntriesToTest(PRESENT);
+        s.innerUpdateLock.lock();
+        return innerForEachSegmentEntryWhile(predicate, batchSize);
+    }
+
+    @Override
+    public boolean cursorNextEntry(SegmentCursorPosition p, int batchSize) {
+        initEntriesToTest(PRESENT);
+        return super.cursorNextEntry(p, batchSize);
+    }
+
     @Override
     public boolean forEachSegmentReplicableEntryWhile(
             Predicate<? super ReplicableEntry> predicate) {
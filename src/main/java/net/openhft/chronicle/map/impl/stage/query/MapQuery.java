@@ -84,16 +84,34 @@ public abstract class MapQuery<K, V, R> extends HashQuery<K>
     @Override
     public MapQuery<K, V, R> entry() {
         checkOnEachPublicOperation.checkOnEachPublicOperation();
-        return entryPresent() ? this : null;
+        return entryPresentAndNotExpired() ? this : null;
     }
 
     @Nullable
     @Override
     public Absent<K, V> absentEntry() {
         checkOnEachPublicOperation.checkOnEachPublicOperation();
+        if (entryPresentAndNotExpired())
+            return null;
+        // if the entry has expired, but couldn't be removed, it is neither present nor absent
         return entryPresent() ? null : absent;
     }
 
+    /**
+     * An expired entry is reported as absent. It is removed, if the update lock is held, so that
+     * a new entry could be inserted for the key, otherwise it is left for a locking operation or
+     * the reaper.
+     */
+    boolean entryPresentAndNotExpired() {
+        if (!entryPresent())
+            return false;
+        if (!e.entryExpired())
+            return true;
+        if (s.innerUpdateLock.isHeldByCurrentThread())
+            doRemove();
+        return false;
+    }
+
     protected void putPrefix() {
         checkOnEachPublicOperation.checkOnEachPublicOperation();
         if (!s.innerUpdateLock.isHeldByCurrentThread())
@@ -21,6 +21,10 @@ import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
 import net.openhft.chronicle.hash.ChronicleHashCorruption;
 import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.DurabilityPolicy;
+import net.openhft.chronicle.hash.HugePages;
+import net.openhft.chronicle.hash.KeyHashFunction;
+import net.openhft.chronicle.hash.NumaPolicy;
 import net.openhft.chronicle.hash.serialization.*;
 import net.openhft.chronicle.map.*;
 import net.openhft.chronicle.map.replication.MapRemoteOperations;
@@ -270,6 +274,48 @@ public final class ChronicleSetBuilder<K>
         return this;
     }
 
+    @Override
+    public ChronicleSetBuilder<K> maintainSizeCounter(boolean maintainSizeCounter) {
+        chronicleMapBuilder.maintainSizeCounter(maintainSizeCounter);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> durabilityPolicy(@NotNull DurabilityPolicy durabilityPolicy) {
+        chronicleMapBuilder.durabilityPolicy(durabilityPolicy);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> processPrivate(boolean processPrivate) {
+        chronicleMapBuilder.processPrivate(processPrivate);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> lockStatistics(boolean lockStatistics) {
+        chronicleMapBuilder.lockStatistics(lockStatistics);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> hugePages(@NotNull HugePages hugePages) {
+        chronicleMapBuilder.hugePages(hugePages);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> numaPolicy(@NotNull NumaPolicy numaPolicy) {
+        chronicleMapBuilder.numaPolicy(numaPolicy);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> keyHashFunction(@NotNull KeyHashFunction keyHashFunction) {
+        chronicleMapBuilder.keyHashFunction(keyHashFunction);
+        return this;
+    }
+
     /**
      * Inject your SPI code around basic {@code ChronicleSet}'s operations with entries:
      * removing entries and inserting new entries.
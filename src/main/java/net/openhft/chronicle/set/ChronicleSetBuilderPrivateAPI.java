@@ -18,6 +18,7 @@ package net.openhft.chronicle.set;
 
 import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
 import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.KeyHashFunction;
 import net.openhft.chronicle.hash.serialization.impl.SerializationBuilder;
 import net.openhft.chronicle.map.replication.MapRemoteOperations;
 import net.openhft.chronicle.map.replication.MapRemoteQueryContext;
@@ -102,6 +103,16 @@ class ChronicleSetBuilderPrivateAPI<K>
         return mapB.checksumEntries();
     }
 
+    @Override
+    public boolean maintainSizeCounter() {
+        return mapB.maintainSizeCounter();
+    }
+
+    @Override
+    public KeyHashFunction keyHashFunction() {
+        return mapB.keyHashFunction();
+    }
+
     @Override
     public void replication(byte identifier) {
         mapB.replication(identifier);
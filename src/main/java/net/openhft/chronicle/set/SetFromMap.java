@@ -24,11 +24,13 @@ import net.openhft.chronicle.map.VanillaChronicleMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -157,6 +159,34 @@ class SetFromMap<E> extends AbstractSet<E> implements ChronicleSet<E> {
         return m.longSize();
     }
 
+    @Override
+    public long approximateSize() {
+        throwExceptionIfClosed();
+
+        return m.approximateSize();
+    }
+
+    @Override
+    public long flushLag(TimeUnit unit) {
+        throwExceptionIfClosed();
+
+        return m.flushLag(unit);
+    }
+
+    @Override
+    public void snapshotTo(@NotNull File snapshotFile, boolean incremental) throws IOException {
+        throwExceptionIfClosed();
+
+        m.snapshotTo(snapshotFile, incremental);
+    }
+
+    @Override
+    public int compact() {
+        throwExceptionIfClosed();
+
+        return m.compact();
+    }
+
     @Override
     public long offHeapMemoryUsed() {
         throwExceptionIfClosed();
@@ -224,6 +254,14 @@ class SetFromMap<E> extends AbstractSet<E> implements ChronicleSet<E> {
         return m.forEachEntryWhile(e -> predicate.test(((SetEntry<E>) e)));
     }
 
+    @Override
+    public boolean forEachEntryWhile(int batchSize, Predicate<? super SetEntry<E>> predicate) {
+        throwExceptionIfClosed();
+
+        Objects.requireNonNull(predicate);
+        return m.forEachEntryWhile(batchSize, e -> predicate.test(((SetEntry<E>) e)));
+    }
+
     @Override
     public void forEachEntry(Consumer<? super SetEntry<E>> action) {
         throwExceptionIfClosed();
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncMapTest {
+
+    @Test
+    public void asyncOperations() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(1_000)
+                .asyncThreads(2)
+                .create()) {
+            assertNull(map.putAsync(1, 10).get(10, TimeUnit.SECONDS));
+            assertEquals(10, (int) map.getAsync(1).get(10, TimeUnit.SECONDS));
+            assertEquals(11, (int) map.computeAsync(1, (k, v) -> v + k)
+                    .get(10, TimeUnit.SECONDS));
+            assertEquals(14, (int) map.mergeAsync(1, 3, Integer::sum)
+                    .get(10, TimeUnit.SECONDS));
+            assertEquals(14, (int) map.removeAsync(1).get(10, TimeUnit.SECONDS));
+            assertNull(map.getAsync(1).get(10, TimeUnit.SECONDS));
+            assertFalse(map.containsKey(1));
+        }
+    }
+
+    @Test
+    public void operationsWithEqualKeysAreOrdered() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .asyncThreads(4)
+                .create()) {
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                futures.add(map.mergeAsync(i % 10, 1, Integer::sum));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                // the i-th merge of the key observes exactly i / 10 previous merges
+                assertEquals(i / 10 + 1, (int) futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            for (int key = 0; key < 10; key++) {
+                assertEquals(100, (int) map.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void operationsWithEquallySerializedKeysAreOrdered() throws Exception {
+        try (ChronicleMap<byte[], Integer> map = ChronicleMapBuilder
+                .of(byte[].class, Integer.class)
+                .entries(100)
+                .averageKeySize(1)
+                .asyncThreads(4)
+                .create()) {
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                // arrays are equal only in the serialized form
+                futures.add(map.mergeAsync(new byte[]{(byte) (i % 10)}, 1, Integer::sum));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i / 10 + 1, (int) futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void submittingThreadsDontCreateContexts() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(1_000)
+                .asyncThreads(2)
+                .create()) {
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            List<Thread> submitters = new ArrayList<>();
+            AtomicInteger contexts = new AtomicInteger();
+            for (int t = 0; t < 100; t++) {
+                final int key = t;
+                Thread submitter = new Thread(() -> {
+                    CompletableFuture<Integer> future = map.putAsync(key, key);
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                    if (vanillaMap.cxt.get() != null)
+                        contexts.incrementAndGet();
+                });
+                submitter.start();
+                submitters.add(submitter);
+            }
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            for (CompletableFuture<Integer> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(0, contexts.get());
+            assertEquals(100, map.size());
+        }
+    }
+
+    @Test
+    public void exceptionsCompleteFutures() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .create()) {
+            CompletableFuture<Integer> future = map.computeAsync(1, (k, v) -> {
+                throw new IllegalStateException("test");
+            });
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            // the worker survives the failed operation
+            assertNull(map.putAsync(1, 1).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void closeFailsQueuedOperations() throws Exception {
+        ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .asyncThreads(1)
+                .create();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> running = map.computeAsync(1, (k, v) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Integer> queued = map.getAsync(1);
+        Thread closer = new Thread(map::close);
+        closer.start();
+        try {
+            queued.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ChronicleHashClosedException);
+        }
+        // close() waits for the running operation
+        assertFalse(running.isDone());
+        release.countDown();
+        closer.join(TimeUnit.SECONDS.toMillis(20));
+        assertFalse(closer.isAlive());
+        assertTrue(map.isClosed());
+        assertEquals(1, (int) running.get(10, TimeUnit.SECONDS));
+    }
+}
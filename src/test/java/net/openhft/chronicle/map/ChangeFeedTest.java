@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ChangeFeedTest {
+
+    @Test
+    public void ringOverflowsWhenFull() {
+        try (ChangeFeed feed = new ChangeFeed(16)) {
+            assertTrue(feed.isEmpty());
+            for (int i = 0; i < 17; i++) {
+                feed.offer(1, i);
+            }
+            assertTrue(feed.overflowed());
+            for (int i = 0; i < 16; i++) {
+                assertTrue(feed.poll());
+                assertEquals(1, feed.polledTierIndex());
+                assertEquals(i, feed.polledPos());
+            }
+            assertFalse(feed.poll());
+            feed.clearOverflow();
+            // slots are reusable after the consumer passed them
+            feed.offer(2, 100);
+            assertTrue(feed.poll());
+            assertEquals(2, feed.polledTierIndex());
+            assertEquals(100, feed.polledPos());
+            assertFalse(feed.overflowed());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void changesArePushedToTheFeed() throws InterruptedException {
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map =
+                     (ReplicatedChronicleMap<Integer, Integer, ?>)
+                             ChronicleMap.of(Integer.class, Integer.class)
+                                     .entries(1000)
+                                     .replication((byte) 1)
+                                     .create()) {
+            ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator it =
+                    map.acquireModificationIterator((byte) 2);
+            map.put(-1, -1);
+            // small ring to exercise the overflow fallback, long interval to avoid timed scans
+            it.enableChangeFeed(16, 1, TimeUnit.HOURS);
+
+            Set<Integer> received = new HashSet<>();
+            Replica.ModificationIterator.Callback callback =
+                    new Replica.ModificationIterator.Callback() {
+                        @Override
+                        public void onEntry(ReplicableEntry entry, int chronicleId) {
+                            received.add(((MapEntry<Integer, Integer>) entry).key().get());
+                        }
+
+                        @Override
+                        public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                        }
+                    };
+
+            // the initial scan picks up changes raised before the feed was enabled
+            while (it.nextEntry(callback, 0)) ;
+            assertEquals(1, received.size());
+            assertFalse(it.awaitNext(10, TimeUnit.MILLISECONDS));
+
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    map.put(i, i);
+                }
+            });
+            writer.start();
+            while (received.size() < 101) {
+                if (it.awaitNext(1, TimeUnit.SECONDS)) {
+                    while (it.nextEntry(callback, 0)) ;
+                }
+            }
+            writer.join();
+            for (int i = -1; i < 100; i++) {
+                assertTrue(received.contains(i));
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void closeWakesUpTheConsumerBeforeReleasingTheRing() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(16);
+        Thread consumer = new Thread(() -> feed.await(TimeUnit.HOURS.toNanos(1)));
+        consumer.start();
+        Thread.sleep(50);
+        feed.close();
+        consumer.join();
+        // a closed ring is not accessed by the consumer
+        assertFalse(feed.poll());
+        assertTrue(feed.isEmpty());
+        feed.await(TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Test(timeout = 10_000)
+    public void bootstrapTimeIsReportedForChangesSentFromTheFeed() throws InterruptedException {
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map =
+                     (ReplicatedChronicleMap<Integer, Integer, ?>)
+                             ChronicleMap.of(Integer.class, Integer.class)
+                                     .entries(1000)
+                                     .replication((byte) 1)
+                                     .create()) {
+            ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator it =
+                    map.acquireModificationIterator((byte) 2);
+            it.enableChangeFeed(1024, 200, TimeUnit.MILLISECONDS);
+            long[] bootstrapTimes = new long[2];
+            Replica.ModificationIterator.Callback callback =
+                    new Replica.ModificationIterator.Callback() {
+                        @Override
+                        public void onEntry(ReplicableEntry entry, int chronicleId) {
+                        }
+
+                        @Override
+                        public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                            bootstrapTimes[0]++;
+                            bootstrapTimes[1] = bootstrapTime;
+                        }
+                    };
+            // the initial scan, nothing to send
+            while (it.nextEntry(callback, 0)) ;
+            assertEquals(0, bootstrapTimes[0]);
+
+            for (int i = 0; i < 10; i++) {
+                map.put(i, i);
+            }
+            int sent = 0;
+            while (it.nextEntry(callback, 0)) {
+                sent++;
+            }
+            assertEquals(10, sent);
+
+            // the next full scan reports the bootstrap time, covering the changes from the feed
+            Thread.sleep(250);
+            assertFalse(it.nextEntry(callback, 0));
+            assertEquals(1, bootstrapTimes[0]);
+            assertTrue(bootstrapTimes[1] > 0);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.DurabilityPolicy;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DurabilityPolicyTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1_000)
+                .actualSegments(8);
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("durability", ".cm3");
+        file.deleteOnExit();
+        file.delete();
+        return file;
+    }
+
+    private static void awaitFlushed(ChronicleMap<?, ?> map) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (map.flushLag(TimeUnit.NANOSECONDS) != 0) {
+            assertTrue("not flushed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void flushLagIsNotTrackedWithoutPolicy() throws IOException {
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(tempFile())) {
+            map.put(1, 1);
+            assertEquals(-1, map.flushLag(TimeUnit.MILLISECONDS));
+        }
+        // in-memory maps are never flushed
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .durabilityPolicy(DurabilityPolicy.periodic(1, TimeUnit.MILLISECONDS))
+                .create()) {
+            map.put(1, 1);
+            assertEquals(-1, map.flushLag(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void periodicPolicyFlushesModifiedSegments() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .durabilityPolicy(DurabilityPolicy.periodic(20, TimeUnit.MILLISECONDS))
+                .createPersistedTo(tempFile())) {
+            assertEquals(0, map.flushLag(TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 500; i++) {
+                map.put(i, i);
+            }
+            awaitFlushed(map);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void writeCountPolicyFlushesAfterWrites() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .durabilityPolicy(DurabilityPolicy.afterWrites(100))
+                .createPersistedTo(tempFile())) {
+            for (int i = 0; i < 500; i++) {
+                map.put(i, i);
+            }
+            awaitFlushed(map);
+        }
+    }
+
+    @Test
+    public void msyncSegmentsCoversExtraTiers() throws IOException {
+        try (VanillaChronicleMap<Integer, Integer, ?> map =
+                     (VanillaChronicleMap<Integer, Integer, ?>) builder()
+                             .entries(100)
+                             .actualSegments(1)
+                             .createPersistedTo(tempFile())) {
+            // overflow the only segment, so it is chained with extra tiers
+            for (int i = 0; i < 2_000; i++) {
+                map.put(i, i);
+            }
+            assertTrue(map.globalMutableState().getExtraTiersInUse() > 0);
+            BitSet segments = new BitSet();
+            segments.set(0);
+            map.msyncSegments(segments);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveIntervalIsRejected() {
+        DurabilityPolicy.periodic(0, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EntryExpiryTest {
+
+    private static ChronicleMapBuilder<Integer, String> builder(long timeToLiveMillis) {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(1_000)
+                .averageValueSize(10)
+                .entryTimeToLive(timeToLiveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sleeps until {@link System#currentTimeMillis()}, that expiry times are compared with, is
+     * past the given time.
+     */
+    private static void sleepUntil(long timeMillis) throws InterruptedException {
+        long now;
+        while ((now = System.currentTimeMillis()) <= timeMillis)
+            Thread.sleep(timeMillis - now + 1);
+    }
+
+    @Test
+    public void expiredEntriesAreAbsent() throws InterruptedException {
+        // checks are TTL / 4 away from the expiry times, that tolerates slow test machines
+        long ttl = 2_000;
+        try (ChronicleMap<Integer, String> map = builder(ttl).create()) {
+            map.put(1, "one");
+            map.put(2, "two");
+            long written = System.currentTimeMillis();
+            assertEquals("one", map.get(1));
+            sleepUntil(written + ttl / 2);
+            // writes reset the expiry time
+            map.put(2, "two, updated");
+            sleepUntil(written + ttl + ttl / 4);
+            assertNull(map.get(1));
+            assertFalse(map.containsKey(1));
+            assertEquals("two, updated", map.get(2));
+            assertNull(map.putIfAbsent(1, "one again"));
+            assertEquals("one again", map.get(1));
+            long rewritten = System.currentTimeMillis();
+            // until both keys are expired
+            sleepUntil(rewritten + ttl);
+            assertNull(map.put(2, "two again"));
+            assertNull(map.remove(1));
+            assertEquals("two again", map.get(2));
+        }
+    }
+
+    @Test
+    public void reaperRemovesExpiredEntries() throws InterruptedException {
+        try (ChronicleMap<Integer, String> map = builder(50).actualSegments(4).create()) {
+            for (int i = 0; i < 500; i++) {
+                map.put(i, "v" + i);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (map.size() > 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+            assertEquals(0, map.size());
+        }
+    }
+
+    @Test
+    public void timeToLiveIsPersisted() throws IOException, InterruptedException {
+        File file = ChronicleMapTest.getPersistenceFile();
+        try (ChronicleMap<Integer, String> map = builder(100).createPersistedTo(file)) {
+            map.put(1, "one");
+        }
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(1_000)
+                .averageValueSize(10)
+                .createPersistedTo(file)) {
+            map.put(2, "two");
+            sleepUntil(System.currentTimeMillis() + 100);
+            assertNull(map.get(1));
+            assertNull(map.get(2));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void replicatedMapsDoNotSupportExpiry() {
+        builder(1_000).replication((byte) 1).create();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeToLiveShouldBeNonNegative() {
+        builder(-1);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.values.Values;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GetAllTest {
+
+    @Test
+    public void getAllReportsPresentAndAbsentKeys() {
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(1_000)
+                .averageValueSize(10)
+                .actualSegments(8)
+                .create()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "v" + i);
+            }
+            List<Integer> keys = new ArrayList<>();
+            for (int i = 50; i < 150; i++) {
+                keys.add(i);
+            }
+            // duplicate keys are looked up for each occurrence
+            keys.add(50);
+            keys.add(149);
+            Map<Integer, String> found = new HashMap<>();
+            int[] calls = {0};
+            map.getAll(keys, (k, v) -> {
+                calls[0]++;
+                found.put(k, v);
+            });
+            assertEquals(keys.size(), calls[0]);
+            for (int i = 50; i < 150; i++) {
+                assertEquals(i < 100 ? "v" + i : null, found.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void getAllUsingReusesValues() {
+        try (ChronicleMap<Integer, LongValue> map = ChronicleMapBuilder.of(Integer.class, LongValue.class)
+                .entries(1_000)
+                .actualSegments(8)
+                .create()) {
+            LongValue value = Values.newHeapInstance(LongValue.class);
+            for (int i = 0; i < 10; i++) {
+                value.setValue(i * 10L);
+                map.put(i, value);
+            }
+            List<Integer> keys = Arrays.asList(3, 7, 42, 0);
+            List<LongValue> usingValues = new ArrayList<>();
+            List<LongValue> instances = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                LongValue using = Values.newHeapInstance(LongValue.class);
+                usingValues.add(using);
+                instances.add(using);
+            }
+            map.getAllUsing(keys, usingValues);
+            assertSame(instances.get(0), usingValues.get(0));
+            assertEquals(30L, usingValues.get(0).getValue());
+            assertEquals(70L, usingValues.get(1).getValue());
+            assertNull(usingValues.get(2));
+            assertEquals(0L, usingValues.get(3).getValue());
+        }
+    }
+
+    @Test
+    public void getAllFindsKeysInExtraTiers() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1_000)
+                .actualSegments(4)
+                .maxBloatFactor(10)
+                .create()) {
+            for (int i = 0; i < 5_000; i++) {
+                map.put(i, -i);
+            }
+            List<Integer> keys = new ArrayList<>();
+            List<Integer> usingValues = new ArrayList<>();
+            for (int i = 0; i < 6_000; i += 3) {
+                keys.add(i);
+                usingValues.add(null);
+            }
+            map.getAllUsing(keys, usingValues);
+            for (int i = 0; i < keys.size(); i++) {
+                assertEquals(map.get(keys.get(i)), usingValues.get(i));
+            }
+            // the action could access the map, the segment lock is already released
+            map.getAll(keys, (k, v) -> {
+                assertEquals(map.get(k), v);
+                if (v != null)
+                    map.put(k, v - 1);
+            });
+            assertEquals(Integer.valueOf(-4), map.get(3));
+        }
+    }
+
+    @Test
+    public void getAllComparesKeysInSerializedForm() {
+        try (ChronicleMap<byte[], Integer> map = ChronicleMapBuilder.of(byte[].class, Integer.class)
+                .entries(100)
+                .averageKeySize(1)
+                .actualSegments(2)
+                // non-default entry operations disable the pipelined lookup
+                .entryOperations(new MapEntryOperations<byte[], Integer, Void>() {
+                })
+                .create()) {
+            List<byte[]> keys = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                map.put(new byte[]{(byte) i}, i);
+                // arrays, equal only in the serialized form
+                keys.add(new byte[]{(byte) i});
+                keys.add(new byte[]{(byte) i});
+            }
+            List<Integer> found = new ArrayList<>();
+            map.getAll(keys, (k, v) -> found.add(v));
+            assertEquals(keys.size(), found.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(2, found.stream().filter(Integer.valueOf(i)::equals).count());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getAllUsingRequiresSameSizes() {
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(1_000)
+                .averageValueSize(10)
+                .create()) {
+            map.getAllUsing(Arrays.asList(1, 2), new ArrayList<>());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class IncrementalIterationTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        // a single small segment, to make the map allocate extra tiers
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1_000)
+                .actualSegments(1)
+                .maxBloatFactor(10);
+    }
+
+    @Test
+    public void visitsAllEntries() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < 3_000; i++) {
+                map.put(i, i);
+                expected.add(i);
+            }
+            Set<Integer> visited = new HashSet<>();
+            assertTrue(map.forEachEntryWhile(7, e -> {
+                assertTrue("visited twice: " + e.key().get(), visited.add(e.key().get()));
+                return true;
+            }));
+            assertEquals(expected, visited);
+
+            AtomicInteger count = new AtomicInteger();
+            assertFalse(map.forEachEntryWhile(7, e -> count.incrementAndGet() < 100));
+            assertEquals(100, count.get());
+        }
+    }
+
+    @Test
+    public void removesEntriesAcrossBatches() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            for (int i = 0; i < 3_000; i++) {
+                map.put(i, i);
+            }
+            try (MapSegmentContext<Integer, Integer, ?> c = map.segmentContext(0)) {
+                c.forEachSegmentEntryWhile(10, e -> {
+                    if (e.key().get() % 2 == 0)
+                        e.doRemove();
+                    return true;
+                });
+            }
+            assertEquals(1_500, map.size());
+            for (int i = 0; i < 3_000; i++) {
+                assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(i));
+            }
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void writersProceedBetweenBatches() throws InterruptedException {
+        // parking locks are fair, a queued writer acquires the lock before the iteration resumes
+        try (ChronicleMap<Integer, Integer> map = builder().processPrivate(true).create()) {
+            for (int i = 0; i < 1_000; i++) {
+                map.put(i, i);
+            }
+            CountDownLatch written = new CountDownLatch(1);
+            AtomicInteger count = new AtomicInteger();
+            Thread writer = new Thread(() -> {
+                map.put(-1, -1);
+                written.countDown();
+            });
+            map.forEachEntryWhile(10, e -> {
+                int n = count.incrementAndGet();
+                if (n == 1) {
+                    writer.start();
+                    // let the writer block on the segment lock
+                    sleep(100);
+                    assertEquals(1, written.getCount());
+                } else if (n == 500) {
+                    try {
+                        assertTrue(written.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException ex) {
+                        throw new AssertionError(ex);
+                    }
+                }
+                return true;
+            });
+            writer.join();
+            assertEquals(Integer.valueOf(-1), map.get(-1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeShouldBePositive() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            map.put(1, 1);
+            map.forEachEntryWhile(0, e -> true);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
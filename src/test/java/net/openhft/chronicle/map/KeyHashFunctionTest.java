@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.algo.hashing.LongHashFunction;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.hash.ChronicleHashRecoveryFailedException;
+import net.openhft.chronicle.hash.KeyHashFunction;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class KeyHashFunctionTest {
+
+    private static File tmpFile() throws IOException {
+        File file = File.createTempFile("key-hash-function", ".cm3");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static ChronicleMapBuilder<Long, Long> longBuilder() {
+        return ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(10_000)
+                .actualSegments(16);
+    }
+
+    private static ChronicleMapBuilder<String, Long> stringBuilder() {
+        return ChronicleMapBuilder.of(String.class, Long.class)
+                .entries(10_000)
+                .averageKeySize(10)
+                .actualSegments(16);
+    }
+
+    @Test
+    public void longMixerAgreesForObjectsAndSerializedBytes() {
+        LongHashFunction f = KeyHashFunction.longMixer().hashFunction();
+        Bytes<?> bytes = Bytes.allocateDirect(8);
+        try {
+            for (long v : new long[]{0L, 1L, -1L, Long.MIN_VALUE, 0x123456789ABCDEFL}) {
+                bytes.writeLong(0, v);
+                assertEquals(f.hashLong(v), f.hashMemory(bytes.addressForRead(0), 8));
+            }
+        } finally {
+            bytes.releaseLast();
+        }
+    }
+
+    @Test
+    public void longMixerMap() {
+        try (ChronicleMap<Long, Long> map = longBuilder()
+                .keyHashFunction(KeyHashFunction.longMixer()).create()) {
+            for (long i = 0; i < 5_000; i++) {
+                map.put(i, i * 2);
+            }
+            // removal through the iterator hashes keys from their serialized form
+            map.entrySet().removeIf(e -> e.getKey() % 2 == 0);
+            assertEquals(2_500, map.size());
+            for (long i = 0; i < 5_000; i++) {
+                assertEquals(i % 2 == 0 ? null : (Long) (i * 2), map.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void seededFunctionIsPersisted() throws IOException {
+        File file = tmpFile();
+        try (ChronicleMap<String, Long> map = stringBuilder()
+                .keyHashFunction(KeyHashFunction.seededXxR39(42))
+                .createPersistedTo(file)) {
+            for (long i = 0; i < 1_000; i++) {
+                map.put("key" + i, i);
+            }
+        }
+        // the function is read from the header, if not configured explicitly
+        try (ChronicleMap<String, Long> map = stringBuilder().createPersistedTo(file)) {
+            for (long i = 0; i < 1_000; i++) {
+                assertEquals((Long) i, map.get("key" + i));
+            }
+        }
+        try (ChronicleMap<String, Long> map = stringBuilder()
+                .keyHashFunction(KeyHashFunction.seededXxR39(42))
+                .recoverPersistedTo(file, true)) {
+            assertEquals(1_000, map.size());
+            assertEquals((Long) 7L, map.get("key7"));
+        }
+    }
+
+    @Test
+    public void mismatchingFunctionIsRejected() throws IOException {
+        File file = tmpFile();
+        try (ChronicleMap<String, Long> map = stringBuilder()
+                .keyHashFunction(KeyHashFunction.seededXxR39(1))
+                .createPersistedTo(file)) {
+            map.put("a", 1L);
+        }
+        try (ChronicleMap<String, Long> ignored = stringBuilder()
+                .keyHashFunction(KeyHashFunction.seededXxR39(2))
+                .createPersistedTo(file)) {
+            fail("opened with another key hash function");
+        } catch (IOException expected) {
+            // expected
+        }
+        try (ChronicleMap<String, Long> ignored = stringBuilder()
+                .keyHashFunction(KeyHashFunction.xxR39())
+                .recoverPersistedTo(file, true)) {
+            fail("recovered with another key hash function");
+        } catch (ChronicleHashRecoveryFailedException expected) {
+            assertTrue(expected.getMessage().contains("key hash function"));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LockStatsTest {
+
+    private static ChronicleMap<Integer, Integer> map(boolean processPrivate) {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .name("lock-stats-test")
+                .entries(100)
+                .actualSegments(1)
+                .processPrivate(processPrivate)
+                .lockStatistics(true)
+                .create();
+    }
+
+    @Test
+    public void countsAcquisitions() {
+        try (ChronicleMap<Integer, Integer> map = map(false)) {
+            for (int i = 0; i < 10; i++) {
+                map.put(i, i);
+            }
+            ChronicleMap.LockStats[] lockStats = map.lockStats();
+            assertEquals(1, lockStats.length);
+            // put() takes the update lock and upgrades it to the write lock
+            assertTrue(lockStats[0].acquisitions() >= 20);
+            assertEquals(0, lockStats[0].contendedAcquisitions());
+            assertEquals(0, lockStats[0].totalWaitNanos());
+            assertEquals(0, lockStats[0].waitNanosPercentile(99.0));
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void recordsContendedWaits() throws InterruptedException {
+        recordsContendedWaits(false);
+        recordsContendedWaits(true);
+    }
+
+    private static void recordsContendedWaits(boolean processPrivate) throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = map(processPrivate)) {
+            map.put(1, 1);
+            Thread writer = new Thread(() -> map.put(2, 2));
+            try (ExternalMapQueryContext<Integer, Integer, ?> c = map.queryContext(1)) {
+                c.writeLock().lock();
+                writer.start();
+                Thread.sleep(50);
+            }
+            writer.join();
+
+            ChronicleMap.LockStats lockStats = map.lockStats()[0];
+            assertTrue(lockStats.contendedAcquisitions() >= 1);
+            assertTrue(lockStats.maxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+            assertTrue(lockStats.totalWaitNanos() >= lockStats.maxWaitNanos());
+            long waits = 0;
+            for (long count : lockStats.waitHistogram()) {
+                waits += count;
+            }
+            assertTrue(waits >= 1);
+            assertTrue(lockStats.waitNanosPercentile(100.0) >= TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void statsShouldBeEnabled() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(100)
+                .create()) {
+            map.lockStats();
+        }
+    }
+
+    @Test
+    public void registersMXBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName query = new ObjectName("net.openhft.chronicle.map:type=LockStats,*");
+        ObjectName objectName;
+        try (ChronicleMap<Integer, Integer> map = map(false)) {
+            map.put(1, 1);
+            Set<ObjectName> names = server.queryNames(query, null);
+            assertEquals(1, names.size());
+            objectName = names.iterator().next();
+            assertEquals("\"lock-stats-test\"", objectName.getKeyProperty("name"));
+            assertEquals(1, server.getAttribute(objectName, "Segments"));
+            assertTrue((Long) server.getAttribute(objectName, "Acquisitions") >= 2);
+
+            server.invoke(objectName, "reset", null, null);
+            assertEquals(0L, map.lockStats()[0].acquisitions());
+        }
+        assertFalse(server.isRegistered(objectName));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.values.Values;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MapCursorTest {
+
+    @Test
+    public void visitsAllEntries() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(1_000)
+                .actualSegments(2)
+                .maxBloatFactor(10)
+                .create()) {
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < 3_000; i++) {
+                map.put(i, -i);
+                expected.add(i);
+            }
+            Set<Integer> visited = new HashSet<>();
+            try (MapCursor<Integer, Integer> cursor = map.cursor(7)) {
+                while (cursor.next()) {
+                    int key = cursor.key().get();
+                    assertTrue("visited twice: " + key, visited.add(key));
+                    assertEquals(-key, (int) cursor.value().get());
+                }
+                assertFalse(cursor.next());
+            }
+            assertEquals(expected, visited);
+        }
+    }
+
+    @Test
+    public void reusesKeyAndValueInstances() {
+        try (ChronicleMap<LongValue, LongValue> map = ChronicleMapBuilder
+                .of(LongValue.class, LongValue.class)
+                .entries(100)
+                .create()) {
+            LongValue key = Values.newHeapInstance(LongValue.class);
+            LongValue value = Values.newHeapInstance(LongValue.class);
+            for (int i = 0; i < 100; i++) {
+                key.setValue(i);
+                value.setValue(i * 2);
+                map.put(key, value);
+            }
+            long sum = 0;
+            try (MapCursor<LongValue, LongValue> cursor = map.cursor()) {
+                while (cursor.next()) {
+                    assertSame(key, cursor.key(key));
+                    assertSame(value, cursor.value(value));
+                    assertEquals(key.getValue() * 2, value.getValue());
+                    sum += value.getValue();
+                }
+            }
+            assertEquals(99 * 100, sum);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void closeReleasesSegmentLock() throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .actualSegments(1)
+                .processPrivate(true)
+                .create()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i);
+            }
+            Thread writer = new Thread(() -> map.put(-1, -1));
+            try (MapCursor<Integer, Integer> cursor = map.cursor()) {
+                assertTrue(cursor.next());
+                writer.start();
+                // the writer blocks on the segment lock, held by the cursor
+                writer.join(100);
+                assertTrue(writer.isAlive());
+            }
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(writer.isAlive());
+            assertEquals(Integer.valueOf(-1), map.get(-1));
+        }
+    }
+
+    @Test
+    public void closedCursorHasNoEntries() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .create()) {
+            map.put(1, 1);
+            MapCursor<Integer, Integer> cursor = map.cursor();
+            assertTrue(cursor.next());
+            cursor.close();
+            assertFalse(cursor.next());
+            try {
+                cursor.key();
+                fail("cursor is closed");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeShouldBePositive() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .create()) {
+            map.cursor(0);
+        }
+    }
+}
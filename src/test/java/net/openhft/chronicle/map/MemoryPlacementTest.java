@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.hash.HugePages;
+import net.openhft.chronicle.hash.NumaPolicy;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MemoryPlacementTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(4)
+                .maxBloatFactor(4);
+    }
+
+    private static void fill(ChronicleMap<Integer, Integer> map) {
+        // enough entries to allocate extra tiers
+        for (int i = 0; i < 30_000; i++) {
+            map.put(i, -i);
+        }
+        for (int i = 0; i < 30_000; i++) {
+            assertEquals(Integer.valueOf(-i), map.get(i));
+        }
+    }
+
+    @Test
+    public void transparentHugePages() {
+        assumeTrue(OS.isLinux());
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .hugePages(HugePages.TRANSPARENT)
+                .create()) {
+            fill(map);
+            assertTrue(map.segmentStats()[0].tiers() > 1);
+        }
+    }
+
+    @Test
+    public void numaPolicies() {
+        assumeTrue(OS.isLinux());
+        for (NumaPolicy numaPolicy : NumaPolicy.values()) {
+            try (ChronicleMap<Integer, Integer> map = builder()
+                    .numaPolicy(numaPolicy)
+                    .create()) {
+                fill(map);
+            }
+        }
+    }
+
+    @Test
+    public void persistedWithTransparentHugePages() throws IOException {
+        assumeTrue(OS.isLinux());
+        File file = ChronicleMapTest.getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .hugePages(HugePages.TRANSPARENT)
+                .createPersistedTo(file)) {
+            fill(map);
+        }
+        // huge page aligned mappings don't change the file format
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals(30_000, map.size());
+            assertEquals(Integer.valueOf(-29_999), map.get(29_999));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void explicitHugePagesAreNotSupportedForPersistedMaps() throws IOException {
+        builder().hugePages(HugePages.EXPLICIT)
+                .createPersistedTo(ChronicleMapTest.getPersistenceFile());
+    }
+}
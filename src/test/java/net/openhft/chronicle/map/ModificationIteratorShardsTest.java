@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class ModificationIteratorShardsTest {
+
+    private static final int ENTRIES = 10_000;
+
+    private static ReplicatedChronicleMap<Integer, Integer, ?> createMap() {
+        return (ReplicatedChronicleMap<Integer, Integer, ?>) ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(ENTRIES)
+                .actualSegments(16)
+                .replication((byte) 1)
+                .create();
+    }
+
+    @Test(timeout = 30_000)
+    public void shardsPassEachChangeOnceAndReportBootstrapTime() throws InterruptedException {
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map = createMap()) {
+            ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator iterator =
+                    map.acquireModificationIterator((byte) 2);
+            for (int i = 0; i < ENTRIES; i++) {
+                map.put(i, i);
+            }
+            List<? extends ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator.Shard>
+                    shards = iterator.shards(4);
+            assertEquals(4, shards.size());
+            assertEquals(0, shards.get(0).fromSegment());
+            assertEquals(16, shards.get(3).toSegment());
+
+            Set<Integer> keys = ConcurrentHashMap.newKeySet();
+            List<Long> bootstrapTimes = new CopyOnWriteArrayList<>();
+            List<Throwable> failures = new CopyOnWriteArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator.Shard shard : shards) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        Replica.ModificationIterator.Callback callback =
+                                new Replica.ModificationIterator.Callback() {
+                                    @Override
+                                    public void onEntry(ReplicableEntry entry, int chronicleId) {
+                                        Integer key = ((MapEntry<Integer, Integer>) entry).key().get();
+                                        assertTrue("passed twice: " + key, keys.add(key));
+                                        int segment = map.segmentIndex(key);
+                                        assertTrue(segment >= shard.fromSegment() &&
+                                                segment < shard.toSegment());
+                                    }
+
+                                    @Override
+                                    public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                                        bootstrapTimes.add(bootstrapTime);
+                                    }
+                                };
+                        while (shard.nextEntry(callback, 0)) {
+                            // drain
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), failures);
+            assertEquals(ENTRIES, keys.size());
+            assertEquals(1, bootstrapTimes.size());
+            assertTrue(bootstrapTimes.get(0) > 0);
+            for (ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator.Shard shard : shards) {
+                assertFalse(shard.hasNext());
+            }
+
+            map.put(1, -1);
+            Set<Integer> changed = new HashSet<>();
+            for (ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator.Shard shard : shards) {
+                while (shard.nextEntry(new Replica.ModificationIterator.Callback() {
+                    @Override
+                    public void onEntry(ReplicableEntry entry, int chronicleId) {
+                        changed.add(((MapEntry<Integer, Integer>) entry).key().get());
+                    }
+
+                    @Override
+                    public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                    }
+                }, 0)) {
+                    // drain
+                }
+            }
+            assertEquals(Collections.singleton(1), changed);
+        }
+    }
+
+    @Test
+    public void shardsAreValidated() {
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map = createMap()) {
+            ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator iterator =
+                    map.acquireModificationIterator((byte) 2);
+            try {
+                iterator.shards(17);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // more shards than segments
+            }
+            iterator.shards(16);
+            try {
+                iterator.shards(2);
+                fail();
+            } catch (IllegalStateException expected) {
+                // already sharded
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.impl.BigSegmentHeader;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class OptimisticReadsTest {
+
+    private static final int KEYS = 64;
+
+    @Test
+    public void writesBumpSegmentVersion() {
+        try (VanillaChronicleMap<Integer, Integer, ?> map =
+                     (VanillaChronicleMap<Integer, Integer, ?>)
+                             ChronicleMap.of(Integer.class, Integer.class)
+                                     .entries(100)
+                                     .actualSegments(1)
+                                     .create()) {
+            long segmentHeaderAddress = map.segmentHeaderAddress(0);
+            int version = BigSegmentHeader.INSTANCE.version(segmentHeaderAddress);
+            assertEquals(0, version & 1);
+
+            map.put(1, 1);
+            int versionAfterPut = BigSegmentHeader.INSTANCE.version(segmentHeaderAddress);
+            assertEquals(0, versionAfterPut & 1);
+            assertNotEquals(version, versionAfterPut);
+            assertFalse(BigSegmentHeader.INSTANCE.validateVersion(segmentHeaderAddress, version));
+
+            // reads don't change the version
+            map.get(1);
+            assertTrue(BigSegmentHeader.INSTANCE.validateVersion(
+                    segmentHeaderAddress, versionAfterPut));
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void readersNeverObserveTornValues() throws Exception {
+        try (ChronicleMap<Integer, CharSequence> map =
+                     ChronicleMap.of(Integer.class, CharSequence.class)
+                             .entries(KEYS)
+                             .averageValueSize(40)
+                             .actualSegments(2)
+                             .optimisticReads(true)
+                             .create()) {
+            for (int i = 0; i < KEYS; i++) {
+                map.put(i, value(i, 0));
+            }
+            AtomicBoolean stop = new AtomicBoolean();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                Future<?> writer = executor.submit(() -> {
+                    for (int n = 1; !stop.get(); n++) {
+                        int key = ThreadLocalRandom.current().nextInt(KEYS);
+                        // values of different sizes, so entries are relocated
+                        map.put(key, value(key, n));
+                        if (n % 7 == 0)
+                            map.remove(key);
+                    }
+                });
+                Future<?>[] readers = new Future<?>[3];
+                for (int r = 0; r < readers.length; r++) {
+                    readers[r] = executor.submit(() -> {
+                        StringBuilder using = new StringBuilder();
+                        for (int n = 0; n < 200_000; n++) {
+                            int key = ThreadLocalRandom.current().nextInt(KEYS);
+                            CharSequence value = (n & 1) == 0 ? map.get(key) : map.getUsing(key, using);
+                            if (value != null)
+                                assertConsistent(key, value.toString());
+                        }
+                    });
+                }
+                for (Future<?> reader : readers) {
+                    reader.get(50, TimeUnit.SECONDS);
+                }
+                stop.set(true);
+                writer.get(5, TimeUnit.SECONDS);
+            } finally {
+                stop.set(true);
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static String value(int key, int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(key).append(':');
+        for (int i = 0; i < n % 10; i++) {
+            sb.append(key);
+        }
+        return sb.append(':').append(key).toString();
+    }
+
+    private static void assertConsistent(int key, String value) {
+        String k = String.valueOf(key);
+        assertTrue(value, value.startsWith(k + ":") && value.endsWith(":" + k));
+        String middle = value.substring(k.length() + 1, value.length() - k.length() - 1);
+        assertEquals(value, 0, middle.replace(k, "").length());
+    }
+}
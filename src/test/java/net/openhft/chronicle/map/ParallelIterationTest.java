@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelIterationTest {
+
+    private static final int ENTRIES = 10_000;
+
+    private static ChronicleMap<Integer, Integer> newFilledMap() {
+        ChronicleMap<Integer, Integer> map = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(ENTRIES)
+                .actualSegments(32)
+                .create();
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put(i, i);
+        }
+        return map;
+    }
+
+    @Test
+    public void parallelStreamsOverViews() {
+        try (ChronicleMap<Integer, Integer> map = newFilledMap()) {
+            Set<Integer> keys = map.keySet().parallelStream().collect(Collectors.toSet());
+            assertEquals(ENTRIES, keys.size());
+            long valuesSum = map.values().parallelStream().mapToLong(Integer::longValue).sum();
+            assertEquals((long) ENTRIES * (ENTRIES - 1) / 2, valuesSum);
+            long matching = map.entrySet().parallelStream()
+                    .filter(e -> e.getKey().equals(e.getValue()))
+                    .count();
+            assertEquals(ENTRIES, matching);
+        }
+    }
+
+    @Test
+    public void forEachEntryParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (ChronicleMap<Integer, Integer> map = newFilledMap()) {
+            AtomicLong sum = new AtomicLong();
+            map.forEachEntryParallel(pool, e -> sum.addAndGet(e.value().get()));
+            assertEquals((long) ENTRIES * (ENTRIES - 1) / 2, sum.get());
+
+            // remove odd keys in parallel
+            map.forEachEntryParallel(pool, e -> {
+                if (e.key().get() % 2 != 0)
+                    e.context().remove(e);
+            });
+            assertEquals(ENTRIES / 2, map.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
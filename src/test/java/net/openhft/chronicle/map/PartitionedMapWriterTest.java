@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PartitionedMapWriterTest {
+
+    @Test
+    public void appliesWritesInSubmissionOrder() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(8)
+                .create()) {
+            Map<Integer, Integer> expected = new HashMap<>();
+            try (PartitionedMapWriter<Integer, Integer> writer = map.partitionedWriter(3)) {
+                for (int i = 0; i < 50_000; i++) {
+                    int key = i % 5_000;
+                    if (i % 7 == 0) {
+                        writer.remove(key);
+                        expected.remove(key);
+                    } else {
+                        writer.put(key, i);
+                        expected.put(key, i);
+                    }
+                }
+            }
+            assertEquals(expected, new HashMap<>(map));
+        }
+    }
+
+    @Test
+    public void flushMakesWritesVisible() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .create();
+             PartitionedMapWriter<Integer, Integer> writer = map.partitionedWriter(2)) {
+            writer.put(1, 1);
+            writer.put(2, 2);
+            writer.flush();
+            assertEquals(2, map.size());
+            writer.remove(1);
+            writer.flush();
+            assertFalse(map.containsKey(1));
+            assertEquals(2, (int) map.get(2));
+        }
+    }
+
+    @Test
+    public void keysAndValuesCouldBeReusedAfterSubmission() {
+        try (ChronicleMap<CharSequence, CharSequence> map = ChronicleMapBuilder
+                .of(CharSequence.class, CharSequence.class)
+                .entries(10_000)
+                .averageKey("key-1000")
+                .averageValue("value-1000")
+                .create()) {
+            StringBuilder key = new StringBuilder();
+            StringBuilder value = new StringBuilder();
+            try (PartitionedMapWriter<CharSequence, CharSequence> writer =
+                         map.partitionedWriter(2)) {
+                for (int i = 0; i < 5_000; i++) {
+                    key.setLength(0);
+                    key.append("key-").append(i);
+                    value.setLength(0);
+                    value.append("value-").append(i);
+                    writer.put(key, value);
+                }
+                key.setLength(0);
+                key.append("key-0");
+                writer.remove(key);
+                key.setLength(0);
+            }
+            assertEquals(4_999, map.size());
+            assertFalse(map.containsKey("key-0"));
+            for (int i = 1; i < 5_000; i++) {
+                assertEquals("value-" + i, map.get("key-" + i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void writerIsClosedWithMap() {
+        ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .create();
+        PartitionedMapWriter<Integer, Integer> writer = map.partitionedWriter(2);
+        writer.put(1, 1);
+        map.close();
+        assertTrue(writer.isClosed());
+        try {
+            writer.put(2, 2);
+            fail();
+        } catch (IllegalStateException expected) {
+            // closed
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ownerThreadsShouldBePositive() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .create()) {
+            map.partitionedWriter(0);
+        }
+    }
+}
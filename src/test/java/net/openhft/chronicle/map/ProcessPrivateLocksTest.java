@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.impl.ParkingSegmentHeader;
+import net.openhft.chronicle.hash.impl.VanillaChronicleHash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessPrivateLocksTest {
+
+    private static ChronicleMap<Integer, Integer> map() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(100)
+                .actualSegments(1)
+                .processPrivate(true)
+                .create();
+    }
+
+    @Test
+    public void usesParkingLocks() {
+        try (ChronicleMap<Integer, Integer> map = map()) {
+            assertTrue(((VanillaChronicleHash<?, ?, ?, ?>) map).segmentHeader()
+                    instanceof ParkingSegmentHeader);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void contendedUpdatesAreNotLost() throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = map()) {
+            int threads = 8;
+            int increments = 20_000;
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    for (int i = 0; i < increments; i++) {
+                        // merge() takes the update lock and upgrades it to the write lock
+                        map.merge(i % 10, 1, Integer::sum);
+                        map.get(i % 10);
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            int sum = 0;
+            for (int key = 0; key < 10; key++) {
+                sum += map.get(key);
+            }
+            assertEquals(threads * increments, sum);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void waitersAreWokenUpOnUnlock() throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = map()) {
+            map.put(1, 1);
+            CountDownLatch written = new CountDownLatch(1);
+            Thread writer;
+            try (ExternalMapQueryContext<Integer, Integer, ?> c = map.queryContext(1)) {
+                c.readLock().lock();
+                writer = new Thread(() -> {
+                    map.put(1, 2);
+                    written.countDown();
+                });
+                writer.start();
+                assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+            }
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            writer.join();
+            assertEquals(Integer.valueOf(2), map.get(1));
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void timedLockTimesOut() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = map()) {
+            map.put(1, 1);
+            try (ExternalMapQueryContext<Integer, Integer, ?> c = map.queryContext(1)) {
+                c.writeLock().lock();
+                boolean[] locked = {true};
+                Thread other = new Thread(() -> {
+                    try (ExternalMapQueryContext<Integer, Integer, ?> c2 = map.queryContext(1)) {
+                        locked[0] = c2.readLock().tryLock(50, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+                other.start();
+                other.join();
+                assertFalse(locked[0]);
+            }
+            // the timed out waiter doesn't block the segment
+            map.put(1, 3);
+            assertEquals(Integer.valueOf(3), map.get(1));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class PutAllTest {
+
+    private static ChronicleMap<Integer, String> newMap() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(10_000)
+                .averageValueSize(10)
+                .actualSegments(16)
+                .create();
+    }
+
+    @Test
+    public void putAllGroupsKeysBySegment() {
+        try (ChronicleMap<Integer, String> map = newMap()) {
+            map.put(-1, "existing");
+            map.put(5, "old");
+            Map<Integer, String> source = new HashMap<>();
+            for (int i = 0; i < 5_000; i++) {
+                source.put(i, "v" + i);
+            }
+            map.putAll(source);
+            assertEquals(source.size() + 1, map.size());
+            source.forEach((k, v) -> assertEquals(v, map.get(k)));
+            assertEquals("existing", map.get(-1));
+        }
+    }
+
+    @Test
+    public void putAllOfEntriesLastValueWins() {
+        try (ChronicleMap<Integer, String> map = newMap()) {
+            List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                entries.add(new SimpleEntry<>(i, "first" + i));
+            }
+            for (int i = 0; i < 100; i += 2) {
+                entries.add(new SimpleEntry<>(i, "second" + i));
+            }
+            map.putAll(entries);
+            assertEquals(100, map.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals((i % 2 == 0 ? "second" : "first") + i, map.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void putAllComparesKeysInSerializedForm() {
+        try (ChronicleMap<byte[], String> map = ChronicleMapBuilder.of(byte[].class, String.class)
+                .entries(100)
+                .averageKeySize(1)
+                .averageValueSize(10)
+                .actualSegments(2)
+                .create()) {
+            List<Map.Entry<byte[], String>> entries = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                entries.add(new SimpleEntry<>(new byte[]{(byte) i}, "first" + i));
+            }
+            // arrays, equal only in the serialized form, are the same key of the map
+            for (int i = 0; i < 10; i++) {
+                entries.add(new SimpleEntry<>(new byte[]{(byte) i}, "second" + i));
+            }
+            map.putAll(entries);
+            assertEquals(10, map.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("second" + i, map.get(new byte[]{(byte) i}));
+            }
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putAllRejectsNullValues() {
+        try (ChronicleMap<Integer, String> map = newMap()) {
+            map.putAll(singletonEntries(1, null));
+        }
+    }
+
+    private static List<Map.Entry<Integer, String>> singletonEntries(Integer key, String value) {
+        List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+        entries.add(new SimpleEntry<>(key, value));
+        return entries;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReadExternalEntriesTest {
+
+    private static ReplicatedChronicleMap<Integer, String, ?> replicatedMap(byte identifier) {
+        return (ReplicatedChronicleMap<Integer, String, ?>) ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(1000)
+                .averageValueSize(10)
+                .actualSegments(8)
+                .replication(identifier)
+                .create();
+    }
+
+    private static void drainToFrame(ReplicatedChronicleMap<Integer, String, ?> map,
+                                     Replica.ModificationIterator iterator, Bytes<?> frame) {
+        Bytes<?> entry = Bytes.allocateElasticOnHeap(64);
+        while (iterator.nextEntry(new Replica.ModificationIterator.Callback() {
+            @Override
+            public void onEntry(ReplicableEntry e, int chronicleId) {
+                entry.clear();
+                map.writeExternalEntry(e, null, entry, chronicleId);
+                frame.writeInt((int) entry.readRemaining());
+                frame.write(entry);
+            }
+
+            @Override
+            public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+            }
+        }, 0)) {
+            // drain
+        }
+    }
+
+    @Test
+    public void entriesOfFrameAreApplied() {
+        try (ReplicatedChronicleMap<Integer, String, ?> source = replicatedMap((byte) 1);
+             ReplicatedChronicleMap<Integer, String, ?> target = replicatedMap((byte) 2)) {
+            Replica.ModificationIterator iterator = source.acquireModificationIterator((byte) 2);
+            Map<Integer, String> expected = new HashMap<>();
+            for (int i = 0; i < 500; i++) {
+                source.put(i, "v" + i);
+                expected.put(i, "v" + i);
+            }
+            for (int i = 0; i < 500; i += 3) {
+                source.remove(i);
+                expected.remove(i);
+            }
+            Bytes<?> frame = Bytes.allocateElasticOnHeap(1024);
+            drainToFrame(source, iterator, frame);
+            frame.writeInt(9);
+            frame.writeByte(ReplicatedChronicleMap.BOOTSTRAP_TIME_HUNK);
+            frame.writeLong(42L);
+
+            target.readExternalEntries(frame, (byte) 1);
+
+            assertEquals(0, frame.readRemaining());
+            assertEquals(expected, new HashMap<>(target));
+            assertEquals(42L, target.remoteNodeCouldBootstrapFrom((byte) 1));
+        }
+    }
+
+    @Test
+    public void entriesOfTheSameKeyAreAppliedInOrder() throws InterruptedException {
+        try (ReplicatedChronicleMap<Integer, String, ?> source = replicatedMap((byte) 1);
+             ReplicatedChronicleMap<Integer, String, ?> target = replicatedMap((byte) 2)) {
+            Replica.ModificationIterator iterator = source.acquireModificationIterator((byte) 2);
+            Bytes<?> frame = Bytes.allocateElasticOnHeap(1024);
+            for (int i = 0; i < 10; i++) {
+                source.put(i, "first");
+            }
+            drainToFrame(source, iterator, frame);
+            // make sure the following updates have later timestamps
+            Thread.sleep(10);
+            for (int i = 0; i < 10; i++) {
+                if (i % 2 == 0) {
+                    source.put(i, "second");
+                } else {
+                    source.remove(i);
+                }
+            }
+            drainToFrame(source, iterator, frame);
+
+            target.readExternalEntries(frame, (byte) 1);
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i % 2 == 0 ? "second" : null, target.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void corruptedEntryLengthsAreRejected() {
+        try (ReplicatedChronicleMap<Integer, String, ?> source = replicatedMap((byte) 1);
+             ReplicatedChronicleMap<Integer, String, ?> target = replicatedMap((byte) 2)) {
+            Replica.ModificationIterator iterator = source.acquireModificationIterator((byte) 2);
+            source.put(1, "v1");
+            Bytes<?> frame = Bytes.allocateElasticOnHeap(1024);
+            drainToFrame(source, iterator, frame);
+            for (int length : new int[]{-1, 0, (int) frame.readRemaining()}) {
+                frame.writeInt(0, length);
+                try {
+                    target.readExternalEntries(frame.bytesForRead(), (byte) 1);
+                    fail("length " + length + " accepted");
+                } catch (IllegalStateException expected) {
+                    // the replicator closes the connection
+                }
+            }
+            assertTrue(target.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.hash.replication.AcceptanceDecisionStats;
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ReplicationStatsTest {
+
+    private static ReplicatedChronicleMap<Integer, Integer, ?> createMap(int identifier) {
+        return (ReplicatedChronicleMap<Integer, Integer, ?>) ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(1000)
+                .replication((byte) identifier)
+                .create();
+    }
+
+    private static final class CountingCallback implements Replica.ModificationIterator.Callback {
+        int entries;
+
+        @Override
+        public void onEntry(ReplicableEntry entry, int chronicleId) {
+            entries++;
+        }
+
+        @Override
+        public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+        }
+    }
+
+    @Test
+    public void pendingAndSentEntriesAreCounted() throws InterruptedException {
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map = createMap(1)) {
+            ReplicatedChronicleMap<Integer, Integer, ?>.ModificationIterator iterator =
+                    map.acquireModificationIterator((byte) 2);
+            assertEquals(0, iterator.pendingEntries());
+            assertEquals(0, iterator.oldestPendingChangeAgeMillis());
+
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i);
+            }
+            // the second change of the same entry is not pending separately
+            map.put(0, -1);
+            assertEquals(100, iterator.pendingEntries());
+            Thread.sleep(50);
+            assertTrue(iterator.oldestPendingChangeAgeMillis() >= 50);
+
+            CountingCallback callback = new CountingCallback();
+            for (int i = 0; i < 40; i++) {
+                assertTrue(iterator.nextEntry(callback, 0));
+            }
+            assertEquals(60, iterator.pendingEntries());
+            assertEquals(40, iterator.sentEntries());
+
+            while (iterator.nextEntry(callback, 0)) {
+                // drain
+            }
+            assertEquals(100, callback.entries);
+            assertEquals(0, iterator.pendingEntries());
+            assertEquals(100, iterator.sentEntries());
+            assertEquals(0, iterator.oldestPendingChangeAgeMillis());
+        }
+    }
+
+    @Test
+    public void acceptanceDecisionsAreCounted() throws InterruptedException {
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map1 = createMap(1);
+             ReplicatedChronicleMap<Integer, Integer, ?> map2 = createMap(2)) {
+            Replica.ModificationIterator iterator = map1.acquireModificationIterator((byte) 2);
+            // remote modifications of keys, never present locally, are applied without a decision
+            map2.put(1, 0);
+            Thread.sleep(10);
+            map1.put(1, 1);
+            map1.put(2, 1);
+            Bytes<?> frame = Bytes.allocateElasticOnHeap(256);
+            Bytes<?> entryBytes = Bytes.allocateElasticOnHeap(64);
+            while (iterator.nextEntry(new Replica.ModificationIterator.Callback() {
+                @Override
+                public void onEntry(ReplicableEntry entry, int chronicleId) {
+                    entryBytes.clear();
+                    map1.writeExternalEntry(entry, null, entryBytes, chronicleId);
+                    frame.writeInt((int) entryBytes.readRemaining());
+                    frame.write(entryBytes);
+                }
+
+                @Override
+                public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                }
+            }, 0)) {
+                // drain
+            }
+            // the local update of the key 2 is later than the remote one
+            Thread.sleep(10);
+            map2.put(2, 2);
+
+            map2.readExternalEntries(frame, (byte) 1);
+
+            AcceptanceDecisionStats stats = map2.acceptanceDecisionStats();
+            assertEquals(1, stats.accepted());
+            assertEquals(1, stats.discarded());
+            assertEquals(0, stats.conflicts());
+            assertEquals(Integer.valueOf(1), map2.get(1));
+            assertEquals(Integer.valueOf(2), map2.get(2));
+        }
+    }
+
+    @Test
+    public void mxBeanIsRegisteredUntilTheMapIsClosed() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName(
+                "net.openhft.chronicle.map:type=ReplicationStats,name=\"replication-stats-test\",*");
+        ObjectName objectName;
+        try (ReplicatedChronicleMap<Integer, Integer, ?> map =
+                     (ReplicatedChronicleMap<Integer, Integer, ?>) ChronicleMapBuilder
+                             .of(Integer.class, Integer.class)
+                             .name("replication-stats-test")
+                             .entries(1000)
+                             .replication((byte) 1)
+                             .replicationStatistics(true)
+                             .create()) {
+            map.acquireModificationIterator((byte) 3);
+            map.put(1, 1);
+            Set<ObjectName> names = server.queryNames(pattern, null);
+            assertEquals(1, names.size());
+            objectName = names.iterator().next();
+            assertArrayEquals(new byte[]{3},
+                    (byte[]) server.getAttribute(objectName, "RemoteIdentifiers"));
+            assertArrayEquals(new long[]{1},
+                    (long[]) server.getAttribute(objectName, "PendingEntries"));
+        }
+        assertFalse(server.isRegistered(objectName));
+    }
+}
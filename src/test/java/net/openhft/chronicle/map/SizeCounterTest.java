@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class SizeCounterTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(32)
+                .maintainSizeCounter(true);
+    }
+
+    @Test
+    public void approximateSizeTracksPutsAndRemoves() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            assertEquals(0, map.approximateSize());
+            for (int i = 0; i < 5_000; i++) {
+                map.put(i, i);
+            }
+            // replacing values doesn't change the count
+            for (int i = 0; i < 1_000; i++) {
+                map.put(i, -i);
+            }
+            assertEquals(5_000, map.approximateSize());
+            for (int i = 0; i < 5_000; i += 2) {
+                map.remove(i);
+            }
+            assertEquals(map.longSize(), map.approximateSize());
+            assertEquals(2_500, map.approximateSize());
+            map.clear();
+            assertEquals(0, map.approximateSize());
+        }
+    }
+
+    @Test
+    public void approximateSizeFallsBackToScanIfNotMaintained() {
+        try (ChronicleMap<Integer, Integer> map = builder().maintainSizeCounter(false).create()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i);
+            }
+            assertEquals(100, map.approximateSize());
+        }
+    }
+
+    @Test
+    public void sizeCounterIsSharedThroughPersistedFile() throws IOException {
+        File file = File.createTempFile("size-counter", ".cm3");
+        file.deleteOnExit();
+        file.delete();
+        try (ChronicleMap<Integer, Integer> map1 = builder().createPersistedTo(file);
+             ChronicleMap<Integer, Integer> map2 = builder().createPersistedTo(file)) {
+            for (int i = 0; i < 1_000; i++) {
+                map1.put(i, i);
+            }
+            assertEquals(1_000, map2.approximateSize());
+            for (int i = 0; i < 500; i++) {
+                map2.remove(i);
+            }
+            assertEquals(500, map1.approximateSize());
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().recoverPersistedTo(file, true)) {
+            assertEquals(500, map.approximateSize());
+        }
+    }
+}
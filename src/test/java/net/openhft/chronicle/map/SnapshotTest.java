@@ -0,0 +1,201 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        // small segments, to make the map allocate extra tiers
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(200)
+                .actualSegments(4)
+                .maxBloatFactor(10);
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("snapshot", ".cm3");
+        file.deleteOnExit();
+        file.delete();
+        return file;
+    }
+
+    @Test
+    public void fullSnapshotOpensAsMap() throws IOException {
+        File snapshot = tempFile();
+        Map<Integer, Integer> expected = new HashMap<>();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(tempFile())) {
+            for (int i = 0; i < 1_000; i++) {
+                map.put(i, i * 2);
+                expected.put(i, i * 2);
+            }
+            assertTrue(((VanillaChronicleMap<?, ?, ?>) map).hasExtraTierBulks());
+            map.snapshotTo(snapshot, false);
+        }
+        try (ChronicleMap<Integer, Integer> copy = builder().createPersistedTo(snapshot)) {
+            assertEquals(expected, copy);
+            // the snapshot is writable, i. e. no locks are copied in the locked state
+            copy.put(-1, -1);
+            assertEquals(Integer.valueOf(-1), copy.get(-1));
+        }
+    }
+
+    @Test
+    public void snapshotCopiesModificationIteratorBitSets() throws IOException {
+        File snapshot = tempFile();
+        ChronicleMapBuilder<Integer, Integer> builder = builder().replication((byte) 1);
+        try (ChronicleMap<Integer, Integer> map = builder.createPersistedTo(tempFile())) {
+            ((ReplicatedChronicleMap<?, ?, ?>) map).acquireModificationIterator((byte) 2);
+            for (int i = 0; i < 1_000; i++) {
+                map.put(i, i);
+            }
+            assertTrue(((VanillaChronicleMap<?, ?, ?>) map).hasExtraTierBulks());
+            map.snapshotTo(snapshot, false);
+        }
+        try (ChronicleMap<Integer, Integer> copy = builder.createPersistedTo(snapshot)) {
+            Replica.ModificationIterator iterator =
+                    ((ReplicatedChronicleMap<?, ?, ?>) copy).acquireModificationIterator((byte) 2);
+            int[] pending = new int[1];
+            Replica.ModificationIterator.Callback callback = new Replica.ModificationIterator.Callback() {
+                @Override
+                public void onEntry(ReplicableEntry entry, int chronicleId) {
+                    pending[0]++;
+                }
+
+                @Override
+                public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                }
+            };
+            while (iterator.nextEntry(callback, 0)) {
+                // drain
+            }
+            // changes of entries in extra tiers are pending in the snapshot as well
+            assertEquals(1_000, pending[0]);
+        }
+    }
+
+    @Test
+    public void incrementalSnapshotCopiesModifiedSegments() throws IOException {
+        File snapshot = tempFile();
+        Map<Integer, Integer> expected = new HashMap<>();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(tempFile())) {
+            for (int i = 0; i < 500; i++) {
+                map.put(i, i);
+                expected.put(i, i);
+            }
+            map.snapshotTo(snapshot, true);
+            for (int i = 0; i < 1_000; i += 3) {
+                map.put(i, -i);
+                expected.put(i, -i);
+            }
+            map.remove(1);
+            expected.remove(1);
+            map.snapshotTo(snapshot, true);
+        }
+        try (ChronicleMap<Integer, Integer> copy = builder().createPersistedTo(snapshot)) {
+            assertEquals(expected, copy);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void snapshotWhileWriting() throws Exception {
+        File snapshot = tempFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(tempFile())) {
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    int key = random.nextInt(1_000);
+                    if (random.nextInt(4) == 0) {
+                        map.remove(key);
+                    } else {
+                        map.put(key, key);
+                    }
+                }
+            });
+            writer.start();
+            try {
+                for (int i = 0; i < 20; i++) {
+                    map.snapshotTo(snapshot, i % 2 == 1);
+                }
+            } finally {
+                stop.set(true);
+                writer.join();
+            }
+        }
+        try (ChronicleMap<Integer, Integer> copy = builder().recoverPersistedTo(snapshot, false)) {
+            copy.forEach((k, v) -> assertEquals(k, v));
+            assertEquals(copy.size(), copy.approximateSize());
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void snapshotWhileCompacting() throws Exception {
+        File snapshot = tempFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(tempFile())) {
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread compactor = new Thread(() -> {
+                while (!stop.get()) {
+                    for (int i = 0; i < 1_000; i++) {
+                        map.put(i, i);
+                    }
+                    for (int i = 0; i < 1_000; i += 2) {
+                        map.remove(i);
+                    }
+                    map.compact();
+                }
+            });
+            compactor.start();
+            try {
+                for (int i = 0; i < 20; i++) {
+                    map.snapshotTo(snapshot, false);
+                }
+            } finally {
+                stop.set(true);
+                compactor.join();
+            }
+        }
+        try (ChronicleMap<Integer, Integer> copy = builder().recoverPersistedTo(snapshot, false)) {
+            copy.forEach((k, v) -> assertEquals(k, v));
+            assertEquals(copy.size(), copy.approximateSize());
+            // tiers of the free list are not shared with segments
+            for (int i = 0; i < 1_000; i++) {
+                copy.put(i, i);
+            }
+            assertEquals(1_000, copy.size());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void inMemoryMapCannotBeSnapshotted() throws IOException {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            map.snapshotTo(tempFile(), false);
+        }
+    }
+}
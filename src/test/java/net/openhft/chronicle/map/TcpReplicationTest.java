@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TcpReplicationTest {
+
+    private static ChronicleMap<Integer, String> createMap(int identifier) {
+        return ChronicleMap.of(Integer.class, String.class)
+                .entries(10_000)
+                .averageValueSize(10)
+                .replication((byte) identifier)
+                .create();
+    }
+
+    private static InetSocketAddress anyLocalPort() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private static Map<Byte, InetSocketAddress> remote(int identifier, InetSocketAddress address) {
+        return Collections.singletonMap((byte) identifier, address);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void replicatesBothWays() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = createMap(1);
+             ChronicleMap<Integer, String> map2 = createMap(2);
+             TcpReplicator replicator2 = new TcpReplicator(
+                     map2, anyLocalPort(), Collections.emptyMap());
+             TcpReplicator replicator1 = new TcpReplicator(
+                     map1, null, remote(2, replicator2.localAddress()))) {
+            for (int i = 0; i < 1000; i++) {
+                map1.put(i, "one" + i);
+            }
+            for (int i = 1000; i < 2000; i++) {
+                map2.put(i, "two" + i);
+            }
+            waitFor(() -> map1.size() == 2000 && map2.size() == 2000);
+            assertEquals(map1, map2);
+
+            map2.remove(1);
+            waitFor(() -> !map1.containsKey(1));
+            assertTrue(replicator1.entriesSent() >= 1000);
+            assertTrue(replicator2.entriesReceived() >= 1000);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void catchesUpAfterReconnect() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = createMap(1);
+             ChronicleMap<Integer, String> map2 = createMap(2)) {
+            TcpReplicator replicator2 = new TcpReplicator(
+                    map2, anyLocalPort(), Collections.emptyMap());
+            InetSocketAddress address2 = replicator2.localAddress();
+            try (TcpReplicator replicator1 = new TcpReplicator(map1, null, remote(2, address2))) {
+                map1.put(1, "first");
+                waitFor(() -> "first".equals(map2.get(1)));
+
+                replicator2.close();
+                for (int i = 2; i <= 100; i++) {
+                    map1.put(i, "while down " + i);
+                }
+                map1.put(1, "second");
+
+                replicator2 = new TcpReplicator(map2, address2, Collections.emptyMap());
+                waitFor(() -> map2.size() == 100 && "second".equals(map2.get(1)));
+                assertEquals(map1, map2);
+            } finally {
+                replicator2.close();
+            }
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void closesConnectionOnOversizedFrame() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = createMap(1);
+             ChronicleMap<Integer, String> map2 = createMap(2);
+             TcpReplicator replicator2 = new TcpReplicator(
+                     map2, anyLocalPort(), Collections.emptyMap())) {
+            try (SocketChannel peer = SocketChannel.open(replicator2.localAddress())) {
+                ByteBuffer header = ByteBuffer.allocate(5);
+                header.putInt(Integer.MAX_VALUE).put((byte) 2).flip();
+                peer.write(header);
+                // the replicator closes the connection rather than allocating the frame
+                assertEquals(-1, peer.read(ByteBuffer.allocate(64)));
+            }
+            try (TcpReplicator replicator1 = new TcpReplicator(
+                    map1, null, remote(2, replicator2.localAddress()))) {
+                map1.put(1, "one");
+                waitFor(() -> "one".equals(map2.get(1)));
+            }
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void closesConnectionOnCorruptedDeflatedFrame() throws Exception {
+        byte[] body = new byte[1000];
+        Deflater deflater = new Deflater();
+        deflater.setInput(body);
+        deflater.finish();
+        byte[] deflated = new byte[1000];
+        int deflatedLength = deflater.deflate(deflated);
+        deflater.end();
+        try (ChronicleMap<Integer, String> map2 = createMap(2);
+             TcpReplicator replicator2 = new TcpReplicator(
+                     map2, anyLocalPort(), Collections.emptyMap(), 1024, true)) {
+            // declares a too long frame, and a frame shorter than the inflated body
+            for (int declaredLength : new int[]{Integer.MAX_VALUE, body.length - 1}) {
+                try (SocketChannel peer = SocketChannel.open(replicator2.localAddress())) {
+                    ByteBuffer frames = ByteBuffer.allocate(64 + deflatedLength);
+                    frames.putInt(10).put((byte) 1).put((byte) 1).putLong(0L).put((byte) 1);
+                    frames.putInt(4 + deflatedLength).put((byte) 3).putInt(declaredLength)
+                            .put(deflated, 0, deflatedLength);
+                    frames.flip();
+                    peer.write(frames);
+                    ByteBuffer sink = ByteBuffer.allocate(4096);
+                    while (peer.read(sink) >= 0) {
+                        sink.clear();
+                    }
+                }
+            }
+            assertTrue(map2.isEmpty());
+        }
+    }
+
+    /**
+     * Large values differing in a few bytes, e. g. objects with a changed field, should be
+     * compressed well. See {@code perf.TcpReplicationBytesPerUpdate} for the measurement.
+     */
+    @Test(timeout = 60_000)
+    public void compressionReducesBytesPerUpdate() throws Exception {
+        double plain = bytesPerUpdate(false, false);
+        double deflated = bytesPerUpdate(true, true);
+        assertTrue(deflated < plain / 2);
+    }
+
+    @Test(timeout = 60_000)
+    public void compressionIsUsedOnlyIfEnabledOnBothSides() throws Exception {
+        double plain = bytesPerUpdate(false, false);
+        double mixed = bytesPerUpdate(true, false);
+        assertTrue(mixed > plain * 0.9);
+    }
+
+    private static double bytesPerUpdate(boolean compression1, boolean compression2)
+            throws Exception {
+        int entries = 1000;
+        char[] chars = new char[2000];
+        try (ChronicleMap<Integer, String> map1 = ChronicleMap.of(Integer.class, String.class)
+                .entries(entries)
+                .averageValueSize(chars.length)
+                .replication((byte) 1)
+                .create();
+             ChronicleMap<Integer, String> map2 = ChronicleMap.of(Integer.class, String.class)
+                     .entries(entries)
+                     .averageValueSize(chars.length)
+                     .replication((byte) 2)
+                     .create();
+             TcpReplicator replicator2 = new TcpReplicator(map2, anyLocalPort(),
+                     Collections.emptyMap(), TcpReplicator.DEFAULT_BATCH_SIZE, compression2);
+             TcpReplicator replicator1 = new TcpReplicator(map1, null,
+                     remote(2, replicator2.localAddress()), TcpReplicator.DEFAULT_BATCH_SIZE,
+                     compression1)) {
+            waitFor(() -> replicator2.bytesReceived() > 0);
+            long before = replicator1.bytesSent();
+            for (int i = 0; i < entries; i++) {
+                Arrays.fill(chars, 'x');
+                String digits = Integer.toString(i);
+                digits.getChars(0, digits.length(), chars, chars.length / 2);
+                map1.put(i, new String(chars));
+            }
+            waitFor(() -> map2.size() == entries);
+            assertEquals(map1, map2);
+            return (double) (replicator1.bytesSent() - before) / entries;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TierCompactionTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        // small segments, to make the map allocate extra tiers
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(200)
+                .actualSegments(4)
+                .maxBloatFactor(20);
+    }
+
+    private static void fillAndShrink(ChronicleMap<Integer, Integer> map,
+                                      Map<Integer, Integer> expected) {
+        for (int i = 0; i < 2_000; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            if (i % 10 == 0) {
+                expected.put(i, i);
+            } else {
+                map.remove(i);
+            }
+        }
+    }
+
+    @Test
+    public void compactReclaimsExtraTiers() {
+        Map<Integer, Integer> expected = new HashMap<>();
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            fillAndShrink(map, expected);
+            VanillaChronicleMap<?, ?, ?> m = (VanillaChronicleMap<?, ?, ?>) map;
+            long tiersInUse = m.globalMutableState().getExtraTiersInUse();
+            int remainingAutoResizes = map.remainingAutoResizes();
+            assertTrue(tiersInUse > 0);
+
+            int reclaimed = map.compact();
+            assertTrue(reclaimed > 0);
+            assertEquals(tiersInUse - reclaimed, m.globalMutableState().getExtraTiersInUse());
+            assertEquals(remainingAutoResizes + reclaimed, map.remainingAutoResizes());
+            assertEquals(expected, map);
+            assertEquals(expected.size(), map.size());
+
+            // nothing left to compact
+            assertEquals(0, map.compact());
+
+            // reclaimed tiers are reused
+            for (int i = 0; i < 2_000; i++) {
+                map.put(i, -i);
+                expected.put(i, -i);
+            }
+            assertEquals(expected, map);
+        }
+    }
+
+    @Test
+    public void compactedMapIsRecovered() throws IOException {
+        File file = File.createTempFile("compaction", ".cm3");
+        file.deleteOnExit();
+        file.delete();
+        Map<Integer, Integer> expected = new HashMap<>();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            fillAndShrink(map, expected);
+            assertTrue(map.compact() > 0);
+        }
+        // reclaimed tiers interleave with tiers in use, recovery should keep all of them
+        try (ChronicleMap<Integer, Integer> map = builder().recoverPersistedTo(file, true)) {
+            assertEquals(expected, map);
+            for (int i = 0; i < 2_000; i++) {
+                map.put(i, i);
+                expected.put(i, i);
+            }
+            assertEquals(expected, map);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2018 Chronicle Map Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class WriteExternalEntryAllocationTest {
+
+    private static final int ENTRIES = 10_000;
+
+    @Test
+    public void writeExternalEntryDoesNotAllocate() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() &&
+                allocations.isThreadAllocatedMemoryEnabled());
+
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder
+                .of(Integer.class, Long.class)
+                .entries(ENTRIES)
+                .replication((byte) 1)
+                .create()) {
+            ReplicatedChronicleMap<Integer, Long, ?> replicatedMap =
+                    (ReplicatedChronicleMap<Integer, Long, ?>) map;
+            Replica.ModificationIterator iterator = replicatedMap.acquireModificationIterator((byte) 2);
+            Bytes<?> destination = Bytes.allocateElasticDirect(1024);
+            try {
+                WritingCallback callback =
+                        new WritingCallback(replicatedMap, destination, allocations);
+                // warm up, also initializes contexts of this thread
+                for (int i = 0; i < ENTRIES; i++) {
+                    map.put(i, (long) i);
+                }
+                while (iterator.nextEntry(callback, 0)) {
+                    // drain
+                }
+                assertEquals(ENTRIES, callback.entries);
+
+                for (int i = 0; i < ENTRIES; i++) {
+                    map.put(i, (long) -i);
+                }
+                callback.entries = 0;
+                callback.allocatedBytes = 0;
+                while (iterator.nextEntry(callback, 0)) {
+                    // drain
+                }
+                assertEquals(ENTRIES, callback.entries);
+                assertTrue("allocated " + callback.allocatedBytes + " bytes writing " + ENTRIES +
+                        " entries", callback.allocatedBytes < ENTRIES);
+            } finally {
+                destination.releaseLast();
+            }
+        }
+    }
+
+    @Test
+    public void keysAreCapturedIfRequested() {
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder
+                .of(Integer.class, Long.class)
+                .entries(100)
+                .replication((byte) 1)
+                .create()) {
+            ReplicatedChronicleMap<Integer, Long, ?> replicatedMap =
+                    (ReplicatedChronicleMap<Integer, Long, ?>) map;
+            Replica.ModificationIterator iterator = replicatedMap.acquireModificationIterator((byte) 2);
+            map.put(42, 1L);
+            Bytes<?> destination = Bytes.allocateElasticDirect(128);
+            ArrayList<String> keys = new ArrayList<>();
+            try {
+                assertTrue(iterator.nextEntry(new Replica.ModificationIterator.Callback() {
+                    @Override
+                    public void onEntry(ReplicableEntry entry, int chronicleId) {
+                        replicatedMap.writeExternalEntry(entry, null, destination, chronicleId, keys);
+                    }
+
+                    @Override
+                    public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+                    }
+                }, 0));
+            } finally {
+                destination.releaseLast();
+            }
+            assertEquals("[42]", keys.toString());
+        }
+    }
+
+    private static final class WritingCallback implements Replica.ModificationIterator.Callback {
+        private final ReplicatedChronicleMap<?, ?, ?> map;
+        private final Bytes<?> destination;
+        private final com.sun.management.ThreadMXBean allocations;
+        private final long threadId = Thread.currentThread().getId();
+        int entries;
+        long allocatedBytes;
+
+        WritingCallback(ReplicatedChronicleMap<?, ?, ?> map, Bytes<?> destination,
+                        com.sun.management.ThreadMXBean allocations) {
+            this.map = map;
+            this.destination = destination;
+            this.allocations = allocations;
+        }
+
+        @Override
+        public void onEntry(ReplicableEntry entry, int chronicleId) {
+            destination.clear();
+            long before = allocations.getThreadAllocatedBytes(threadId);
+            map.writeExternalEntry(entry, null, destination, chronicleId);
+            allocatedBytes += allocations.getThreadAllocatedBytes(threadId) - before;
+            entries++;
+        }
+
+        @Override
+        public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+        }
+    }
+}